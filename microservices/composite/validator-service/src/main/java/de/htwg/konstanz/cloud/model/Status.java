@@ -8,6 +8,9 @@ import java.util.*;
 @Data
 @SuppressWarnings("PMD")
 public class Status {
+    // id of the validated course, the services report the reuse of identical files per course
+    private String courseId;
+
     private int numberOfTasks = 0;
 
     private int numberOfOpenTasks = 0;
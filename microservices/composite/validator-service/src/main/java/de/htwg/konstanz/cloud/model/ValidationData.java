@@ -12,6 +12,9 @@ public class ValidationData {
     @NotNull
     private String repository;
 
+    // optional id of the course, identical files of the repositories of a course are analyzed only once
+    private String course;
+
     /**
      * Override to String method to get json as String.
      * @return JSON object as string.
@@ -21,6 +24,9 @@ public class ValidationData {
         JSONObject json = new JSONObject();
         try {
             json.put("repository", repository);
+            if (course != null) {
+                json.put("course", course);
+            }
             return json.toString();
         } catch (JSONException e) {
             return repository;
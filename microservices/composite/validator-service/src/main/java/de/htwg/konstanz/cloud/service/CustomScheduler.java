@@ -59,14 +59,16 @@ public class CustomScheduler {
     /**
      * Method to execute the validation of a course.
      *
+     * @param courseId id of the validated course.
      * @param groups A list of repositories to validate with checkstyle and pmd.
      * @return validation result of all tasks.
      */
-    ArrayList<JSONObject> runValidationSchedulerOnAws(JSONArray groups) throws JSONException, InstantiationException,
-            ExecutionException, InterruptedException, NoSuchFieldException {
+    ArrayList<JSONObject> runValidationSchedulerOnAws(String courseId, JSONArray groups) throws JSONException,
+            InstantiationException, ExecutionException, InterruptedException, NoSuchFieldException {
 
         // init status object
         Status status = new Status();
+        status.setCourseId(courseId);
         status.setNumberOfOpenTasks(groups.length());
         status.setNumberOfTasks(groups.length());
 
@@ -182,7 +184,7 @@ public class CustomScheduler {
                     isExecute = true;
                 }
             } else {
-                executeFromAvailableInstances(checkstyleStatus, pmdStatus, task);
+                executeFromAvailableInstances(status, checkstyleStatus, pmdStatus, task);
                 isExecute = true;
             }
 
@@ -214,6 +216,7 @@ public class CustomScheduler {
                                          JSONObject task, ServiceInstance checkstyleIinstance, ServiceInstance pmdInstance) {
 
         ValidationData validationData = new ValidationData();
+        validationData.setCourse(status.getCourseId());
         try {
             validationData.setRepository(task.getString("repository"));
         } catch (JSONException e) {
@@ -234,13 +237,15 @@ public class CustomScheduler {
     /**
      * Executes a task from available instance.
      *
+     * @param status           Holds information about scheduling.
      * @param checkstyleStatus Hold information about checkstyle instances.
      * @param pmdStatus        Hold information about pmd instances.
      * @param task             Task (repository) to execute.
      */
-    private void executeFromAvailableInstances(CheckstyleStatus checkstyleStatus, PmdStatus pmdStatus,
+    private void executeFromAvailableInstances(Status status, CheckstyleStatus checkstyleStatus, PmdStatus pmdStatus,
                                                JSONObject task) {
         ValidationData validationData = new ValidationData();
+        validationData.setCourse(status.getCourseId());
         try {
             validationData.setRepository(task.getString("repository"));
         } catch (JSONException e) {
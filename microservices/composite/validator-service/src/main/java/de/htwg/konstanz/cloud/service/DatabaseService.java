@@ -172,6 +172,16 @@ public class DatabaseService {
         return callDatabaseRoute("/cpdresults/courses/" + userId + "/findLastCpdResult");
     }
 
+    /**
+     * Get a code fragment of the cpd results.
+     *
+     * @param hash hash of the code fragment within the duplications
+     * @return Json object as String. Needs to be convert.
+     */
+    public String getCpdFragment(String hash) throws InstantiationException {
+        return callDatabaseRoute("/cpdresults/fragments/" + hash);
+    }
+
     /**
      * Method to call Database with GET.
      *
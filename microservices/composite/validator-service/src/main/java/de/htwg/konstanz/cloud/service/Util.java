@@ -20,9 +20,18 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Component
@@ -299,4 +308,186 @@ class Util {
 
 
     }
+
+    /**
+     * Merge the copy paste results of the block pairs of a course into one result. A duplication which was found
+     * by several block pairs is added once with the files of all of its repositories, a code fragment once for all
+     * duplications, a pair of similar repositories once with its highest similarity and every repository once with
+     * its slowest fetch. A block pair without duplications returns a json object as well, a result which is no json
+     * object is the error of a failed block pair. It is logged and recorded as failed fetch of the repositories of
+     * the block pair.
+     *
+     * @param pairs     requests of the block pairs with the arrays repositories and comparedRepositories
+     * @param results   results of the pmd instances in the order of the requests
+     * @param startTime start time of the duplication validation
+     * @return result in the same format as the result of a single pmd instance
+     * @throws JSONException If a result is no valid copy paste result
+     */
+    public JSONObject mergeDuplications(List<String> pairs, List<String> results, long startTime)
+            throws JSONException {
+        // tokens and hash of the code fragment --> merged duplication
+        Map<String, JSONObject> duplications = new LinkedHashMap<>();
+        // hash --> code fragment, every fragment is sent once
+        Map<String, JSONObject> fragments = new LinkedHashMap<>();
+        // repository pair --> most similar result of the block pairs
+        Map<String, JSONObject> similarities = new LinkedHashMap<>();
+        // repository --> slowest fetch of the block pairs, a failed one only if no block pair fetched it
+        Map<String, JSONObject> fetches = new LinkedHashMap<>();
+        String duplicationCursPath = "";
+
+        for (int pair = 0; pair < results.size(); pair++) {
+            String result = results.get(pair);
+            JSONObject resultObj;
+            try {
+                resultObj = new JSONObject(result);
+            } catch (JSONException e) {
+                LOG.warn("Block pair failed: " + result);
+                addPairError(fetches, new JSONObject(pairs.get(pair)), result);
+                continue;
+            }
+            duplicationCursPath = resultObj.optString("duplicationCursPath", duplicationCursPath);
+
+            JSONArray resultDuplications = resultObj.getJSONArray("duplications");
+            for (int i = 0; i < resultDuplications.length(); i++) {
+                JSONObject duplication = resultDuplications.getJSONObject(i).getJSONObject("duplication");
+                String key = duplication.getInt("tokens") + ":" + duplication.getString("fragmentHash");
+                JSONObject merged = duplications.get(key);
+
+                if (merged == null) {
+                    duplications.put(key, duplication);
+                } else {
+                    addFilePaths(merged.getJSONArray("filePaths"), duplication.getJSONArray("filePaths"));
+                }
+            }
+
+            JSONArray resultFragments = resultObj.optJSONArray("fragments");
+            for (int i = 0; resultFragments != null && i < resultFragments.length(); i++) {
+                JSONObject fragment = resultFragments.getJSONObject(i);
+                if (!fragments.containsKey(fragment.getString("hash"))) {
+                    fragments.put(fragment.getString("hash"), fragment);
+                }
+            }
+
+            JSONArray resultSimilarities = resultObj.optJSONArray("similarities");
+            for (int i = 0; resultSimilarities != null && i < resultSimilarities.length(); i++) {
+                JSONObject similarity = resultSimilarities.getJSONObject(i);
+                String key = similarity.getString("repositoryA") + "/" + similarity.getString("repositoryB");
+                JSONObject merged = similarities.get(key);
+
+                if (merged == null || merged.getDouble("similarity") < similarity.getDouble("similarity")) {
+                    similarities.put(key, similarity);
+                }
+            }
+
+            JSONArray resultFetches = resultObj.optJSONArray("fetches");
+            for (int i = 0; resultFetches != null && i < resultFetches.length(); i++) {
+                JSONObject fetch = resultFetches.getJSONObject(i);
+                JSONObject merged = fetches.get(fetch.getString("repository"));
+
+                if (merged == null || (merged.has("error") && !fetch.has("error"))
+                        || (merged.has("error") == fetch.has("error")
+                        && merged.getLong("fetchTime") < fetch.getLong("fetchTime"))) {
+                    fetches.put(fetch.getString("repository"), fetch);
+                }
+            }
+        }
+
+        // biggest duplications first, like the result of a single pmd instance
+        List<JSONObject> sorted = new ArrayList<>(duplications.values());
+        sorted.sort(Comparator.comparingInt(duplication -> -duplication.optInt("tokens")));
+        JSONArray mergedDuplications = new JSONArray();
+        for (JSONObject duplication : sorted) {
+            mergedDuplications.put(new JSONObject().put("duplication", duplication));
+        }
+
+        JSONObject merged = new JSONObject();
+        merged.put("duplicationCursPath", duplicationCursPath);
+        merged.put("duplications", mergedDuplications);
+        merged.put("fragments", new JSONArray(fragments.values()));
+        merged.put("numberOfDuplications", sorted.size());
+        if (!similarities.isEmpty()) {
+            List<JSONObject> sortedSimilarities = new ArrayList<>(similarities.values());
+            sortedSimilarities.sort(Comparator.comparingDouble(similarity -> -similarity.optDouble("similarity")));
+            merged.put("similarities", new JSONArray(sortedSimilarities));
+        }
+        merged.put("fetches", new JSONArray(fetches.values()));
+        merged.put("totalExpendedTime", System.currentTimeMillis() - startTime);
+        merged.put("assignments", "Copy Paste Check for " + duplicationCursPath);
+
+        return merged;
+    }
+
+    /**
+     * Record the error of a failed block pair as failed fetch of its repositories. A repository which another block
+     * pair fetched keeps that fetch.
+     *
+     * @param fetches repository --> merged fetch
+     * @param pair    request of the block pair
+     * @param result  error of the block pair
+     * @throws JSONException If the request has no repositories
+     */
+    private void addPairError(Map<String, JSONObject> fetches, JSONObject pair, String result)
+            throws JSONException {
+        Set<String> repositoryUrls = new LinkedHashSet<>();
+        for (String key : new String[]{"repositories", "comparedRepositories"}) {
+            JSONArray repositories = pair.getJSONArray(key);
+            for (int i = 0; i < repositories.length(); i++) {
+                repositoryUrls.add(repositories.getString(i));
+            }
+        }
+
+        for (String repositoryUrl : repositoryUrls) {
+            String repository = getRepositoryName(repositoryUrl);
+            if (!fetches.containsKey(repository)) {
+                fetches.put(repository, new JSONObject().put("repository", repository).put("fetchTime", 0)
+                        .put("error", "Block pair failed: " + result));
+            }
+        }
+    }
+
+    /**
+     * Build the name of the directory of a repository like the pmd service, the first directory of the paths of
+     * its duplications, e.g. team1_git_3fa2c1d0.
+     *
+     * @param repositoryUrl url of the repository
+     * @return last part of the url with a part of the hash of the url
+     */
+    private String getRepositoryName(String repositoryUrl) {
+        String url = repositoryUrl.trim();
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8))) {
+                hash.append(String.format("%02x", b));
+            }
+            return url.substring(url.lastIndexOf('/') + 1).replace(".", "_") + "_" + hash.substring(0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Add the file paths of repositories which are not in the list yet. The first directory of a path is the
+     * repository.
+     *
+     * @param filePaths      file paths of the merged duplication
+     * @param otherFilePaths file paths of the same duplication in another block pair
+     * @throws JSONException If a file path is missing
+     */
+    private void addFilePaths(JSONArray filePaths, JSONArray otherFilePaths) throws JSONException {
+        Set<String> repositories = new HashSet<>();
+        for (int i = 0; i < filePaths.length(); i++) {
+            repositories.add(filePaths.getJSONObject(i).getString("filePath").split("[/\\\\]")[0]);
+        }
+
+        for (int i = 0; i < otherFilePaths.length(); i++) {
+            JSONObject filePath = otherFilePaths.getJSONObject(i);
+            if (repositories.add(filePath.getString("filePath").split("[/\\\\]")[0])) {
+                filePaths.put(filePath);
+            }
+        }
+    }
 }
@@ -40,6 +40,13 @@ public class ValidateRepositoryService {
         return executePostRequest(repositoryUrlJsonObj, requestUri + validateRoute);
     }
 
+    @Async
+    public Future<String> validateCodeDublicationPair(String repositoryPairJsonObj, URI requestUri) {
+        String validateRoute = "/validate/copypaste/pair";
+        LOG.info("Validate dublication for block pair " + repositoryPairJsonObj);
+        return executePostRequest(repositoryPairJsonObj, requestUri + validateRoute);
+    }
+
     @Async
     public Future<String> validateRepository(String repositoryUrlJsonObj, URI requestUri) {
         String validateRoute = "/validate";
@@ -20,6 +20,8 @@ import org.springframework.web.bind.annotation.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 @RestController
@@ -56,6 +58,10 @@ public class ValidatorService {
     @Value("${spring.application.name}")
     private String serviceName;
 
+    // courses with more repositories are split into blocks which are compared on all pmd instances
+    @Value("${app.duplication.blocksize:50}")
+    private int duplicationBlockSize;
+
     /**
      * Default route to check if service allive
      *
@@ -88,7 +94,7 @@ public class ValidatorService {
             // check if service runs on aws
             if (environment.getActiveProfiles()[0].equals("aws")) {
                 // run custom scheduler
-                result = customScheduler.runValidationSchedulerOnAws(groups);
+                result = customScheduler.runValidationSchedulerOnAws(courseId, groups);
             }
 
             // return json result
@@ -189,23 +195,33 @@ public class ValidatorService {
             // get course with all groups from database
             String course = databaseService.getCourse(courseId);
 
-            // get pmd instance from eureka
-            ServiceInstance pmdInstance = loadBalancer.choose(PMD);
-            // get json object with array of repositores to call code dublication service
-            JSONObject repositories = new JSONObject().put("repositories", util.getRepositoriesFromJsonObject(course));
-
-            // Call validation asynchronous
-            Future<String> cpdRepo =
-                    validateRepositoryService.validateCodeDublication(repositories.toString(), pmdInstance.getUri());
-
-            // Wait until they are done
-            while (!cpdRepo.isDone()) {
-                //10-millisecond pause between each check
-                Thread.sleep(500);
+            JSONArray courseRepositories = util.getRepositoriesFromJsonObject(course);
+            String cpdResult;
+
+            if (courseRepositories.length() > duplicationBlockSize) {
+                cpdResult = validateDuplicationInBlocks(courseId, courseRepositories);
+            } else {
+                // get pmd instance from eureka
+                ServiceInstance pmdInstance = loadBalancer.choose(PMD);
+                // get json object with array of repositores to call code dublication service, with the course id
+                // only the changed repositories are compared again
+                JSONObject repositories = new JSONObject().put("repositories", courseRepositories)
+                        .put("course", courseId);
+
+                // Call validation asynchronous
+                Future<String> cpdRepo = validateRepositoryService.validateCodeDublication(repositories.toString(),
+                        pmdInstance.getUri());
+
+                // Wait until they are done
+                while (!cpdRepo.isDone()) {
+                    //10-millisecond pause between each check
+                    Thread.sleep(500);
+                }
+                cpdResult = cpdRepo.get();
             }
 
             // build result json
-            JSONObject duplication = new JSONObject(cpdRepo.get());
+            JSONObject duplication = new JSONObject(cpdResult);
             duplication.put("courseId", courseId);
 
             databaseService.saveCpdResult(duplication.toString());
@@ -218,6 +234,65 @@ public class ValidatorService {
     }
 
 
+    /**
+     * Executes the duplication validation of a large course on all pmd instances. The repositories are split into
+     * blocks, every block is compared with itself and with every following block. The load balancer sends the
+     * block pairs to all registered pmd instances. With the id of the course every pmd instance keeps the tokenized
+     * repositories of its block pairs, so a repository is downloaded and tokenized once per instance instead of once
+     * per block pair.
+     *
+     * @param courseId     id of the course
+     * @param repositories all repositories of the course
+     * @return merged result of all block pairs, a block pair which failed on two instances is recorded as failed
+     * fetch of its repositories
+     * @throws Exception If the results could not be merged
+     */
+    private String validateDuplicationInBlocks(String courseId, JSONArray repositories) throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<JSONArray> blocks = new ArrayList<>();
+
+        for (int i = 0; i < repositories.length(); i++) {
+            if (i % duplicationBlockSize == 0) {
+                blocks.add(new JSONArray());
+            }
+            blocks.get(blocks.size() - 1).put(repositories.get(i));
+        }
+
+        // Call validation of all block pairs asynchronous
+        List<String> pairs = new ArrayList<>();
+        List<Future<String>> cpdPairs = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            for (int j = i; j < blocks.size(); j++) {
+                String pair = new JSONObject().put("repositories", blocks.get(i))
+                        .put("comparedRepositories", blocks.get(j)).put("course", courseId).toString();
+                pairs.add(pair);
+                cpdPairs.add(validateRepositoryService.validateCodeDublicationPair(pair,
+                        loadBalancer.choose(PMD).getUri()));
+            }
+        }
+        LOG.info("Duplication validation of " + repositories.length() + " repositories in " + pairs.size()
+                + " block pairs");
+
+        // Wait until they are done, a failed block pair is sent to another instance once
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < cpdPairs.size(); i++) {
+            try {
+                results.add(cpdPairs.get(i).get());
+            } catch (ExecutionException e) {
+                LOG.error("Block pair failed, retry: " + e.getMessage());
+                try {
+                    results.add(validateRepositoryService.validateCodeDublicationPair(pairs.get(i),
+                            loadBalancer.choose(PMD).getUri()).get());
+                } catch (ExecutionException retryException) {
+                    LOG.error("Block pair failed again: " + retryException.getMessage());
+                    results.add(String.valueOf(retryException.getCause().getMessage()));
+                }
+            }
+        }
+
+        return util.mergeDuplications(pairs, results, startTime).toString();
+    }
+
     /**
      * Route to execute pmd and checkstyle validation without save in database. Most purpose are testing.
      *
@@ -307,5 +382,20 @@ public class ValidatorService {
         }
     }
 
+    /**
+     * return a code fragment of the cpd results, the duplications only contain its hash
+     *
+     * @param hash hash of the code fragment
+     * @return code fragment with the hash
+     */
+    @RequestMapping(value = "/cpd/fragments/{hash}", method = RequestMethod.GET, produces = APPLICATION_JSON)
+    public ResponseEntity<String> getCpdFragment(@PathVariable String hash) {
+        try {
+            return util.createResponse(databaseService.getCpdFragment(hash), HttpStatus.OK);
+        } catch (InstantiationException e) {
+            return util.createErrorResponse(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.util.OwnJson;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Reading the attributes of the checkstyle reports into the class list and writing the json result of a whole
+    repository.
+ */
+@State(Scope.Benchmark)
+public class OwnJsonBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int nFiles;
+
+    @Param({"0", "1000", "100000"})
+    private int nViolations;
+
+    private final OwnJson oOwnJson = new OwnJson();
+
+    private SyntheticRepository oRepository;
+
+    private List<NodeList> lErrorNodes;
+
+    private List<Class> lClassList;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        oRepository = new SyntheticRepository(nFiles, nViolations);
+        lClassList = oRepository.createClassList();
+
+        //the reports are parsed once, only the reading of the attributes is measured
+        lErrorNodes = new ArrayList<>();
+        for (String sReport : oRepository.getReportList()) {
+            lErrorNodes.add(DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(sReport))
+                    .getElementsByTagName("error"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        oRepository.delete();
+    }
+
+    @Benchmark
+    public List<Class> readAndSaveAttributes() {
+        List<Class> lNewClassList = new ArrayList<>(lClassList.size());
+        for (Class oClass : lClassList) {
+            lNewClassList.add(new Class(oClass.getFullPath(), oClass.getsExcerciseName()));
+        }
+
+        for (int nClassPos = 0; nClassPos < lErrorNodes.size(); nClassPos++) {
+            NodeList nList = lErrorNodes.get(nClassPos);
+            for (int nNodePos = 0; nNodePos < nList.getLength(); nNodePos++) {
+                oOwnJson.readAndSaveAttributes(nClassPos, nList, nNodePos, lNewClassList);
+            }
+        }
+
+        return lNewClassList;
+    }
+
+    @Benchmark
+    public void writeJson() throws IOException {
+        oOwnJson.writeJson(new NullOutputStream(), "https://github.com/student/repository", 0,
+                "1466081768", lClassList, null, null);
+    }
+}
@@ -0,0 +1,164 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.Error;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Generates the local copy of a student repository like the ones of the courses: src/AufgabeN/*.java with
+    a few exercises and a different number of java files in each of them. Every java file gets the xml report
+    checkstyle would write for it, the violations are spread over all files, some files have none.
+ */
+class SyntheticRepository {
+    private static final String[] SEVERITIES = {"error", "warning", "warning", "info"};
+
+    private static final String[] SOURCES = {
+        "com.puppycrawl.tools.checkstyle.checks.naming.PackageNameCheck",
+        "com.puppycrawl.tools.checkstyle.checks.whitespace.WhitespaceAroundCheck",
+        "com.puppycrawl.tools.checkstyle.checks.javadoc.JavadocMethodCheck",
+        "com.puppycrawl.tools.checkstyle.checks.sizes.LineLengthCheck"
+    };
+
+    /* fixed seed --> every run of a benchmark analyzes the same repository */
+    private final Random oRandom = new Random(42);
+
+    private final File oRoot;
+
+    private final List<List<String>> lRepoList = new ArrayList<>();
+
+    private final List<String> lReportList = new ArrayList<>();
+
+    private final int[] nViolations;
+
+    /**
+     * writes the java files and their reports into a new temporary directory
+     * @param nFiles - number of java files
+     * @param nTotalViolations - number of violations of all java files
+     * @throws IOException - the repository could not be written
+     */
+    SyntheticRepository(int nFiles, int nTotalViolations) throws IOException {
+        oRoot = Files.createTempDirectory("repositories").toFile();
+        nViolations = distribute(nFiles, nTotalViolations);
+
+        int nFilePos = 0;
+        for (int nExercise = 1; nFilePos < nFiles; nExercise++) {
+            //exercises of students have between 1 and 20 java files
+            int nExerciseFiles = Math.min(nFiles - nFilePos, 1 + oRandom.nextInt(20));
+            File oExerciseDir = new File(oRoot, "src" + File.separator + "Aufgabe" + nExercise);
+            FileUtils.forceMkdir(oExerciseDir);
+
+            List<String> lExerciseFiles = new ArrayList<>();
+            for (int nFile = 0; nFile < nExerciseFiles; nFile++, nFilePos++) {
+                String sClassName = "Aufgabe" + nExercise + "Klasse" + nFile;
+                File oJavaFile = new File(oExerciseDir, sClassName + ".java");
+                File oReportFile = new File(oExerciseDir, sClassName + ".xml");
+
+                Files.write(oJavaFile.toPath(), createJavaSource("Aufgabe" + nExercise, sClassName)
+                        .getBytes(StandardCharsets.UTF_8));
+                Files.write(oReportFile.toPath(), createReport(oJavaFile.getPath(), nViolations[nFilePos])
+                        .getBytes(StandardCharsets.UTF_8));
+                lExerciseFiles.add(oJavaFile.getPath());
+                lReportList.add(oReportFile.getPath());
+            }
+            lRepoList.add(lExerciseFiles);
+        }
+    }
+
+    /**
+     * creates the analyzed java classes of the repository with all violations, e.g. as input of the json creation
+     * @return - list with all java classes and their problems
+     */
+    List<Class> createClassList() {
+        List<Class> lClassList = new ArrayList<>();
+        int nFilePos = 0;
+
+        for (List<String> lExerciseFiles : lRepoList) {
+            for (String sPath : lExerciseFiles) {
+                Class oClass = new Class(sPath, new File(sPath).getParentFile().getName());
+                for (int nViolation = 0; nViolation < nViolations[nFilePos]; nViolation++) {
+                    String sSeverity = SEVERITIES[nViolation % SEVERITIES.length];
+                    oClass.getErrorList().add(new Error(nViolation + 1, 9, sSeverity, "Synthetic violation "
+                            + nViolation, SOURCES[nViolation % SOURCES.length]));
+                    oClass.incErrorType(sSeverity);
+                }
+                lClassList.add(oClass);
+                nFilePos++;
+            }
+        }
+
+        return lClassList;
+    }
+
+    /**
+     * the java files grouped by exercise, like the result of generateCheckStyleData
+     * @return - list of exercises with the paths of their java files
+     */
+    List<List<String>> getRepoList() {
+        return lRepoList;
+    }
+
+    /**
+     * the xml reports in the order of the java files
+     * @return - paths of the reports
+     */
+    List<String> getReportList() {
+        return lReportList;
+    }
+
+    String getPath() {
+        return oRoot.getPath();
+    }
+
+    void delete() throws IOException {
+        FileUtils.deleteDirectory(oRoot);
+    }
+
+    /**
+     * spreads the violations randomly over the files, about a third of the files has no violation
+     */
+    private int[] distribute(int nFiles, int nTotalViolations) {
+        int[] nFileViolations = new int[nFiles];
+        int nFilesWithViolations = Math.max(1, nFiles * 2 / 3);
+
+        for (int nViolation = 0; nViolation < nTotalViolations; nViolation++) {
+            nFileViolations[oRandom.nextInt(nFilesWithViolations)]++;
+        }
+
+        return nFileViolations;
+    }
+
+    private String createJavaSource(String sPackage, String sClassName) {
+        StringBuilder oSource = new StringBuilder();
+        oSource.append("package ").append(sPackage).append(";\n\npublic class ").append(sClassName).append(" {\n");
+        for (int nMethod = 0; nMethod < 5 + oRandom.nextInt(20); nMethod++) {
+            oSource.append("    public int method").append(nMethod).append("(int a) {\n")
+                    .append("        int b = a * ").append(nMethod).append(";\n")
+                    .append("        return b+1;\n    }\n\n");
+        }
+
+        return oSource.append("}\n").toString();
+    }
+
+    private String createReport(String sJavaPath, int nFileViolations) {
+        StringBuilder oReport = new StringBuilder();
+        oReport.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<checkstyle version=\"6.17\">\n")
+                .append("<file name=\"").append(sJavaPath).append("\">\n");
+        for (int nViolation = 0; nViolation < nFileViolations; nViolation++) {
+            oReport.append("<error line=\"").append(nViolation + 1).append("\" column=\"9\" severity=\"")
+                    .append(SEVERITIES[nViolation % SEVERITIES.length])
+                    .append("\" message=\"Synthetic violation &apos;").append(nViolation).append("&apos;.\" source=\"")
+                    .append(SOURCES[nViolation % SOURCES.length]).append("\"/>\n");
+        }
+
+        return oReport.append("</file>\n</checkstyle>\n").toString();
+    }
+}
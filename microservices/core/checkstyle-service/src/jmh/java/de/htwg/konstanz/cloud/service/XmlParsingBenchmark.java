@@ -0,0 +1,86 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.util.OwnJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Reading the xml reports of checkstyle: the streaming parser of the service, which creates the errors while it
+    reads the report, and the former DOM parsing as baseline, which builds the whole document tree first.
+ */
+@State(Scope.Benchmark)
+public class XmlParsingBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int nFiles;
+
+    @Param({"0", "1000", "100000"})
+    private int nViolations;
+
+    private final OwnJson oOwnJson = new OwnJson();
+
+    private SyntheticRepository oRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        oRepository = new SyntheticRepository(nFiles, nViolations);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        oRepository.delete();
+    }
+
+    @Benchmark
+    public List<Class> storeCheckstyleInformation() throws Exception {
+        Checkstyle oCheckstyle = new Checkstyle(null, null, null, null, null, null, null, null, new PhaseTimings());
+        List<Class> lClassList = createClassList();
+
+        for (int nClassPos = 0; nClassPos < lClassList.size(); nClassPos++) {
+            oCheckstyle.storeCheckstyleInformation(oRepository.getReportList().get(nClassPos), nClassPos,
+                    lClassList);
+        }
+
+        return lClassList;
+    }
+
+    @Benchmark
+    public List<Class> domParser() throws Exception {
+        List<Class> lClassList = createClassList();
+
+        for (int nClassPos = 0; nClassPos < lClassList.size(); nClassPos++) {
+            Document oDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new FileInputStream(oRepository.getReportList().get(nClassPos)));
+            NodeList nList = oDocument.getElementsByTagName("error");
+            for (int nNodePos = 0; nNodePos < nList.getLength(); nNodePos++) {
+                oOwnJson.readAndSaveAttributes(nClassPos, nList, nNodePos, lClassList);
+            }
+        }
+
+        return lClassList;
+    }
+
+    private List<Class> createClassList() {
+        List<Class> lClassList = new ArrayList<>();
+        for (List<String> lExerciseFiles : oRepository.getRepoList()) {
+            for (String sPath : lExerciseFiles) {
+                lClassList.add(new Class(sPath, "Aufgabe"));
+            }
+        }
+
+        return lClassList;
+    }
+}
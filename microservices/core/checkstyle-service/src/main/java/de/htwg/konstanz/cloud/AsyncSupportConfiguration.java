@@ -0,0 +1,46 @@
+package de.htwg.konstanz.cloud;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+/*
+    Threads and timeout of the responses which are written asynchronously, e.g. the progressive ndjson result.
+    The download and the analysis of such a response run on these threads, a thread waits for a free slot of the
+    admission control as long as a synchronous request. The admission control limits the waiting time, therefore
+    the servlet container does not cut off a running response by default.
+ */
+@Configuration
+public class AsyncSupportConfiguration extends WebMvcConfigurerAdapter {
+    /* number of responses which are written at the same time, all admitted and waiting requests by default */
+    @Value("${app.config.async.threads:24}")
+    private int nThreads;
+
+    /* maximum number of responses which wait for a thread, further responses fail */
+    @Value("${app.config.async.queue:100}")
+    private int nQueueSize;
+
+    /* milliseconds until the servlet container cancels an asynchronous response, -1 = no limit */
+    @Value("${app.config.async.timeout:-1}")
+    private long lTimeout;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer oConfigurer) {
+        oConfigurer.setTaskExecutor(asyncTaskExecutor());
+        oConfigurer.setDefaultTimeout(lTimeout);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor asyncTaskExecutor() {
+        ThreadPoolTaskExecutor oExecutor = new ThreadPoolTaskExecutor();
+        oExecutor.setCorePoolSize(nThreads);
+        oExecutor.setMaxPoolSize(nThreads);
+        oExecutor.setQueueCapacity(nQueueSize);
+        oExecutor.setThreadNamePrefix("async-response-");
+
+        return oExecutor;
+    }
+}
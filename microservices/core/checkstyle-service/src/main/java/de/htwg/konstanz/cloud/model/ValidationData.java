@@ -12,11 +12,23 @@ public class ValidationData {
     @NotNull
     private String repository;
 
+    /* optional url which receives the status of an asynchronous job when it is finished */
+    private String callback;
+
+    /* optional id of the course, the reuse of the results of identical java files is reported per course */
+    private String course;
+
     @Override
     public String toString() {
         JSONObject json = new JSONObject();
         try {
             json.put("repository", repository);
+            if (callback != null) {
+                json.put("callback", callback);
+            }
+            if (course != null) {
+                json.put("course", course);
+            }
             return json.toString();
         } catch (JSONException e) {
             return repository;
@@ -0,0 +1,169 @@
+package de.htwg.konstanz.cloud.service;
+
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Limits the number of repositories which are downloaded and analyzed at the same time. Every analysis needs a
+    slot, a request without a free slot waits in a bounded queue. If the queue is full or the request waited too
+    long, the request is rejected, so an overloaded instance answers quickly and the client can try another one.
+    Background jobs wait for a slot without a limit, their queue is already bounded by the job pool.
+ */
+@Component
+public class AdmissionControl {
+    /* weight of the newest analysis in the average duration of an analysis */
+    private static final double DURATION_WEIGHT = 0.2;
+
+    /* number of analyses at the same time */
+    @Value("${app.config.admission.concurrency:4}")
+    private int nSlots;
+
+    /* maximum number of requests which wait for a slot, further requests are rejected with 429 */
+    @Value("${app.config.admission.queue:20}")
+    private int nQueueSize;
+
+    /* seconds a request waits for a slot before it is rejected with 503 */
+    @Value("${app.config.admission.timeout:300}")
+    private int nTimeoutSeconds;
+
+    private Semaphore oSlots;
+
+    private final AtomicInteger nWaiting = new AtomicInteger();
+
+    private final AtomicLong lAdmitted = new AtomicLong();
+
+    private final AtomicLong lRejected = new AtomicLong();
+
+    private final AtomicLong lTimedOut = new AtomicLong();
+
+    private final AtomicLong lTotalWaitTime = new AtomicLong();
+
+    private final AtomicLong lMaxWaitTime = new AtomicLong();
+
+    /* exponentially weighted average of the time an analysis holds its slot */
+    private volatile double dAverageDuration;
+
+    /**
+     * creates the slots, the waiting requests get the slots in the order of their arrival
+     */
+    @PostConstruct
+    private void init() {//NOPMD
+        oSlots = new Semaphore(nSlots, true);
+    }
+
+    /**
+     * waits for a free slot
+     * @param bBackground - true --> background job, it waits without a limit and is never rejected
+     * @return - slot which has to be closed after the analysis
+     * @throws ServiceBusyException - the queue is full or the request waited too long
+     * @throws InterruptedIOException - the thread was interrupted while it waited
+     */
+    Slot acquire(boolean bBackground) throws ServiceBusyException, InterruptedIOException {
+        long lStartTime = System.currentTimeMillis();
+
+        if (!oSlots.tryAcquire()) {
+            if (nWaiting.incrementAndGet() > nQueueSize && !bBackground) {
+                nWaiting.decrementAndGet();
+                lRejected.incrementAndGet();
+                throw new ServiceBusyException("Too many requests, the wait queue is full", true, getRetryAfter());
+            }
+
+            try {
+                if (bBackground) {
+                    oSlots.acquire();
+                } else if (!oSlots.tryAcquire(nTimeoutSeconds, TimeUnit.SECONDS)) {
+                    lTimedOut.incrementAndGet();
+                    throw new ServiceBusyException("No free slot within " + nTimeoutSeconds + " seconds", false,
+                            getRetryAfter());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free slot");
+            } finally {
+                nWaiting.decrementAndGet();
+            }
+        }
+
+        long lWaitTime = System.currentTimeMillis() - lStartTime;
+        lAdmitted.incrementAndGet();
+        lTotalWaitTime.addAndGet(lWaitTime);
+        lMaxWaitTime.accumulateAndGet(lWaitTime, Math::max);
+
+        return new Slot();
+    }
+
+    /**
+     * rejects a request immediately if the wait queue is full, e.g. before a progressive response is started
+     * @throws ServiceBusyException - the queue is full
+     */
+    void checkQueue() throws ServiceBusyException {
+        if (oSlots.availablePermits() == 0 && nWaiting.get() >= nQueueSize) {
+            lRejected.incrementAndGet();
+            throw new ServiceBusyException("Too many requests, the wait queue is full", true, getRetryAfter());
+        }
+    }
+
+    /**
+     * estimates the seconds until a new request would get a slot
+     * @return - seconds for the Retry-After header, at least one
+     */
+    long getRetryAfter() {
+        double dWaitTime = dAverageDuration * (nWaiting.get() + 1) / Math.max(nSlots, 1);
+
+        return Math.max(1, (long) Math.ceil(dWaitTime / 1000));
+    }
+
+    /**
+     * returns the gauges of the slots, e.g. for the validator to route around a saturated instance
+     * @return - json object with the active slots, the waiting requests and the wait times
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+        long lAdmittedCount = lAdmitted.get();
+
+        oJson.put("slots", nSlots);
+        oJson.put("activeSlots", nSlots - oSlots.availablePermits());
+        oJson.put("queueDepth", nWaiting.get());
+        oJson.put("maxQueueDepth", nQueueSize);
+        oJson.put("admitted", lAdmittedCount);
+        oJson.put("rejected", lRejected.get());
+        oJson.put("timedOut", lTimedOut.get());
+        oJson.put("averageWaitTime", lAdmittedCount == 0 ? 0 : lTotalWaitTime.get() / lAdmittedCount);
+        oJson.put("maxWaitTime", lMaxWaitTime.get());
+        oJson.put("averageAnalysisTime", (long) dAverageDuration);
+        oJson.put("retryAfter", getRetryAfter());
+
+        return oJson;
+    }
+
+    /**
+     * slot of a running analysis
+     */
+    class Slot implements AutoCloseable {
+        private final long lStartTime = System.currentTimeMillis();
+
+        private boolean bReleased;
+
+        /**
+         * releases the slot and updates the average duration of an analysis
+         */
+        @Override
+        public void close() {
+            if (!bReleased) {
+                bReleased = true;
+                long lDuration = System.currentTimeMillis() - lStartTime;
+                dAverageDuration = dAverageDuration == 0 ? lDuration
+                        : DURATION_WEIGHT * lDuration + (1 - DURATION_WEIGHT) * dAverageDuration;
+                oSlots.release();
+            }
+        }
+    }
+}
@@ -5,31 +5,31 @@ import de.htwg.konstanz.cloud.model.Error;
 import de.htwg.konstanz.cloud.util.*;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.swing.text.BadLocationException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
 import java.net.URL;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 class Checkstyle {
     private static final Logger LOG = LoggerFactory.getLogger(Checkstyle.class);
 
+    static final String FATAL_ERROR_MESSAGE = "FATAL ERROR: NO NORMAL TERMINATION OF THE "
+            + "CHECKSTYLE PROCESS! PLEASE CHECK THE JAVA FILE!!!";
+
     private final OperatingSystemCheck oOperatingSystemCheck = new OperatingSystemCheck();
 
-    private List<Class> lFormattedClassList;
+    private List<Class> lFormattedClassList = new ArrayList<>();
 
     private final Util oUtil = new Util();
 
@@ -37,54 +37,229 @@ class Checkstyle {
 
     private final OwnJson oOwnJson = new OwnJson();
 
+    private final XmlReportReader oXmlReportReader = new XmlReportReader();
+
     private final Git oGit = new Git();
 
-    private final Svn oSvn = new Svn();
+    private final Svn oSvn;
 
     private final String sSvnServerIp;
 
     private final String sRuleSetPath;
 
+    private final CheckstyleEngine oCheckstyleEngine;
+
+    private final CheckstyleResultCache oResultCache;
+
+    private final RepositoryResultCache oRepositoryCache;
+
+    private final GitMirrorStore oGitMirrorStore;
+
+    private String sCommitId;
+
+    /* receives every analyzed java class as soon as it is done, null --> the result is only sent at the end */
+    private ClassListener oClassListener;
+
+    private final InFlightAnalyses oInFlightAnalyses;
+
+    /* durations of the phases of this analysis */
+    private final PhaseTimings.Recorder oTimings;
+
+    /* true --> this request analyzed the repository itself and did not get the result of a concurrent request */
+    private boolean bAnalyzed;
+
+    /* id of the course of the repository, null --> the reuse of identical java files is not counted */
+    private String sCourse;
+
     /**
      * Constructor to initialize the Svn server ip and ruleset path of checkstyle.
      * They are stored in the config file
      * @param sSvnServerIp - SVN Server ip address
      * @param sRuleSetPath - local path to the ruleset of checkstyle
+     * @param oCheckstyleEngine - engine which runs checkstyle inside the service
+     * @param oResultCache - cache with the problems of already analyzed java files
+     * @param oRepositoryCache - cache with the results of already analyzed commits
+     * @param oGitMirrorStore - local mirrors of the git repositories
+     * @param oSvn - crawler of the svn repositories
+     * @param oInFlightAnalyses - running analyses, concurrent requests of the same repository are coalesced
+     * @param oPhaseTimings - latency histograms of the phases of all analyses
      */
-    public Checkstyle(String sSvnServerIp, String sRuleSetPath) {
+    public Checkstyle(String sSvnServerIp, String sRuleSetPath, CheckstyleEngine oCheckstyleEngine,
+                      CheckstyleResultCache oResultCache, RepositoryResultCache oRepositoryCache,
+                      GitMirrorStore oGitMirrorStore, Svn oSvn, InFlightAnalyses oInFlightAnalyses,
+                      PhaseTimings oPhaseTimings) {
         this.sSvnServerIp = sSvnServerIp;
         this.sRuleSetPath = sRuleSetPath;
+        this.oCheckstyleEngine = oCheckstyleEngine;
+        this.oResultCache = oResultCache;
+        this.oRepositoryCache = oRepositoryCache;
+        this.oGitMirrorStore = oGitMirrorStore;
+        this.oSvn = oSvn;
+        this.oInFlightAnalyses = oInFlightAnalyses;
+        this.oTimings = oPhaseTimings.createRecorder();
+    }
+
+    /**
+     * assigns the repository to a course, so the reuse of the results of identical java files is counted for it
+     * @param sCourse - id of the course or null
+     */
+    void setCourse(String sCourse) {
+        this.sCourse = sCourse;
+    }
+
+    /**
+     * entry point for an incoming post request. A request of a repository which is analyzed at the moment waits
+     * for the running analysis and gets its result
+     * @param gitRepository - given git repository from post request
+     * @return - problems that checkstyle has found, they are written as json file into the response
+     * @throws IOException - throw for the handling in CheckstyleService
+     * @throws ParserConfigurationException - throw for the handling in CheckstyleService
+     * @throws SAXException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    AnalysisResult startIt(String gitRepository) throws IOException, ParserConfigurationException,
+            SAXException, GitAPIException {
+        return startIt(gitRepository, false);
+    }
+
+    /**
+     * entry point for a request or a background job. A repository which is not cached is only analyzed when the
+     * admission control has a free slot
+     * @param gitRepository - given git repository from post request
+     * @param bBackground - true --> background job, it waits for a slot and is never rejected
+     * @return - problems that checkstyle has found, they are written as json file into the response
+     * @throws IOException - throw for the handling in CheckstyleService
+     * @throws ParserConfigurationException - throw for the handling in CheckstyleService
+     * @throws SAXException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    AnalysisResult startIt(String gitRepository, boolean bBackground) throws IOException,
+            ParserConfigurationException, SAXException, GitAPIException {
+        //an already analyzed commit or revision of a repository does not need to be downloaded again
+        AnalysisResult oResult = getCachedResult(gitRepository);
+        if (oResult != null) {
+            LOG.info("Repository result cached: " + gitRepository);
+            return oResult;
+        }
+
+        oResult = oInFlightAnalyses.run(gitRepository, bBackground, () -> analyze(gitRepository));
+
+        //a coalesced request got the result of the running analysis, its java files are reused for its course
+        if (!bAnalyzed && oResult.getFileCount() > 0) {
+            oResultCache.addCourseAnalysis(sCourse, oResult.getFileCount(), 0);
+        }
+
+        return oResult;
     }
 
     /**
-     * entry point for an incoming post request
+     * downloads and analyzes a repository
      * @param gitRepository - given git repository from post request
-     * @return - problems that checkstyle has found in a json file
+     * @return - problems that checkstyle has found
      * @throws IOException - throw for the handling in CheckstyleService
      * @throws ParserConfigurationException - throw for the handling in CheckstyleService
      * @throws SAXException - throw for the handling in CheckstyleService
      * @throws GitAPIException - throw for the handling in CheckstyleService
-     * @throws BadLocationException - throw for the handling in CheckstyleService
      */
-    String startIt(String gitRepository) throws IOException, ParserConfigurationException,
-            SAXException, GitAPIException, BadLocationException {
+    private AnalysisResult analyze(String gitRepository) throws IOException, ParserConfigurationException,
+            SAXException, GitAPIException {
+        bAnalyzed = true;
         lFormattedClassList = new ArrayList<>();
         long lStartTime = System.currentTimeMillis();
-        JSONObject oJsonResult;
-        String sResult;
 
         //checks if the post contains a repository of git or svn
-        oJsonResult = determineVersionControlSystem(gitRepository, lStartTime);
+        AnalysisResult oResult = determineVersionControlSystem(gitRepository, lStartTime);
         if (oRepoDir == null) {
             LOG.info("Error: Local Directory is null!");
         } else {
+            long lDeleteStart = oTimings.start();
             FileUtils.deleteDirectory(oRepoDir);
+            oTimings.stop("deleteDirectory", lDeleteStart);
         }
 
         //tests the result to avoid a nullpointer exception
-        sResult = oUtil.checkJsonResult(oJsonResult);
+        if (oResult == null) {
+            LOG.info("Error: received invalid repository and JSON file");
+            return AnalysisResult.invalid();
+        }
 
-        return sResult;
+        //the result is stored with the commit or revision that was really downloaded, maybe it is newer than the
+        // resolved one
+        if (sCommitId != null) {
+            oResult.cacheAs(oRepositoryCache, oRepositoryCache.createKey(gitRepository, sCommitId));
+        }
+
+        return oResult;
+    }
+
+    /**
+     * entry point for a progressive post request. Every analyzed java file is written as a json record into the
+     * given stream as soon as it is done, the last record contains the totals of the whole repository
+     * @param gitRepository - given git repository from post request
+     * @param oOut - stream of the response
+     * @throws IOException - the response could not be written
+     */
+    void streamIt(String gitRepository, OutputStream oOut) throws IOException {
+        oClassListener = oClass -> oOwnJson.writeClassRecord(oOut, oClass);
+
+        try {
+            //a coalesced request did not send the records of the java files during the analysis
+            startIt(gitRepository).writeRecords(oOut, bAnalyzed);
+        } catch (Exception e) {
+            //the http status is already sent --> the failure is reported as the last record, if the client is
+            // still connected
+            LOG.error(e.getMessage());
+            oOwnJson.writeErrorRecord(oOut, e.getMessage());
+        }
+    }
+
+    /**
+     * resolves the HEAD commit of a git repository or the last changed revision of a svn repository without
+     * downloading it and searches the result of this commit
+     * @param sRepoUrl - within POST request given repository url
+     * @return - stored json result or null if the commit was not analyzed yet
+     */
+    private AnalysisResult getCachedResult(String sRepoUrl) {
+        AnalysisResult oResult = null;
+        String sRemoteHead = null;
+
+        if (sRepoUrl.contains(this.sSvnServerIp)) {
+            String sRevision = oSvn.getRemoteRevision(createSvnUrl(sRepoUrl));
+
+            if (sRevision != null) {
+                sRemoteHead = "r" + sRevision;
+            }
+        } else if (sRepoUrl.contains("github.com")) {
+            sRemoteHead = oGit.getRemoteHead(sRepoUrl);
+        }
+
+        if (sRemoteHead != null) {
+            oResult = oRepositoryCache.get(oRepositoryCache.createKey(sRepoUrl, sRemoteHead));
+        }
+
+        return oResult;
+    }
+
+    /**
+     * builds the HTTP-Link of a svn repository
+     * @param sRepoUrl - within POST request given repository url
+     * @return - HTTP-Link without a slash at the end
+     */
+    private String createSvnUrl(String sRepoUrl) {
+        StringBuilder oStringBuilder = new StringBuilder();
+
+        /* URL needs to start with HTTP:// */
+        if (!sRepoUrl.startsWith("http://")) {
+            oStringBuilder.append("http://");
+        }
+        /* remove the last / */
+        if (sRepoUrl.endsWith("/")) {
+            oStringBuilder.append(sRepoUrl.substring(0, sRepoUrl.length() - 1));
+        } else {
+            oStringBuilder.append(sRepoUrl);
+        }
+
+        return oStringBuilder.toString();
     }
 
     /**
@@ -94,54 +269,72 @@ class Checkstyle {
      * @param lStartTime - start time of the service execution
      * @return - The generated JSON file with all problems pmd has found
      * @throws IOException - throw for the handling in CheckstyleService
-     * @throws BadLocationException - throw for the handling in CheckstyleService
      * @throws GitAPIException - throw for the handling in CheckstyleService
      * @throws ParserConfigurationException - throw for the handling in CheckstyleService
      * @throws SAXException - throw for the handling in CheckstyleService
      */
-    private JSONObject determineVersionControlSystem(String sRepoUrl, long lStartTime) throws
-            IOException, BadLocationException, GitAPIException, ParserConfigurationException, SAXException {
-        JSONObject oJson = null;
+    private AnalysisResult determineVersionControlSystem(String sRepoUrl, long lStartTime) throws IOException,
+            GitAPIException, ParserConfigurationException, SAXException {
+        AnalysisResult oJson = null;
         String sLocalDir;
         String[] sLocalDirArray;
-        StringBuilder oStringBuilder = new StringBuilder();
 
         LOG.info("Repository URL: " + sRepoUrl);
-        //to run checkstyle, a .jar file is needed. If its not present locally, this method will download it automatically
-        checkLocalCheckstyle();
+        //to fork checkstyle, a .jar file is needed. If its not present locally, this method will download it automatically
+        if (!oCheckstyleEngine.isInProcess()) {
+            checkLocalCheckstyle();
+        }
 
         /* Svn Checkout */
         if (sRepoUrl.contains(this.sSvnServerIp)) {
-            /* URL needs to start with HTTP:// */
-            if (!sRepoUrl.startsWith("http://")) {
-                oStringBuilder.append("http://");
-            }
-            /* remove the last / */
-            if (sRepoUrl.endsWith("/")) {
-                oStringBuilder.append(sRepoUrl.substring(0, sRepoUrl.length() - 1));
-            } else {
-                oStringBuilder.append(sRepoUrl);
-            }
-
             LOG.info("Svn");
-            //download the given svn repository and returns the locally path of it
-            sLocalDir = oSvn.downloadSvnRepo(oStringBuilder.toString());
+            //updates the local copy of the given svn repository and returns the locally path of a snapshot
+            // [0] --> locally Path
+            // [1] --> last changed revision
+            long lDownloadStart = oTimings.start();
+            sLocalDirArray = oSvn.downloadSvnRepo(createSvnUrl(sRepoUrl));
+            oTimings.stop("downloadSvnRepo", lDownloadStart);
+            if (!sLocalDirArray[1].isEmpty()) {
+                sCommitId = "r" + sLocalDirArray[1];
+            }
             /* Last Update Time (last parameter) of SVN is empty because it does not provide this information */
             // generate some parsable checkstyle data and run checkstyle for the locally stored svn repository
-            oJson = checkStyle(generateCheckStyleData(sLocalDir), sRepoUrl, lStartTime, "");
-            oRepoDir = new File(sLocalDir);
+            oJson = checkStyle(generateCheckStyleData(sLocalDirArray[0]), sRepoUrl, lStartTime, "", null);
+            oRepoDir = new File(sLocalDirArray[0]);
         }
         /* Git Checkout */
         else if (sRepoUrl.contains("github.com")) {
             LOG.info("Git");
-            //download the given git repository and returns the locally path of it and the last updated time
-            // [0] --> locally Path
-            // [1] --> Last Update Time
-            sLocalDirArray = oGit.downloadGitRepo(sRepoUrl);
-            /* Last Update Time (last parameter) of the git repositry */
-            // generate some parsable checkstyle data and run checkstyle for the locally stored git repository
-            oJson = checkStyle(generateCheckStyleData(sLocalDirArray[0]), sRepoUrl, lStartTime, sLocalDirArray[1]);
-            oRepoDir = new File(sLocalDirArray[0]);
+            if (oGitMirrorStore.isTreeMode()) {
+                //updates the local mirror of the given git repository and reads the java files of the HEAD commit
+                // directly from it
+                long lDownloadStart = oTimings.start();
+                GitTree oTree = oGitMirrorStore.readHead(sRepoUrl);
+                oTimings.stop("downloadGitRepo", lDownloadStart);
+                Map<String, byte[]> oSourceMap = new HashMap<>();
+                sLocalDir = oGitMirrorStore.createLocalDirectoryName(sRepoUrl);
+                sCommitId = oTree.getCommitId();
+                /* Last Update Time (last parameter) of the git repositry */
+                // generate some parsable checkstyle data and run checkstyle for the java files of the git tree
+                oJson = checkStyle(generateCheckStyleData(oTree, sLocalDir, oSourceMap), sRepoUrl, lStartTime,
+                        oTree.getCommitTime(), oSourceMap);
+                oRepoDir = new File(sLocalDir);
+            } else {
+                //updates the local mirror of the given git repository and returns the locally path of its java
+                // files and the last updated time
+                // [0] --> locally Path
+                // [1] --> Last Update Time
+                // [2] --> Id of the HEAD commit
+                long lDownloadStart = oTimings.start();
+                sLocalDirArray = oGitMirrorStore.checkout(sRepoUrl);
+                oTimings.stop("downloadGitRepo", lDownloadStart);
+                sCommitId = sLocalDirArray[2];
+                /* Last Update Time (last parameter) of the git repositry */
+                // generate some parsable checkstyle data and run checkstyle for the locally stored git repository
+                oJson = checkStyle(generateCheckStyleData(sLocalDirArray[0]), sRepoUrl, lStartTime,
+                        sLocalDirArray[1], null);
+                oRepoDir = new File(sLocalDirArray[0]);
+            }
         } else {
             LOG.info("Repository URL has no valid Svn/Git attributes. (" + sRepoUrl + ")");
         }
@@ -154,7 +347,8 @@ class Checkstyle {
      * @param localDirectory - Locale directory of the outchecked SVN or GIT repository
      * @return - A list with all directories and files
      */
-    private List<List<String>> generateCheckStyleData(String localDirectory) {
+    List<List<String>> generateCheckStyleData(String localDirectory) {
+        long lGenerateStart = oTimings.start();
         ArrayList<List<String>> list = new ArrayList<>();
         File mainDir;
         LOG.info("Local Directory: " + localDirectory);
@@ -188,10 +382,75 @@ class Checkstyle {
         }
 
         checkUnregularRepository(localDirectory, list);
+        oTimings.stop("generateCheckStyleData", lGenerateStart);
+
+        return list;
+    }
+
+    /**
+     * generates data for the CheckstyleService from the java files of a git tree. The paths are built like the ones
+     * of a locally stored repository, so the exercise names are the same as for a checkout
+     * @param oTree - java files of the HEAD commit
+     * @param localDirectory - Locale directory, only the java files which have to be analyzed will be stored there
+     * @param oSourceMap - Map that will be filled with the path and the content of every java file
+     * @return - A list with all directories and files
+     */
+    private List<List<String>> generateCheckStyleData(GitTree oTree, String localDirectory,
+                                                      Map<String, byte[]> oSourceMap) {
+        long lGenerateStart = oTimings.start();
+        ArrayList<List<String>> list = new ArrayList<>();
+        Map<String, List<String>> oDirectoryMap = new LinkedHashMap<>();
+        LOG.info("Git tree of commit: " + oTree.getCommitId());
+
+        /* Structure according to the specifications */
+        String sMainDir = oTree.getRootDirectories().contains("src") ? "src/" : "";
+
+        //Class-Files in the Head-Dirs of the main directory
+        for (String sTreePath : oTree.getJavaFiles().keySet()) {
+            if (sTreePath.startsWith(sMainDir)) {
+                String[] sTreePathSplitArray = sTreePath.substring(sMainDir.length()).split("/");
+
+                if (sTreePathSplitArray.length == 2) {
+                    oDirectoryMap.computeIfAbsent(sTreePathSplitArray[0], sDir -> new ArrayList<>())
+                            .add(addSource(oTree, sTreePath, localDirectory, oSourceMap));
+                }
+            }
+        }
+        list.addAll(oDirectoryMap.values());
+
+        /* Other Structure Workaround */
+        if (list.isEmpty()) {
+            //Unregular Repo
+            LOG.info("unregular repository");
+            List<String> javaFiles = new ArrayList<>();
+            for (String sTreePath : oTree.getJavaFiles().keySet()) {
+                //ignore git folder like the crawling of a local directory
+                if (!sTreePath.substring(0, sTreePath.lastIndexOf('/') + 1).contains(".git")) {
+                    javaFiles.add(addSource(oTree, sTreePath, localDirectory, oSourceMap));
+                }
+            }
+            list.add(javaFiles);
+        }
+        oTimings.stop("generateCheckStyleData", lGenerateStart);
 
         return list;
     }
 
+    /**
+     * builds the local path of a java file of the git tree and stores its content
+     * @param oTree - java files of the HEAD commit
+     * @param sTreePath - path of the java file within the repository
+     * @param localDirectory - Locale directory of the analysis
+     * @param oSourceMap - Map with the path and the content of every java file
+     * @return - local path of the java file
+     */
+    private String addSource(GitTree oTree, String sTreePath, String localDirectory, Map<String, byte[]> oSourceMap) {
+        String sFullPath = new File(localDirectory, sTreePath).getPath();
+        oSourceMap.put(sFullPath, oTree.getJavaFiles().get(sTreePath));
+
+        return sFullPath;
+    }
+
     /**
      * If the directory structure of the given url is not like defined in the manual, this method
      * just gets all other java files without a correct assignment allocation
@@ -233,65 +492,170 @@ class Checkstyle {
     }
 
     /**
-     * executes checkstyle within the command line interface
+     * executes checkstyle for all java files of the repository, either inside the service or within
+     * the command line interface
      * @param lRepoList - List of all repositories that were stored locally
      * @param versionControlRepository - String that represents the analyzed repository (SVN or GIT)
      * @param lStartTime - Start time of the execution
      * @param sLastUpdateTime - Last update of the repository
-     * @return - returns a JSON Object with all provided information of checkstyle
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @return - result with all provided information of checkstyle
      * @throws ParserConfigurationException - Error while parsing xml document
      * @throws SAXException - Error within SAX XML Parser
      * @throws IOException - general io exception
      */
-    private JSONObject checkStyle(List<List<String>> lRepoList, String versionControlRepository, long lStartTime,
-                                  String sLastUpdateTime) throws ParserConfigurationException, SAXException, IOException {
-        final String sCheckStylePath = "checkstyle-6.17-all.jar";
-        JSONObject oJson;
+    private AnalysisResult checkStyle(List<List<String>> lRepoList, String versionControlRepository,
+                                      long lStartTime, String sLastUpdateTime, Map<String, byte[]> oSourceMap)
+            throws ParserConfigurationException, SAXException, IOException {
 
 		/* reduce the content of the repository list for the json creation */
         formatList(lRepoList);
 
-        for (int nClassPos = 0; nClassPos < lFormattedClassList.size(); nClassPos++) {
-            String sFullPath = lFormattedClassList.get(nClassPos).getFullPath();
-
-            if (sFullPath.endsWith(".java")) {
-                sFullPath = sFullPath.substring(0, sFullPath.length() - 5);
+        //java files with a cached result get their problems immediately, of the others only one java file of each
+        // content has to be analyzed
+        long lLookupStart = oTimings.start();
+        CheckstyleResultCache.Lookup oLookup = oResultCache.lookup(lFormattedClassList, oSourceMap);
+        oTimings.stop("resultCacheLookup", lLookupStart);
+        RuleProfiler.Run oRuleProfile;
+        try {
+            Map<Class, String> oMissMap = oLookup.getMissMap();
+            LOG.info("Checkstyle cache: " + oLookup.getCachedList().size() + " of " + lFormattedClassList.size()
+                    + " java files cached, " + oMissMap.size() + " to analyze");
+            for (Class oClass : oLookup.getCachedList()) {
+                notifyClassDone(oClass);
             }
 
-            //builds the execution command of checkstyle for the command line interace
-            String sCheckStyleCommand = "java -jar " + sCheckStylePath + " -c " + sRuleSetPath + " " + sFullPath
-                    + ".java -f xml -o " + sFullPath + ".xml";
-            LOG.info("Checkstyle execution path: " + sCheckStyleCommand);
+            oRuleProfile = analyzeClasses(oMissMap, oSourceMap);
 
-            //execute it and validate the return code to get files which were not parsable by checkstyle
-            int nReturnCode = oUtil.execCommand(sCheckStyleCommand);
-            LOG.info("Process Return Code: " + nReturnCode);
-
-            //compilable for checkstyle --> valid file
-            if(nReturnCode == 0) {
-                /* store Checkstyle Informationen in the global List */
-                storeCheckstyleInformation(sFullPath + ".xml", nClassPos);
+            //identical java files of this or of a concurrent analysis get the problems of the analyzed one
+            Map<Class, String> oRetryMap = oLookup.fanOut(this::notifyClassDone);
+            if (!oRetryMap.isEmpty()) {
+                LOG.info("Checkstyle: " + oRetryMap.size() + " identical java files were not analyzed, retry");
+                analyzeClasses(oRetryMap, oSourceMap);
             }
-            //uncompilable for checkstyle -->  invalid file
-            else if(nReturnCode == -2){
-                Error oError = new Error(-1, -1, "error", "FATAL ERROR: NO NORMAL TERMINATION OF THE "
-                        + "CHECKSTYLE PROCESS! PLEASE CHECK THE JAVA FILE!!!", "");
-                lFormattedClassList.get(nClassPos).getErrorList().add(oError);
-                lFormattedClassList.get(nClassPos).incErrorType("error");
+            oLookup.recordCourse(sCourse);
+        } finally {
+            oLookup.release();
+        }
+
+        /* the JSON File is generated when the result is written */
+        return new AnalysisResult(versionControlRepository, lStartTime, sLastUpdateTime, lFormattedClassList,
+                oTimings, oRuleProfile);
+    }
+
+    /**
+     * analyzes the given java classes and stores their problems in the result cache
+     * @param oMissMap - java classes that should be analyzed with their cache keys
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @return - costs of the checks, null if the profiling is disabled or checkstyle is forked
+     * @throws IOException - general io exception
+     */
+    private RuleProfiler.Run analyzeClasses(Map<Class, String> oMissMap, Map<String, byte[]> oSourceMap)
+            throws IOException {
+        List<Class> lMissList = new ArrayList<>(oMissMap.keySet());
+
+        //checkstyle reads the java files from the disk, so the ones without a cached result are stored locally
+        if (oSourceMap != null) {
+            for (Class oClass : lMissList) {
+                File oFile = new File(oClass.getFullPath());
+                FileUtils.forceMkdir(oFile.getParentFile());
+                Files.write(oFile.toPath(), oSourceMap.get(oClass.getFullPath()));
             }
         }
 
-        /* generate a JSON File */
-        oJson = oOwnJson.buildJson(versionControlRepository, lStartTime, sLastUpdateTime, lFormattedClassList);
+        long lCheckstyleStart = oTimings.start();
+        RuleProfiler.Run oRuleProfile = null;
+        if (oCheckstyleEngine.isInProcess()) {
+            //the engine stores all problems directly in the class list --> no xml reports
+            oRuleProfile = oCheckstyleEngine.check(lMissList, nClassPos -> {
+                oResultCache.put(oMissMap.get(lMissList.get(nClassPos)), lMissList.get(nClassPos));
+                notifyClassDone(lMissList.get(nClassPos));
+            });
+        } else {
+            forkCheckstyle(lMissList, oMissMap);
+        }
+        oTimings.stop("checkstyle", lCheckstyleStart);
+
+        return oRuleProfile;
+    }
 
-        return oJson;
+    /**
+     * executes checkstyle within the command line interface, one process for each java file. The processes
+     * are started by the worker pool of the engine, so that several files are analyzed at the same time
+     * @param lClassList - list with all java classes that should be analyzed
+     * @param oCacheKeyMap - cache keys of the java classes
+     * @throws IOException - general io exception
+     */
+    private void forkCheckstyle(List<Class> lClassList, Map<Class, String> oCacheKeyMap) throws IOException {
+        oCheckstyleEngine.runParallel(lClassList.size(),
+                nClassPos -> forkCheckstyleClass(lClassList, nClassPos, oCacheKeyMap),
+                nClassPos -> notifyClassDone(lClassList.get(nClassPos)));
+    }
+
+    /**
+     * passes an analyzed java class to the listener of a progressive request
+     * @param oClass - java class with all founded problems
+     * @throws IOException - the result of the java class could not be sent
+     */
+    private void notifyClassDone(Class oClass) throws IOException {
+        if (oClassListener != null) {
+            oClassListener.classDone(oClass);
+        }
+    }
+
+    /**
+     * executes checkstyle within the command line interface for the java file at the given position. Only
+     * a normal termination or an unparsable file is cached, other return codes are failures of the process
+     * @param lClassList - list with all java classes that should be analyzed
+     * @param nClassPos - actual class position of the whole list --> to assign the founded errors correctly
+     * @param oCacheKeyMap - cache keys of the java classes
+     * @throws ParserConfigurationException - Error while parsing xml document
+     * @throws SAXException - Error within SAX XML Parser
+     * @throws IOException - general io exception
+     */
+    private void forkCheckstyleClass(List<Class> lClassList, int nClassPos, Map<Class, String> oCacheKeyMap)
+            throws ParserConfigurationException, SAXException, IOException {
+        final String sCheckStylePath = "checkstyle-6.17-all.jar";
+        Class oClass = lClassList.get(nClassPos);
+        String sFullPath = oClass.getFullPath();
+
+        if (sFullPath.endsWith(".java")) {
+            sFullPath = sFullPath.substring(0, sFullPath.length() - 5);
+        }
+
+        //builds the execution command of checkstyle for the command line interace
+        String sCheckStyleCommand = "java -jar " + sCheckStylePath + " -c " + sRuleSetPath + " " + sFullPath
+                + ".java -f xml -o " + sFullPath + ".xml";
+        LOG.info("Checkstyle execution path: " + sCheckStyleCommand);
+
+        //execute it and validate the return code to get files which were not parsable by checkstyle
+        long lProcessStart = oTimings.start();
+        int nReturnCode = oUtil.execCommand(sCheckStyleCommand);
+        oTimings.stop("checkstyleProcess", lProcessStart);
+        LOG.info("Process Return Code: " + nReturnCode);
+
+        //compilable for checkstyle --> valid file
+        if(nReturnCode == 0) {
+            /* store Checkstyle Informationen in the global List */
+            long lStoreStart = oTimings.start();
+            storeCheckstyleInformation(sFullPath + ".xml", nClassPos, lClassList);
+            oTimings.stop("storeCheckstyleInformation", lStoreStart);
+            oResultCache.put(oCacheKeyMap.get(oClass), oClass);
+        }
+        //uncompilable for checkstyle -->  invalid file
+        else if(nReturnCode == -2){
+            Error oError = new Error(-1, -1, "error", FATAL_ERROR_MESSAGE, "");
+            oClass.getErrorList().add(oError);
+            oClass.incErrorType("error");
+            oResultCache.put(oCacheKeyMap.get(oClass), oClass);
+        }
     }
 
     /**
      * removes unnecessary information
      * @param lRepoList - List with all given repositories that should be redurced
      */
-    private void formatList(List<List<String>> lRepoList) {
+    void formatList(List<List<String>> lRepoList) {
         for (List<String> sRepoListInList : lRepoList) {
             Class oClass;
             for (String sRepo : sRepoListInList) {
@@ -307,30 +671,19 @@ class Checkstyle {
     }
 
     /**
-     * opens the stored xml file of checkstyle and iterates through all errors to read the attributes-value pairs
+     * streams the stored xml file of checkstyle and assigns every error to the analyzed java class
      * @param sXmlPath - xml file path the should be read
      * @param nClassPos - actual class position of the whole list --> to assign the founded errors correctly
-     * @throws ParserConfigurationException - Error while parsing xml document
-     * @throws SAXException - Error within SAX XML Parser
-     * @throws IOException - general io exception
+     * @param lClassList - list with all java classes that are analyzed
+     * @throws IOException - general io exception or invalid xml document
      */
-    private void storeCheckstyleInformation(String sXmlPath, int nClassPos)
-            throws ParserConfigurationException, SAXException, IOException {
-        //it is important to define the coding of the xml file --> UTF-8
-        InputStream inputStream = new FileInputStream(sXmlPath);
-        Reader reader = new InputStreamReader(inputStream, "UTF-8");
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(is);
-
-        //get a list of all xml nodes which were tagged by error to get addional information --> e.g. line number, column, ...
-        NodeList nList = doc.getElementsByTagName("error");
-
-        for (int nNodePos = 0; nNodePos < nList.getLength(); nNodePos++) {
-            oOwnJson.readAndSaveAttributes(nClassPos, nList, nNodePos, lFormattedClassList);
-        }
+    void storeCheckstyleInformation(String sXmlPath, int nClassPos, List<Class> lClassList) throws IOException {
+        Class oClass = lClassList.get(nClassPos);
+
+        oXmlReportReader.readCheckstyleReport(sXmlPath, oError -> {
+            //increment the problem belonging to the founded severity
+            oClass.incErrorType(oError.getSeverity());
+            oClass.getErrorList().add(oError);
+        });
     }
 }
\ No newline at end of file
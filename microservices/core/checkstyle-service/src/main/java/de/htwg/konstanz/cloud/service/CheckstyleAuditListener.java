@@ -0,0 +1,80 @@
+package de.htwg.konstanz.cloud.service;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.Error;
+
+/**
+ * receives all problems of the in process checker and stores them into the analyzed java class
+ */
+class CheckstyleAuditListener implements AuditListener {
+    private Class oCurrentClass;
+
+    /**
+     * sets the java class which belongs to the next processed file
+     * @param oClass - java class that will be analyzed next
+     */
+    void setCurrentClass(Class oClass) {
+        this.oCurrentClass = oClass;
+    }
+
+    /**
+     * marks the current java class as not parsable by checkstyle
+     */
+    void addFatalError() {
+        Error oError = new Error(-1, -1, "error", Checkstyle.FATAL_ERROR_MESSAGE, "");
+        oCurrentClass.getErrorList().add(oError);
+        oCurrentClass.incErrorType("error");
+    }
+
+    @Override
+    public void addError(AuditEvent oEvent) {
+        //the xml report of checkstyle does not contain ignored problems either
+        if (oEvent.getSeverityLevel() != SeverityLevel.IGNORE) {
+            String sSeverity = oEvent.getSeverityLevel().getName();
+
+            oCurrentClass.incErrorType(sSeverity);
+            oCurrentClass.getErrorList().add(new Error(oEvent.getLine(), oEvent.getColumn(), sSeverity,
+                    oEvent.getMessage(), getSourceName(oEvent)));
+        }
+    }
+
+    /**
+     * returns the class name of the check which found the problem
+     * @param oEvent - problem of the checker
+     * @return - name of the check, also if the check was a generated subclass of the profiler
+     */
+    private String getSourceName(AuditEvent oEvent) {
+        String sSourceName = oEvent.getSourceName();
+        int nProxyPos = sSourceName.indexOf("$$");
+
+        return nProxyPos < 0 ? sSourceName : sSourceName.substring(0, nProxyPos);
+    }
+
+    @Override
+    public void addException(AuditEvent oEvent, Throwable oThrowable) {
+        addFatalError();
+    }
+
+    @Override
+    public void auditStarted(AuditEvent oEvent) {
+        /* nothing to do */
+    }
+
+    @Override
+    public void auditFinished(AuditEvent oEvent) {
+        /* nothing to do */
+    }
+
+    @Override
+    public void fileStarted(AuditEvent oEvent) {
+        /* nothing to do */
+    }
+
+    @Override
+    public void fileFinished(AuditEvent oEvent) {
+        /* nothing to do */
+    }
+}
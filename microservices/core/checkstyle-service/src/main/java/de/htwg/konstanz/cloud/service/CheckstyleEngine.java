@@ -0,0 +1,260 @@
+package de.htwg.konstanz.cloud.service;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.ConfigurationLoader;
+import com.puppycrawl.tools.checkstyle.PackageNamesLoader;
+import com.puppycrawl.tools.checkstyle.PackageObjectFactory;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import de.htwg.konstanz.cloud.model.Class;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Runs checkstyle inside the service jvm instead of forking "java -jar checkstyle-6.17-all.jar" for every
+    single java file. The configuration of the ruleset is parsed only once at startup and the files of
+    a repository are checked at the same time by a bounded pool of workers.
+ */
+@Component
+public class CheckstyleEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckstyleEngine.class);
+
+    /* engine mode which runs the checker in process, every other value falls back to the forked .jar */
+    private static final String MODE_CHECKER = "checker";
+
+    @Value("${app.config.checkstyle.rulepath}")
+    private String sRuleSetPath;
+
+    @Value("${app.config.checkstyle.engine:checker}")
+    private String sEngineMode;
+
+    /* number of java files which are checked at the same time, 0 --> number of cores */
+    @Value("${app.config.checkstyle.parallelism:0}")
+    private int nParallelism;
+
+    @Autowired
+    private RuleProfiler oRuleProfiler;
+
+    private Configuration oConfiguration;
+
+    private ExecutorService oExecutor;
+
+    /* a checker is not thread safe --> every worker gets its own one */
+    private final ThreadLocal<CheckerWorker> oWorker = new ThreadLocal<>();
+
+    /**
+     * parses the checkstyle ruleset once, so that every analysis can reuse it and starts the worker pool
+     * @throws CheckstyleException - invalid ruleset, the service should not start without it
+     */
+    @PostConstruct
+    private void init() throws CheckstyleException {//NOPMD
+        if (isInProcess()) {
+            oConfiguration = ConfigurationLoader.loadConfiguration(sRuleSetPath,
+                    new PropertiesExpander(System.getProperties()));
+            LOG.info("Checkstyle ruleset loaded: " + sRuleSetPath);
+        } else {
+            LOG.info("Checkstyle engine mode: " + sEngineMode + " (forked checkstyle process)");
+        }
+
+        if (nParallelism < 1) {
+            nParallelism = Runtime.getRuntime().availableProcessors();
+        }
+        oExecutor = Executors.newFixedThreadPool(nParallelism, new WorkerThreadFactory());
+        LOG.info("Checkstyle parallelism: " + nParallelism);
+    }
+
+    /**
+     * stops all workers when the service shuts down
+     */
+    @PreDestroy
+    private void destroy() {//NOPMD
+        oExecutor.shutdownNow();
+    }
+
+    /**
+     * checks if the checkstyle analysis should run inside the service jvm
+     * @return - Flag which indicates yes/no
+     */
+    boolean isInProcess() {
+        return MODE_CHECKER.equalsIgnoreCase(sEngineMode);
+    }
+
+    /**
+     * analyzes all given java classes inside the service. The founded problems are stored
+     * directly in the class objects, so no xml report has to be written and parsed again
+     * @param lClassList - list with all java classes that should be analyzed
+     * @param oDoneTask - task that is executed for every analyzed java class, in the order of the list
+     * @return - costs of the checks of this analysis, null if the profiling is disabled
+     * @throws IOException - the analysis of a java file failed
+     */
+    RuleProfiler.Run check(final List<Class> lClassList, ClassTask oDoneTask) throws IOException {
+        RuleProfiler.Run oRuleProfile = oRuleProfiler.createRun();
+        runParallel(lClassList.size(), nClassPos -> checkClass(lClassList.get(nClassPos), oRuleProfile), oDoneTask);
+
+        return oRuleProfile;
+    }
+
+    /**
+     * executes a task for every position of the class list within the worker pool and waits until all of them
+     * are done. Every task only changes the class object of its own position, so the order of the class list
+     * and the generated json stays the same as with a sequential run
+     * @param nClassCount - number of java classes
+     * @param oClassTask - task that analyzes the java class at the given position
+     * @throws IOException - the analysis of a java file failed
+     */
+    void runParallel(int nClassCount, ClassTask oClassTask) throws IOException {
+        runParallel(nClassCount, oClassTask, null);
+    }
+
+    /**
+     * executes a task for every position of the class list within the worker pool and waits until all of them
+     * are done. The done task runs within the calling thread as soon as the java class at the next position is
+     * analyzed, e.g. to send its result to the client
+     * @param nClassCount - number of java classes
+     * @param oClassTask - task that analyzes the java class at the given position
+     * @param oDoneTask - task that is executed for every analyzed position in the order of the list, or null
+     * @throws IOException - the analysis of a java file or a done task failed
+     */
+    void runParallel(int nClassCount, ClassTask oClassTask, ClassTask oDoneTask) throws IOException {
+        List<Future<?>> lFutures = new ArrayList<>();
+
+        for (int nClassPos = 0; nClassPos < nClassCount; nClassPos++) {
+            final int nPos = nClassPos;
+            lFutures.add(oExecutor.submit(() -> {
+                oClassTask.run(nPos);
+                return null;
+            }));
+        }
+
+        try {
+            for (int nClassPos = 0; nClassPos < nClassCount; nClassPos++) {
+                lFutures.get(nClassPos).get();
+
+                if (oDoneTask != null) {
+                    oDoneTask.run(nClassPos);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll(lFutures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Checkstyle analysis was interrupted");
+        } catch (ExecutionException e) {
+            cancelAll(lFutures);
+            throw new IOException("Checkstyle analysis failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException e) {
+            //e.g. the client closed the connection --> the other java files are not needed anymore
+            cancelAll(lFutures);
+            throw e;
+        } catch (Exception e) {
+            cancelAll(lFutures);
+            throw new IOException("Checkstyle analysis failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * cancels all tasks which are not finished yet
+     * @param lFutures - tasks of the analysis
+     */
+    private void cancelAll(List<Future<?>> lFutures) {
+        for (Future<?> oFuture : lFutures) {
+            oFuture.cancel(true);
+        }
+    }
+
+    /**
+     * runs the checker of the current worker for a single java file. A file which is not parsable by checkstyle
+     * gets the same fatal error as an abnormal termination of the forked checkstyle process
+     * @param oClass - java class that should be analyzed
+     * @param oRuleProfile - costs of the checks of the analysis, null if the profiling is disabled
+     * @throws CheckstyleException - the checker could not be created with the loaded ruleset
+     */
+    private void checkClass(Class oClass, RuleProfiler.Run oRuleProfile) throws CheckstyleException {
+        CheckerWorker oCheckerWorker = getWorker();
+        oCheckerWorker.oAuditListener.setCurrentClass(oClass);
+
+        try {
+            oCheckerWorker.oChecker.process(Collections.singletonList(new File(oClass.getFullPath())));
+        } catch (CheckstyleException e) {
+            LOG.info("Checkstyle could not analyze " + oClass.getFullPath() + ": " + e.getMessage());
+            oCheckerWorker.oAuditListener.addFatalError();
+        } finally {
+            if (oRuleProfiler.isEnabled()) {
+                oRuleProfiler.flush(oRuleProfile);
+            }
+        }
+    }
+
+    /**
+     * returns the checker of the current worker thread, on the first call it will be created
+     * @return - checker and listener of the current thread
+     * @throws CheckstyleException - the ruleset contains unknown modules
+     */
+    private CheckerWorker getWorker() throws CheckstyleException {
+        CheckerWorker oCheckerWorker = oWorker.get();
+
+        if (oCheckerWorker == null) {
+            oCheckerWorker = new CheckerWorker();
+            oCheckerWorker.oChecker.setModuleClassLoader(Checker.class.getClassLoader());
+            if (oRuleProfiler.isEnabled()) {
+                //every check is created as a subclass which measures its invocations
+                oCheckerWorker.oChecker.setModuleFactory(new ProfilingModuleFactory(new PackageObjectFactory(
+                        PackageNamesLoader.getPackageNames(Checker.class.getClassLoader()),
+                        Checker.class.getClassLoader()), oRuleProfiler));
+            }
+            oCheckerWorker.oChecker.configure(oConfiguration);
+            oCheckerWorker.oChecker.addListener(oCheckerWorker.oAuditListener);
+            oWorker.set(oCheckerWorker);
+        }
+
+        return oCheckerWorker;
+    }
+
+    /**
+     * analysis of the java class at a position of the class list
+     */
+    interface ClassTask {
+        void run(int nClassPos) throws Exception;
+    }
+
+    /**
+     * thread confined checker with its listener
+     */
+    private static class CheckerWorker {
+        private final Checker oChecker = new Checker();
+
+        private final CheckstyleAuditListener oAuditListener = new CheckstyleAuditListener();
+    }
+
+    /**
+     * names the worker threads, so that they are recognizable within the logs
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger nThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable oRunnable) {
+            Thread oThread = new Thread(oRunnable, "checkstyle-worker-" + nThreadCount.incrementAndGet());
+            oThread.setDaemon(true);
+            return oThread;
+        }
+    }
+}
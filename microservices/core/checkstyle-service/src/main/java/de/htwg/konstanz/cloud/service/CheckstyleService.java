@@ -1,22 +1,39 @@
 package de.htwg.konstanz.cloud.service;
 
 import de.htwg.konstanz.cloud.model.ValidationData;
+import de.htwg.konstanz.cloud.util.GitMirrorStore;
+import de.htwg.konstanz.cloud.util.Svn;
 import org.eclipse.jgit.api.errors.InvalidRemoteException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
 
 // to create a RESTful Controller (add Controller and ResponseBody)
 @RestController
 public class CheckstyleService {
     private static final Logger LOG = LoggerFactory.getLogger(CheckstyleService.class);
 
+    /* newline delimited json, one record for each analyzed java file */
+    private static final String NDJSON = "application/x-ndjson";
+
     @Value("${app.config.svn.ip}")
     private String sSvnServerIp;
 
@@ -26,16 +43,68 @@ public class CheckstyleService {
     @Value("${spring.application.name}")
     private String serviceName;
 
+    @Autowired
+    private CheckstyleEngine oCheckstyleEngine;
+
+    @Autowired
+    private CheckstyleResultCache oResultCache;
+
+    @Autowired
+    private RepositoryResultCache oRepositoryCache;
+
+    @Autowired
+    private GitMirrorStore oGitMirrorStore;
+
+    @Autowired
+    private Svn oSvn;
+
+    @Autowired
+    private AnalysisJobs oAnalysisJobs;
+
+    @Autowired
+    private InFlightAnalyses oInFlightAnalyses;
+
+    @Autowired
+    private AdmissionControl oAdmissionControl;
+
+    @Autowired
+    private PhaseTimings oPhaseTimings;
+
+    @Autowired
+    private RuleProfiler oRuleProfiler;
+
     /**
-     * executes the checkstyle validation
+     * executes the checkstyle validation. The json result is written directly into the response stream.
+     * With the Accept header application/x-ndjson or the parameter format=ndjson every analyzed java file is
+     * sent as a json record as soon as it is done, followed by a record with the totals. If the service has no
+     * free slot for the analysis, the request is rejected with 429 or 503 and a Retry-After header
      * @param data - given post request data - expects a string repository link
+     * @param sAccept - accepted media types of the client
+     * @param sFormat - optional format of the result, ndjson --> progressive result
      * @return - return a response entity within the json object and a http status code
      */
     @RequestMapping(value = "/validate", method = RequestMethod.POST,
-            produces = "application/json", consumes = "application/json")
-    public ResponseEntity validate(@RequestBody ValidationData data) {
+            produces = {"application/json", NDJSON}, consumes = "application/json")
+    public ResponseEntity validate(@RequestBody ValidationData data,
+                                   @RequestHeader(value = "Accept", required = false) String sAccept,
+                                   @RequestParam(value = "format", required = false) String sFormat) {
         try {
-            return ResponseEntity.ok(new Checkstyle(sSvnServerIp, sRuleSetPath).startIt(data.getRepository()));
+            Checkstyle oCheckstyle = createCheckstyle();
+            oCheckstyle.setCourse(data.getCourse());
+
+            //the analysis of a progressive result runs while the response is written
+            if ("ndjson".equalsIgnoreCase(sFormat) || (sAccept != null && sAccept.contains(NDJSON))) {
+                oAdmissionControl.checkQueue();
+                return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON))
+                        .body((StreamingResponseBody) oOut -> oCheckstyle.streamIt(data.getRepository(), oOut));
+            }
+
+            AnalysisResult oResult = oCheckstyle.startIt(data.getRepository());
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .body((StreamingResponseBody) oResult::writeTo);
+        } catch (ServiceBusyException e) {
+            LOG.info(e.getMessage() + ": " + data.getRepository());
+            return createBusyResponse(e);
         } catch (InvalidRemoteException e) {
             LOG.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body(e.getMessage());
@@ -45,6 +114,122 @@ public class CheckstyleService {
         }
     }
 
+    /**
+     * queues the checkstyle validation of a repository and returns immediately. The status of the job is available
+     * at /jobs/{id}, the json result at /jobs/{id}/result when the job is done
+     * @param data - given post request data - expects a string repository link and an optional callback url
+     * of an allowed callback host
+     * @return - response entity with http status 202 and the status of the job, 400 if the callback url is not
+     * allowed, 503 if the queue is full
+     */
+    @RequestMapping(value = "/jobs", method = RequestMethod.POST,
+            produces = "application/json", consumes = "application/json")
+    public ResponseEntity<String> submitJob(@RequestBody ValidationData data) {
+        String sCallbackUrl = data.getCallback();
+        if (sCallbackUrl != null && !oAnalysisJobs.isAllowedCallback(sCallbackUrl)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Callback url not allowed " + sCallbackUrl);
+        }
+
+        try {
+            AnalysisJobs.Job oJob = oAnalysisJobs.submit(data.getRepository(), sCallbackUrl,
+                    () -> {
+                        Checkstyle oCheckstyle = createCheckstyle();
+                        oCheckstyle.setCourse(data.getCourse());
+                        return oCheckstyle.startIt(data.getRepository(), true);
+                    });
+            return ResponseEntity.status(HttpStatus.ACCEPTED).header(HttpHeaders.LOCATION, "/jobs/" + oJob.getId())
+                    .contentType(MediaType.APPLICATION_JSON).body(oJob.toJson().toString());
+        } catch (RejectedExecutionException e) {
+            LOG.error("Job queue is full: " + data.getRepository());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(oAdmissionControl.getRetryAfter()))
+                    .body("Job queue is full");
+        }
+    }
+
+    /**
+     * Get Request with the status of a job
+     * @param sId - id of the job
+     * @return - json object with the status of the job, 404 if the job does not exist or is expired
+     */
+    @RequestMapping(value = "/jobs/{id}", method = RequestMethod.GET, produces = "application/json")
+    public ResponseEntity<String> getJob(@PathVariable("id") String sId) {
+        AnalysisJobs.Job oJob = oAnalysisJobs.get(sId);
+        if (oJob == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown job " + sId);
+        }
+
+        return ResponseEntity.ok(oJob.toJson().toString());
+    }
+
+    /**
+     * Get Request with the json result of a job. The result is written directly into the response stream
+     * @param sId - id of the job
+     * @return - json result if the job is done, 202 with the status while it is queued or running, 500 with the
+     * status if it failed and 404 if the job does not exist or is expired
+     */
+    @RequestMapping(value = "/jobs/{id}/result", method = RequestMethod.GET, produces = "application/json")
+    public ResponseEntity getJobResult(@PathVariable("id") String sId) {
+        AnalysisJobs.Job oJob = oAnalysisJobs.get(sId);
+        if (oJob == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown job " + sId);
+        }
+
+        switch (oJob.getStatus()) {
+            case AnalysisJobs.DONE:
+                Path oResultPath = oJob.getResultPath();
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .body((StreamingResponseBody) oOut -> Files.copy(oResultPath, oOut));
+            case AnalysisJobs.FAILED:
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(oJob.toJson().toString());
+            default:
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(oJob.toJson().toString());
+        }
+    }
+
+    /**
+     * Get Request with the most expensive checks of all profiled analyses since the start of the service
+     * @param nTop - optional number of checks, default is app.config.profiling.top
+     * @return - json object with the cpu time and the invocations of the checks
+     */
+    @RequestMapping(value = "/profile", method = RequestMethod.GET, produces = "application/json")
+    public String profile(@RequestParam(value = "top", required = false, defaultValue = "0") int nTop) {
+        return oRuleProfiler.getStatistics(nTop).toString();
+    }
+
+    /**
+     * Get Request with the reuse of the results of identical java files within the repositories of a course
+     * @param sCourse - id of the course, given by the validation requests
+     * @return - json object with the analyzed and reused java files and the dedup ratio, 404 if no repository of
+     * the course was analyzed since the start of the service
+     */
+    @RequestMapping(value = "/courses/{course}/dedup", method = RequestMethod.GET, produces = "application/json")
+    public ResponseEntity<String> courseDedup(@PathVariable("course") String sCourse) {
+        JSONObject oJson = oResultCache.getCourseStatistics(sCourse);
+        if (oJson == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown course " + sCourse);
+        }
+
+        return ResponseEntity.ok(oJson.toString());
+    }
+
+    /**
+     * Get Request with the counters of the service, e.g. the hits and misses of the result cache
+     * @return - json object with all counters
+     */
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = "application/json")
+    public String metrics() {
+        JSONObject oJson = new JSONObject();
+        oJson.put("cache", oResultCache.getStatistics());
+        oJson.put("repositoryCache", oRepositoryCache.getStatistics());
+        oJson.put("jobs", oAnalysisJobs.getStatistics());
+        oJson.put("coalescing", oInFlightAnalyses.getStatistics());
+        oJson.put("admission", oAdmissionControl.getStatistics());
+        oJson.put("phases", oPhaseTimings.getStatistics());
+
+        return oJson.toString();
+    }
+
     /**
      * Get Request to test the response of the pmd service
      * @returna - simple string that indicates that the service is still alive
@@ -53,4 +238,21 @@ public class CheckstyleService {
     public String info() {
         return serviceName;
     }
-}
\ No newline at end of file
+
+    private Checkstyle createCheckstyle() {
+        return new Checkstyle(sSvnServerIp, sRuleSetPath, oCheckstyleEngine, oResultCache, oRepositoryCache,
+                oGitMirrorStore, oSvn, oInFlightAnalyses, oPhaseTimings);
+    }
+
+    /**
+     * rejects a request of an overloaded service, the client retries it later or sends it to another instance
+     * @param e - rejection of the admission control
+     * @return - response entity with http status 429 if the queue is full, otherwise 503
+     */
+    private ResponseEntity<String> createBusyResponse(ServiceBusyException e) {
+        HttpStatus oStatus = e.isQueueFull() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+
+        return ResponseEntity.status(oStatus).header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+}
@@ -0,0 +1,130 @@
+package de.htwg.konstanz.cloud.service;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Coalesces concurrent requests of the same repository. The first request of a repository url and ruleset is
+    the leader and analyzes the repository, every request which arrives while the leader is still running waits
+    for the leader and gets the same result instead of downloading and analyzing the repository again. Only the
+    leader needs a slot of the admission control.
+ */
+@Component
+public class InFlightAnalyses {
+    private static final Logger LOG = LoggerFactory.getLogger(InFlightAnalyses.class);
+
+    @Autowired
+    private RepositoryResultCache oRepositoryCache;
+
+    @Autowired
+    private AdmissionControl oAdmissionControl;
+
+    private final ConcurrentMap<String, CompletableFuture<AnalysisResult>> oInFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong lLeaders = new AtomicLong();
+
+    private final AtomicLong lFollowers = new AtomicLong();
+
+    /**
+     * analysis of a single repository
+     */
+    interface Analysis {
+        AnalysisResult run() throws IOException, ParserConfigurationException, SAXException, GitAPIException;
+    }
+
+    /**
+     * runs the analysis of a repository in a free slot or waits for the running analysis of the same repository
+     * @param sRepoUrl - url of the repository
+     * @param bBackground - true --> background job, it waits for a slot without a limit
+     * @param oAnalysis - analysis which is only executed if the repository is not analyzed at the moment
+     * @return - result of the analysis, the same object for all coalesced requests
+     * @throws IOException - throw for the handling in CheckstyleService, ServiceBusyException if no slot is free
+     * @throws ParserConfigurationException - throw for the handling in CheckstyleService
+     * @throws SAXException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    AnalysisResult run(String sRepoUrl, boolean bBackground, Analysis oAnalysis) throws IOException,
+            ParserConfigurationException, SAXException, GitAPIException {
+        String sKey = oRepositoryCache.createRepositoryKey(sRepoUrl);
+        CompletableFuture<AnalysisResult> oFlight = new CompletableFuture<>();
+        CompletableFuture<AnalysisResult> oLeader = oInFlight.putIfAbsent(sKey, oFlight);
+
+        if (oLeader != null) {
+            lFollowers.incrementAndGet();
+            LOG.info("Repository is already analyzed, waiting for the result: " + sRepoUrl);
+            return await(oLeader);
+        }
+
+        try (AdmissionControl.Slot oSlot = oAdmissionControl.acquire(bBackground)) {
+            lLeaders.incrementAndGet();
+            AnalysisResult oResult = oAnalysis.run();
+            oFlight.complete(oResult);
+            return oResult;
+        } catch (Throwable e) {
+            oFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            oInFlight.remove(sKey, oFlight);
+        }
+    }
+
+    /**
+     * returns the counters of the coalesced requests
+     * @return - json object with the number of executed and saved analyses
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+
+        oJson.put("inFlight", oInFlight.size());
+        oJson.put("analyses", lLeaders.get());
+        oJson.put("savedAnalyses", lFollowers.get());
+
+        return oJson;
+    }
+
+    /**
+     * waits for the result of the leader, a failure of the leader is thrown for every waiting request
+     * @param oLeader - result of the running analysis
+     * @return - result of the leader
+     */
+    private AnalysisResult await(CompletableFuture<AnalysisResult> oLeader) throws IOException,
+            ParserConfigurationException, SAXException, GitAPIException {
+        try {
+            return oLeader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the running analysis");
+        } catch (ExecutionException e) {
+            Throwable oCause = e.getCause();
+
+            if (oCause instanceof IOException) {
+                throw (IOException) oCause;
+            } else if (oCause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) oCause;
+            } else if (oCause instanceof SAXException) {
+                throw (SAXException) oCause;
+            } else if (oCause instanceof GitAPIException) {
+                throw (GitAPIException) oCause;
+            } else if (oCause instanceof RuntimeException) {
+                throw (RuntimeException) oCause;
+            } else if (oCause instanceof Error) {
+                throw (Error) oCause;
+            }
+            throw new IOException(oCause);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package de.htwg.konstanz.cloud.service;
+
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Latency histograms of the phases of an analysis, e.g. the download of the repository, the checkstyle runs or
+    the json creation. Every histogram has fixed buckets with powers of two milliseconds, so a measurement is only
+    an increment of a few counters and can stay enabled in production. The percentiles are the upper bounds of
+    the buckets, i.e. they are accurate up to a factor of two.
+ */
+@Component
+public class PhaseTimings {
+    /* buckets up to 2^20 ms (about 17 minutes) and one for longer durations */
+    private static final int BUCKETS = 22;
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    /* true --> every analyzed repository gets a timings object with the durations of its phases */
+    @Value("${app.config.timings.result:false}")
+    private boolean bTimingsInResult;
+
+    private final ConcurrentMap<String, Histogram> oHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * creates the recorder of a single analysis
+     * @return - recorder which adds its durations to the histograms
+     */
+    Recorder createRecorder() {
+        return new Recorder();
+    }
+
+    /**
+     * adds the duration of a phase to its histogram
+     * @param sPhase - name of the phase
+     * @param lNanos - duration in nanoseconds
+     */
+    void record(String sPhase, long lNanos) {
+        oHistograms.computeIfAbsent(sPhase, sKey -> new Histogram()).record(TimeUnit.NANOSECONDS.toMillis(lNanos));
+    }
+
+    /**
+     * returns the histograms of all phases
+     * @return - json object with the count, the total, the maximum and the percentiles of each phase
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+
+        for (Map.Entry<String, Histogram> oEntry : oHistograms.entrySet()) {
+            oJson.put(oEntry.getKey(), oEntry.getValue().toJson());
+        }
+
+        return oJson;
+    }
+
+    /**
+     * durations of the phases of a single analysis. A phase which runs several times, e.g. once for each java
+     * file, is added to the histogram every time and summed up for the result
+     */
+    class Recorder {
+        private final Map<String, Long> oDurations = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        /**
+         * starts the measurement of a phase
+         * @return - start time in nanoseconds
+         */
+        long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * ends the measurement of a phase
+         * @param sPhase - name of the phase
+         * @param lStartTime - start time of the phase
+         */
+        void stop(String sPhase, long lStartTime) {
+            long lNanos = System.nanoTime() - lStartTime;
+
+            record(sPhase, lNanos);
+            oDurations.merge(sPhase, TimeUnit.NANOSECONDS.toMillis(lNanos), Long::sum);
+        }
+
+        /**
+         * returns the durations for the result of the analysis
+         * @return - milliseconds of each phase or null if the results do not contain timings
+         */
+        Map<String, Long> getDurations() {
+            if (!bTimingsInResult) {
+                return null;
+            }
+
+            synchronized (oDurations) {
+                return new LinkedHashMap<>(oDurations);
+            }
+        }
+    }
+
+    private static class Histogram {
+        private final AtomicLongArray oBuckets = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLong lCount = new AtomicLong();
+
+        private final AtomicLong lTotal = new AtomicLong();
+
+        private final AtomicLong lMax = new AtomicLong();
+
+        void record(long lMillis) {
+            //bucket n contains the durations up to 2^n milliseconds
+            int nBucket = lMillis <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(lMillis - 1);
+            oBuckets.incrementAndGet(Math.min(nBucket, BUCKETS - 1));
+            lCount.incrementAndGet();
+            lTotal.addAndGet(lMillis);
+            lMax.accumulateAndGet(lMillis, Math::max);
+        }
+
+        JSONObject toJson() {
+            JSONObject oJson = new JSONObject();
+            long lCountValue = lCount.get();
+
+            oJson.put("count", lCountValue);
+            oJson.put("totalTime", lTotal.get());
+            oJson.put("maxTime", lMax.get());
+            for (double dPercentile : PERCENTILES) {
+                oJson.put("p" + (int) Math.round(dPercentile * 100), getPercentile(dPercentile, lCountValue));
+            }
+
+            JSONObject oBucketJson = new JSONObject();
+            for (int nBucket = 0; nBucket < BUCKETS; nBucket++) {
+                long lBucketCount = oBuckets.get(nBucket);
+                if (lBucketCount > 0) {
+                    oBucketJson.put(nBucket == BUCKETS - 1 ? "inf" : "le" + (1L << nBucket), lBucketCount);
+                }
+            }
+            oJson.put("buckets", oBucketJson);
+
+            return oJson;
+        }
+
+        private long getPercentile(double dPercentile, long lCountValue) {
+            long lRank = (long) Math.ceil(dPercentile * lCountValue);
+            long lSum = 0;
+
+            for (int nBucket = 0; nBucket < BUCKETS - 1; nBucket++) {
+                lSum += oBuckets.get(nBucket);
+                if (lSum >= lRank && lSum > 0) {
+                    return Math.min(1L << nBucket, lMax.get());
+                }
+            }
+
+            return lMax.get();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package de.htwg.konstanz.cloud.service;
+
+import com.puppycrawl.tools.checkstyle.ModuleFactory;
+import com.puppycrawl.tools.checkstyle.TreeWalker;
+import com.puppycrawl.tools.checkstyle.api.AbstractFileSetCheck;
+import com.puppycrawl.tools.checkstyle.api.Check;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.CallbackFilter;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.cglib.proxy.NoOp;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * creates the modules of a profiled checker. Every check is replaced by a generated subclass which adds the time
+ * of its callbacks to the rule profiler, the configuration and the messages of the check stay the same
+ */
+class ProfilingModuleFactory implements ModuleFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(ProfilingModuleFactory.class);
+
+    /* callbacks of the tree walker and of the file set checks which do the work of a check */
+    private static final Set<String> PROFILED_METHODS = new HashSet<>(Arrays.asList("beginTree", "visitToken",
+            "leaveToken", "finishTree", "processFiltered"));
+
+    /* one filter for all subclasses, so the generated classes are cached */
+    private static final CallbackFilter PROFILED_METHOD_FILTER = oMethod ->
+            PROFILED_METHODS.contains(oMethod.getName()) ? 0 : 1;
+
+    private final ModuleFactory oModuleFactory;
+
+    private final RuleProfiler oRuleProfiler;
+
+    /**
+     * @param oModuleFactory - factory which creates the real modules
+     * @param oRuleProfiler - profiler which receives the time of every callback
+     */
+    ProfilingModuleFactory(ModuleFactory oModuleFactory, RuleProfiler oRuleProfiler) {
+        this.oModuleFactory = oModuleFactory;
+        this.oRuleProfiler = oRuleProfiler;
+    }
+
+    @Override
+    public Object createModule(String sName) throws CheckstyleException {
+        Object oModule = oModuleFactory.createModule(sName);
+
+        if (oModule instanceof Check || oModule instanceof AbstractFileSetCheck && !(oModule instanceof TreeWalker)) {
+            try {
+                return createProfiledModule(oModule.getClass());
+            } catch (RuntimeException e) {
+                //e.g. a final check --> it works without profiling
+                LOG.info("Check can't be profiled: " + sName + " (" + e.getMessage() + ")");
+            }
+        }
+
+        return oModule;
+    }
+
+    /**
+     * creates a subclass of the module which measures its callbacks
+     * @param oModuleClass - class of the check
+     * @return - new instance of the subclass
+     */
+    private Object createProfiledModule(Class<?> oModuleClass) {
+        String sRule = oModuleClass.getSimpleName();
+        Enhancer oEnhancer = new Enhancer();
+
+        oEnhancer.setSuperclass(oModuleClass);
+        oEnhancer.setClassLoader(oModuleClass.getClassLoader());
+        oEnhancer.setCallbackFilter(PROFILED_METHOD_FILTER);
+        oEnhancer.setCallbacks(new Callback[]{
+            (MethodInterceptor) (oObject, oMethod, oArgs, oMethodProxy) -> {
+                long lStart = oRuleProfiler.now();
+                try {
+                    return oMethodProxy.invokeSuper(oObject, oArgs);
+                } finally {
+                    oRuleProfiler.add(sRule, oRuleProfiler.now() - lStart);
+                }
+            },
+            NoOp.INSTANCE
+        });
+
+        return oEnhancer.create();
+    }
+}
@@ -0,0 +1,322 @@
+package de.htwg.konstanz.cloud.service;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Stores the whole json result of an analyzed repository. The key consists of the repository url, the id of
+    the analyzed commit, the hash of the ruleset and the checkstyle version, so a repository without new commits
+    is not downloaded and analyzed again. The most recently used results are kept in memory, all results can
+    additionally be written to the disk of the service. A result is stored while it is written into the response,
+    so the cache never needs an additional serialized copy of a large result.
+ */
+@Component
+public class RepositoryResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RepositoryResultCache.class);
+
+    @Value("${app.config.checkstyle.rulepath}")
+    private String sRuleSetPath;
+
+    /* maximum number of repository results which are kept in memory, 0 --> no cache in memory */
+    @Value("${app.config.checkstyle.cache.repositories:100}")
+    private int nMaxEntries;
+
+    /* directory of the disk cache, empty --> no disk cache */
+    @Value("${app.config.checkstyle.cache.directory:}")
+    private String sCacheDirectory;
+
+    /* maximum size of a result in kilobytes which is kept in memory, larger results are only stored on disk */
+    @Value("${app.config.checkstyle.cache.maxresultsize:1024}")
+    private int nMaxResultSize;
+
+    private String sRuleSetHash;
+
+    private Map<String, String> oMemoryCache;
+
+    private final AtomicLong lHits = new AtomicLong();
+
+    private final AtomicLong lMisses = new AtomicLong();
+
+    /**
+     * calculates the hash of the ruleset and creates the directory of the disk cache
+     * @throws IOException - the ruleset is not readable
+     */
+    @PostConstruct
+    private void init() throws IOException {//NOPMD
+        sRuleSetHash = CheckstyleResultCache.sha256(Files.readAllBytes(Paths.get(sRuleSetPath)));
+
+        //the access order of the map is used to remove the least recently used repository
+        oMemoryCache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> oEldest) {
+                return size() > nMaxEntries;
+            }
+        });
+
+        if (isDiskCacheEnabled()) {
+            Files.createDirectories(getDiskDirectory());
+        }
+    }
+
+    /**
+     * builds the key of an analyzed repository
+     * @param sRepoUrl - url of the repository
+     * @param sCommitId - id of the analyzed commit
+     * @return - cache key
+     */
+    String createKey(String sRepoUrl, String sCommitId) {
+        String sRepoKey = normalizeUrl(sRepoUrl) + "\n" + sCommitId;
+
+        return CheckstyleResultCache.sha256(sRepoKey.getBytes(StandardCharsets.UTF_8)) + "_" + sRuleSetHash + "_"
+                + CheckstyleResultCache.CHECKSTYLE_VERSION;
+    }
+
+    /**
+     * builds the key of a repository independent of its commits, e.g. to find concurrent requests of it
+     * @param sRepoUrl - url of the repository
+     * @return - key of the repository url and the ruleset
+     */
+    String createRepositoryKey(String sRepoUrl) {
+        return CheckstyleResultCache.sha256(normalizeUrl(sRepoUrl).getBytes(StandardCharsets.UTF_8)) + "_"
+                + sRuleSetHash;
+    }
+
+    /**
+     * searches the json result of a repository in memory first and afterwards on the disk
+     * @param sKey - cache key of the repository
+     * @return - stored json result or null
+     */
+    AnalysisResult get(String sKey) {
+        String sResult = nMaxEntries > 0 ? oMemoryCache.get(sKey) : null;
+        AnalysisResult oResult = sResult == null ? null : AnalysisResult.of(sResult);
+
+        if (oResult == null && isDiskCacheEnabled()) {
+            oResult = readFromDisk(sKey);
+        }
+
+        if (oResult == null) {
+            lMisses.incrementAndGet();
+        } else {
+            lHits.incrementAndGet();
+        }
+
+        return oResult;
+    }
+
+    /**
+     * creates a stream which forwards the json result of an analyzed repository to the given stream and stores
+     * a copy of it in the cache
+     * @param sKey - cache key of the repository
+     * @param oOut - stream which receives the result, e.g. the response of the request
+     * @return - stream for the result, it has to be committed after the whole result was written
+     */
+    ResultOutputStream createResultStream(String sKey, OutputStream oOut) {
+        return new ResultOutputStream(sKey, oOut);
+    }
+
+    /**
+     * returns the counters of the cache
+     * @return - json object with hits, misses and the number of entries in memory
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+
+        oJson.put("hits", lHits.get());
+        oJson.put("misses", lMisses.get());
+        oJson.put("memoryEntries", oMemoryCache.size());
+        oJson.put("maxMemoryEntries", nMaxEntries);
+        oJson.put("maxMemoryResultSize", nMaxResultSize);
+        oJson.put("diskCache", isDiskCacheEnabled());
+
+        return oJson;
+    }
+
+    /**
+     * removes differences of the same repository url, e.g. a slash at the end or the .git extension
+     * @param sRepoUrl - url of the repository
+     * @return - normalized url
+     */
+    private String normalizeUrl(String sRepoUrl) {
+        String sNormalizedUrl = sRepoUrl.trim();
+
+        while (sNormalizedUrl.endsWith("/")) {
+            sNormalizedUrl = sNormalizedUrl.substring(0, sNormalizedUrl.length() - 1);
+        }
+        if (sNormalizedUrl.endsWith(".git")) {
+            sNormalizedUrl = sNormalizedUrl.substring(0, sNormalizedUrl.length() - 4);
+        }
+
+        return sNormalizedUrl;
+    }
+
+    private boolean isDiskCacheEnabled() {
+        return sCacheDirectory != null && !sCacheDirectory.isEmpty();
+    }
+
+    private Path getDiskDirectory() {
+        return Paths.get(sCacheDirectory, "repositories");
+    }
+
+    private long getMaxResultBytes() {
+        return nMaxResultSize * 1024L;
+    }
+
+    /**
+     * reads the json result of a repository from the disk. A small result is kept in memory afterwards, a large
+     * one is copied from the file when it is written
+     * @param sKey - cache key of the repository
+     * @return - stored json result or null if the file does not exist or is not readable
+     */
+    private AnalysisResult readFromDisk(String sKey) {
+        Path oPath = getDiskDirectory().resolve(sKey + ".json");
+        AnalysisResult oResult = null;
+
+        if (Files.exists(oPath)) {
+            try {
+                if (nMaxEntries > 0 && Files.size(oPath) <= getMaxResultBytes()) {
+                    String sResult = new String(Files.readAllBytes(oPath), StandardCharsets.UTF_8);
+                    oMemoryCache.put(sKey, sResult);
+                    oResult = AnalysisResult.of(sResult);
+                } else {
+                    oResult = AnalysisResult.of(oPath);
+                }
+            } catch (IOException e) {
+                LOG.info("Cached repository result " + oPath + " is not readable: " + e.getMessage());
+            }
+        }
+
+        return oResult;
+    }
+
+    /**
+     * forwards a json result to the response and copies it into memory and into a temporary file of the disk
+     * cache. The temporary file is moved when the result is committed, so a concurrent request never reads a
+     * half written result. A failure of the cache never breaks the response.
+     */
+    class ResultOutputStream extends FilterOutputStream {
+        private final String sKey;
+
+        private ByteArrayOutputStream oMemoryCopy;
+
+        private OutputStream oDiskCopy;
+
+        private Path oTmpPath;
+
+        ResultOutputStream(String sKey, OutputStream oOut) {
+            super(oOut);
+            this.sKey = sKey;
+
+            if (nMaxEntries > 0) {
+                oMemoryCopy = new ByteArrayOutputStream();
+            }
+            if (isDiskCacheEnabled()) {
+                try {
+                    oTmpPath = Files.createTempFile(getDiskDirectory(), sKey, ".tmp");
+                    oDiskCopy = new BufferedOutputStream(Files.newOutputStream(oTmpPath));
+                } catch (IOException e) {
+                    LOG.info("Repository result could not be cached on disk: " + e.getMessage());
+                    discardDiskCopy();
+                }
+            }
+        }
+
+        @Override
+        public void write(int nByte) throws IOException {
+            write(new byte[]{(byte) nByte}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bBuffer, int nOffset, int nLength) throws IOException {
+            out.write(bBuffer, nOffset, nLength);
+
+            if (oMemoryCopy != null) {
+                //a large result is only stored on disk
+                if (oMemoryCopy.size() + nLength > getMaxResultBytes()) {
+                    oMemoryCopy = null;
+                } else {
+                    oMemoryCopy.write(bBuffer, nOffset, nLength);
+                }
+            }
+            if (oDiskCopy != null) {
+                try {
+                    oDiskCopy.write(bBuffer, nOffset, nLength);
+                } catch (IOException e) {
+                    LOG.info("Repository result could not be cached on disk " + oTmpPath + ": " + e.getMessage());
+                    discardDiskCopy();
+                }
+            }
+        }
+
+        /**
+         * the stream of the response is closed by the servlet container
+         * @throws IOException - the response could not be flushed
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        /**
+         * stores the completely written result in the cache
+         */
+        void commit() {
+            if (oMemoryCopy != null) {
+                oMemoryCache.put(sKey, new String(oMemoryCopy.toByteArray(), StandardCharsets.UTF_8));
+                oMemoryCopy = null;
+            }
+            if (oDiskCopy != null) {
+                Path oPath = getDiskDirectory().resolve(sKey + ".json");
+                try {
+                    oDiskCopy.close();
+                    oDiskCopy = null;
+                    Files.move(oTmpPath, oPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    oTmpPath = null;
+                } catch (IOException e) {
+                    LOG.info("Repository result could not be cached on disk " + oPath + ": " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * removes the copies of a result which was not committed
+         */
+        void discard() {
+            oMemoryCopy = null;
+            discardDiskCopy();
+        }
+
+        private void discardDiskCopy() {
+            try {
+                if (oDiskCopy != null) {
+                    oDiskCopy.close();
+                }
+                if (oTmpPath != null) {
+                    Files.deleteIfExists(oTmpPath);
+                }
+            } catch (IOException e) {
+                LOG.info("Temporary repository result " + oTmpPath + " could not be removed: " + e.getMessage());
+            }
+            oDiskCopy = null;
+            oTmpPath = null;
+        }
+    }
+}
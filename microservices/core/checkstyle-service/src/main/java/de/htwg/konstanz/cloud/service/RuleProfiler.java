@@ -0,0 +1,206 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.RuleCost;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Optional profiling of the single checks, e.g. to find the checks of the ruleset which slow down the analysis.
+    Every invocation of a check adds its cpu time to a counter of the current worker thread. After a java file
+    the counters are added to the analysis of the repository and to the totals of all analyses since the start of
+    the service. The profiling needs the in process engine, a forked checkstyle can't be profiled.
+ */
+@Component
+public class RuleProfiler {
+    private static final Logger LOG = LoggerFactory.getLogger(RuleProfiler.class);
+
+    /* true --> the checks of the in process engine are profiled, this costs some time for every invocation */
+    @Value("${app.config.profiling.enabled:false}")
+    private boolean bEnabled;
+
+    /* number of checks in the report of an analysis */
+    @Value("${app.config.profiling.top:20}")
+    private int nTopRules;
+
+    private final ThreadMXBean oThreadBean = ManagementFactory.getThreadMXBean();
+
+    /* false --> the jvm does not measure the cpu time of a thread, the wall clock time is used instead */
+    private boolean bCpuTime;
+
+    private final ConcurrentMap<String, Cost> oTotals = new ConcurrentHashMap<>();
+
+    private final AtomicLong lRuns = new AtomicLong();
+
+    /* check --> [cpu time, invocations] of the java file which is analyzed by the current thread */
+    private final ThreadLocal<Map<String, long[]>> oFileCosts = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * enables the measurement of the cpu time of threads
+     */
+    @PostConstruct
+    private void init() {//NOPMD
+        bCpuTime = oThreadBean.isCurrentThreadCpuTimeSupported();
+
+        if (bEnabled) {
+            try {
+                if (bCpuTime && !oThreadBean.isThreadCpuTimeEnabled()) {
+                    oThreadBean.setThreadCpuTimeEnabled(true);
+                }
+            } catch (UnsupportedOperationException e) {
+                bCpuTime = false;
+            }
+            LOG.info("Rule profiling enabled (" + (bCpuTime ? "cpu time" : "wall clock time") + ")");
+        }
+    }
+
+    /**
+     * checks if the checks should be profiled
+     * @return - Flag which indicates yes/no
+     */
+    boolean isEnabled() {
+        return bEnabled;
+    }
+
+    /**
+     * returns the current time of the clock of the profiler
+     * @return - cpu time of the current thread in nanoseconds, or the wall clock time if it is not supported
+     */
+    long now() {
+        return bCpuTime ? oThreadBean.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * adds an invocation of a check to the java file of the current thread
+     * @param sRule - name of the check
+     * @param lNanos - time of the invocation
+     */
+    void add(String sRule, long lNanos) {
+        long[] lCost = oFileCosts.get().computeIfAbsent(sRule, sKey -> new long[2]);
+        lCost[0] += lNanos;
+        lCost[1]++;
+    }
+
+    /**
+     * creates the profile of the analysis of a repository
+     * @return - empty profile, null if the profiling is disabled
+     */
+    Run createRun() {
+        if (!bEnabled) {
+            return null;
+        }
+        lRuns.incrementAndGet();
+
+        return new Run();
+    }
+
+    /**
+     * adds the costs of the java file of the current thread to the analysis and to the totals
+     * @param oRun - profile of the analysis, null --> only the totals
+     */
+    void flush(Run oRun) {
+        Map<String, long[]> oCosts = oFileCosts.get();
+
+        for (Map.Entry<String, long[]> oEntry : oCosts.entrySet()) {
+            long[] lCost = oEntry.getValue();
+            oTotals.computeIfAbsent(oEntry.getKey(), sKey -> new Cost()).add(lCost[0], lCost[1]);
+            if (oRun != null) {
+                oRun.oCosts.computeIfAbsent(oEntry.getKey(), sKey -> new Cost()).add(lCost[0], lCost[1]);
+            }
+        }
+        oCosts.clear();
+    }
+
+    /**
+     * returns the most expensive checks of all analyses since the start of the service
+     * @param nTop - number of checks, 0 or less --> the configured number
+     * @return - json object with the number of profiled analyses and the checks sorted by their cpu time
+     */
+    JSONObject getStatistics(int nTop) {
+        JSONObject oJson = new JSONObject();
+        JSONArray oRules = new JSONArray();
+
+        for (RuleCost oRuleCost : getTopRules(oTotals, nTop > 0 ? nTop : nTopRules)) {
+            JSONObject oRule = new JSONObject();
+            oRule.put("rule", oRuleCost.getRule());
+            oRule.put("cpuTime", TimeUnit.NANOSECONDS.toMillis(oRuleCost.getCpuTime()));
+            oRule.put("invocations", oRuleCost.getInvocations());
+            oRule.put("share", oRuleCost.getShare());
+            oRules.put(oRule);
+        }
+
+        oJson.put("enabled", bEnabled);
+        oJson.put("cpuTime", bCpuTime);
+        oJson.put("runs", lRuns.get());
+        oJson.put("profiledRules", oTotals.size());
+        oJson.put("rules", oRules);
+
+        return oJson;
+    }
+
+    /**
+     * sorts the checks by their cpu time
+     * @param oCosts - costs of all checks
+     * @param nTop - maximum number of checks
+     * @return - the most expensive checks with their share of the cpu time of all checks
+     */
+    private List<RuleCost> getTopRules(Map<String, Cost> oCosts, int nTop) {
+        List<RuleCost> lRuleCosts = new ArrayList<>();
+        long lTotalTime = 0;
+
+        for (Cost oCost : oCosts.values()) {
+            lTotalTime += oCost.lTime.sum();
+        }
+        for (Map.Entry<String, Cost> oEntry : oCosts.entrySet()) {
+            long lTime = oEntry.getValue().lTime.sum();
+            double dShare = lTotalTime == 0 ? 0 : Math.round(lTime * 1000.0 / lTotalTime) / 10.0;
+            lRuleCosts.add(new RuleCost(oEntry.getKey(), lTime, oEntry.getValue().lInvocations.sum(), dShare));
+        }
+        lRuleCosts.sort(Comparator.comparingLong(RuleCost::getCpuTime).reversed());
+
+        return lRuleCosts.size() > nTop ? new ArrayList<>(lRuleCosts.subList(0, nTop)) : lRuleCosts;
+    }
+
+    /**
+     * costs of the checks within the analysis of a single repository
+     */
+    class Run {
+        private final ConcurrentMap<String, Cost> oCosts = new ConcurrentHashMap<>();
+
+        /**
+         * returns the report of the analysis
+         * @return - the most expensive checks of the analysis
+         */
+        List<RuleCost> getTopRules() {
+            return RuleProfiler.this.getTopRules(oCosts, nTopRules);
+        }
+    }
+
+    private static class Cost {
+        private final LongAdder lTime = new LongAdder();
+
+        private final LongAdder lInvocations = new LongAdder();
+
+        void add(long lNanos, long lCount) {
+            lTime.add(lNanos);
+            lInvocations.add(lCount);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package de.htwg.konstanz.cloud.service;
+
+import java.io.IOException;
+
+/*
+    Thrown if the service has no free slot for another analysis. The client should retry the request later or
+    send it to another instance of the service.
+ */
+class ServiceBusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /* true --> the wait queue is full, false --> the request waited too long for a free slot */
+    private final boolean bQueueFull;
+
+    private final long lRetryAfterSeconds;
+
+    ServiceBusyException(String sMessage, boolean bQueueFull, long lRetryAfterSeconds) {
+        super(sMessage);
+        this.bQueueFull = bQueueFull;
+        this.lRetryAfterSeconds = lRetryAfterSeconds;
+    }
+
+    boolean isQueueFull() {
+        return bQueueFull;
+    }
+
+    long getRetryAfterSeconds() {
+        return lRetryAfterSeconds;
+    }
+}
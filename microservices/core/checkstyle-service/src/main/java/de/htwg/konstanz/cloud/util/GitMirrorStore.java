@@ -0,0 +1,387 @@
+package de.htwg.konstanz.cloud.util;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+    Keeps one bare mirror of every analyzed git repository on the local disk. Instead of cloning the whole
+    repository for every request, the mirror is only updated with a fetch. Concurrent requests of the same
+    repository share this fetch, the least recently used mirrors are removed if the store gets too big. The size
+    of a mirror is measured after its update, so a request doesn't walk through all mirrors.
+ */
+@Component
+public class GitMirrorStore {
+    private static final Logger LOG = LoggerFactory.getLogger(GitMirrorStore.class);
+
+    private final OperatingSystemCheck oOperatingSystemCheck = new OperatingSystemCheck();
+
+    /* local directory of all mirrors */
+    @Value("${app.config.git.mirrors.directory:mirrors}")
+    private String sMirrorDirectory;
+
+    /* tree = read the java files from the object database, checkout = write them into a local directory */
+    @Value("${app.config.git.mode:tree}")
+    private String sMode;
+
+    /* maximum size of all mirrors in megabytes */
+    @Value("${app.config.git.mirrors.maxsize:2048}")
+    private long lMaxSizeMb;
+
+    private final ConcurrentMap<String, Mirror> oMirrorMap = new ConcurrentHashMap<>();
+
+    /* sum of the sizes of all mirrors in bytes */
+    private final AtomicLong lTotalSize = new AtomicLong();
+
+    /* only one request removes mirrors at the same time */
+    private final AtomicBoolean bEvicting = new AtomicBoolean();
+
+    /**
+     * registers the mirrors of a previous run, so they can be updated and evicted as well
+     * @throws IOException - the directory of the mirrors could not be created
+     */
+    @PostConstruct
+    private void init() throws IOException {//NOPMD
+        File oMirrorDir = new File(sMirrorDirectory);
+        FileUtils.forceMkdir(oMirrorDir);
+
+        File[] oMirrors = oMirrorDir.listFiles();
+        if (oMirrors != null) {
+            for (File oMirror : oMirrors) {
+                if (oMirror.isDirectory()) {
+                    Mirror oExistingMirror = new Mirror(oMirror);
+                    oExistingMirror.lLastUsed = oMirror.lastModified();
+                    updateSize(oExistingMirror);
+                    oMirrorMap.put(oMirror.getName(), oExistingMirror);
+                }
+            }
+        }
+        LOG.info("Git mirror store: " + oMirrorMap.size() + " mirrors with " + lTotalSize.get() + " bytes in "
+                + oMirrorDir.getAbsolutePath());
+    }
+
+    /**
+     * updates the mirror of the given repository and writes the java files of its HEAD commit into a new local
+     * directory. The mirror is created on the first request of a repository
+     * @param gitRepo - HTTP-Link to Git-Repo
+     * @return - Array with localPath, Committimestamp and the id of the HEAD commit
+     * @throws IOException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    public String[] checkout(String gitRepo) throws GitAPIException, IOException {
+        String localDirectory = createLocalDirectoryName(gitRepo);
+        GitTree oTree = readHead(gitRepo);
+        File oTargetDirectory = new File(localDirectory);
+
+        FileUtils.forceMkdir(oTargetDirectory);
+        //empty directories are not stored by git, but the analysis checks if there is a src directory
+        for (String sRootDirectory : oTree.getRootDirectories()) {
+            FileUtils.forceMkdir(new File(oTargetDirectory, sRootDirectory));
+        }
+        for (Map.Entry<String, byte[]> oJavaFile : oTree.getJavaFiles().entrySet()) {
+            File oFile = new File(oTargetDirectory, oJavaFile.getKey());
+            FileUtils.forceMkdir(oFile.getParentFile());
+            Files.write(oFile.toPath(), oJavaFile.getValue());
+        }
+
+        /* Local Targetpath and Last Commit*/
+        return new String[]{localDirectory, oTree.getCommitTime(), oTree.getCommitId()};
+    }
+
+    /**
+     * updates the mirror of the given repository and reads the java files of its HEAD commit directly from the
+     * object database, so no working tree is written. The mirror is created on the first request of a repository
+     * @param gitRepo - HTTP-Link to Git-Repo
+     * @return - java files, Committimestamp and the id of the HEAD commit
+     * @throws IOException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    public GitTree readHead(String gitRepo) throws GitAPIException, IOException {
+        GitTree oTree;
+        Mirror oMirror = lockMirror(gitRepo);
+
+        try {
+            oTree = readHead(oMirror);
+        } finally {
+            oMirror.oLock.readLock().unlock();
+        }
+
+        evict(oMirror);
+
+        return oTree;
+    }
+
+    /**
+     * checks if the java files should be read from the object database instead of a local directory
+     * @return - Flag which indicates yes/no
+     */
+    public boolean isTreeMode() {
+        return "tree".equalsIgnoreCase(sMode);
+    }
+
+    /**
+     * builds the name of a new local directory for the analysis of a repository
+     * @param gitRepo - HTTP-Link to Git-Repo
+     * @return - local directory, e.g. repositories/name_1463412345678/
+     */
+    public String createLocalDirectoryName(String gitRepo) {
+        /* String Magic */
+        String directoryName = gitRepo.substring(gitRepo.lastIndexOf("/"),
+                gitRepo.length()).replace(".", "_");
+
+        return "repositories" + oOperatingSystemCheck.getOperatingSystemSeparator() + directoryName + "_"
+                + System.currentTimeMillis() + oOperatingSystemCheck.getOperatingSystemSeparator();
+    }
+
+    /**
+     * searches the mirror of a repository and updates it. The returned mirror is locked for reading, so it can't
+     * be updated or removed until the read lock is released
+     * @param gitRepo - HTTP-Link to Git-Repo
+     * @return - updated mirror
+     * @throws IOException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    private Mirror lockMirror(String gitRepo) throws GitAPIException, IOException {
+        //every fetch which starts after this point in time contains all commits of this request
+        long lRequestTime = System.nanoTime();
+
+        while (true) {
+            String sMirrorName = sha256(gitRepo.trim()) + ".git";
+            Mirror oMirror = oMirrorMap.computeIfAbsent(sMirrorName,
+                    sName -> new Mirror(new File(sMirrorDirectory, sName)));
+
+            oMirror.oLock.writeLock().lock();
+            try {
+                //the mirror was removed while this request was waiting --> register it again
+                if (oMirror.bEvicted) {
+                    continue;
+                }
+
+                //another request has fetched the repository while this one was waiting --> nothing to do
+                if (!oMirror.bFetched || oMirror.lLastFetch - lRequestTime < 0) {
+                    long lFetchTime = System.nanoTime();
+                    try {
+                        update(gitRepo, oMirror);
+                    } finally {
+                        updateSize(oMirror);
+                    }
+                    oMirror.lLastFetch = lFetchTime;
+                    oMirror.bFetched = true;
+                }
+                oMirror.lLastUsed = System.currentTimeMillis();
+
+                //downgrade to a read lock, so other requests of the same repository can read it at the same time
+                oMirror.oLock.readLock().lock();
+            } finally {
+                oMirror.oLock.writeLock().unlock();
+            }
+
+            return oMirror;
+        }
+    }
+
+    /**
+     * clones a new bare mirror or fetches all branches of an existing one
+     * @param gitRepo - HTTP-Link to Git-Repo
+     * @param oMirror - mirror of the repository
+     * @throws IOException - throw for the handling in CheckstyleService
+     * @throws GitAPIException - throw for the handling in CheckstyleService
+     */
+    private void update(String gitRepo, Mirror oMirror) throws GitAPIException, IOException {
+        org.eclipse.jgit.api.Git git = null;
+
+        try {
+            if (oMirror.oDirectory.exists()) {
+                LOG.info("Fetch mirror of " + gitRepo);
+                try {
+                    git = org.eclipse.jgit.api.Git.open(oMirror.oDirectory);
+                    git.fetch().setRemote(gitRepo).setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*")).call();
+                    return;
+                } catch (RepositoryNotFoundException e) {
+                    //broken mirror, e.g. an aborted clone --> clone it again
+                    LOG.info("Mirror " + oMirror.oDirectory + " is broken: " + e.getMessage());
+                    FileUtils.deleteDirectory(oMirror.oDirectory);
+                }
+            }
+
+            LOG.info("Clone mirror of " + gitRepo);
+            try {
+                git = org.eclipse.jgit.api.Git.cloneRepository().setURI(gitRepo).setBare(true)
+                        .setDirectory(oMirror.oDirectory).call();
+            } catch (GitAPIException e) {
+                FileUtils.deleteDirectory(oMirror.oDirectory);
+                throw e;
+            }
+        } finally {
+            if (git != null) {
+                git.getRepository().close();
+            }
+        }
+    }
+
+    /**
+     * reads all java files of the HEAD commit. Other files are not needed for the analysis, so they stay in
+     * the mirror
+     * @param oMirror - mirror of the repository
+     * @return - java files, Committimestamp and the id of the HEAD commit
+     * @throws IOException - throw for the handling in CheckstyleService
+     */
+    private GitTree readHead(Mirror oMirror) throws IOException {
+        Repository oRepository = org.eclipse.jgit.api.Git.open(oMirror.oDirectory).getRepository();
+
+        try {
+            ObjectId oHead = oRepository.resolve(Constants.HEAD);
+            if (oHead == null) {
+                throw new IOException("Repository has no HEAD commit: " + oMirror.oDirectory);
+            }
+
+            RevWalk oRevWalk = new RevWalk(oRepository);
+            RevCommit oCommit = oRevWalk.parseCommit(oHead);
+            GitTree oTree = new GitTree(String.valueOf(oCommit.getCommitTime()), oHead.getName());
+            TreeWalk oTreeWalk = new TreeWalk(oRepository);
+            oTreeWalk.addTree(oCommit.getTree());
+
+            while (oTreeWalk.next()) {
+                if (oTreeWalk.isSubtree()) {
+                    if (oTreeWalk.getDepth() == 0) {
+                        oTree.getRootDirectories().add(oTreeWalk.getPathString());
+                    }
+                    oTreeWalk.enterSubtree();
+                } else if (oTreeWalk.getPathString().endsWith(".java")
+                        && (oTreeWalk.getFileMode(0).getBits() & FileMode.TYPE_MASK) == FileMode.TYPE_FILE) {
+                    oTree.getJavaFiles().put(oTreeWalk.getPathString(),
+                            oRepository.open(oTreeWalk.getObjectId(0)).getBytes());
+                }
+            }
+            oTreeWalk.release();
+            oRevWalk.release();
+
+            return oTree;
+        } finally {
+            oRepository.close();
+        }
+    }
+
+    /**
+     * measures the size of a mirror after its update, only the directory of this mirror is walked
+     * @param oMirror - mirror which is locked for writing or not registered yet
+     */
+    private void updateSize(Mirror oMirror) {
+        long lSize = oMirror.oDirectory.exists() ? FileUtils.sizeOfDirectory(oMirror.oDirectory) : 0;
+
+        lTotalSize.addAndGet(lSize - oMirror.lSize);
+        oMirror.lSize = lSize;
+    }
+
+    /**
+     * removes the least recently used mirrors until the size of the store is smaller than the maximum size.
+     * A mirror which is used by another request is skipped. The store only grows by the update of a mirror,
+     * so nothing is done as long as the tracked size is smaller than the maximum size
+     * @param oCurrentMirror - mirror of the actual request, it will never be removed
+     */
+    private void evict(Mirror oCurrentMirror) {
+        long lMaxSize = lMaxSizeMb * 1024 * 1024;
+
+        if (lTotalSize.get() <= lMaxSize || !bEvicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<Mirror> lMirrors = new ArrayList<>(oMirrorMap.values());
+            lMirrors.sort((oFirst, oSecond) -> Long.compare(oFirst.lLastUsed, oSecond.lLastUsed));
+            for (Mirror oMirror : lMirrors) {
+                if (lTotalSize.get() <= lMaxSize) {
+                    break;
+                }
+                if (oMirror != oCurrentMirror && oMirror.oLock.writeLock().tryLock()) {
+                    try {
+                        LOG.info("Remove mirror " + oMirror.oDirectory + " (" + oMirror.lSize + " bytes)");
+
+                        FileUtils.deleteDirectory(oMirror.oDirectory);
+                        oMirror.bEvicted = true;
+                        oMirrorMap.remove(oMirror.oDirectory.getName(), oMirror);
+                        lTotalSize.addAndGet(-oMirror.lSize);
+                        oMirror.lSize = 0;
+                    } catch (IOException e) {
+                        LOG.info("Mirror " + oMirror.oDirectory + " could not be removed: " + e.getMessage());
+                    } finally {
+                        oMirror.oLock.writeLock().unlock();
+                    }
+                }
+            }
+        } finally {
+            bEvicting.set(false);
+        }
+    }
+
+    /**
+     * calculates the SHA-256 hash of the repository url, it is used as directory name of the mirror
+     * @param sValue - value that should be hashed
+     * @return - hash as hex string
+     */
+    private String sha256(String sValue) {
+        try {
+            StringBuilder sHash = new StringBuilder();
+            for (byte bDigest : MessageDigest.getInstance("SHA-256").digest(sValue.getBytes(StandardCharsets.UTF_8))) {
+                sHash.append(String.format("%02x", bDigest));
+            }
+            return sHash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * bare repository of a remote url with its lock
+     */
+    private static class Mirror {
+        private final File oDirectory;
+
+        /* fetch and remove --> write lock, read the files --> read lock */
+        private final ReentrantReadWriteLock oLock = new ReentrantReadWriteLock();
+
+        private volatile long lLastUsed;
+
+        /* size in bytes after the last update */
+        private volatile long lSize;
+
+        private long lLastFetch;
+
+        private boolean bFetched;
+
+        private boolean bEvicted;
+
+        Mirror(File oDirectory) {
+            this.oDirectory = oDirectory;
+        }
+    }
+}
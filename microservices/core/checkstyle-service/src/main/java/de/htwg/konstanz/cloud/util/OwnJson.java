@@ -1,17 +1,26 @@
 package de.htwg.konstanz.cloud.util;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import de.htwg.konstanz.cloud.model.Class;
 import de.htwg.konstanz.cloud.model.Error;
-import de.htwg.konstanz.cloud.model.OwnJsonProperties;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import de.htwg.konstanz.cloud.model.RuleCost;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /*
     To provide easy access to generated data objects, this class builds a JSON file,
@@ -21,6 +30,10 @@ import java.util.List;
 public class OwnJson {
     private static final Logger LOG = LoggerFactory.getLogger(OwnJson.class);
 
+    /* the stream of the response must not be closed by the generator */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     private final Util oUtil = new Util();
 
     /**
@@ -59,37 +72,7 @@ public class OwnJson {
     }
 
     /**
-     * counts all founded severities
-     * @param lClassList - list with all evaluated java classes
-     * @param oJsonRoot - main node of the json file
-     */
-    private void getClassSeverities(List<Class> lClassList, JSONObject oJsonRoot) {
-        int nTmpErrorCount = 0;
-        int nTmpWarningCount = 0;
-        int nTmpIgnoreCounter = 0;
-
-        /* get severities of the whole project files */
-        for (Class oTmpClass : lClassList) {
-            if(oTmpClass.getErrorCount() == 1) {
-                System.out.println(oTmpClass.getFullPath());
-            }
-            nTmpErrorCount += oTmpClass.getErrorCount();
-            nTmpWarningCount += oTmpClass.getWarningCount();
-            nTmpIgnoreCounter += oTmpClass.getIgnoreCount();
-        }
-
-        //adds all severitys to the json Root file (first level of the json object)
-        oJsonRoot.put("numberOfErrors", nTmpErrorCount);
-        LOG.info("Number of Errors: " + nTmpErrorCount);
-        oJsonRoot.put("numberOfWarnings", nTmpWarningCount);
-        LOG.info("Number of Warnings: " + nTmpWarningCount);
-        oJsonRoot.put("numberOfIgnores", nTmpIgnoreCounter);
-        LOG.info("Number of Ignores: " + nTmpIgnoreCounter);
-    }
-
-
-    /**
-     *  buildJson provides  the main functionality to generate a customized JSON File.
+     *  writeJson provides  the main functionality to generate a customized JSON File.
      *  following the structure of our JSON is shown:
      *
      *    "numberOfIgnores": 0,                              <-- some general json information
@@ -117,166 +100,329 @@ public class OwnJson {
      *   "repository": "https://github.com/MaxMustermann/MusterAufgabe/",
      *  "numberOfErrors": 0
      *
+     * The document is written directly to the given stream while the classes are iterated, so no json tree
+     * of the whole repository is built in memory. Only exercises with founded problems are written.
+     *
+     * @param oOut - stream which receives the json document, e.g. the response of the request
      * @param sRepo - svn/git repository path
      * @param lStartTime - start time of the execution
      * @param sLastRepoUpdateTime - last time the svn/git repository was updated
      * @param lClassList - list with all evaluated java classes
-     * @return - a json object consisting of all analyzed checkstyle problems
+     * @param oTimings - milliseconds of the phases of the analysis, null --> no timings object
+     * @param lRuleProfile - most expensive rules of the analysis, null --> no rule profile
+     * @throws IOException - the json document could not be written
      */
-    public JSONObject buildJson(String sRepo, long lStartTime, String sLastRepoUpdateTime, List<Class> lClassList) {
-        //this object contains different attributes for which were needed for the functionality
-        OwnJsonProperties oOwnJsonProperties = new OwnJsonProperties();
-        boolean bExerciseChange = false;
-        boolean bLastRun = false;
-
-		/* add general information to the JSON object - in the first level */
-        oOwnJsonProperties.getOJsonRoot().put("repository", sRepo);
-        getClassSeverities(lClassList, oOwnJsonProperties.getOJsonRoot());
-
-        //adds a timestamp when the repository was updated a last
-        oOwnJsonProperties.getOJsonRoot().put("lastRepoUpdateTime", sLastRepoUpdateTime);
-        LOG.info("Last Update Time: " + sLastRepoUpdateTime);
-
-		/* iterate through ALL classes, which were founded by checkstyle */
-        for (int nClassPos = 0; nClassPos < lClassList.size(); nClassPos++) {
-            //checks if there is more than one exercise
-            if (bExerciseChange) {
-                nClassPos--;
-                bExerciseChange = false;
-            }
-
-            String sExcerciseName = lClassList.get(nClassPos).getsExcerciseName();
-
-			// checks if its the first run (TmpName is empty) or if the name of the last analyzed exercise is
-            // the same as the actual. It is needed for a valid json representation.
-            if (sExcerciseName.equals(oOwnJsonProperties.getSTmpExcerciseName())
-                    || oOwnJsonProperties.getSTmpExcerciseName().equals("")) {
-                storeJsonInformation(lClassList, oOwnJsonProperties, bLastRun, nClassPos, sExcerciseName);
-            }
-            else {
-                // the last exercise is different through the actual
-                // add the exercise and all related classes and related errors through the Json array for all exercises
-                // decrements the class position with the flag bExerciseChange
-                // to even check the exercise which did not correspond
-                if (lClassList.get(nClassPos).getErrorList().size() > 0) {
-                    oOwnJsonProperties.getOJsonExercise().put(oOwnJsonProperties.getSTmpExcerciseName(),
-                                                                    oOwnJsonProperties.getLJsonClasses());
-                    //puts the exercise object to the array for all of them
-                    oOwnJsonProperties.getLJsonExercises().put(oOwnJsonProperties.getOJsonExercise());
-                    //initialize new objects for the next exercise
-                    oOwnJsonProperties.setOJsonExercise(new JSONObject());
-                    oOwnJsonProperties.setLJsonClasses(new JSONArray());
-                    oOwnJsonProperties.setSTmpExcerciseName(lClassList.get(nClassPos).getsExcerciseName());
-                    bExerciseChange = true;
-
-				    /* decrement the position to get the last class from the list */
-                    if (nClassPos + 1 == lClassList.size()) {
-                        nClassPos--;
-                        bExerciseChange = false;
-                        bLastRun = true;
+    public void writeJson(OutputStream oOut, String sRepo, long lStartTime, String sLastRepoUpdateTime,
+                          List<Class> lClassList, Map<String, Long> oTimings, List<RuleCost> lRuleProfile)
+            throws IOException {
+        String sTmpExerciseName = null;
+
+        try (JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8)) {
+            oGenerator.writeStartObject();
+
+            /* add general information to the JSON object - in the first level */
+            oGenerator.writeStringField("repository", sRepo);
+            writeClassSeverities(lClassList, oGenerator);
+
+            //adds a timestamp when the repository was updated a last
+            oGenerator.writeStringField("lastRepoUpdateTime", sLastRepoUpdateTime);
+            LOG.info("Last Update Time: " + sLastRepoUpdateTime);
+
+            oGenerator.writeArrayFieldStart("assignments");
+            /* iterate through ALL classes, which were founded by checkstyle */
+            for (Class oClass : lClassList) {
+                //only java files with problems are added to the json file
+                if (!oClass.getErrorList().isEmpty()) {
+                    String sExerciseName = oClass.getsExcerciseName();
+
+                    // the last exercise is different through the actual --> close the array of the last exercise
+                    // and start a new one
+                    if (!sExerciseName.equals(sTmpExerciseName)) {
+                        if (sTmpExerciseName != null) {
+                            endExercise(oGenerator);
+                        }
+                        oGenerator.writeStartObject();
+                        oGenerator.writeArrayFieldStart(sExerciseName);
+                        sTmpExerciseName = sExerciseName;
                     }
+
+                    writeClass(oClass, oGenerator);
                 }
             }
-        }
-
-        //calculates the time which were needed to execute the checkstyle service
-        long lEndTime = System.currentTimeMillis();
-        long lTotalTime = (lEndTime - lStartTime);
+            if (sTmpExerciseName != null) {
+                endExercise(oGenerator);
+            }
+            oGenerator.writeEndArray();
+            writeTimings(oTimings, oGenerator);
+            writeRuleProfile(lRuleProfile, oGenerator);
 
-        oOwnJsonProperties.getOJsonRoot().put("totalExpendedTime", lTotalTime);
-        LOG.info("Total expended time: " + lTotalTime);
-        //add all evaluated exercises to the main json object
-        oOwnJsonProperties.getOJsonRoot().put("assignments", oOwnJsonProperties.getLJsonExercises());
+            //calculates the time which were needed to execute the checkstyle service
+            long lEndTime = System.currentTimeMillis();
+            long lTotalTime = (lEndTime - lStartTime);
 
-        return oOwnJsonProperties.getOJsonRoot();
+            oGenerator.writeNumberField("totalExpendedTime", lTotalTime);
+            LOG.info("Total expended time: " + lTotalTime);
+            oGenerator.writeEndObject();
+        }
     }
 
     /**
-     * adds information of the pmd validation to the json file.
-     * @param lClassList - list with all evaluated java classes
-     * @param oOwnJsonProperties - object with important json attributes
-     * @param bLastRun - is the actual iterations the last one?
-     * @param nClassPos - actual position in the class list
-     * @param sExcerciseName - name of the actual considered class object
+     * adds the durations of the phases of the analysis
+     * @param oTimings - milliseconds of each phase, null --> no timings object
+     * @param oGenerator - generator of the json file, positioned in the main node
+     * @throws IOException - the json document could not be written
      */
-    private void storeJsonInformation(List<Class> lClassList, OwnJsonProperties oOwnJsonProperties, boolean bLastRun,
-                                      int nClassPos, String sExcerciseName) {
-        /* if errors where founded, a new exercise name is returned by analyzeErrors */
-        oOwnJsonProperties.setSTmpExcerciseName(analyzeErrors(lClassList, lClassList.get(nClassPos).getErrorList(),
-                oOwnJsonProperties.getLJsonClasses(), oOwnJsonProperties.getSTmpExcerciseName(),
-                                                                            nClassPos, sExcerciseName));
-
-
-        /* Condition for the last run if different exercises were founded */
-        if (bLastRun) {
-            oOwnJsonProperties.getOJsonExercise().put(oOwnJsonProperties.getSTmpExcerciseName(),
-                                                            oOwnJsonProperties.getLJsonClasses());
-            oOwnJsonProperties.getLJsonExercises().put(oOwnJsonProperties.getOJsonExercise());
+    private void writeTimings(Map<String, Long> oTimings, JsonGenerator oGenerator) throws IOException {
+        if (oTimings != null) {
+            oGenerator.writeObjectFieldStart("timings");
+            for (Map.Entry<String, Long> oEntry : oTimings.entrySet()) {
+                oGenerator.writeNumberField(oEntry.getKey(), oEntry.getValue());
+            }
+            oGenerator.writeEndObject();
         }
+    }
 
-        /* Condition for the last run and if there was just one exercise with various exercises */
-        if (nClassPos + 1 == lClassList.size()) {
-            oOwnJsonProperties.getOJsonExercise().put(oOwnJsonProperties.getSTmpExcerciseName(),
-                                                            oOwnJsonProperties.getLJsonClasses());
-            oOwnJsonProperties.getLJsonExercises().put(oOwnJsonProperties.getOJsonExercise());
+    /**
+     * adds the cpu time and the invocations of the most expensive rules of the analysis
+     * @param lRuleProfile - rules sorted by their cpu time, null --> no rule profile
+     * @param oGenerator - generator of the json file, positioned in the main node
+     * @throws IOException - the json document could not be written
+     */
+    private void writeRuleProfile(List<RuleCost> lRuleProfile, JsonGenerator oGenerator) throws IOException {
+        if (lRuleProfile != null) {
+            oGenerator.writeArrayFieldStart("ruleProfile");
+            for (RuleCost oRuleCost : lRuleProfile) {
+                oGenerator.writeStartObject();
+                oGenerator.writeStringField("rule", oRuleCost.getRule());
+                oGenerator.writeNumberField("cpuTime", TimeUnit.NANOSECONDS.toMillis(oRuleCost.getCpuTime()));
+                oGenerator.writeNumberField("invocations", oRuleCost.getInvocations());
+                oGenerator.writeNumberField("share", oRuleCost.getShare());
+                oGenerator.writeEndObject();
+            }
+            oGenerator.writeEndArray();
         }
     }
 
     /**
-     * all founded errors of a java file where analyzed be this method. It adds all attribute-value pairs to an
-     * json object (constitutes an error) which will be added to an array of Json Objects which represents a java class.
+     * counts all founded severities
      * @param lClassList - list with all evaluated java classes
-     * @param lTmpErrorList - a list which contains errors of a class object
-     * @param lJsonClasses - json object array which stores all class objects that were evaluated and contains errors
-     * @param sTmpExerciseName - name of the class object before
-     * @param nClassPos - actual position in the class list
-     * @param sExerciseName - name of the actual considered class object
-     * @return - exercise name of the checked file
+     * @param oGenerator - generator of the json file, positioned in the main node
+     * @throws IOException - the json document could not be written
      */
-    private String analyzeErrors(List<Class> lClassList, List<Error> lTmpErrorList,
-                                 JSONArray lJsonClasses, String sTmpExerciseName, int nClassPos, String sExerciseName) {
-        String sLocalExerciseName = sTmpExerciseName;
-        JSONArray lJsonErrors = new JSONArray();
-        JSONObject oJsonClass = new JSONObject();
+    private void writeClassSeverities(List<Class> lClassList, JsonGenerator oGenerator) throws IOException {
+        int nTmpErrorCount = 0;
+        int nTmpWarningCount = 0;
+        int nTmpIgnoreCounter = 0;
 
+        /* get severities of the whole project files */
+        for (Class oTmpClass : lClassList) {
+            nTmpErrorCount += oTmpClass.getErrorCount();
+            nTmpWarningCount += oTmpClass.getWarningCount();
+            nTmpIgnoreCounter += oTmpClass.getIgnoreCount();
+        }
+
+        //adds all severitys to the json Root file (first level of the json object)
+        oGenerator.writeNumberField("numberOfErrors", nTmpErrorCount);
+        LOG.info("Number of Errors: " + nTmpErrorCount);
+        oGenerator.writeNumberField("numberOfWarnings", nTmpWarningCount);
+        LOG.info("Number of Warnings: " + nTmpWarningCount);
+        oGenerator.writeNumberField("numberOfIgnores", nTmpIgnoreCounter);
+        LOG.info("Number of Ignores: " + nTmpIgnoreCounter);
+    }
+
+    /**
+     * closes the array of the actual exercise and the object which contains it
+     * @param oGenerator - generator of the json file
+     * @throws IOException - the json document could not be written
+     */
+    private void endExercise(JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeEndArray();
+        oGenerator.writeEndObject();
+    }
+
+    /**
+     * all founded errors of a java file where written by this method. Every error is written as an json object
+     * with all attribute-value pairs into the array of the java class.
+     * @param oClass - evaluated java class with at least one error
+     * @param oGenerator - generator of the json file, positioned in the array of the exercise
+     * @throws IOException - the json document could not be written
+     */
+    private void writeClass(Class oClass, JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeStartObject();
+        writeClassFields(oClass, oGenerator);
+        oGenerator.writeEndObject();
+    }
+
+    /**
+     * writes the path, the severities and the errors of a java class into the actual json object
+     * @param oClass - evaluated java class
+     * @param oGenerator - generator of the json file, positioned in the object of the java class
+     * @throws IOException - the json document could not be written
+     */
+    private void writeClassFields(Class oClass, JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeStringField("filepath", oUtil.removeUnnecessaryPathParts(oClass.getFullPath()));
+        //set the severities for the represented "java file"
+        oGenerator.writeNumberField("numberOfErrors", oClass.getErrorCount());
+        oGenerator.writeNumberField("numberOfWarnings", oClass.getWarningCount());
+        oGenerator.writeNumberField("numberOfIgnores", oClass.getIgnoreCount());
+
+        oGenerator.writeArrayFieldStart("errors");
         /* iterate through all Errors */
-        for (Error oError : lTmpErrorList) {
+        for (Error oError : oClass.getErrorList()) {
             //get all attribute-value pairs of the founded error object
-            JSONObject oJsonError = new JSONObject();
-
-            oJsonError.put("line", Integer.toString(oError.getErrorAtLine()));
-            oJsonError.put("column", Integer.toString(oError.getColumn()));
-            oJsonError.put("severity", oError.getSeverity());
-            oJsonError.put("message", oError.getMessage());
-            oJsonError.put("source", oError.getSource());
-            //add it to the error list of a represented java file
-            lJsonErrors.put(oJsonError);
+            oGenerator.writeStartObject();
+            oGenerator.writeStringField("line", Integer.toString(oError.getErrorAtLine()));
+            oGenerator.writeStringField("column", Integer.toString(oError.getColumn()));
+            oGenerator.writeStringField("severity", oError.getSeverity());
+            oGenerator.writeStringField("message", oError.getMessage());
+            oGenerator.writeStringField("source", oError.getSource());
+            oGenerator.writeEndObject();
         }
+        oGenerator.writeEndArray();
+    }
+
+    /**
+     * writes a single json record of a progressive result (newline delimited json). Every record has a type:
+     *
+     *    {"type":"file","exercise":"Aufgabe10","filepath":"Aufgabe10\\Aufgabe10.java","numberOfErrors":0,...}
+     *    {"type":"summary","repository":"https://github.com/...","numberOfErrors":0,...,"numberOfFiles":12}
+     *    {"type":"error","message":"..."}
+     *
+     * @param oOut - stream of the response
+     * @param oClass - analyzed java class, also without problems
+     * @throws IOException - the record could not be written
+     */
+    public void writeClassRecord(OutputStream oOut, Class oClass) throws IOException {
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "file");
+        oGenerator.writeStringField("exercise", oClass.getsExcerciseName());
+        writeClassFields(oClass, oGenerator);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
+    }
+
+    /**
+     * writes the last record of a progressive result with the totals of the whole repository
+     * @param oOut - stream of the response
+     * @param sRepo - svn/git repository path
+     * @param lStartTime - start time of the execution
+     * @param sLastRepoUpdateTime - last time the svn/git repository was updated
+     * @param lClassList - list with all evaluated java classes
+     * @param oTimings - milliseconds of the phases of the analysis, null --> no timings object
+     * @param lRuleProfile - most expensive rules of the analysis, null --> no rule profile
+     * @throws IOException - the record could not be written
+     */
+    public void writeSummaryRecord(OutputStream oOut, String sRepo, long lStartTime, String sLastRepoUpdateTime,
+                                   List<Class> lClassList, Map<String, Long> oTimings, List<RuleCost> lRuleProfile)
+            throws IOException {
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "summary");
+        oGenerator.writeStringField("repository", sRepo);
+        writeClassSeverities(lClassList, oGenerator);
+        oGenerator.writeStringField("lastRepoUpdateTime", sLastRepoUpdateTime);
+        oGenerator.writeNumberField("totalExpendedTime", System.currentTimeMillis() - lStartTime);
+        oGenerator.writeNumberField("numberOfFiles", lClassList.size());
+        oGenerator.writeBooleanField("cached", false);
+        writeTimings(oTimings, oGenerator);
+        writeRuleProfile(lRuleProfile, oGenerator);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
+    }
+
+    /**
+     * writes a failure of a progressive result, the http status was already sent
+     * @param oOut - stream of the response
+     * @param sMessage - message of the failure
+     * @throws IOException - the record could not be written
+     */
+    public void writeErrorRecord(OutputStream oOut, String sMessage) throws IOException {
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "error");
+        oGenerator.writeStringField("message", sMessage);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
+    }
+
+    /**
+     * converts a stored json document into the records of a progressive result. The document is parsed as
+     * stream, so only a single java class is in memory. A stored document only contains java classes with
+     * problems
+     * @param oDocument - json document, written by writeJson
+     * @param oOut - stream of the response
+     * @throws IOException - the document is not readable or the records could not be written
+     */
+    public void writeRecords(InputStream oDocument, OutputStream oOut) throws IOException {
+        Map<String, Object> oSummary = new LinkedHashMap<>();
+        int nFileCount = 0;
+
+        try (JsonParser oParser = JSON_FACTORY.createParser(oDocument)) {
+            if (oParser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Stored json result is not a json object");
+            }
 
-        //only if errors are founded the results should be added to the whole json file
-        if (lJsonErrors.length() > 0) {
-            sLocalExerciseName = sExerciseName;
-            String sFilePath = oUtil.removeUnnecessaryPathParts(lClassList.get(nClassPos).getFullPath());
-            oJsonClass.put("filepath", sFilePath);
-            oJsonClass.put("errors", lJsonErrors);
-            //set the severities for the represented "java file"
-            setSeverityCounters(oJsonClass, nClassPos, lClassList);
-            //holds all json objects that represent java classes
-            lJsonClasses.put(oJsonClass);
+            while (oParser.nextToken() == JsonToken.FIELD_NAME) {
+                String sField = oParser.getCurrentName();
+                JsonToken oToken = oParser.nextToken();
+
+                if ("assignments".equals(sField) && oToken == JsonToken.START_ARRAY) {
+                    // [ {"exercise": [ {class}, ... ]}, ... ]
+                    while (oParser.nextToken() == JsonToken.START_OBJECT) {
+                        while (oParser.nextToken() == JsonToken.FIELD_NAME) {
+                            String sExerciseName = oParser.getCurrentName();
+                            oParser.nextToken();
+
+                            while (oParser.nextToken() == JsonToken.START_OBJECT) {
+                                JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+                                oGenerator.writeStartObject();
+                                oGenerator.writeStringField("type", "file");
+                                oGenerator.writeStringField("exercise", sExerciseName);
+                                //copies every field of the java class with its value
+                                while (oParser.nextToken() == JsonToken.FIELD_NAME) {
+                                    oGenerator.copyCurrentStructure(oParser);
+                                }
+                                oGenerator.writeEndObject();
+                                endRecord(oGenerator);
+                                nFileCount++;
+                            }
+                        }
+                    }
+                } else if (oToken.isNumeric()) {
+                    oSummary.put(sField, oParser.getLongValue());
+                } else if (oToken.isScalarValue()) {
+                    oSummary.put(sField, oParser.getText());
+                } else {
+                    oParser.skipChildren();
+                }
+            }
         }
 
-        return sLocalExerciseName;
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "summary");
+        for (Map.Entry<String, Object> oEntry : oSummary.entrySet()) {
+            if (oEntry.getValue() instanceof Long) {
+                oGenerator.writeNumberField(oEntry.getKey(), (Long) oEntry.getValue());
+            } else {
+                oGenerator.writeStringField(oEntry.getKey(), (String) oEntry.getValue());
+            }
+        }
+        oGenerator.writeNumberField("numberOfFiles", nFileCount);
+        oGenerator.writeBooleanField("cached", true);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
     }
 
     /**
-     * add all errors to a Java Class file, so that each file shows up different error counters
-     * @param oJsonClass - json object which represents a java class
-     * @param nClassPos -  actual pos of the class
-     * @param lClassList - list with all evaluated java classes
+     * finishes a record with a line break and sends it to the client immediately
+     * @param oGenerator - generator of the record
+     * @throws IOException - the record could not be written
      */
-    private void setSeverityCounters(JSONObject oJsonClass, int nClassPos, List<Class> lClassList) {
-        oJsonClass.put("numberOfErrors", lClassList.get(nClassPos).getErrorCount());
-        oJsonClass.put("numberOfWarnings", lClassList.get(nClassPos).getWarningCount());
-        oJsonClass.put("numberOfIgnores", lClassList.get(nClassPos).getIgnoreCount());
+    private void endRecord(JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeRaw('\n');
+        //the generator flushes the stream of the response as well
+        oGenerator.close();
     }
 }
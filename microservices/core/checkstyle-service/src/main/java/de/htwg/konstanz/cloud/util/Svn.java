@@ -3,41 +3,127 @@ package de.htwg.konstanz.cloud.util;
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
-import javax.swing.text.BadLocationException;
-import javax.swing.text.html.HTML;
-import javax.swing.text.html.HTMLDocument;
-import javax.swing.text.html.HTMLEditorKit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+@Component
 public class Svn {
     /*
     Actually the Checkout from Subversion should be realized with the LIB svnkit but these Lib wasn't able to connect
     to the Server because of Deprecated Methods --> The other possibility was to perform an CMD-Command and checkout
     the Repository. That solution wont work anyway because the Command dont determine because of Java
     For this Reason the following Workaround is developed:
+    The HTML listing of every directory is crawled and all files are downloaded. Listings and downloads are
+    executed by a shared pool of workers, the number of parallel requests to the same svn server is limited.
+    Every repository has a persistent local copy with the ETags of its files and directories, so a later
+    checkout only downloads the changed files. Each analysis gets its own snapshot of this copy.
      */
     private static final Logger LOG = LoggerFactory.getLogger(Svn.class);
 
+    /* href attribute of a link within the HTML listing of a directory */
+    private static final Pattern HREF_PATTERN = Pattern.compile("<a\\s[^>]*href\\s*=\\s*\"([^\"]*)\"",
+            Pattern.CASE_INSENSITIVE);
+
+    /* ETag of mod_dav_svn, e.g. W/"42//trunk/Aufgabe1" --> last changed revision 42 */
+    private static final Pattern ETAG_REVISION_PATTERN = Pattern.compile("\"(\\d+)/");
+
+    /* title of the HTML listing, e.g. <title>repo - Revision 42: /</title> */
+    private static final Pattern TITLE_REVISION_PATTERN = Pattern.compile("Revision (\\d+):");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* key of a directory within the ETag manifest */
+    private static final String DIRECTORY_SUFFIX = "/";
+
+    /* number of workers for all listings and downloads */
+    @Value("${app.config.svn.threads:16}")
+    private int nThreads;
+
+    /* maximum number of parallel requests to the same svn server */
+    @Value("${app.config.svn.concurrency:4}")
+    private int nHostConcurrency;
+
+    /* local directory of the persistent copies */
+    @Value("${app.config.svn.mirrors.directory:svn-mirrors}")
+    private String sMirrorDirectory;
+
+    private ExecutorService oExecutor;
+
+    private final ConcurrentMap<String, Semaphore> oHostPermits = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ReentrantLock> oCopyLocks = new ConcurrentHashMap<>();
+
     private String sFileSeparator = "";
 
+    /**
+     * starts the workers of the crawler
+     */
+    @PostConstruct
+    private void init() {//NOPMD
+        sFileSeparator = new OperatingSystemCheck().getOperatingSystemSeparator();
+
+        AtomicInteger nThreadCount = new AtomicInteger();
+        oExecutor = Executors.newFixedThreadPool(nThreads, oRunnable -> {
+            Thread oThread = new Thread(oRunnable, "svn-worker-" + nThreadCount.incrementAndGet());
+            oThread.setDaemon(true);
+            return oThread;
+        });
+    }
+
+    /**
+     * stops all workers when the service shuts down
+     */
+    @PreDestroy
+    private void destroy() {//NOPMD
+        oExecutor.shutdownNow();
+    }
+
     /**
      * Logic to Store the SVN-Repo locally
      * @param svnLink - HTTP-Link to SVN-Repository
-     * @return - Path to the Local Checkout
+     * @return - Array with the Path to the Local Checkout and the last changed revision
      * @throws IOException - throw for the handling in CheckstyleService
-     * @throws BadLocationException - throw for the handling in CheckstyleService
      */
-    public String downloadSvnRepo(String svnLink) throws IOException, BadLocationException {
-        OperatingSystemCheck oOperatingSystemCheck = new OperatingSystemCheck();
-        sFileSeparator = oOperatingSystemCheck.getOperatingSystemSeparator();
+    public String[] downloadSvnRepo(String svnLink) throws IOException {
         //Parameters to access svn
         String local = "";
+        String sRevision = "";
         String name = System.getenv("SVN_USER");
         String password = System.getenv("SVN_PASSWORD");
         File dir = new File("repositories");
@@ -60,17 +146,44 @@ public class Svn {
 
             local = local + parts[parts.length - 1];
             local = "repositories" + sFileSeparator + local + "_" + System.currentTimeMillis() + sFileSeparator;
-            //Create Repo-Directory
-            if (!new File(local).mkdir()) {
-                LOG.info("Error by making Directory");
-            }
             //Start Checkout Logic
-            svnCheckout(svnLink, genAuthString(name, password), local);
+            sRevision = svnCheckout(svnLink, genAuthString(name, password), local);
         }
 
-        return local;
+        return new String[]{local, sRevision};
     }
 
+    /**
+     * reads the last changed revision of a repository without downloading it. Only the headers of the listing
+     * are requested
+     * @param svnLink - HTTP-Link to SVN-Repository
+     * @return - last changed revision or null if it is not resolvable
+     */
+    public String getRemoteRevision(String svnLink) {
+        String name = System.getenv("SVN_USER");
+        String password = System.getenv("SVN_PASSWORD");
+        String sRevision = null;
+
+        if (name != null || password != null) {
+            try {
+                Crawl oCrawl = new Crawl(svnLink, genAuthString(name, password), null);
+                HttpURLConnection urlConnection = oCrawl.openConnection(toDirectoryUrl(svnLink), null);
+
+                try {
+                    urlConnection.setRequestMethod("HEAD");
+                    if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                        sRevision = parseRevision(urlConnection.getHeaderField("ETag"), ETAG_REVISION_PATTERN);
+                    }
+                } finally {
+                    oCrawl.release();
+                }
+            } catch (IOException e) {
+                LOG.info("Revision of " + svnLink + " is not resolvable: " + e.getMessage());
+            }
+        }
+
+        return sRevision;
+    }
 
     /**
      * Generates the authString from the given VPN Credentials
@@ -87,126 +200,441 @@ public class Svn {
     }
 
     /**
-     * Method to checkout an given Repository recursivly
-     * @param mainUrl - current HTTP-Link
+     * Method to checkout an given Repository. At first the persistent copy of the repository is updated, afterwards
+     * a snapshot of it is created for the analysis. Only one request at a time can update the same copy
+     * @param mainUrl - HTTP-Link of the repository
      * @param authStringEnc - VPN Credentials
+     * @param localPath - local-Path of the snapshot
+     * @return - last changed revision of the repository
+     * @throws IOException - a listing or a file could not be downloaded
+     */
+    private String svnCheckout(String mainUrl, String authStringEnc, String localPath) throws IOException {
+        String sCopyName = sha256(mainUrl);
+        File oCopyDir = new File(sMirrorDirectory, sCopyName);
+        File oManifestFile = new File(sMirrorDirectory, sCopyName + ".properties");
+        ReentrantLock oLock = oCopyLocks.computeIfAbsent(sCopyName, sKey -> new ReentrantLock());
+        String sRevision;
+
+        oLock.lock();
+        try {
+            if (!oCopyDir.exists() && !oCopyDir.mkdirs()) {
+                throw new IOException("Local copy could not be created: " + oCopyDir);
+            }
+
+            Properties oManifest = loadManifest(oManifestFile);
+            Crawl oCrawl = new Crawl(mainUrl, authStringEnc, oManifest);
+            oCrawl.submit(() -> crawlDirectory(oCrawl, toDirectoryUrl(mainUrl), oCopyDir, ""));
+            oCrawl.await();
+
+            removeDeletedFiles(oCopyDir, oCrawl.oSeen);
+            storeManifest(oManifestFile, oCrawl.oNewManifest);
+            sRevision = oCrawl.oRevision.get() == null ? "" : oCrawl.oRevision.get();
+            LOG.info("Svn copy " + mainUrl + " at revision " + sRevision + ", " + oCrawl.nDownloads.get()
+                    + " files downloaded");
+
+            createSnapshot(oCopyDir, new File(localPath));
+        } finally {
+            oLock.unlock();
+        }
+
+        return sRevision;
+    }
+
+    /**
+     * reads the HTML listing of a directory and submits a task for every sub directory and file. A directory
+     * whose ETag did not change since the last checkout is not crawled again, because the ETag contains the
+     * last changed revision of everything below it
+     * @param oCrawl - actual checkout
+     * @param mainUrl - current HTTP-Link, ending with a slash
      * @param localPath - current local-Path
+     * @param sRelativePath - path within the repository, empty for the root directory
+     * @throws IOException - the listing could not be downloaded
      */
-    private void svnCheckout(String mainUrl, String authStringEnc, String localPath) throws IOException, BadLocationException {
-        // Generate and open the URL Connection
-        URL url = new URL(mainUrl);
-        URLConnection urlConnection = url.openConnection();
-        //Authenticate
-        urlConnection.setRequestProperty("Authorization", "Basic "
-                + authStringEnc);
-        // read HTML File
-        BufferedReader br = new BufferedReader(new InputStreamReader(
-                urlConnection.getInputStream()));
-        // Generate Iterator to walk through the HTML File
-        HTMLEditorKit editorKit = new HTMLEditorKit();
-        HTMLDocument htmlDoc = new HTMLDocument();
-        htmlDoc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
-        editorKit.read(br, htmlDoc, 0);
-        //Get Strings from HTML-TAG A
-        HTMLDocument.Iterator iter = htmlDoc.getIterator(HTML.Tag.A);
-        List<String> listValue = iterToList(iter);
+    private void crawlDirectory(Crawl oCrawl, String mainUrl, File localPath, String sRelativePath)
+            throws IOException {
+        String sKey = sRelativePath + DIRECTORY_SUFFIX;
+        HttpURLConnection urlConnection = oCrawl.openConnection(mainUrl, oCrawl.oManifest.getProperty(sKey));
+        List<String> listValue = new ArrayList<>();
+
+        try {
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                oCrawl.keepUnchanged(sRelativePath);
+                if (sRelativePath.isEmpty()) {
+                    oCrawl.oRevision.set(parseRevision(oCrawl.oManifest.getProperty(sKey), ETAG_REVISION_PATTERN));
+                }
+                return;
+            }
+
+            String sETag = urlConnection.getHeaderField("ETag");
+            String sTitleRevision = readListing(urlConnection, listValue);
+            oCrawl.oSeen.add(sKey);
+            if (sETag != null) {
+                oCrawl.oNewManifest.put(sKey, sETag);
+            }
+            if (sRelativePath.isEmpty()) {
+                String sRevision = parseRevision(sETag, ETAG_REVISION_PATTERN);
+                oCrawl.oRevision.set(sRevision == null ? sTitleRevision : sRevision);
+            }
+        } finally {
+            oCrawl.release();
+        }
+
         //Start Crawling
         for (String aListValue : listValue) {
-            //Directory
-            if (URLDecoder.decode(aListValue, "UTF-8").endsWith("/")) {
-                /*  String Magic
-                    CMD-Command for Checkstyle Validation can't handle Blanks in the Source-Paths
-                     --> Class-Files should contain no blank anyway, so they are Replaced by ""
-                */
-                String[] parts = URLDecoder.decode(aListValue, "UTF-8").split("/");
-                String localPathN = (localPath + sFileSeparator + parts[parts.length - 1]).replaceAll(" ", "");
+            /*  String Magic
+                CMD-Command for Checkstyle Validation can't handle Blanks in the Source-Paths
+                 --> Class-Files should contain no blank anyway, so they are Replaced by ""
+            */
+            String sDecodedValue = URLDecoder.decode(aListValue, "UTF-8");
+            String[] parts = sDecodedValue.split("/");
+            String sName = parts[parts.length - 1].replaceAll(" ", "");
+            String sChildPath = sRelativePath.isEmpty() ? sName : sRelativePath + "/" + sName;
+            File oChild = new File(localPath, sName);
 
+            //Directory
+            if (sDecodedValue.endsWith("/")) {
                 // Create new Dir
-                if (!new File(localPathN).mkdir()) {
+                if (!oChild.isDirectory() && !oChild.mkdir()) {
                     LOG.info("Error by making Directory");
                 }
 
-                // Start recursiv Call for the located dir
-                svnCheckout(mainUrl + sFileSeparator + aListValue, authStringEnc,
-                        localPathN);
+                // Start task for the located dir
+                oCrawl.submit(() -> crawlDirectory(oCrawl, mainUrl + aListValue, oChild, sChildPath));
             } else {
-                /*  Download File
-                    CMD-Command for Checkstyle Validation can't handle Blanks in the Source-Paths
-                     --> Class-Files should contain no blank anyway, so they are Replaced by ""
-                */
-                downloadFile(mainUrl + sFileSeparator + aListValue, (localPath
-                        + sFileSeparator + URLDecoder.decode(aListValue, "UTF-8")).replaceAll(" ", ""), authStringEnc);
+                // Download File
+                oCrawl.submit(() -> downloadFile(oCrawl, mainUrl + aListValue, oChild, sChildPath));
             }
         }
     }
 
     /**
-     * Adjust the collected iterator
-     * @param iter - current HTTP-Link
-     * @return - Iterator of current HTML Document
+     * reads all links of a HTML listing line by line, without building a whole HTML document
+     * @param urlConnection - opened connection to the listing
+     * @param listValue - list that will be filled with the relative links to all sub directories and files
+     * @return - revision of the title of the listing or null
+     * @throws IOException - the listing could not be downloaded
      */
-    private List<String> iterToList(HTMLDocument.Iterator iter) {
-        List<String> list = new ArrayList<>();
-        // Get Headstructure of Svn and store it into List
-        do {
-            list.add(iter.getAttributes().getAttribute(HTML.Attribute.HREF)
-                    .toString());
-            iter.next();
-        } while (iter.isValid());
-        /*  Remove first and last Object because they contain no relevant data
-            --> .. & SVN-Information
-        */
-        list.remove(0);
-        list.remove(list.size() - 1);
-        return list;
+    private String readListing(HttpURLConnection urlConnection, List<String> listValue) throws IOException {
+        String sRevision = null;
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(urlConnection.getInputStream(),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String sLine;
+            while ((sLine = br.readLine()) != null) {
+                if (sRevision == null) {
+                    sRevision = parseRevision(sLine, TITLE_REVISION_PATTERN);
+                }
+
+                Matcher oMatcher = HREF_PATTERN.matcher(sLine);
+                while (oMatcher.find()) {
+                    String sHref = oMatcher.group(1);
+                    /*  Skip links which contain no relevant data
+                        --> .. & SVN-Information
+                    */
+                    if (!sHref.isEmpty() && !sHref.startsWith("..") && !sHref.startsWith("/")
+                            && !sHref.startsWith("?") && !sHref.contains("://")) {
+                        listValue.add(sHref);
+                    }
+                }
+            }
+        }
+
+        return sRevision;
     }
 
     /**
-     * Adjust the collected iterator
+     * downloads a file with a large buffer, if it has changed since the last checkout. The content is written
+     * to a temporary file and moved afterwards, so the snapshots of earlier checkouts keep their content
+     * @param oCrawl - actual checkout
      * @param urlString - HTTP-Link to File
      * @param dest - Localdestination
-     * @param authStringEnc - Credentials
+     * @param sRelativePath - path within the repository
+     * @throws IOException - the file could not be downloaded
      */
-    private void downloadFile(String urlString, String dest,
-                              String authStringEnc) throws IOException {
-        // Authenticate
-        URL url = new URL(urlString);
-        URLConnection urlConnection = url.openConnection();
-        urlConnection.setRequestProperty("Authorization", "Basic "
-                + authStringEnc);
-        // Generate InputStream
-        InputStream is = urlConnection.getInputStream();
-
-        FileOutputStream outputStream = null;
-        // Start to Download the File and save it Locally
+    private void downloadFile(Crawl oCrawl, String urlString, File dest, String sRelativePath) throws IOException {
+        String sOldETag = dest.exists() ? oCrawl.oManifest.getProperty(sRelativePath) : null;
+        HttpURLConnection urlConnection = oCrawl.openConnection(urlString, sOldETag);
+
         try {
-            File fi = new File(dest);
-            outputStream = new FileOutputStream(fi);
-            int read;
-            byte[] bytes = new byte[1024];
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                oCrawl.oSeen.add(sRelativePath);
+                oCrawl.oNewManifest.put(sRelativePath, sOldETag);
+                return;
+            }
 
-            while ((read = is.read(bytes)) != -1) {
-                outputStream.write(bytes, 0, read);
+            // Start to Download the File and save it Locally
+            File oTmpFile = new File(dest.getPath() + ".download");
+            try (InputStream is = new BufferedInputStream(urlConnection.getInputStream(), BUFFER_SIZE);
+                 ReadableByteChannel oReadableByteChannel = Channels.newChannel(is);
+                 FileChannel oFileChannel = new FileOutputStream(oTmpFile).getChannel()) {
+                long lPosition = 0;
+                long lRead;
+
+                while ((lRead = oFileChannel.transferFrom(oReadableByteChannel, lPosition, BUFFER_SIZE)) > 0) {
+                    lPosition += lRead;
+                }
+            }
+            Files.move(oTmpFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            oCrawl.oSeen.add(sRelativePath);
+            oCrawl.nDownloads.incrementAndGet();
+            String sETag = urlConnection.getHeaderField("ETag");
+            if (sETag != null) {
+                oCrawl.oNewManifest.put(sRelativePath, sETag);
             }
-        } catch (IOException e) {
-            /* ignore */
         } finally {
-            //Close InputStream
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                /* ignore */
+            oCrawl.release();
+        }
+    }
+
+    /**
+     * removes all files and directories of the local copy which were deleted within the repository
+     * @param oCopyDir - local copy
+     * @param oSeen - relative paths of all files and directories which still exist
+     * @throws IOException - a file could not be removed
+     */
+    private void removeDeletedFiles(File oCopyDir, Set<String> oSeen) throws IOException {
+        Path oRoot = oCopyDir.toPath();
+
+        Files.walkFileTree(oRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path oFile, BasicFileAttributes oAttributes) throws IOException {
+                if (!oSeen.contains(toRelativePath(oRoot, oFile))) {
+                    Files.delete(oFile);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path oDir, IOException e) throws IOException {
+                if (!oDir.equals(oRoot) && !oSeen.contains(toRelativePath(oRoot, oDir) + DIRECTORY_SUFFIX)) {
+                    Files.delete(oDir);
                 }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * creates the snapshot of a local copy for the analysis. The files are hard links if the file system supports
+     * them, otherwise they are copied
+     * @param oCopyDir - local copy
+     * @param oSnapshotDir - local directory of the analysis
+     * @throws IOException - the snapshot could not be created
+     */
+    private void createSnapshot(File oCopyDir, File oSnapshotDir) throws IOException {
+        Path oSource = oCopyDir.toPath();
+        Path oTarget = oSnapshotDir.toPath();
+
+        Files.walkFileTree(oSource, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path oDir, BasicFileAttributes oAttributes) throws IOException {
+                Files.createDirectories(oTarget.resolve(oSource.relativize(oDir)));
+                return FileVisitResult.CONTINUE;
             }
-            //close Outputstream
-            if (outputStream != null) {
+
+            @Override
+            public FileVisitResult visitFile(Path oFile, BasicFileAttributes oAttributes) throws IOException {
+                Path oLink = oTarget.resolve(oSource.relativize(oFile));
                 try {
-                    outputStream.close();
-                } catch (IOException e) {
-                    /* ignore */
+                    Files.createLink(oLink, oFile);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(oFile, oLink, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private String toRelativePath(Path oRoot, Path oPath) {
+        return oRoot.relativize(oPath).toString().replace(File.separatorChar, '/');
+    }
+
+    private String toDirectoryUrl(String svnLink) {
+        return svnLink.endsWith("/") ? svnLink : svnLink + "/";
+    }
+
+    private String parseRevision(String sValue, Pattern oPattern) {
+        String sRevision = null;
+
+        if (sValue != null) {
+            Matcher oMatcher = oPattern.matcher(sValue);
+            if (oMatcher.find()) {
+                sRevision = oMatcher.group(1);
+            }
+        }
+
+        return sRevision;
+    }
+
+    private Properties loadManifest(File oManifestFile) throws IOException {
+        Properties oManifest = new Properties();
+
+        if (oManifestFile.exists()) {
+            try (InputStream oInput = new FileInputStream(oManifestFile)) {
+                oManifest.load(oInput);
+            }
+        }
+
+        return oManifest;
+    }
+
+    private void storeManifest(File oManifestFile, Map<String, String> oNewManifest) throws IOException {
+        Properties oManifest = new Properties();
+        oManifest.putAll(oNewManifest);
+
+        try (OutputStream oOutput = new FileOutputStream(oManifestFile)) {
+            oManifest.store(oOutput, "ETags of the svn copy");
+        }
+    }
+
+    /**
+     * calculates the SHA-256 hash of the repository url, it is used as directory name of the local copy
+     * @param sValue - value that should be hashed
+     * @return - hash as hex string
+     */
+    private String sha256(String sValue) {
+        try {
+            StringBuilder sHash = new StringBuilder();
+            for (byte bDigest : MessageDigest.getInstance("SHA-256").digest(sValue.getBytes(StandardCharsets.UTF_8))) {
+                sHash.append(String.format("%02x", bDigest));
+            }
+            return sHash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * listing or download of the crawler
+     */
+    private interface CrawlTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * state of a single checkout. The phaser counts the unfinished tasks, the first error stops the crawling
+     */
+    private class Crawl {
+        private final String sAuthString;
+
+        private final Semaphore oPermits;
+
+        /* ETags of the last checkout */
+        private final Properties oManifest;
+
+        /* ETags of this checkout */
+        private final Map<String, String> oNewManifest = new ConcurrentHashMap<>();
+
+        /* relative paths of all files and directories which exist within the repository */
+        private final Set<String> oSeen = ConcurrentHashMap.newKeySet();
+
+        private final AtomicReference<String> oRevision = new AtomicReference<>();
+
+        private final AtomicInteger nDownloads = new AtomicInteger();
+
+        /* the thread of the request is registered as well */
+        private final Phaser oPhaser = new Phaser(1);
+
+        private final AtomicReference<IOException> oError = new AtomicReference<>();
+
+        Crawl(String sUrl, String sAuthString, Properties oManifest) throws IOException {
+            this.sAuthString = sAuthString;
+            this.oManifest = oManifest;
+            this.oPermits = oHostPermits.computeIfAbsent(new URL(sUrl).getHost(),
+                    sKey -> new Semaphore(nHostConcurrency, true));
+        }
+
+        /**
+         * executes a task by the workers, it is skipped if a previous task failed
+         * @param oTask - listing or download
+         */
+        void submit(CrawlTask oTask) {
+            oPhaser.register();
+
+            try {
+                oExecutor.execute(() -> {
+                    try {
+                        if (oError.get() == null) {
+                            oTask.run();
+                        }
+                    } catch (IOException e) {
+                        oError.compareAndSet(null, e);
+                    } finally {
+                        oPhaser.arriveAndDeregister();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                oError.compareAndSet(null, new IOException("Svn worker pool is shut down", e));
+                oPhaser.arriveAndDeregister();
+            }
+        }
+
+        /**
+         * waits until all tasks of the checkout are done
+         * @throws IOException - a task failed or the request was interrupted
+         */
+        void await() throws IOException {
+            try {
+                //the phaser advances when the last task has deregistered
+                oPhaser.awaitAdvanceInterruptibly(oPhaser.arriveAndDeregister());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Svn checkout was interrupted");
+            }
+
+            if (oError.get() != null) {
+                throw new IOException("Svn checkout failed: " + oError.get().getMessage(), oError.get());
+            }
+        }
+
+        /**
+         * keeps all files and directories below an unchanged directory
+         * @param sRelativePath - path of the unchanged directory, empty for the root directory
+         */
+        void keepUnchanged(String sRelativePath) {
+            String sPrefix = sRelativePath.isEmpty() ? "" : sRelativePath + "/";
+
+            for (String sKey : oManifest.stringPropertyNames()) {
+                if (sKey.startsWith(sPrefix) || sKey.equals(sRelativePath + DIRECTORY_SUFFIX)) {
+                    oSeen.add(sKey);
+                    oNewManifest.put(sKey, oManifest.getProperty(sKey));
                 }
             }
         }
+
+        /**
+         * waits for a free connection to the svn server and opens an authenticated connection
+         * @param sUrl - HTTP-Link
+         * @param sETag - ETag of the last checkout or null
+         * @return - connection, the permit has to be released after reading it
+         * @throws IOException - the connection could not be opened
+         */
+        HttpURLConnection openConnection(String sUrl, String sETag) throws IOException {
+            try {
+                oPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Svn request was interrupted: " + sUrl);
+            }
+
+            try {
+                HttpURLConnection urlConnection = (HttpURLConnection) new URL(sUrl).openConnection();
+                //Authenticate
+                urlConnection.setRequestProperty("Authorization", "Basic " + sAuthString);
+                if (sETag != null) {
+                    urlConnection.setRequestProperty("If-None-Match", sETag);
+                }
+                return urlConnection;
+            } catch (IOException | RuntimeException e) {
+                oPermits.release();
+                throw e;
+            }
+        }
+
+        void release() {
+            oPermits.release();
+        }
     }
-}
\ No newline at end of file
+}
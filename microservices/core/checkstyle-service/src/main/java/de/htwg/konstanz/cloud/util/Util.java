@@ -1,6 +1,5 @@
 package de.htwg.konstanz.cloud.util;
 
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -124,23 +123,6 @@ public class Util {
         return mainDir;
     }
 
-    /**
-     * checks the json result to avoide null pointer exceptions
-     * @param oJsonResult - generated json result
-     * @return - valid or invalid string
-     */
-    public String checkJsonResult(JSONObject oJsonResult) {
-        String sResult;
-        if (null == oJsonResult) {
-            sResult = "Invalid Repository";
-            LOG.info("Error: received invalid repository and JSON file");
-        } else {
-            sResult = oJsonResult.toString();
-            LOG.info("Valid JSON result");
-        }
-        return sResult;
-    }
-
     /**
      * parse a string into an int
      * @param eElement - xml element that will be checked
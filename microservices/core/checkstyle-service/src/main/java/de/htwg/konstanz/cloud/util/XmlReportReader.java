@@ -0,0 +1,107 @@
+package de.htwg.konstanz.cloud.util;
+
+import de.htwg.konstanz.cloud.model.Error;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/*
+    Streaming reader of the xml reports of checkstyle. Instead of building the document tree of the whole report,
+    the report is read element by element and every error is passed to a listener as soon as it is read, so the
+    memory does not grow with the size of the report. The factory is configured once and shared by all threads.
+ */
+public class XmlReportReader {
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /**
+     * reads all errors of the xml report of checkstyle
+     * @param sXmlPath - xml file path the should be read
+     * @param oErrorListener - receives every error with the same attributes as in the report
+     * @throws IOException - the report is not readable or no valid xml document
+     */
+    public void readCheckstyleReport(String sXmlPath, Consumer<Error> oErrorListener) throws IOException {
+        read(sXmlPath, oReader -> {
+            if ("error".equals(oReader.getLocalName())) {
+                //not parsable numbers are 0 and missing attributes are "", like in the former dom parsing
+                oErrorListener.accept(new Error(getInt(oReader, "line"), getInt(oReader, "column"),
+                        getString(oReader, "severity"), getString(oReader, "message"), getString(oReader, "source")));
+            }
+        });
+    }
+
+    /**
+     * iterates through all start elements of the report
+     * @param sXmlPath - xml file path the should be read
+     * @param oElementHandler - handler of a start element
+     * @throws IOException - the report is not readable or no valid xml document
+     */
+    private void read(String sXmlPath, ElementHandler oElementHandler) throws IOException {
+        //it is important to define the coding of the xml file --> UTF-8
+        try (InputStream oInput = new BufferedInputStream(new FileInputStream(sXmlPath))) {
+            XMLStreamReader oReader = XML_INPUT_FACTORY.createXMLStreamReader(oInput, "UTF-8");
+
+            try {
+                while (oReader.hasNext()) {
+                    if (oReader.next() == XMLStreamConstants.START_ELEMENT) {
+                        oElementHandler.startElement(oReader);
+                    }
+                }
+            } finally {
+                oReader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid xml report " + sXmlPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * reads an attribute of the current element
+     * @return - value of the attribute or "" if it does not exist
+     */
+    private String getString(XMLStreamReader oReader, String sAttributeName) {
+        String sValue = oReader.getAttributeValue(null, sAttributeName);
+
+        return sValue == null ? "" : sValue;
+    }
+
+    /**
+     * reads a numeric attribute of the current element
+     * @return - value of the attribute or 0 if it does not exist or is not parsable
+     */
+    private int getInt(XMLStreamReader oReader, String sAttributeName) {
+        try {
+            return Integer.parseInt(getString(oReader, sAttributeName));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * creates the factory of all readers: the text of an element is returned as a whole, and the reports of
+     * checkstyle have neither a dtd nor external entities
+     * @return - configured factory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory oFactory = XMLInputFactory.newInstance();
+        oFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        oFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        oFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        oFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return oFactory;
+    }
+
+    /**
+     * handler of a start element, it may read the element up to its end
+     */
+    private interface ElementHandler {
+        void startElement(XMLStreamReader oReader) throws XMLStreamException;
+    }
+}
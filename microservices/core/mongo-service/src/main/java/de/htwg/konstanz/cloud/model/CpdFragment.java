@@ -0,0 +1,26 @@
+package de.htwg.konstanz.cloud.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Code fragment of the cpd results, stored once for all duplications with the same code.
+ */
+@Data
+@Document
+public class CpdFragment {
+
+    /**
+     * sha-256 hash of the complete code fragment
+     */
+    @Id
+    private String hash;
+
+    private String codefragment;
+
+    /**
+     * true if only the beginning of the code fragment is stored
+     */
+    private boolean truncated;
+}
@@ -2,8 +2,11 @@ package de.htwg.konstanz.cloud.model;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.List;
+
 /**
  * Created by max on 24/06/16.
  */
@@ -24,6 +27,16 @@ public class CpdResults {
 
     private Object duplications;
 
+    /**
+     * code fragments of the duplications, they are stored in their own collection
+     */
+    @Transient
+    private List<CpdFragment> fragments;
+
+    private Object similarities;
+
+    private Object fetches;
+
     private String timestamp;
 
     private String courseId;
@@ -0,0 +1,7 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.CpdFragment;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface CpdFragmentRepository extends MongoRepository<CpdFragment, String> {
+}
@@ -1,6 +1,7 @@
 package de.htwg.konstanz.cloud.service;
 
 import com.netflix.ribbon.proxy.annotation.Http;
+import de.htwg.konstanz.cloud.model.CpdFragment;
 import de.htwg.konstanz.cloud.model.CpdResults;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,11 +30,19 @@ public class CpdResultsService {
     @Autowired
     CpdResultsRepository cpdResultsRepository;
 
+    @Autowired
+    CpdFragmentRepository cpdFragmentRepository;
+
     @RequestMapping(method = RequestMethod.POST ,consumes = "application/json")
     public ResponseEntity addCpdResult(@RequestBody final CpdResults cpdResults){
         ResponseEntity responseEntity;
 
         cpdResults.setTimestamp(String.valueOf(String.valueOf(new Date().getTime())));
+        // a code fragment is stored once for all results, the duplications only contain its hash
+        if (cpdResults.getFragments() != null) {
+            cpdFragmentRepository.save(cpdResults.getFragments());
+            cpdResults.setFragments(null);
+        }
         cpdResultsRepository.save(cpdResults);
         return new ResponseEntity(HttpStatus.OK);
     }
@@ -55,4 +64,20 @@ public class CpdResultsService {
         }
         return cpdResultsResponseEntity;
     }
+
+    /**
+     * returns a code fragment of the cpd results
+     *
+     * @param hash hash of the code fragment within the duplications
+     * @return code fragment or no content if it is unknown
+     */
+    @RequestMapping(value = "/fragments/{hash}", method = RequestMethod.GET)
+    public ResponseEntity<CpdFragment> getFragment(@PathVariable("hash") final String hash) {
+        CpdFragment fragment = cpdFragmentRepository.findOne(hash);
+
+        if (fragment == null) {
+            return new ResponseEntity<CpdFragment>(HttpStatus.NO_CONTENT);
+        }
+        return new ResponseEntity<CpdFragment>(fragment, HttpStatus.OK);
+    }
 }
@@ -0,0 +1,27 @@
+#!/bin/bash
+
+# runs the JMH benchmarks of src/jmh/java against the compiled classes of the service
+# excample call: ./benchmark.sh XmlParsingBenchmark -p nFiles=1000 -f 1
+# without a parameter all benchmarks run, ./benchmark.sh -h shows the options of JMH
+
+JMH_VERSION=1.12
+M2_REPOSITORY=~/.m2/repository
+
+mvn -q compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt || exit 1
+for ARTIFACT in jmh-core jmh-generator-annprocess
+do
+	mvn -q dependency:get -Dartifact=org.openjdk.jmh:$ARTIFACT:$JMH_VERSION || exit 1
+done
+
+JMH_CLASSPATH=$M2_REPOSITORY/org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+JMH_CLASSPATH=$JMH_CLASSPATH:$M2_REPOSITORY/org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+JMH_CLASSPATH=$JMH_CLASSPATH:$M2_REPOSITORY/net/sf/jopt-simple/jopt-simple/4.6/jopt-simple-4.6.jar
+JMH_CLASSPATH=$JMH_CLASSPATH:$M2_REPOSITORY/org/apache/commons/commons-math3/3.2/commons-math3-3.2.jar
+CLASSPATH=target/classes:$(cat target/classpath.txt):$JMH_CLASSPATH
+
+# the annotation processor of JMH generates the benchmark classes while the sources are compiled
+rm -rf target/jmh-classes
+mkdir -p target/jmh-classes
+javac -cp "$CLASSPATH" -d target/jmh-classes $(find src/jmh/java -name "*.java") || exit 1
+
+java -cp "target/jmh-classes:$CLASSPATH" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,42 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Duplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/*
+    Copy paste detection inside the service for all repositories of a course, every repository is a copy of the
+    same student repository.
+ */
+@State(Scope.Benchmark)
+public class CpdIndexBenchmark {
+    @Param({"10", "100", "300"})
+    private int nRepositories;
+
+    private SyntheticRepository oRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        oRepository = new SyntheticRepository(50, 0);
+        oRepository.copyRepository(nRepositories - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        oRepository.delete();
+    }
+
+    @Benchmark
+    public List<Duplication> findDuplications() throws IOException {
+        return new CpdIndex(75).findDuplications(new File(oRepository.getPath()));
+    }
+}
@@ -0,0 +1,43 @@
+package de.htwg.konstanz.cloud.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/*
+    Reading the xml report of cpd with the duplications between the repositories of a course.
+ */
+@State(Scope.Benchmark)
+public class CpdParsingBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int nDuplications;
+
+    private SyntheticRepository oRepository;
+
+    private String sReportPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        oRepository = new SyntheticRepository(100, 0);
+        sReportPath = oRepository.writeCpdReport(nDuplications);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        oRepository.delete();
+    }
+
+    @Benchmark
+    public Cpd storeCpdInformation() throws Exception {
+        Cpd oCpd = new Cpd(null, null, null, null, "process", 75, null, 0, 0);
+        oCpd.storeCpdInformation(sReportPath, oRepository.getPath());
+
+        return oCpd;
+    }
+}
@@ -0,0 +1,60 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Discovery of the java files of a locally stored repository and the creation of the class list.
+ */
+@State(Scope.Benchmark)
+public class RepositoryLayoutBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int nFiles;
+
+    private final Util oUtil = new Util();
+
+    private SyntheticRepository oRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        oRepository = new SyntheticRepository(nFiles, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        oRepository.delete();
+    }
+
+    @Benchmark
+    public List<String> getAllJavaFiles() {
+        return oUtil.getAllJavaFiles(oRepository.getRepositoryPath(), new ArrayList<>());
+    }
+
+    @Benchmark
+    public List<List<String>> generatePmdData() throws FileNotFoundException {
+        return createPmd().generatePmdData(oRepository.getRepositoryPath());
+    }
+
+    @Benchmark
+    public Pmd formatList() {
+        Pmd oPmd = createPmd();
+        oPmd.formatList(oRepository.getRepoList());
+
+        return oPmd;
+    }
+
+    private Pmd createPmd() {
+        return new Pmd(null, null, null, null, null, null, null, null, new PhaseTimings());
+    }
+}
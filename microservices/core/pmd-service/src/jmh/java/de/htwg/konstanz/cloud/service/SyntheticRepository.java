@@ -0,0 +1,214 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.Column;
+import de.htwg.konstanz.cloud.model.Error;
+import de.htwg.konstanz.cloud.model.Line;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Generates the local copy of a student repository like the ones of the courses: src/AufgabeN/*.java with
+    a few exercises and a different number of java files in each of them. Every java file gets the xml report
+    pmd would write for it, the violations are spread over all files, some files have none. Additionally a cpd
+    report with duplications between the java files is written.
+ */
+class SyntheticRepository {
+    private static final String[][] RULES = {
+        {"ClassWithOnlyPrivateConstructorsShouldBeFinal", "Design"},
+        {"IfStmtsMustUseBraces", "Braces"},
+        {"UnusedLocalVariable", "Unused Code"},
+        {"CyclomaticComplexity", "Code Size"}
+    };
+
+    /* fixed seed --> every run of a benchmark analyzes the same repository */
+    private final Random oRandom = new Random(42);
+
+    private final File oRoot;
+
+    private final List<List<String>> lRepoList = new ArrayList<>();
+
+    private final List<String> lReportList = new ArrayList<>();
+
+    private final List<String> lJavaFileList = new ArrayList<>();
+
+    private final int[] nViolations;
+
+    /**
+     * writes the java files and their reports into a new temporary directory
+     * @param nFiles - number of java files
+     * @param nTotalViolations - number of violations of all java files
+     * @throws IOException - the repository could not be written
+     */
+    SyntheticRepository(int nFiles, int nTotalViolations) throws IOException {
+        oRoot = Files.createTempDirectory("repositories").toFile();
+        nViolations = distribute(nFiles, nTotalViolations);
+
+        int nFilePos = 0;
+        for (int nExercise = 1; nFilePos < nFiles; nExercise++) {
+            //exercises of students have between 1 and 20 java files
+            int nExerciseFiles = Math.min(nFiles - nFilePos, 1 + oRandom.nextInt(20));
+            File oExerciseDir = new File(oRoot, "student" + File.separator + "src" + File.separator + "Aufgabe"
+                    + nExercise);
+            FileUtils.forceMkdir(oExerciseDir);
+
+            List<String> lExerciseFiles = new ArrayList<>();
+            for (int nFile = 0; nFile < nExerciseFiles; nFile++, nFilePos++) {
+                String sClassName = "Aufgabe" + nExercise + "Klasse" + nFile;
+                File oJavaFile = new File(oExerciseDir, sClassName + ".java");
+                File oReportFile = new File(oExerciseDir, sClassName + ".xml");
+
+                Files.write(oJavaFile.toPath(), createJavaSource("Aufgabe" + nExercise, sClassName)
+                        .getBytes(StandardCharsets.UTF_8));
+                Files.write(oReportFile.toPath(), createReport(oJavaFile.getPath(), "Aufgabe" + nExercise,
+                        sClassName, nViolations[nFilePos]).getBytes(StandardCharsets.UTF_8));
+                lExerciseFiles.add(oJavaFile.getPath());
+                lReportList.add(oReportFile.getPath());
+                lJavaFileList.add(oJavaFile.getPath());
+            }
+            lRepoList.add(lExerciseFiles);
+        }
+    }
+
+    /**
+     * creates the analyzed java classes of the repository with all violations, e.g. as input of the json creation
+     * @return - list with all java classes and their problems
+     */
+    List<Class> createClassList() {
+        List<Class> lClassList = new ArrayList<>();
+        int nFilePos = 0;
+
+        for (List<String> lExerciseFiles : lRepoList) {
+            for (String sPath : lExerciseFiles) {
+                Class oClass = new Class(sPath, new File(sPath).getParentFile().getName());
+                for (int nViolation = 0; nViolation < nViolations[nFilePos]; nViolation++) {
+                    String[] sRule = RULES[nViolation % RULES.length];
+                    int nPriority = 1 + nViolation % 5;
+                    oClass.getErrorList().add(new Error(new Line(nViolation + 1, nViolation + 3),
+                            new Column(5, 20), nPriority, sRule[0], "Klasse", oClass.getExerciseName(), sRule[1],
+                            "Synthetic violation " + nViolation));
+                    oClass.incErrorType(nPriority);
+                }
+                lClassList.add(oClass);
+                nFilePos++;
+            }
+        }
+
+        return lClassList;
+    }
+
+    /**
+     * writes the report of cpd for the repository and a copy of it, so every duplication involves two repositories
+     * @param nDuplications - number of duplications in the report
+     * @return - path of the report
+     * @throws IOException - the report could not be written
+     */
+    String writeCpdReport(int nDuplications) throws IOException {
+        StringBuilder oReport = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<pmd-cpd>\n");
+
+        for (int nDuplication = 0; nDuplication < nDuplications; nDuplication++) {
+            String sJavaFile = lJavaFileList.get(oRandom.nextInt(lJavaFileList.size()));
+            oReport.append("<duplication lines=\"").append(10 + oRandom.nextInt(40)).append("\" tokens=\"")
+                    .append(75 + oRandom.nextInt(200)).append("\">\n")
+                    .append("<file line=\"3\" path=\"").append(sJavaFile).append("\"/>\n")
+                    .append("<file line=\"3\" path=\"").append(sJavaFile.replace(File.separator + "student"
+                            + File.separator, File.separator + "copy" + File.separator)).append("\"/>\n")
+                    .append("<codefragment><![CDATA[    public int method0(int a) {\n        int b = a * 0;\n")
+                    .append("        return b+1;\n    }]]></codefragment>\n</duplication>\n");
+        }
+
+        File oReportFile = new File(oRoot, "CpdCheck_Duplications.xml");
+        Files.write(oReportFile.toPath(), oReport.append("</pmd-cpd>\n").toString()
+                .getBytes(StandardCharsets.UTF_8));
+
+        return oReportFile.getPath();
+    }
+
+    /**
+     * the java files grouped by exercise, like the result of generatePmdData
+     * @return - list of exercises with the paths of their java files
+     */
+    List<List<String>> getRepoList() {
+        return lRepoList;
+    }
+
+    /**
+     * the xml reports in the order of the java files
+     * @return - paths of the reports
+     */
+    List<String> getReportList() {
+        return lReportList;
+    }
+
+    /**
+     * copies the repository of the student, e.g. as the repositories of a course for the copy paste detection
+     * @param nCopies - number of further repositories next to the one of the student
+     * @throws IOException - a copy could not be written
+     */
+    void copyRepository(int nCopies) throws IOException {
+        for (int nCopy = 1; nCopy <= nCopies; nCopy++) {
+            FileUtils.copyDirectory(new File(getRepositoryPath()), new File(oRoot, "student" + nCopy));
+        }
+    }
+
+    String getPath() {
+        return oRoot.getPath();
+    }
+
+    String getRepositoryPath() {
+        return oRoot.getPath() + File.separator + "student";
+    }
+
+    void delete() throws IOException {
+        FileUtils.deleteDirectory(oRoot);
+    }
+
+    /**
+     * spreads the violations randomly over the files, about a third of the files has no violation
+     */
+    private int[] distribute(int nFiles, int nTotalViolations) {
+        int[] nFileViolations = new int[nFiles];
+        int nFilesWithViolations = Math.max(1, nFiles * 2 / 3);
+
+        for (int nViolation = 0; nViolation < nTotalViolations; nViolation++) {
+            nFileViolations[oRandom.nextInt(nFilesWithViolations)]++;
+        }
+
+        return nFileViolations;
+    }
+
+    private String createJavaSource(String sPackage, String sClassName) {
+        StringBuilder oSource = new StringBuilder();
+        oSource.append("package ").append(sPackage).append(";\n\npublic class ").append(sClassName).append(" {\n");
+        for (int nMethod = 0; nMethod < 5 + oRandom.nextInt(20); nMethod++) {
+            oSource.append("    public int method").append(nMethod).append("(int a) {\n")
+                    .append("        int b = a * ").append(nMethod).append(";\n")
+                    .append("        return b+1;\n    }\n\n");
+        }
+
+        return oSource.append("}\n").toString();
+    }
+
+    private String createReport(String sJavaPath, String sPackage, String sClassName, int nFileViolations) {
+        StringBuilder oReport = new StringBuilder();
+        oReport.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<pmd version=\"5.4.2\">\n")
+                .append("<file name=\"").append(sJavaPath).append("\">\n");
+        for (int nViolation = 0; nViolation < nFileViolations; nViolation++) {
+            String[] sRule = RULES[nViolation % RULES.length];
+            oReport.append("<violation beginline=\"").append(nViolation + 1).append("\" endline=\"")
+                    .append(nViolation + 3).append("\" begincolumn=\"5\" endcolumn=\"20\" rule=\"").append(sRule[0])
+                    .append("\" ruleset=\"").append(sRule[1]).append("\" package=\"").append(sPackage)
+                    .append("\" class=\"").append(sClassName).append("\" priority=\"").append(1 + nViolation % 5)
+                    .append("\">\nSynthetic violation ").append(nViolation).append("\n</violation>\n");
+        }
+
+        return oReport.append("</file>\n</pmd>\n").toString();
+    }
+}
@@ -12,18 +12,23 @@ public class Duplication {
 
     private final List<String> lInvolvedData;
 
+    /* first line of the duplication within every involved file */
+    private final List<Integer> lBeginLines;
+
     private final String sDuplicatedCode;
 
-    public Duplication(int sDupilcatedLine, int nTokens, List<String> lInvolvedData, String sDuplicatedCode){
+    public Duplication(int sDupilcatedLine, int nTokens, List<String> lInvolvedData, List<Integer> lBeginLines,
+                       String sDuplicatedCode){
         this.nDuplicatedLine = sDupilcatedLine;
         this.nTokens = nTokens;
         this.lInvolvedData = lInvolvedData;
+        this.lBeginLines = lBeginLines;
         this.sDuplicatedCode = sDuplicatedCode;
     }
 
-    public static Duplication getDupliactionInstance(int sDupilcatedLine, int sTokens,
-                                                     List<String> lInvolvedData, String sDuplicatedCode){
-        return new Duplication(sDupilcatedLine,sTokens,lInvolvedData,sDuplicatedCode);
+    public static Duplication getDupliactionInstance(int sDupilcatedLine, int sTokens, List<String> lInvolvedData,
+                                                     List<Integer> lBeginLines, String sDuplicatedCode){
+        return new Duplication(sDupilcatedLine,sTokens,lInvolvedData,lBeginLines,sDuplicatedCode);
     }
 
     public int getDuplicatedLine() {
@@ -38,6 +43,10 @@ public class Duplication {
         return lInvolvedData;
     }
 
+    public List<Integer> getBeginLines() {
+        return lBeginLines;
+    }
+
     public String getDuplicatedCode() {
         return sDuplicatedCode;
     }
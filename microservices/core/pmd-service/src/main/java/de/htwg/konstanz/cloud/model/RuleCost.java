@@ -0,0 +1,43 @@
+package de.htwg.konstanz.cloud.model;
+
+/**
+ * cumulative cost of a single rule within one or several analyses
+ */
+public class RuleCost {
+    private final String sRule;
+
+    private final long lCpuTime;
+
+    private final long lInvocations;
+
+    private final double dShare;
+
+    /**
+     * @param sRule - name of the rule
+     * @param lCpuTime - cpu time of all invocations in nanoseconds
+     * @param lInvocations - number of invocations
+     * @param dShare - percentage of the cpu time of all profiled rules
+     */
+    public RuleCost(String sRule, long lCpuTime, long lInvocations, double dShare) {
+        this.sRule = sRule;
+        this.lCpuTime = lCpuTime;
+        this.lInvocations = lInvocations;
+        this.dShare = dShare;
+    }
+
+    public String getRule() {
+        return sRule;
+    }
+
+    public long getCpuTime() {
+        return lCpuTime;
+    }
+
+    public long getInvocations() {
+        return lInvocations;
+    }
+
+    public double getShare() {
+        return dShare;
+    }
+}
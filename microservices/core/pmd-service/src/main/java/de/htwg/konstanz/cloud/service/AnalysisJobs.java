@@ -0,0 +1,359 @@
+package de.htwg.konstanz.cloud.service;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Runs pmd requests in the background. A job is only queued when it is submitted, a bounded pool of
+    workers analyzes the repositories afterwards, so the service accepts many more repositories than it has
+    threads and no http connection is kept open during the analysis. The json result of a finished job is stored
+    in a file until the job expires, the client polls the status or gets a callback when the job is finished.
+ */
+@Component
+public class AnalysisJobs {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisJobs.class);
+
+    static final String QUEUED = "queued";
+
+    static final String RUNNING = "running";
+
+    static final String DONE = "done";
+
+    static final String FAILED = "failed";
+
+    /* number of repositories which are analyzed at the same time */
+    @Value("${app.config.jobs.threads:2}")
+    private int nThreads;
+
+    /* maximum number of waiting jobs, further jobs are rejected */
+    @Value("${app.config.jobs.queue:1000}")
+    private int nQueueSize;
+
+    /* minutes a finished job and its result are kept */
+    @Value("${app.config.jobs.retention:60}")
+    private int nRetentionMinutes;
+
+    /* directory of the results of the finished jobs */
+    @Value("${app.config.jobs.directory:jobs}")
+    private String sJobDirectory;
+
+    /* comma separated hosts which may receive callbacks, empty --> callbacks are not allowed */
+    @Value("${app.config.jobs.callback.hosts:}")
+    private String sCallbackHosts;
+
+    /* milliseconds until a callback host has to accept the connection and to answer */
+    @Value("${app.config.jobs.callback.timeout:5000}")
+    private int nCallbackTimeout;
+
+    private final Set<String> oCallbackHosts = new HashSet<>();
+
+    private ThreadPoolExecutor oExecutor;
+
+    private final ConcurrentMap<String, Job> oJobs = new ConcurrentHashMap<>();
+
+    private RestTemplate oRestTemplate;
+
+    private final AtomicLong lSubmitted = new AtomicLong();
+
+    private final AtomicLong lRejected = new AtomicLong();
+
+    private final AtomicLong lDone = new AtomicLong();
+
+    private final AtomicLong lFailed = new AtomicLong();
+
+    /**
+     * starts the workers and removes the results of jobs of a previous run, their status is lost
+     * @throws IOException - the job directory could not be created
+     */
+    @PostConstruct
+    private void init() throws IOException {//NOPMD
+        Files.createDirectories(Paths.get(sJobDirectory));
+        try (DirectoryStream<Path> oFiles = Files.newDirectoryStream(Paths.get(sJobDirectory))) {
+            for (Path oFile : oFiles) {
+                Files.deleteIfExists(oFile);
+            }
+        }
+
+        AtomicInteger nThreadCount = new AtomicInteger();
+        oExecutor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(nQueueSize), oRunnable -> {
+                    Thread oThread = new Thread(oRunnable, "job-worker-" + nThreadCount.incrementAndGet());
+                    oThread.setDaemon(true);
+                    return oThread;
+                });
+
+        for (String sHost : sCallbackHosts.split(",")) {
+            if (!sHost.trim().isEmpty()) {
+                oCallbackHosts.add(sHost.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        //the callbacks are sent by the workers, a host which never answers must not block a worker
+        SimpleClientHttpRequestFactory oRequestFactory = new SimpleClientHttpRequestFactory();
+        oRequestFactory.setConnectTimeout(nCallbackTimeout);
+        oRequestFactory.setReadTimeout(nCallbackTimeout);
+        oRestTemplate = new RestTemplate(oRequestFactory);
+    }
+
+    /**
+     * stops all workers when the service shuts down
+     */
+    @PreDestroy
+    private void destroy() {//NOPMD
+        oExecutor.shutdownNow();
+    }
+
+    /**
+     * checks if a callback url points to an allowed host, so a client cannot make the service send requests to
+     * any host of the internal network
+     * @param sCallbackUrl - url which should receive the status of a job
+     * @return - true --> http or https url of a configured callback host
+     */
+    boolean isAllowedCallback(String sCallbackUrl) {
+        try {
+            URI oUri = new URI(sCallbackUrl);
+            String sScheme = oUri.getScheme();
+
+            return ("http".equalsIgnoreCase(sScheme) || "https".equalsIgnoreCase(sScheme)) && oUri.getHost() != null
+                    && oUri.getUserInfo() == null && oCallbackHosts.contains(oUri.getHost().toLowerCase(Locale.ROOT));
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    /**
+     * queues the analysis of a repository
+     * @param sRepository - svn/git repository path
+     * @param sCallbackUrl - optional url which receives the status of the job when it is finished
+     * @param oAnalysis - analysis of the repository
+     * @return - queued job
+     * @throws RejectedExecutionException - the queue is full
+     */
+    Job submit(String sRepository, String sCallbackUrl, Callable<AnalysisResult> oAnalysis) {
+        removeExpiredJobs();
+
+        Job oJob = new Job(UUID.randomUUID().toString(), sRepository, sCallbackUrl);
+        oJobs.put(oJob.sId, oJob);
+        try {
+            oExecutor.execute(() -> run(oJob, oAnalysis));
+        } catch (RejectedExecutionException e) {
+            oJobs.remove(oJob.sId);
+            lRejected.incrementAndGet();
+            throw e;
+        }
+        lSubmitted.incrementAndGet();
+
+        return oJob;
+    }
+
+    /**
+     * searches a job which is not expired
+     * @param sId - id of the job
+     * @return - job or null
+     */
+    Job get(String sId) {
+        removeExpiredJobs();
+
+        return oJobs.get(sId);
+    }
+
+    /**
+     * returns the counters of the jobs
+     * @return - json object with the number of queued, running and finished jobs
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+
+        oJson.put("threads", nThreads);
+        oJson.put("maxQueued", nQueueSize);
+        oJson.put("queued", oExecutor.getQueue().size());
+        oJson.put("running", oExecutor.getActiveCount());
+        oJson.put("submitted", lSubmitted.get());
+        oJson.put("rejected", lRejected.get());
+        oJson.put("done", lDone.get());
+        oJson.put("failed", lFailed.get());
+        oJson.put("stored", oJobs.size());
+
+        return oJson;
+    }
+
+    private void run(Job oJob, Callable<AnalysisResult> oAnalysis) {
+        oJob.lStarted = System.currentTimeMillis();
+        oJob.sStatus = RUNNING;
+
+        Path oTmpPath = null;
+        try {
+            AnalysisResult oResult = oAnalysis.call();
+
+            //the result is written completely before it is visible, so a client never reads a half written result
+            oTmpPath = Files.createTempFile(Paths.get(sJobDirectory), oJob.sId, ".tmp");
+            try (OutputStream oOut = new BufferedOutputStream(Files.newOutputStream(oTmpPath))) {
+                oResult.writeTo(oOut);
+            }
+            Files.move(oTmpPath, oJob.getResultPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            oTmpPath = null;
+
+            oJob.sStatus = DONE;
+            lDone.incrementAndGet();
+        } catch (Exception e) {
+            LOG.error("Job " + oJob.sId + " failed: " + e.getMessage());
+            oJob.sError = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            oJob.sStatus = FAILED;
+            lFailed.incrementAndGet();
+        } finally {
+            oJob.lFinished = System.currentTimeMillis();
+            deleteQuietly(oTmpPath);
+        }
+
+        sendCallback(oJob);
+    }
+
+    /**
+     * posts the status of a finished job to its callback url, a failed callback does not change the job
+     * @param oJob - finished job
+     */
+    private void sendCallback(Job oJob) {
+        if (oJob.sCallbackUrl == null || oJob.sCallbackUrl.isEmpty()) {
+            return;
+        }
+
+        try {
+            HttpHeaders oHeaders = new HttpHeaders();
+            oHeaders.setContentType(MediaType.APPLICATION_JSON);
+            oRestTemplate.postForEntity(oJob.sCallbackUrl,
+                    new HttpEntity<>(oJob.toJson().toString(), oHeaders), String.class);
+        } catch (Exception e) {
+            LOG.info("Callback " + oJob.sCallbackUrl + " of job " + oJob.sId + " failed: " + e.getMessage());
+        }
+    }
+
+    private void removeExpiredJobs() {
+        long lExpired = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(nRetentionMinutes);
+
+        Iterator<Job> oIterator = oJobs.values().iterator();
+        while (oIterator.hasNext()) {
+            Job oJob = oIterator.next();
+            if (oJob.lFinished != 0 && oJob.lFinished < lExpired) {
+                oIterator.remove();
+                deleteQuietly(oJob.getResultPath());
+            }
+        }
+    }
+
+    private void deleteQuietly(Path oPath) {
+        if (oPath != null) {
+            try {
+                Files.deleteIfExists(oPath);
+            } catch (IOException e) {
+                LOG.info("Job result " + oPath + " could not be removed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * status of a submitted repository
+     */
+    class Job {
+        private final String sId;
+
+        private final String sRepository;
+
+        private final String sCallbackUrl;
+
+        private final long lSubmitted = System.currentTimeMillis();
+
+        private volatile long lStarted;
+
+        private volatile long lFinished;
+
+        private volatile String sStatus = QUEUED;
+
+        private volatile String sError;
+
+        Job(String sId, String sRepository, String sCallbackUrl) {
+            this.sId = sId;
+            this.sRepository = sRepository;
+            this.sCallbackUrl = sCallbackUrl;
+        }
+
+        String getId() {
+            return sId;
+        }
+
+        String getStatus() {
+            return sStatus;
+        }
+
+        /**
+         * file with the json result, it only exists when the job is done
+         * @return - path of the result
+         */
+        Path getResultPath() {
+            return Paths.get(sJobDirectory, sId + ".json");
+        }
+
+        /**
+         * builds the status of the job
+         * @return - json object with the state and the times of the job
+         */
+        JSONObject toJson() {
+            JSONObject oJson = new JSONObject();
+
+            oJson.put("id", sId);
+            oJson.put("repository", sRepository);
+            oJson.put("status", sStatus);
+            oJson.put("submitted", lSubmitted);
+            if (lStarted != 0) {
+                oJson.put("started", lStarted);
+            }
+            if (lFinished != 0) {
+                oJson.put("finished", lFinished);
+            }
+            if (sError != null) {
+                oJson.put("error", sError);
+            }
+            if (DONE.equals(sStatus)) {
+                oJson.put("result", "/jobs/" + sId + "/result");
+            }
+
+            return oJson;
+        }
+    }
+}
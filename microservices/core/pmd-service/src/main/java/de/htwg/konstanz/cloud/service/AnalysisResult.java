@@ -0,0 +1,208 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.RuleCost;
+import de.htwg.konstanz.cloud.util.OwnJson;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    Result of a pmd request. An analyzed repository is not converted into a json string, its classes are
+    written as json document directly into the response when the result is sent. A cached result is either
+    a string in memory or a file of the disk cache. A progressive request gets the result as json records.
+ */
+class AnalysisResult {
+    private static final String INVALID_REPOSITORY = "Invalid Repository";
+
+    private final OwnJson oOwnJson = new OwnJson();
+
+    private final String sJson;
+
+    private final Path oJsonFile;
+
+    private final String sRepo;
+
+    private final long lStartTime;
+
+    private final String sLastRepoUpdateTime;
+
+    private final List<Class> lClassList;
+
+    private final PhaseTimings.Recorder oTimings;
+
+    /* costs of the rules of the analysis, null --> not profiled */
+    private final RuleProfiler.Run oRuleProfile;
+
+    private RepositoryResultCache oRepositoryCache;
+
+    private String sCacheKey;
+
+    /* true --> a writer stores the result in the repository cache or has already stored it. A coalesced result
+       is written by every waiting request, but it is stored only once */
+    private final AtomicBoolean bCacheClaimed = new AtomicBoolean();
+
+    /**
+     * result of an analyzed repository
+     * @param sRepo - svn/git repository path
+     * @param lStartTime - start time of the execution
+     * @param sLastRepoUpdateTime - last time the svn/git repository was updated
+     * @param lClassList - list with all evaluated java classes
+     * @param oTimings - durations of the phases of the analysis
+     * @param oRuleProfile - costs of the rules of the analysis, null if the rules were not profiled
+     */
+    AnalysisResult(String sRepo, long lStartTime, String sLastRepoUpdateTime, List<Class> lClassList,
+                   PhaseTimings.Recorder oTimings, RuleProfiler.Run oRuleProfile) {
+        this(null, null, sRepo, lStartTime, sLastRepoUpdateTime, lClassList, oTimings, oRuleProfile);
+    }
+
+    private AnalysisResult(String sJson, Path oJsonFile, String sRepo, long lStartTime, String sLastRepoUpdateTime,
+                           List<Class> lClassList, PhaseTimings.Recorder oTimings, RuleProfiler.Run oRuleProfile) {
+        this.sJson = sJson;
+        this.oJsonFile = oJsonFile;
+        this.sRepo = sRepo;
+        this.lStartTime = lStartTime;
+        this.sLastRepoUpdateTime = sLastRepoUpdateTime;
+        this.lClassList = lClassList;
+        this.oTimings = oTimings;
+        this.oRuleProfile = oRuleProfile;
+    }
+
+    /**
+     * result which is already serialized, e.g. a cached result or the message of an invalid repository
+     * @param sJson - serialized result
+     * @return - result which writes the given string
+     */
+    static AnalysisResult of(String sJson) {
+        return new AnalysisResult(sJson, null, null, 0, null, null, null, null);
+    }
+
+    /**
+     * result of a repository url which belongs neither to svn nor to git
+     * @return - result which writes the message of an invalid repository
+     */
+    static AnalysisResult invalid() {
+        return of(INVALID_REPOSITORY);
+    }
+
+    /**
+     * result which is stored in a file of the disk cache
+     * @param oJsonFile - file with the serialized result
+     * @return - result which copies the given file
+     */
+    static AnalysisResult of(Path oJsonFile) {
+        return new AnalysisResult(null, oJsonFile, null, 0, null, null, null, null);
+    }
+
+    /**
+     * the result is stored in the repository cache while it is written the first time, a failed write is retried
+     * by the next writer
+     * @param oRepositoryCache - cache with the results of already analyzed commits
+     * @param sCacheKey - cache key of the analyzed commit
+     */
+    void cacheAs(RepositoryResultCache oRepositoryCache, String sCacheKey) {
+        this.oRepositoryCache = oRepositoryCache;
+        this.sCacheKey = sCacheKey;
+    }
+
+    /**
+     * writes the json result into the given stream, e.g. the response of the request
+     * @param oOut - stream which receives the result
+     * @throws IOException - the result could not be written
+     */
+    void writeTo(OutputStream oOut) throws IOException {
+        if (sCacheKey == null || !bCacheClaimed.compareAndSet(false, true)) {
+            write(oOut);
+        } else {
+            storeWhileWriting(oOut);
+        }
+        oOut.flush();
+    }
+
+    /**
+     * writes the result as json records into the given stream. The records of an analyzed repository are usually
+     * written during the analysis, so only the totals follow. A cached result is converted into records
+     * @param oOut - stream which receives the records
+     * @param bClassRecordsSent - true --> the records of the java files were already written during the analysis
+     * @throws IOException - the records could not be written
+     */
+    void writeRecords(OutputStream oOut, boolean bClassRecordsSent) throws IOException {
+        if (lClassList != null) {
+            if (!bClassRecordsSent) {
+                for (Class oClass : lClassList) {
+                    oOwnJson.writeClassRecord(oOut, oClass);
+                }
+            }
+            oOwnJson.writeSummaryRecord(oOut, sRepo, lStartTime, sLastRepoUpdateTime, lClassList,
+                    oTimings.getDurations(), getRuleProfile());
+
+            //the cache stores the whole json document of the repository, it is rendered once if no json request has
+            // written it
+            if (sCacheKey != null && bCacheClaimed.compareAndSet(false, true)) {
+                storeWhileWriting(new NullOutputStream());
+            }
+        } else if (INVALID_REPOSITORY.equals(sJson)) {
+            oOwnJson.writeErrorRecord(oOut, sJson);
+        } else {
+            try (InputStream oDocument = sJson != null
+                    ? new ByteArrayInputStream(sJson.getBytes(StandardCharsets.UTF_8))
+                    : Files.newInputStream(oJsonFile)) {
+                oOwnJson.writeRecords(oDocument, oOut);
+            }
+        }
+    }
+
+    /**
+     * writes the result and stores it in the repository cache, the writer has to own the claim of the cache
+     * @param oOut - stream which receives the result
+     * @throws IOException - the result could not be written
+     */
+    private void storeWhileWriting(OutputStream oOut) throws IOException {
+        //the cache gets a copy of every written byte, the result is only stored if it was written completely
+        RepositoryResultCache.ResultOutputStream oCacheStream = oRepositoryCache.createResultStream(sCacheKey, oOut);
+        boolean bStored = false;
+        try {
+            write(oCacheStream);
+            oCacheStream.commit();
+            bStored = true;
+        } finally {
+            oCacheStream.discard();
+            if (!bStored) {
+                bCacheClaimed.set(false);
+            }
+        }
+    }
+
+    private void write(OutputStream oOut) throws IOException {
+        if (sJson != null) {
+            oOut.write(sJson.getBytes(StandardCharsets.UTF_8));
+        } else if (oJsonFile != null) {
+            Files.copy(oJsonFile, oOut);
+        } else {
+            long lBuildStart = oTimings.start();
+            oOwnJson.writeJson(oOut, sRepo, lStartTime, sLastRepoUpdateTime, lClassList, oTimings.getDurations(),
+                    getRuleProfile());
+            oTimings.stop("buildJson", lBuildStart);
+        }
+    }
+
+    /**
+     * returns the number of java files of an analyzed repository
+     * @return - number of java files, 0 for a serialized result
+     */
+    int getFileCount() {
+        return lClassList == null ? 0 : lClassList.size();
+    }
+
+    private List<RuleCost> getRuleProfile() {
+        return oRuleProfile == null ? null : oRuleProfile.getTopRules();
+    }
+}
@@ -0,0 +1,12 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+
+import java.io.IOException;
+
+/**
+ * receives every java class as soon as its analysis is done, e.g. to send the result progressively
+ */
+interface ClassListener {
+    void classDone(Class oClass) throws IOException;
+}
@@ -1,30 +1,35 @@
 package de.htwg.konstanz.cloud.service;
 
 import de.htwg.konstanz.cloud.model.Duplication;
-import de.htwg.konstanz.cloud.util.Git;
+import de.htwg.konstanz.cloud.util.GitMirrorStore;
+import de.htwg.konstanz.cloud.util.GitTree;
 import de.htwg.konstanz.cloud.util.OperatingSystemCheck;
+import de.htwg.konstanz.cloud.util.RepositoryFetchPool;
+import de.htwg.konstanz.cloud.util.RepositoryFetchPool.Fetch;
 import de.htwg.konstanz.cloud.util.Svn;
 import de.htwg.konstanz.cloud.util.Util;
+import de.htwg.konstanz.cloud.util.XmlReportReader;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.swing.text.BadLocationException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Cpd {
     private static final Logger LOG = LoggerFactory.getLogger(Cpd.class);
@@ -37,117 +42,470 @@ public class Cpd {
 
     private final Util oUtil = new Util();
 
-    private final Git oGit = new Git();
+    private final XmlReportReader oXmlReportReader = new XmlReportReader();
 
-    private final Svn oSvn = new Svn();
+    private final GitMirrorStore oGitMirrorStore;
+
+    private final Svn oSvn;
+
+    private final RepositoryFetchPool oFetchPool;
+
+    /* fetch time or error of every repository */
+    private final JSONArray oFetches = new JSONArray();
 
     private String sFileSeparator = "";
 
+    /* index --> copy paste detection inside the service, otherwise cpd of pmd-bin-5.4.2 is forked */
+    private final String sEngine;
+
+    private final int nMinimumTokens;
+
+    private final CpdCourseIndex oCourseIndex;
+
+    /* repositories of two compared sets, null --> all repositories are compared with each other */
+    private List<String> lReposA;
+
+    private List<String> lReposB;
+
+    /* names of the repositories of the two compared sets */
+    private Set<String> oNamesA;
+
+    private Set<String> oNamesB;
+
+    /* minimum similarity of a reported pair of repositories, 0 --> no similarity analysis */
+    private final double dSimilarityThreshold;
+
+    /* maximum number of characters of a stored code fragment, 0 --> complete fragments */
+    private final int nMaxFragmentLength;
+
+    /* similar pairs of repositories, null if they are not analyzed */
+    private JSONArray oSimilarities;
+
     /**
      * Constructor to initialize the Svn server ip for Cpd.
      * It is stored in the config file
      * @param svnServerIp - SVN Server ip address
+     * @param oGitMirrorStore - local mirrors of the git repositories
+     * @param oSvn - crawler of the svn repositories
+     * @param oFetchPool - workers which fetch the repositories in parallel
+     * @param sEngine - index or process
+     * @param nMinimumTokens - minimum number of identical tokens of a duplication
+     * @param oCourseIndex - tokenized repositories of the courses
+     * @param dSimilarityThreshold - minimum similarity of a reported pair of repositories, 0 --> none
+     * @param nMaxFragmentLength - maximum number of characters of a stored code fragment, 0 --> no limit
      */
-    public Cpd(String svnServerIp) {
+    public Cpd(String svnServerIp, GitMirrorStore oGitMirrorStore, Svn oSvn, RepositoryFetchPool oFetchPool,
+               String sEngine, int nMinimumTokens, CpdCourseIndex oCourseIndex, double dSimilarityThreshold,
+               int nMaxFragmentLength) {
         this.svnServerIp = svnServerIp;
+        this.oGitMirrorStore = oGitMirrorStore;
+        this.oSvn = oSvn;
+        this.oFetchPool = oFetchPool;
+        this.sEngine = sEngine;
+        this.nMinimumTokens = nMinimumTokens;
+        this.oCourseIndex = oCourseIndex;
+        this.dSimilarityThreshold = dSimilarityThreshold;
+        this.nMaxFragmentLength = nMaxFragmentLength;
     }
 
     /**
      * Connection point for incoming post request
      * @param gitRepository - given git repository from post request
+     * @param sCourse - id of the course of the repositories, null --> all repositories are compared from scratch
      * @return - Problems or Valid Json
      * @throws IOException - throw for the handling in CpdService
      * @throws ParserConfigurationException - throw for the handling in CpdService
      * @throws SAXException - throw for the handling in CpdService
-     * @throws BadLocationException - throw for the handling in CpdService
      * @throws GitAPIException - throw for the handling in CpdService
      * @throws NullPointerException - throw for the handling in CpdService
      * @throws InterruptedException - throw for the handling in CpdService
      */
-    String startIt(List<String> gitRepository) throws IOException, ParserConfigurationException,
-            SAXException, BadLocationException, GitAPIException, NullPointerException, InterruptedException {
-        long lStartTime = System.currentTimeMillis();
+    String startIt(List<String> gitRepository, String sCourse) throws IOException, ParserConfigurationException,
+            SAXException, GitAPIException, NullPointerException, InterruptedException {
+        return oUtil.checkJsonResult(analyze(gitRepository, sCourse, System.currentTimeMillis()));
+    }
+
+    /**
+     * downloads and compares the repositories and deletes the downloaded repositories afterwards
+     * @param gitRepository - given git repository from post request
+     * @param sCourse - id of the course of the repositories, null --> all repositories are compared from scratch
+     * @param lStartTime - start time of the service execution
+     * @return - Json Object with all duplications, null if there are none
+     * @throws IOException - throw for the handling in CpdService
+     * @throws ParserConfigurationException - throw for the handling in CpdService
+     * @throws SAXException - throw for the handling in CpdService
+     * @throws GitAPIException - throw for the handling in CpdService
+     * @throws InterruptedException - throw for the handling in CpdService
+     */
+    private JSONObject analyze(List<String> gitRepository, String sCourse, long lStartTime) throws IOException,
+            ParserConfigurationException, SAXException, GitAPIException, InterruptedException {
         JSONObject oJsonResult;
 
         OperatingSystemCheck oOperatingSystemCheck = new OperatingSystemCheck();
         sFileSeparator = oOperatingSystemCheck.getOperatingSystemSeparator();
 
-        oJsonResult = determineVersionControlSystem(gitRepository, lStartTime);
+        oJsonResult = determineVersionControlSystem(gitRepository, sCourse, lStartTime);
         if (oRepoDir == null) {
             LOG.info("Error: Local Directory is null!");
         } else {
             FileUtils.deleteDirectory(oRepoDir);
         }
 
-        return oUtil.checkJsonResult(oJsonResult);
+        return oJsonResult;
+    }
+
+    /**
+     * Connection point for the comparison of two sets of repositories, e.g. two blocks of the repositories of a
+     * large course. Only duplications between a repository of the first and another repository of the second set
+     * are reported, the duplications within a set are found by the comparison of the set with itself. With the id
+     * of the course the index of the course on this instance is used, so the repositories which were already
+     * tokenized for another block pair are not downloaded and tokenized again
+     * @param lReposA - first set of repositories
+     * @param lReposB - second set of repositories, the same as the first one to compare a set with itself
+     * @param sCourse - id of the course of the repositories, null --> both sets are compared from scratch
+     * @return - Valid Json, also without duplications, so the validator merges the fetches of every block pair
+     * @throws IOException - throw for the handling in CpdService
+     * @throws ParserConfigurationException - throw for the handling in CpdService
+     * @throws SAXException - throw for the handling in CpdService
+     * @throws GitAPIException - throw for the handling in CpdService
+     * @throws InterruptedException - throw for the handling in CpdService
+     */
+    String comparePair(List<String> lReposA, List<String> lReposB, String sCourse) throws IOException,
+            ParserConfigurationException, SAXException, GitAPIException, InterruptedException {
+        Set<String> oRepos = new LinkedHashSet<>(lReposA);
+
+        oRepos.addAll(lReposB);
+        this.lReposA = lReposA;
+        this.lReposB = lReposB;
+        oNamesA = lReposA.stream().map(Cpd::getRepositoryName).collect(Collectors.toSet());
+        oNamesB = lReposB.stream().map(Cpd::getRepositoryName).collect(Collectors.toSet());
+
+        long lStartTime = System.currentTimeMillis();
+        JSONObject oJsonResult = analyze(new ArrayList<>(oRepos), sCourse, lStartTime);
+        if (oJsonResult == null) {
+            oJsonResult = buildJson(oRepoDir.getAbsolutePath() + sFileSeparator + "repositories-cpd"
+                    + System.currentTimeMillis(), lStartTime);
+        }
+
+        return oJsonResult.toString();
     }
 
     /**
-     * checks if the given list of repositories belongs to git or svn. After the checkout of the repository
-     * this method executes the analysis of Cpd
+     * builds the name of the directory of a repository, the first directory of the paths of its duplications.
+     * The name is the same for every download and on every instance, e.g. team1_git_3fa2c1d0
+     * @param sRepoUrl - url of the repository
+     * @return - name of the repository with a part of the hash of its url
+     */
+    static String getRepositoryName(String sRepoUrl) {
+        String sUrl = sRepoUrl.trim();
+        while (sUrl.endsWith("/")) {
+            sUrl = sUrl.substring(0, sUrl.length() - 1);
+        }
+
+        return sUrl.substring(sUrl.lastIndexOf('/') + 1).replace(".", "_") + "_"
+                + RepositoryResultCache.sha256(sUrl.getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+    }
+
+    /**
+     * checks if the given list of repositories belongs to git or svn. After the parallel checkout of the repositories
+     * this method executes the analysis of Cpd, a repository whose checkout failed is skipped
      * @param sRepoUrl - within POST request given list of repositories url (svn or git)
+     * @param sCourse - id of the course of the repositories, null if unknown
      * @param lStartTime - start time of the service execution
      * @return  - generated JSON file with all duplication who figured out in Cpd
      * @throws IOException - throw for the handling in CpdService
-     * @throws BadLocationException - throw for the handling in CpdService
      * @throws GitAPIException - throw for the handling in CpdService
      * @throws ParserConfigurationException - throw for the handling in CpdService
      * @throws SAXException - throw for the handling in CpdService
      * @throws InterruptedException - throw for the handling in CpdService
      */
-    private JSONObject determineVersionControlSystem(List<String> sRepoUrl, long lStartTime)
-            throws IOException, BadLocationException, GitAPIException, ParserConfigurationException,
+    private JSONObject determineVersionControlSystem(List<String> sRepoUrl, String sCourse, long lStartTime)
+            throws IOException, GitAPIException, ParserConfigurationException,
                                                                     SAXException, InterruptedException {
         JSONObject oJson = null;
-        String sLocalDir;
-        String[] sLocalDirArray;
         List<String> lRepoDirs = new ArrayList<>();
-        StringBuilder oStringBuilder;
 
         LOG.info("Repository URL: " + sRepoUrl);
-        oUtil.checkLocalPmd();
+        if (!isIndexEngine()) {
+            oUtil.checkLocalPmd();
+        }
         oRepoDir = oUtil.createDirectory("repositories" + sFileSeparator + "cpd-repositories_" + System.currentTimeMillis());
 
+        /* only the changed repositories of a known course are downloaded */
+        if (sCourse != null && isIndexEngine()) {
+            return runCourseIndex(sRepoUrl, sCourse, lStartTime);
+        }
+
         /* Download SVN or Git Repos */
-        for (String sRepo : sRepoUrl) {
+        List<Fetch<String>> lFetches = oFetchPool.fetchAll(new ArrayList<>(new LinkedHashSet<>(sRepoUrl)),
+                this::downloadRepository);
+        for (Fetch<String> oFetch : lFetches) {
+            if (!oFetch.isFailed() && oFetch.getResult() != null) {
+                lRepoDirs.add(oFetch.getResult());
+            }
+        }
+        addFetches(lFetches);
 
+        /* Run CPD */
+        if (!lRepoDirs.isEmpty()) {
+            oJson = runCpd(oRepoDir.getAbsolutePath(), lStartTime);
+        } else if (hasResult()) {
+            oJson = buildJson(oRepoDir.getAbsolutePath() + sFileSeparator + "repositories-cpd"
+                    + System.currentTimeMillis(), lStartTime);
+        }
 
-            oStringBuilder = new StringBuilder();
-            /* Svn Checkout */
-            if (sRepo.contains(svnServerIp)) {
-                /* URL needs to start with HTTP:// */
-                if (!sRepo.startsWith("http://")) {
-                    oStringBuilder.append("http://");
-                }
-                /* remove the last / */
-                if (sRepo.endsWith("/")) {
-                    oStringBuilder.append(sRepo.substring(0, sRepo.length() - 1));
-                } else {
-                    oStringBuilder.append(sRepo);
-                }
-                LOG.info("SVN " + oStringBuilder.toString());
-                sLocalDir = oSvn.downloadSvnRepo(oStringBuilder.toString(), oRepoDir.getAbsolutePath());
-                lRepoDirs.add(sLocalDir);
+        return oJson;
+    }
+
+    /**
+     * downloads a svn or git repository, executed by the workers of the fetch pool
+     * @param sRepo - url of the repository
+     * @return - local directory of the repository, null if it is no svn/git repository or empty
+     * @throws IOException - the download failed
+     * @throws GitAPIException - the git repository could not be fetched
+     */
+    private String downloadRepository(String sRepo) throws IOException, GitAPIException {
+        /* Svn Checkout */
+        if (sRepo.contains(svnServerIp)) {
+            String sSvnUrl = createSvnUrl(sRepo);
+            LOG.info("SVN " + sSvnUrl);
+            //[0] --> locally Path of the snapshot of the svn repository
+            String sLocalDir = oSvn.downloadSvnRepo(sSvnUrl, oRepoDir.getAbsolutePath())[0];
+            if (!sLocalDir.isEmpty()) {
+                return moveToRepositoryName(sLocalDir, sRepo);
             }
-            /* Git */
-            else if (sRepo.contains("github.com")) {
-                LOG.info("Git " + sRepo);
-                sLocalDirArray = oGit.downloadGitRepo(sRepo, oRepoDir.getPath());
-                lRepoDirs.add(sLocalDirArray[0]);
-            } else {
-                LOG.info("Repository URL has no valid Svn/Git attributes. (" + sRepoUrl + ")");
+        }
+        /* Git */
+        else if (sRepo.contains("github.com")) {
+            LOG.info("Git " + sRepo);
+            String[] sLocalDirArray = oGitMirrorStore.checkout(sRepo, oRepoDir.getPath());
+            return moveToRepositoryName(sLocalDirArray[0], sRepo);
+        } else {
+            LOG.info("Repository URL has no valid Svn/Git attributes. (" + sRepo + ")");
+        }
+
+        return null;
+    }
+
+    /**
+     * records the fetch time of every repository and the error of a failed fetch for the result
+     * @param lFetches - fetches of all repositories
+     */
+    private void addFetches(List<? extends Fetch<?>> lFetches) {
+        for (Fetch<?> oFetch : lFetches) {
+            JSONObject oJsonFetch = new JSONObject();
+            oJsonFetch.put("repository", getRepositoryName(oFetch.getRepoUrl()));
+            oJsonFetch.put("fetchTime", oFetch.getFetchTime());
+            if (oFetch.isFailed()) {
+                oJsonFetch.put("error", String.valueOf(oFetch.getError().getMessage()));
             }
+            oFetches.put(oJsonFetch);
+        }
+    }
 
+    /**
+     * renames the downloaded repository, so its duplications have the same paths on every instance
+     * @param sLocalDir - directory of the download, its name contains the time of the download
+     * @param sRepo - url of the repository
+     * @return - renamed directory
+     * @throws IOException - the directory could not be renamed
+     */
+    private String moveToRepositoryName(String sLocalDir, String sRepo) throws IOException {
+        File oTarget = new File(oRepoDir, getRepositoryName(sRepo));
+
+        if (!oTarget.exists()) {
+            Files.move(new File(sLocalDir).toPath(), oTarget.toPath());
         }
 
-        /* Run CPD */
-        if (!lRepoDirs.isEmpty()) {
-            oJson = runCpd(oRepoDir.getAbsolutePath(), lStartTime);
+        return oTarget.getPath();
+    }
+
+    /**
+     * updates the index of the course with the repositories whose commit is not tokenized yet. The commit of a git
+     * repository is read from its mirror, the one of a svn repository from the server, so an unchanged
+     * repository is not downloaded. The repositories are fetched in parallel, a repository whose fetch failed keeps
+     * its last indexed commit. A block pair of the course keeps the other repositories in the index and only reports
+     * the duplications between its two sets
+     * @param lRepoUrls - within POST request given list of repositories url (svn or git)
+     * @param sCourse - id of the course of the repositories
+     * @param lStartTime - start time of the service execution
+     * @return - Json Object with all duplications of the course and the fetches, null if nothing was fetched
+     * @throws InterruptedException - throw for the handling in CpdService
+     */
+    private JSONObject runCourseIndex(List<String> lRepoUrls, String sCourse, long lStartTime)
+            throws InterruptedException {
+        CpdCourseIndex.Update oUpdate = oCourseIndex.startUpdate(sCourse);
+        List<String> lIndexedRepos = new ArrayList<>();
+        JSONObject oJson = null;
+
+        List<Fetch<Boolean>> lFetches = oFetchPool.fetchAll(new ArrayList<>(new LinkedHashSet<>(lRepoUrls)),
+                sRepo -> indexRepository(oUpdate, sRepo));
+        for (Fetch<Boolean> oFetch : lFetches) {
+            if (oFetch.isFailed() || oFetch.getResult()) {
+                lIndexedRepos.add(oFetch.getRepoUrl());
+            }
+        }
+        addFetches(lFetches);
+
+        if (lReposA == null) {
+            lDuplications.addAll(oUpdate.finish(lIndexedRepos));
+        } else {
+            lDuplications.addAll(oUpdate.finishPair(lReposA.stream().filter(lIndexedRepos::contains)
+                    .collect(Collectors.toList()), lReposB.stream().filter(lIndexedRepos::contains)
+                    .collect(Collectors.toList())));
+        }
+        if (isSimilarityEnabled()) {
+            SimilarityIndex oSimilarityIndex = new SimilarityIndex(dSimilarityThreshold);
+            oUpdate.addSources(oSimilarityIndex, lIndexedRepos);
+            oSimilarities = oSimilarityIndex.findSimilarRepositories();
+        }
+        if (hasResult()) {
+            oJson = buildJson(oRepoDir.getAbsolutePath() + sFileSeparator + "repositories-cpd"
+                    + System.currentTimeMillis(), lStartTime);
         }
 
         return oJson;
     }
 
+    /**
+     * adds the current commit of a repository to the index of the course, if it is not indexed yet. Executed by the
+     * workers of the fetch pool
+     * @param oUpdate - update of the index of the course
+     * @param sRepo - url of the repository
+     * @return - true --> the repository is indexed, false --> it is no svn/git repository or empty
+     * @throws IOException - the download failed
+     * @throws GitAPIException - the git repository could not be fetched
+     */
+    private boolean indexRepository(CpdCourseIndex.Update oUpdate, String sRepo) throws IOException,
+            GitAPIException {
+        /* Svn */
+        if (sRepo.contains(svnServerIp)) {
+            String sSvnUrl = createSvnUrl(sRepo);
+            String sRevision = oSvn.getRemoteRevision(sSvnUrl);
+            if (sRevision != null) {
+                return oUpdate.isCurrent(sRepo, "r" + sRevision)
+                        || oUpdate.addRepositoryOnce(sRepo, "r" + sRevision, () -> readSvnJavaFiles(sSvnUrl));
+            }
+            //without the revision the download is not shared with other validations of the course
+            LOG.info("SVN " + sSvnUrl);
+            //[0] --> locally Path of the snapshot, [1] --> last changed revision
+            String[] sLocalDirArray = oSvn.downloadSvnRepo(sSvnUrl, oRepoDir.getAbsolutePath());
+            if (sLocalDirArray[0].isEmpty()) {
+                return false;
+            }
+            oUpdate.addRepository(sRepo, sLocalDirArray[1].isEmpty() ? null : "r" + sLocalDirArray[1],
+                    readJavaFiles(new File(sLocalDirArray[0])));
+            return true;
+        }
+        /* Git */
+        else if (sRepo.contains("github.com")) {
+            GitTree oTree = oGitMirrorStore.readHead(sRepo);
+            return oUpdate.isCurrent(sRepo, oTree.getCommitId())
+                    || oUpdate.addRepositoryOnce(sRepo, oTree.getCommitId(), () -> {
+                        LOG.info("Git " + sRepo);
+                        return oTree.getJavaFiles();
+                    });
+        }
+        LOG.info("Repository URL has no valid Svn/Git attributes. (" + sRepo + ")");
+
+        return false;
+    }
+
+    /**
+     * downloads the snapshot of a svn repository and reads its java files
+     * @param sSvnUrl - url of the svn repository
+     * @return - path within the repository --> content of the java file, null if the repository is empty
+     * @throws IOException - the download failed
+     */
+    private Map<String, byte[]> readSvnJavaFiles(String sSvnUrl) throws IOException {
+        LOG.info("SVN " + sSvnUrl);
+        //[0] --> locally Path of the snapshot
+        String sLocalDir = oSvn.downloadSvnRepo(sSvnUrl, oRepoDir.getAbsolutePath())[0];
+
+        return sLocalDir.isEmpty() ? null : readJavaFiles(new File(sLocalDir));
+    }
+
+    /**
+     * reads the java files of a locally stored repository
+     * @param oLocalDir - directory of the repository
+     * @return - path within the repository --> content of the java file
+     * @throws IOException - a java file is not readable
+     */
+    private Map<String, byte[]> readJavaFiles(File oLocalDir) throws IOException {
+        Map<String, byte[]> oJavaFiles = new LinkedHashMap<>();
+        Path oRootPath = oLocalDir.toPath();
+
+        try (Stream<Path> oStream = Files.walk(oRootPath)) {
+            for (Path oPath : (Iterable<Path>) oStream::iterator) {
+                if (oPath.toString().endsWith(".java") && Files.isRegularFile(oPath)) {
+                    oJavaFiles.put(oRootPath.relativize(oPath).toString(), Files.readAllBytes(oPath));
+                }
+            }
+        }
+
+        return oJavaFiles;
+    }
+
+    private String createSvnUrl(String sRepoUrl) {
+        StringBuilder oStringBuilder = new StringBuilder();
+
+        /* URL needs to start with HTTP:// */
+        if (!sRepoUrl.startsWith("http://")) {
+            oStringBuilder.append("http://");
+        }
+        /* remove the last / */
+        if (sRepoUrl.endsWith("/")) {
+            oStringBuilder.append(sRepoUrl.substring(0, sRepoUrl.length() - 1));
+        } else {
+            oStringBuilder.append(sRepoUrl);
+        }
+
+        return oStringBuilder.toString();
+    }
+
+    /**
+     * checks if the duplications are found inside the service
+     * @return - Flag which indicates yes/no
+     */
+    private boolean isIndexEngine() {
+        return "index".equalsIgnoreCase(sEngine);
+    }
+
+    private boolean isSimilarityEnabled() {
+        return dSimilarityThreshold > 0;
+    }
+
+    private boolean hasSimilarities() {
+        return oSimilarities != null && oSimilarities.length() > 0;
+    }
+
+    /**
+     * checks if there is a result to report, the fetches are reported also without duplications, e.g. the errors
+     * if every fetch failed
+     * @return - Flag which indicates yes/no
+     */
+    private boolean hasResult() {
+        return !lDuplications.isEmpty() || hasSimilarities() || oFetches.length() > 0;
+    }
+
+    /**
+     * searches similar repositories within the downloaded repositories, the first directory of every java file is
+     * the name of its repository
+     * @throws IOException - a java file is not readable
+     */
+    private void findSimilarities() throws IOException {
+        SimilarityIndex oSimilarityIndex = new SimilarityIndex(dSimilarityThreshold);
+
+        for (Map.Entry<String, byte[]> oJavaFile : readJavaFiles(oRepoDir).entrySet()) {
+            String sFilePath = oJavaFile.getKey();
+            int nSeparator = sFilePath.indexOf(File.separatorChar);
+            if (nSeparator > 0) {
+                oSimilarityIndex.addFile(sFilePath.substring(0, nSeparator), sFilePath, oJavaFile.getValue());
+            }
+        }
+        oSimilarities = oSimilarityIndex.findSimilarRepositories();
+    }
+
     /**
      * Create Cpd output file in XML format. Depends on OS, which Command Line will be use.
      * @param sRepoString - String of Directory where all downloaded Repositories are stored
@@ -169,9 +527,12 @@ public class Cpd {
         /* Check if Dir exists and if needed create new*/
         oUtil.createDirectory(sMainPath);
 
-        if (oOperatingSystemCheck.isWindows()) {
+        if (isIndexEngine()) {
+            lDuplications.addAll(new CpdIndex(nMinimumTokens, oNamesA, oNamesB).findDuplications(oRepoDir));
+        } else if (oOperatingSystemCheck.isWindows()) {
             sStartScript = "pmd-bin-5.4.2\\bin\\cpd.bat";
-            String sCpdCommand = sStartScript + " --minimum-tokens 75 --files " + oRepoDir.getAbsolutePath()
+            String sCpdCommand = sStartScript + " --minimum-tokens " + nMinimumTokens + " --files "
+                    + oRepoDir.getAbsolutePath()
                     + " --skip-lexical-errors --format xml > " + sMainPath + sFileSeparator + "CpdCheck_" + sOutputFileName;
             LOG.info("Command: " + sCpdCommand);
             int nReturnCode = oUtil.execCommand(sCpdCommand);
@@ -183,7 +544,7 @@ public class Cpd {
             sProcessBuilder.add(sStartScript);
             sProcessBuilder.add("cpd");
             sProcessBuilder.add("--minimum-tokens");
-            sProcessBuilder.add("75");
+            sProcessBuilder.add(String.valueOf(nMinimumTokens));
             sProcessBuilder.add("--files");
             sProcessBuilder.add(oRepoDir.getAbsolutePath());
             sProcessBuilder.add("--skip-lexical-errors");
@@ -198,9 +559,15 @@ public class Cpd {
         }
 
         /* Cpd Informationen eintragen */
-        storeCpdInformation(sMainPath + sFileSeparator + "CpdCheck_" + sOutputFileName, sRepoString);
+        if (!isIndexEngine()) {
+            storeCpdInformation(sMainPath + sFileSeparator + "CpdCheck_" + sOutputFileName, sRepoString);
+        }
+
+        if (isSimilarityEnabled()) {
+            findSimilarities();
+        }
 
-        if (!lDuplications.isEmpty()) {
+        if (hasResult()) {
             /* Schoene einheitliche JSON erstellen */
             oJson = buildJson(sMainPath, lStartTime);
             /* JSON an Database weitersenden */
@@ -210,73 +577,46 @@ public class Cpd {
     }
 
     /**
-     * Uses the XML output file from Cpd to create dupliaction in form of duplication model
+     * Streams the XML output file from Cpd to create dupliaction in form of duplication model
      * and add them to a List
      * @param sXmlPath - String of XML file path which contains Cpd duplications results
      * @param sMainPath - String of Directory where all downloaded Repositories are stored
      * @throws IOException - throw for the handling in CpdService
-     * @throws ParserConfigurationException - throw for the handling in CpdService
-     * @throws SAXException - throw for the handling in CpdService
      */
-    private void storeCpdInformation(String sXmlPath, String sMainPath)
-            throws ParserConfigurationException, SAXException, IOException {
-        InputStream oInputStream = new FileInputStream(sXmlPath);
-        Reader oReader = new InputStreamReader(oInputStream, "UTF-8");
-        InputSource oInputSource = new InputSource(oReader);
-        oInputSource.setEncoding("UTF-8");
-
-        DocumentBuilderFactory oDbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder oDBuilder = oDbFactory.newDocumentBuilder();
-        Document oDocument = oDBuilder.parse(oInputSource);
-
-        Node oMainNode = oDocument.getFirstChild();
-        Element eMainElement = (Element) oMainNode;
-
-        NodeList oNodeList = eMainElement.getElementsByTagName("duplication");
-        for (int nNodePos = 0; nNodePos < oNodeList.getLength(); nNodePos++) {
-
-            Node oNode = oNodeList.item(nNodePos);
-
-            if (oNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element eNodeElement = (Element) oNode;
-
-				/* Default Values */
-                List<String> lInvolvedData = new ArrayList<>();
-                String sCodeFragment = "";
-
-                //Duplication Infos
-                int nLinesCount = oUtil.getParsableElement(eNodeElement, "lines");
-                int nTokens = oUtil.getParsableElement(eNodeElement, "tokens");
-
-                //CheckFileNodes
-                NodeList nNodeFiles = eNodeElement.getElementsByTagName("file");
-                for (int nNodeFilePos = 0; nNodeFilePos < nNodeFiles.getLength(); nNodeFilePos++) {
-                    Node nNodeFile = nNodeFiles.item(nNodeFilePos);
-                    Element eNodeFileElement = (Element) nNodeFile;
-                    String sRepoString = String.valueOf(eNodeFileElement.getAttribute("path"))
-                            .substring(String.valueOf(eNodeFileElement.getAttribute("path"))
-                                    .indexOf(sMainPath) + (sMainPath).length() + 1);
-                    if (oUtil.checkIfDifferentReops(lInvolvedData, sRepoString)) {
-                        lInvolvedData.add(sRepoString);
-                    }
-                }
-
-                //CheckCodefragment
-                NodeList nNodeCodeFragment = eNodeElement.getElementsByTagName("codefragment");
-                if (nNodeCodeFragment != null) {
-                    sCodeFragment = nNodeCodeFragment.item(0).getTextContent();
+    void storeCpdInformation(String sXmlPath, String sMainPath) throws IOException {
+        oXmlReportReader.readCpdReport(sXmlPath, oDuplication -> {
+            List<String> lInvolvedData = new ArrayList<>();
+            List<Integer> lBeginLines = new ArrayList<>();
+
+            //CheckFileNodes
+            for (int nFile = 0; nFile < oDuplication.getInvolvedData().size(); nFile++) {
+                String sFilePath = oDuplication.getInvolvedData().get(nFile);
+                String sRepoString = sFilePath.substring(sFilePath.indexOf(sMainPath) + sMainPath.length() + 1);
+                if (oUtil.checkIfDifferentReops(lInvolvedData, sRepoString)) {
+                    lInvolvedData.add(sRepoString);
+                    lBeginLines.add(oDuplication.getBeginLines().get(nFile));
                 }
+            }
 
-                //Create Duplication
-                if (lInvolvedData.size() > 1) {
-                    lDuplications.add(Duplication.getDupliactionInstance(nLinesCount, nTokens, lInvolvedData, sCodeFragment));
-                }
+            //Create Duplication
+            if (lInvolvedData.size() > 1) {
+                lDuplications.add(Duplication.getDupliactionInstance(oDuplication.getDuplicatedLine(),
+                        oDuplication.getTokens(), lInvolvedData, lBeginLines, oDuplication.getDuplicatedCode()));
             }
-        }
+        });
     }
 
     /**
-     * Create the Json with the stored data in the duplication list
+     * returns the duplications which were found or read from the report of cpd
+     * @return - duplications between at least two repositories
+     */
+    List<Duplication> getDuplications() {
+        return lDuplications;
+    }
+
+    /**
+     * Create the Json with the stored data in the duplication list. Every code fragment is added once to the
+     * fragments, the duplications only contain its hash and the lines within the involved files
      * @param sMainDir - String of Directory where all downloaded Repositories are stored
      * @param lStartTime - start time of the service execution
      * @return - JsonObject with stored Information in the duplication list
@@ -290,6 +630,7 @@ public class Cpd {
 
 		/* all Classes */
         JSONArray lJsonDuplications = new JSONArray();
+        Map<String, JSONObject> oJsonFragments = new LinkedHashMap<>();
         for (Duplication oDuplication : lDuplications) {
             JSONObject oJsonDuplication = new JSONObject();
 
@@ -299,24 +640,54 @@ public class Cpd {
 
             //New Json Array with involved Paths
             JSONArray lJsonFilePaths = new JSONArray();
-            for (String sDuplicationFilePath : oDuplication.getInvolvedData()) {
-                lJsonFilePaths.put(new JSONObject().put("filePath", sDuplicationFilePath));
+            for (int nFile = 0; nFile < oDuplication.getInvolvedData().size(); nFile++) {
+                int nBeginLine = oDuplication.getBeginLines().get(nFile);
+                lJsonFilePaths.put(new JSONObject().put("filePath", oDuplication.getInvolvedData().get(nFile))
+                        .put("beginLine", nBeginLine)
+                        .put("endLine", nBeginLine + oDuplication.getDuplicatedLine() - 1));
             }
             oJsonDuplication.put("filePaths", lJsonFilePaths);
-            oJsonDuplication.put("codefragment", oDuplication.getDuplicatedCode());
+            oJsonDuplication.put("fragmentHash", addFragment(oJsonFragments, oDuplication.getDuplicatedCode()));
             lJsonDuplications.put(new JSONObject().put("duplication", oJsonDuplication));
             nDuplicationCounter++;
         }
         oJsonRoot.put("duplications", lJsonDuplications);
+        oJsonRoot.put("fragments", new JSONArray(oJsonFragments.values()));
+        if (oSimilarities != null) {
+            oJsonRoot.put("similarities", oSimilarities);
+        }
 
         long lEndTime = System.currentTimeMillis();
         long lTotalTime = (lEndTime - lStartTime);
 
         oJsonRoot.put("numberOfDuplications", nDuplicationCounter);
+        oJsonRoot.put("fetches", oFetches);
         oJsonRoot.put("totalExpendedTime", lTotalTime);
         oJsonRoot.put("assignments", "Copy Paste Check for " + sMainDir);
 
         LOG.debug("Code Cuplication Analysis check for: " + sMainDir);
         return oJsonRoot;
     }
+
+    /**
+     * adds a code fragment to the fragments of the result, if it is not added yet
+     * @param oJsonFragments - hash --> fragment of the result
+     * @param sCodeFragment - complete code fragment of a duplication
+     * @return - hash of the complete code fragment
+     */
+    private String addFragment(Map<String, JSONObject> oJsonFragments, String sCodeFragment) {
+        String sFragmentHash = RepositoryResultCache.sha256(sCodeFragment.getBytes(StandardCharsets.UTF_8));
+
+        oJsonFragments.computeIfAbsent(sFragmentHash, sKey -> {
+            boolean bTruncated = nMaxFragmentLength > 0 && sCodeFragment.length() > nMaxFragmentLength;
+            JSONObject oJsonFragment = new JSONObject();
+            oJsonFragment.put("hash", sFragmentHash);
+            oJsonFragment.put("codefragment", bTruncated ? sCodeFragment.substring(0, nMaxFragmentLength)
+                    : sCodeFragment);
+            oJsonFragment.put("truncated", bTruncated);
+            return oJsonFragment;
+        });
+
+        return sFragmentHash;
+    }
 }
@@ -0,0 +1,1086 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Duplication;
+import de.htwg.konstanz.cloud.util.CpdTokenizer;
+import de.htwg.konstanz.cloud.util.Util;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+    Incremental copy paste detection of the courses. Every repository of a course is tokenized once per commit,
+    the tokens are stored on disk with the repository and the commit as key. Of the hashes of all token sequences
+    of a file only the smallest one of every window is kept as fingerprint (winnowing), every sequence of the
+    minimum number of tokens contains at least one fingerprint. The fingerprints of all repositories of a course
+    are indexed, so a new commit of a repository is only compared with the files of the other repositories which
+    share a fingerprint. The matches of the other repositories among each other stay the same.
+    The tokens are numbered by a dictionary of the course and the images of the tokens are stored on disk, so like
+    with cpd only identical token sequences are a duplication, the hashes just select the candidates.
+ */
+@Component
+public class CpdCourseIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(CpdCourseIndex.class);
+
+    /* version of the token files on disk, a new version ignores the files of the old one */
+    private static final int FORMAT_VERSION = 3;
+
+    private static final long HASH_BASE = 1_000_003L;
+
+    /* minimum number of identical tokens of a duplication */
+    @Value("${app.config.cpd.minimumtokens:75}")
+    private int nMinimumTokens;
+
+    /* number of token sequences of which the one with the smallest hash is a fingerprint */
+    @Value("${app.config.cpd.index.window:16}")
+    private int nWindow;
+
+    /* maximum number of courses which are kept in memory, the least recently validated course is removed first */
+    @Value("${app.config.cpd.index.courses:20}")
+    private int nMaxCourses;
+
+    /* directory of the tokenized repositories, empty --> memory only */
+    @Value("${app.config.cpd.index.directory:}")
+    private String sIndexDirectory;
+
+    /* maximum size of the tokenized repositories on disk in megabytes */
+    @Value("${app.config.cpd.index.maxsize:1024}")
+    private long lMaxDiskSizeMb;
+
+    /* length of the token sequences whose hashes are fingerprints */
+    private int nSequenceLength;
+
+    private final CpdTokenizer oTokenizer = new CpdTokenizer();
+
+    private final Util oUtil = new Util();
+
+    private Map<String, Course> oCourses;
+
+    private final AtomicLong lTokenized = new AtomicLong();
+
+    private final AtomicLong lLoaded = new AtomicLong();
+
+    private final AtomicLong lUnchanged = new AtomicLong();
+
+    private final AtomicLong lCoalesced = new AtomicLong();
+
+    /* sum of the sizes of the token files in bytes */
+    private final AtomicLong lDiskSize = new AtomicLong();
+
+    /* only one validation removes token files at the same time */
+    private final AtomicBoolean bEvicting = new AtomicBoolean();
+
+    /**
+     * checks the size of the windows, creates the directory of the token files and measures the files of a previous
+     * run. Files of another format version and incomplete temporary files are removed, they are never read again
+     * @throws IOException - the directory could not be created or read
+     */
+    @PostConstruct
+    private void init() throws IOException {//NOPMD
+        nWindow = Math.max(1, Math.min(nWindow, nMinimumTokens));
+        nSequenceLength = nMinimumTokens - nWindow + 1;
+
+        //the access order of the map is used to remove the least recently validated course
+        oCourses = Collections.synchronizedMap(new LinkedHashMap<String, Course>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Course> oEldest) {
+                return size() > nMaxCourses;
+            }
+        });
+
+        if (isDiskEnabled()) {
+            Files.createDirectories(Paths.get(sIndexDirectory));
+            for (Path oPath : listFiles()) {
+                if (oPath.toString().endsWith(".tokens") && readFormatVersion(oPath) == FORMAT_VERSION) {
+                    lDiskSize.addAndGet(Files.size(oPath));
+                } else {
+                    deleteFromDisk(oPath);
+                }
+            }
+        }
+        LOG.info("Cpd course index: sequences of " + nSequenceLength + " tokens, window " + nWindow
+                + ", disk directory: " + (isDiskEnabled() ? sIndexDirectory + " with " + lDiskSize.get() + " bytes"
+                : "disabled"));
+    }
+
+    /**
+     * starts the validation of a course. The changed repositories are collected first and added to the index of
+     * the course at the end, so the download of the repositories does not block other validations of the course
+     * @param sCourse - id of the course
+     * @return - update of the index of the course
+     */
+    Update startUpdate(String sCourse) {
+        return new Update(oCourses.computeIfAbsent(sCourse, sKey -> new Course()));
+    }
+
+    /**
+     * returns the statistics of the index since the start of the service
+     * @return - json object with the number of courses, repositories and reused tokenized repositories
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+        int nRepositories = 0;
+
+        synchronized (oCourses) {
+            for (Course oCourse : oCourses.values()) {
+                nRepositories += oCourse.oRepositories.size();
+            }
+            oJson.put("courses", oCourses.size());
+        }
+        oJson.put("repositories", nRepositories);
+        oJson.put("tokenized", lTokenized.get());
+        oJson.put("loaded", lLoaded.get());
+        oJson.put("unchanged", lUnchanged.get());
+        oJson.put("coalesced", lCoalesced.get());
+        oJson.put("diskBytes", lDiskSize.get());
+
+        return oJson;
+    }
+
+    /**
+     * tokenizes the java files of a repository
+     * @param oDictionary - numbers of the token images of the course
+     * @param sRepoUrl - url of the repository
+     * @param sRevision - commit of the repository
+     * @param oJavaFiles - path within the repository --> content of the java file
+     * @return - tokenized repository
+     */
+    private Repository tokenize(TokenDictionary oDictionary, String sRepoUrl, String sRevision,
+                                Map<String, byte[]> oJavaFiles) {
+        List<SourceFile> lFiles = new ArrayList<>();
+
+        for (Map.Entry<String, byte[]> oJavaFile : new TreeMap<>(oJavaFiles).entrySet()) {
+            String sSource = new String(oJavaFile.getValue(), StandardCharsets.UTF_8);
+            List<Integer> lTokens = new ArrayList<>();
+            List<Integer> lLines = new ArrayList<>();
+            //most tokens repeat within a file --> fewer accesses to the shared dictionary
+            Map<String, Integer> oFileTokenIds = new HashMap<>();
+
+            oTokenizer.tokenize(sSource, (sToken, nLine) -> {
+                lTokens.add(oFileTokenIds.computeIfAbsent(sToken, oDictionary::getId));
+                lLines.add(nLine);
+            });
+            lFiles.add(new SourceFile(oJavaFile.getKey(), toArray(lTokens), toArray(lLines), oJavaFile.getValue()));
+        }
+        lTokenized.incrementAndGet();
+
+        return new Repository(sRepoUrl, sRevision, lFiles.toArray(new SourceFile[lFiles.size()]));
+    }
+
+    private int[] toArray(List<Integer> lValues) {
+        int[] nValues = new int[lValues.size()];
+
+        for (int nPos = 0; nPos < nValues.length; nPos++) {
+            nValues[nPos] = lValues.get(nPos);
+        }
+
+        return nValues;
+    }
+
+    /**
+     * selects the fingerprints of a file: of every window of consecutive token sequences the one with the
+     * smallest hash, the rightmost one if there are several
+     * @param oFile - tokenized java file
+     */
+    private void selectFingerprints(SourceFile oFile) {
+        int nSequences = oFile.nTokens.length - nSequenceLength + 1;
+        if (oFile.nTokens.length < nMinimumTokens || nSequences <= 0) {
+            oFile.lFingerprints = new long[0];
+            oFile.nFingerprintPositions = new int[0];
+            return;
+        }
+
+        long[] lHashes = new long[nSequences];
+        long lHighestPower = 1;
+        long lHash = 0;
+        for (int nToken = 1; nToken < nSequenceLength; nToken++) {
+            lHighestPower *= HASH_BASE;
+        }
+        for (int nPos = 0; nPos < oFile.nTokens.length; nPos++) {
+            if (nPos >= nSequenceLength) {
+                lHash -= oFile.nTokens[nPos - nSequenceLength] * lHighestPower;
+            }
+            lHash = lHash * HASH_BASE + oFile.nTokens[nPos];
+            if (nPos >= nSequenceLength - 1) {
+                lHashes[nPos - nSequenceLength + 1] = lHash * 0x9E3779B97F4A7C15L;
+            }
+        }
+
+        long[] lFingerprints = new long[nSequences];
+        int[] nPositions = new int[nSequences];
+        int nFingerprints = 0;
+        for (int nWindowStart = 0; nWindowStart <= Math.max(0, nSequences - nWindow); nWindowStart++) {
+            int nMinPos = nWindowStart;
+            for (int nPos = nWindowStart; nPos < Math.min(nSequences, nWindowStart + nWindow); nPos++) {
+                if (lHashes[nPos] <= lHashes[nMinPos]) {
+                    nMinPos = nPos;
+                }
+            }
+            if (nFingerprints == 0 || nPositions[nFingerprints - 1] != nMinPos) {
+                lFingerprints[nFingerprints] = lHashes[nMinPos];
+                nPositions[nFingerprints++] = nMinPos;
+            }
+        }
+        oFile.lFingerprints = Arrays.copyOf(lFingerprints, nFingerprints);
+        oFile.nFingerprintPositions = Arrays.copyOf(nPositions, nFingerprints);
+    }
+
+    private boolean isDiskEnabled() {
+        return sIndexDirectory != null && !sIndexDirectory.isEmpty();
+    }
+
+    private Path getDiskPath(String sRepoUrl, String sRevision) {
+        String sRepoHash = RepositoryResultCache.sha256(sRepoUrl.trim().getBytes(StandardCharsets.UTF_8));
+
+        return Paths.get(sIndexDirectory, sRepoHash, sRevision.replaceAll("[^A-Za-z0-9_-]", "_") + ".tokens");
+    }
+
+    /**
+     * reads a tokenized repository from the disk, the stored images of its tokens get the numbers of the course
+     * @return - tokenized repository or null if it was not stored or is not readable
+     */
+    private Repository readFromDisk(TokenDictionary oDictionary, String sRepoUrl, String sRevision) {
+        if (!isDiskEnabled()) {
+            return null;
+        }
+        Path oPath = getDiskPath(sRepoUrl, sRevision);
+        if (!Files.exists(oPath)) {
+            return null;
+        }
+
+        try (DataInputStream oInput = new DataInputStream(new BufferedInputStream(Files.newInputStream(oPath)))) {
+            if (oInput.readInt() != FORMAT_VERSION) {
+                deleteFromDisk(oPath);
+                return null;
+            }
+            SourceFile[] oFiles = new SourceFile[oInput.readInt()];
+            for (int nFile = 0; nFile < oFiles.length; nFile++) {
+                String sPath = oInput.readUTF();
+                int[] nImageIds = new int[oInput.readInt()];
+                for (int nImage = 0; nImage < nImageIds.length; nImage++) {
+                    byte[] bImage = new byte[oInput.readInt()];
+                    oInput.readFully(bImage);
+                    nImageIds[nImage] = oDictionary.getId(new String(bImage, StandardCharsets.UTF_8));
+                }
+                int[] nTokens = new int[oInput.readInt()];
+                int[] nLines = new int[nTokens.length];
+                for (int nToken = 0; nToken < nTokens.length; nToken++) {
+                    nTokens[nToken] = nImageIds[oInput.readInt()];
+                    nLines[nToken] = oInput.readInt();
+                }
+                byte[] bSource = new byte[oInput.readInt()];
+                oInput.readFully(bSource);
+                oFiles[nFile] = new SourceFile(sPath, nTokens, nLines, bSource);
+            }
+            lLoaded.incrementAndGet();
+            //the least recently read files are removed first
+            Files.setLastModifiedTime(oPath, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return new Repository(sRepoUrl, sRevision, oFiles);
+        } catch (IOException e) {
+            LOG.info("Tokenized repository " + oPath + " is not readable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * writes a tokenized repository to the disk. Every file contains the images of its tokens, the numbers of the
+     * dictionary are only valid while the service runs. The file is written to a temporary file first and moved
+     * afterwards, so a concurrent validation never reads a half written repository. The files of the previous
+     * commits of the repository are removed, the directory is kept below its maximum size
+     */
+    private void writeToDisk(TokenDictionary oDictionary, Repository oRepository) {
+        if (!isDiskEnabled() || oRepository.sRevision == null) {
+            return;
+        }
+        Path oPath = getDiskPath(oRepository.sRepoUrl, oRepository.sRevision);
+
+        try {
+            Files.createDirectories(oPath.getParent());
+            Path oTmpPath = Files.createTempFile(oPath.getParent(), "repository", ".tmp");
+            try (DataOutputStream oOutput = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(oTmpPath)))) {
+                oOutput.writeInt(FORMAT_VERSION);
+                oOutput.writeInt(oRepository.oFiles.length);
+                for (SourceFile oFile : oRepository.oFiles) {
+                    oOutput.writeUTF(oFile.sPath);
+                    //token number of the course --> position of its image in the file
+                    Map<Integer, Integer> oImagePositions = new LinkedHashMap<>();
+                    for (int nTokenId : oFile.nTokens) {
+                        oImagePositions.putIfAbsent(nTokenId, oImagePositions.size());
+                    }
+                    oOutput.writeInt(oImagePositions.size());
+                    for (int nTokenId : oImagePositions.keySet()) {
+                        byte[] bImage = oDictionary.getImage(nTokenId).getBytes(StandardCharsets.UTF_8);
+                        oOutput.writeInt(bImage.length);
+                        oOutput.write(bImage);
+                    }
+                    oOutput.writeInt(oFile.nTokens.length);
+                    for (int nToken = 0; nToken < oFile.nTokens.length; nToken++) {
+                        oOutput.writeInt(oImagePositions.get(oFile.nTokens[nToken]));
+                        oOutput.writeInt(oFile.nLines[nToken]);
+                    }
+                    oOutput.writeInt(oFile.bSource.length);
+                    oOutput.write(oFile.bSource);
+                }
+            }
+            try (DirectoryStream<Path> oFiles = Files.newDirectoryStream(oPath.getParent(), "*.tokens")) {
+                for (Path oFile : oFiles) {
+                    deleteFromDisk(oFile);
+                }
+            }
+            Files.move(oTmpPath, oPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lDiskSize.addAndGet(Files.size(oPath));
+        } catch (IOException e) {
+            LOG.info("Tokenized repository could not be stored on disk " + oPath + ": " + e.getMessage());
+        }
+        evictFromDisk(oPath);
+    }
+
+    /**
+     * removes the least recently used token files until the size of the directory is smaller than the maximum
+     * size. A validation which reads a removed file tokenizes the repository again
+     * @param oCurrentPath - file of the actual repository, it will never be removed
+     */
+    private void evictFromDisk(Path oCurrentPath) {
+        long lMaxSize = lMaxDiskSizeMb * 1024 * 1024;
+
+        if (lDiskSize.get() <= lMaxSize || !bEvicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Map<Path, Long> oLastUsed = new HashMap<>();
+            for (Path oPath : listFiles()) {
+                if (oPath.toString().endsWith(".tokens") && !oPath.equals(oCurrentPath)) {
+                    oLastUsed.put(oPath, Files.getLastModifiedTime(oPath).toMillis());
+                }
+            }
+            List<Path> lPaths = new ArrayList<>(oLastUsed.keySet());
+            lPaths.sort(Comparator.comparing(oLastUsed::get));
+            for (Path oPath : lPaths) {
+                if (lDiskSize.get() <= lMaxSize) {
+                    break;
+                }
+                deleteFromDisk(oPath);
+            }
+        } catch (IOException e) {
+            LOG.info("Tokenized repositories could not be removed from disk: " + e.getMessage());
+        } finally {
+            bEvicting.set(false);
+        }
+    }
+
+    /**
+     * lists all files below the directory of the token files
+     */
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> oPaths = Files.walk(Paths.get(sIndexDirectory))) {
+            return oPaths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * reads the format version of a token file
+     * @return - version of the file, -1 if it is not readable
+     */
+    private int readFormatVersion(Path oPath) {
+        try (DataInputStream oInput = new DataInputStream(Files.newInputStream(oPath))) {
+            return oInput.readInt();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * removes a token file and its size from the size of the directory
+     */
+    private void deleteFromDisk(Path oPath) {
+        try {
+            long lSize = Files.size(oPath);
+            if (Files.deleteIfExists(oPath) && oPath.toString().endsWith(".tokens")) {
+                lDiskSize.addAndGet(-lSize);
+            }
+        } catch (IOException e) {
+            LOG.info("Tokenized repository " + oPath + " could not be removed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * validation of a course. The changed repositories are tokenized without a lock and may be added by several
+     * threads, the index of the course is only locked by finish
+     */
+    class Update {
+        private final Course oCourse;
+
+        /* url --> new commit of the repository */
+        private final Map<String, Repository> oChangedRepositories = new ConcurrentHashMap<>();
+
+        private Update(Course oCourse) {
+            this.oCourse = oCourse;
+        }
+
+        /**
+         * checks if the commit of the repository is already tokenized, either in the index of the course or on the
+         * disk. A repository of the disk is added to the course by finish
+         * @param sRepoUrl - url of the repository
+         * @param sRevision - current commit of the repository
+         * @return - true --> the repository doesn't have to be downloaded
+         */
+        boolean isCurrent(String sRepoUrl, String sRevision) {
+            synchronized (oCourse) {
+                Repository oRepository = oCourse.oRepositories.get(sRepoUrl);
+                if (oRepository != null && sRevision.equals(oRepository.sRevision)) {
+                    lUnchanged.incrementAndGet();
+                    return true;
+                }
+            }
+
+            Repository oRepository = readFromDisk(oCourse.oDictionary, sRepoUrl, sRevision);
+            if (oRepository != null) {
+                oChangedRepositories.put(sRepoUrl, oRepository);
+            }
+
+            return oRepository != null;
+        }
+
+        /**
+         * tokenizes a new commit of a repository and stores it on the disk
+         * @param sRepoUrl - url of the repository
+         * @param sRevision - commit of the repository, null if it is unknown
+         * @param oJavaFiles - path within the repository --> content of the java file
+         */
+        void addRepository(String sRepoUrl, String sRevision, Map<String, byte[]> oJavaFiles) {
+            Repository oRepository = tokenize(oCourse.oDictionary, sRepoUrl, sRevision, oJavaFiles);
+
+            writeToDisk(oCourse.oDictionary, oRepository);
+            oChangedRepositories.put(sRepoUrl, oRepository);
+        }
+
+        /**
+         * downloads and tokenizes a commit of a repository which is not current. Concurrent validations of the
+         * course, e.g. block pairs which share a block, read the same commit once, the others wait for the first
+         * validation and get its tokenized repository
+         * @param sRepoUrl - url of the repository
+         * @param sRevision - commit of the repository
+         * @param oSource - reads the java files of the commit
+         * @return - true --> the repository is tokenized, false --> the source has no java files of the commit
+         * @throws IOException - the download failed, also of the validation which was waited for
+         * @throws GitAPIException - the git repository could not be fetched
+         */
+        boolean addRepositoryOnce(String sRepoUrl, String sRevision, Source oSource) throws IOException,
+                GitAPIException {
+            String sKey = sRepoUrl.trim() + "@" + sRevision;
+            CompletableFuture<Repository> oFlight = new CompletableFuture<>();
+            CompletableFuture<Repository> oLeader = oCourse.oInFlight.putIfAbsent(sKey, oFlight);
+
+            if (oLeader != null) {
+                lCoalesced.incrementAndGet();
+                Repository oRepository = await(oLeader);
+                if (oRepository != null) {
+                    oChangedRepositories.put(sRepoUrl, oRepository);
+                }
+                return oRepository != null;
+            }
+
+            try {
+                Map<String, byte[]> oJavaFiles = oSource.read();
+                Repository oRepository = null;
+                if (oJavaFiles != null) {
+                    oRepository = tokenize(oCourse.oDictionary, sRepoUrl, sRevision, oJavaFiles);
+                    writeToDisk(oCourse.oDictionary, oRepository);
+                    oChangedRepositories.put(sRepoUrl, oRepository);
+                }
+                oFlight.complete(oRepository);
+                return oRepository != null;
+            } catch (Throwable e) {
+                oFlight.completeExceptionally(e);
+                throw e;
+            } finally {
+                oCourse.oInFlight.remove(sKey, oFlight);
+            }
+        }
+
+        /**
+         * waits for the commit which another validation of the course reads, its failure is thrown as well
+         */
+        private Repository await(CompletableFuture<Repository> oLeader) throws IOException, GitAPIException {
+            try {
+                return oLeader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the tokenized repository");
+            } catch (ExecutionException e) {
+                Throwable oCause = e.getCause();
+
+                if (oCause instanceof IOException) {
+                    throw (IOException) oCause;
+                } else if (oCause instanceof GitAPIException) {
+                    throw (GitAPIException) oCause;
+                } else if (oCause instanceof RuntimeException) {
+                    throw (RuntimeException) oCause;
+                } else if (oCause instanceof Error) {
+                    throw (Error) oCause;
+                }
+                throw new IOException(oCause);
+            }
+        }
+
+        /**
+         * updates the index of the course and returns the duplications between all of its repositories
+         * @param lRepoUrls - all repositories of the course, repositories of the index which are not in the list
+         *                  are removed
+         * @return - duplications sorted by their number of tokens
+         */
+        List<Duplication> finish(List<String> lRepoUrls) {
+            long lStartTime = System.currentTimeMillis();
+
+            synchronized (oCourse) {
+                for (String sRepoUrl : new ArrayList<>(oCourse.oRepositories.keySet())) {
+                    if (!lRepoUrls.contains(sRepoUrl)) {
+                        oCourse.remove(sRepoUrl);
+                    }
+                }
+                addChangedRepositories(lRepoUrls);
+
+                List<Duplication> lDuplications = oCourse.collectDuplications(lRepoUrls, lRepoUrls);
+                LOG.info("Cpd course index: " + oChangedRepositories.size() + " of " + lRepoUrls.size()
+                        + " repositories changed, " + lDuplications.size() + " duplications in "
+                        + (System.currentTimeMillis() - lStartTime) + " ms");
+
+                return lDuplications;
+            }
+        }
+
+        /**
+         * updates the index of the course with the repositories of a block pair and returns the duplications
+         * between the two blocks. The other repositories of the index are kept, so the following block pairs of the
+         * course reuse their tokens and matches
+         * @param lReposA - repositories of the first block
+         * @param lReposB - repositories of the second block, the same as the first one to compare a block with itself
+         * @return - duplications with a repository of the first and another repository of the second block, sorted
+         * by their number of tokens
+         */
+        List<Duplication> finishPair(List<String> lReposA, List<String> lReposB) {
+            long lStartTime = System.currentTimeMillis();
+            Set<String> oRepoUrls = new LinkedHashSet<>(lReposA);
+            oRepoUrls.addAll(lReposB);
+            List<String> lRepoUrls = new ArrayList<>(oRepoUrls);
+
+            synchronized (oCourse) {
+                addChangedRepositories(lRepoUrls);
+
+                List<Duplication> lDuplications = oCourse.collectDuplications(lReposA, lReposB);
+                LOG.info("Cpd course index: " + oChangedRepositories.size() + " of " + lRepoUrls.size()
+                        + " repositories of a block pair changed, " + oCourse.oRepositories.size()
+                        + " repositories indexed, " + lDuplications.size() + " duplications in "
+                        + (System.currentTimeMillis() - lStartTime) + " ms");
+
+                return lDuplications;
+            }
+        }
+
+        /**
+         * replaces the indexed commits of the changed repositories, called with the lock of the course
+         * @param lRepoUrls - repositories of the request
+         */
+        private void addChangedRepositories(List<String> lRepoUrls) {
+            //in the order of the course, so the index doesn't depend on the order of the parallel fetches
+            for (String sRepoUrl : lRepoUrls) {
+                Repository oRepository = oChangedRepositories.get(sRepoUrl);
+                //a repository which another validation read once may already be added by that validation
+                if (oRepository == null || oCourse.oRepositories.get(sRepoUrl) == oRepository) {
+                    continue;
+                }
+                for (SourceFile oFile : oRepository.oFiles) {
+                    selectFingerprints(oFile);
+                }
+                oCourse.remove(oRepository.sRepoUrl);
+                oCourse.add(oRepository);
+            }
+        }
+
+        /**
+         * passes the java files of the repositories of the request to the similarity analysis, called after finish
+         * @param oSimilarityIndex - receives the files with the names of their repositories
+         * @param lRepoUrls - repositories of the request
+         */
+        void addSources(SimilarityIndex oSimilarityIndex, List<String> lRepoUrls) {
+            List<Repository> lRepositories = new ArrayList<>();
+
+            synchronized (oCourse) {
+                for (String sRepoUrl : new LinkedHashSet<>(lRepoUrls)) {
+                    Repository oRepository = oCourse.oRepositories.get(sRepoUrl);
+                    if (oRepository != null) {
+                        lRepositories.add(oRepository);
+                    }
+                }
+            }
+            for (Repository oRepository : lRepositories) {
+                String sName = Cpd.getRepositoryName(oRepository.sRepoUrl);
+                for (SourceFile oFile : oRepository.oFiles) {
+                    oSimilarityIndex.addFile(sName, sName + File.separator + oFile.sPath, oFile.bSource);
+                }
+            }
+        }
+    }
+
+    /**
+     * download of the java files of a commit
+     */
+    @FunctionalInterface
+    interface Source {
+        /**
+         * @return - path within the repository --> content of the java file, null if the commit has no files
+         */
+        Map<String, byte[]> read() throws IOException, GitAPIException;
+    }
+
+    /**
+     * index of the fingerprints and matches of the repositories of a course
+     */
+    private class Course {
+        private final Map<String, Repository> oRepositories = new HashMap<>();
+
+        /* used without the lock of the course, the repositories are tokenized in parallel */
+        private final TokenDictionary oDictionary = new TokenDictionary();
+
+        /* url and commit --> repository which a validation reads at the moment */
+        private final ConcurrentMap<String, CompletableFuture<Repository>> oInFlight = new ConcurrentHashMap<>();
+
+        /* fingerprint --> files which contain it */
+        private final Map<Long, List<Posting>> oPostings = new HashMap<>();
+
+        /* repository --> its matches with the other repositories */
+        private final Map<Repository, Set<Match>> oMatches = new HashMap<>();
+
+        /**
+         * removes a repository with its fingerprints and matches
+         */
+        private void remove(String sRepoUrl) {
+            Repository oRepository = oRepositories.remove(sRepoUrl);
+            if (oRepository == null) {
+                return;
+            }
+
+            for (SourceFile oFile : oRepository.oFiles) {
+                for (long lFingerprint : oFile.lFingerprints) {
+                    List<Posting> lPostings = oPostings.get(lFingerprint);
+                    if (lPostings != null) {
+                        lPostings.removeIf(oPosting -> oPosting.oRepository == oRepository);
+                        if (lPostings.isEmpty()) {
+                            oPostings.remove(lFingerprint);
+                        }
+                    }
+                }
+            }
+            for (Match oMatch : oMatches.remove(oRepository)) {
+                Repository oOther = oMatch.oFirst.oRepository == oRepository ? oMatch.oSecond.oRepository
+                        : oMatch.oFirst.oRepository;
+                oMatches.get(oOther).remove(oMatch);
+            }
+        }
+
+        /**
+         * adds a repository: its fingerprints are searched in the files of the other repositories, every shared
+         * fingerprint is extended to the longest identical token sequence of both files
+         */
+        private void add(Repository oRepository) {
+            oMatches.put(oRepository, new LinkedHashSet<>());
+
+            for (int nFile = 0; nFile < oRepository.oFiles.length; nFile++) {
+                SourceFile oFile = oRepository.oFiles[nFile];
+                //other file --> offset between the files --> already matched token ranges of this file
+                Map<SourceFile, Map<Integer, List<int[]>>> oCovered = new HashMap<>();
+
+                for (int nFingerprint = 0; nFingerprint < oFile.lFingerprints.length; nFingerprint++) {
+                    int nPos = oFile.nFingerprintPositions[nFingerprint];
+                    for (Posting oPosting : oPostings.getOrDefault(oFile.lFingerprints[nFingerprint],
+                            Collections.emptyList())) {
+                        SourceFile oOtherFile = oPosting.oRepository.oFiles[oPosting.nFile];
+                        List<int[]> lRanges = oCovered.computeIfAbsent(oOtherFile, oKey -> new HashMap<>())
+                                .computeIfAbsent(oPosting.nPos - nPos, nKey -> new ArrayList<>());
+                        if (isCovered(lRanges, nPos)
+                                || !equalTokens(oFile, nPos, oOtherFile, oPosting.nPos, nSequenceLength)) {
+                            continue;
+                        }
+
+                        int nStart = nPos;
+                        int nOtherStart = oPosting.nPos;
+                        while (nStart > 0 && nOtherStart > 0
+                                && oFile.nTokens[nStart - 1] == oOtherFile.nTokens[nOtherStart - 1]) {
+                            nStart--;
+                            nOtherStart--;
+                        }
+                        int nLength = nPos - nStart + nSequenceLength;
+                        while (nStart + nLength < oFile.nTokens.length
+                                && nOtherStart + nLength < oOtherFile.nTokens.length
+                                && oFile.nTokens[nStart + nLength] == oOtherFile.nTokens[nOtherStart + nLength]) {
+                            nLength++;
+                        }
+                        lRanges.add(new int[]{nStart, nStart + nLength});
+
+                        if (nLength >= nMinimumTokens) {
+                            Match oMatch = new Match(new Occurrence(oRepository, nFile, nStart, nLength),
+                                    new Occurrence(oPosting.oRepository, oPosting.nFile, nOtherStart, nLength));
+                            oMatches.get(oRepository).add(oMatch);
+                            oMatches.get(oPosting.oRepository).add(oMatch);
+                        }
+                    }
+                }
+            }
+
+            //the own fingerprints are added afterwards, so a repository is not compared with itself
+            for (int nFile = 0; nFile < oRepository.oFiles.length; nFile++) {
+                SourceFile oFile = oRepository.oFiles[nFile];
+                for (int nFingerprint = 0; nFingerprint < oFile.lFingerprints.length; nFingerprint++) {
+                    oPostings.computeIfAbsent(oFile.lFingerprints[nFingerprint], lKey -> new ArrayList<>())
+                            .add(new Posting(oRepository, nFile, oFile.nFingerprintPositions[nFingerprint]));
+                }
+            }
+            oRepositories.put(oRepository.sRepoUrl, oRepository);
+        }
+
+        private boolean isCovered(List<int[]> lRanges, int nPos) {
+            for (int[] nRange : lRanges) {
+                if (nPos >= nRange[0] && nPos < nRange[1]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean equalTokens(SourceFile oFile, int nPos, SourceFile oOtherFile, int nOtherPos, int nLength) {
+            for (int nToken = 0; nToken < nLength; nToken++) {
+                if (oFile.nTokens[nPos + nToken] != oOtherFile.nTokens[nOtherPos + nToken]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * merges the matches of the requested repositories into duplications: all occurrences of the same token
+         * sequence are one duplication, like the duplications of cpd
+         * @param lReposA - repositories of the first set
+         * @param lReposB - repositories of the second set, the same list to compare all repositories
+         * @return - duplications with a repository of the first and another repository of the second set, sorted by
+         * their number of tokens
+         */
+        private List<Duplication> collectDuplications(List<String> lReposA, List<String> lReposB) {
+            Map<String, String> oNames = new HashMap<>();
+            for (String sRepoUrl : lReposA) {
+                oNames.put(sRepoUrl, Cpd.getRepositoryName(sRepoUrl));
+            }
+            for (String sRepoUrl : lReposB) {
+                oNames.put(sRepoUrl, Cpd.getRepositoryName(sRepoUrl));
+            }
+
+            Map<Fragment, Set<Occurrence>> oFragments = new LinkedHashMap<>();
+            Set<Match> oDone = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Set<Match> oRepositoryMatches : oMatches.values()) {
+                for (Match oMatch : oRepositoryMatches) {
+                    //the index may contain repositories of other block pairs of the course
+                    if (oDone.add(oMatch) && oNames.containsKey(oMatch.oFirst.oRepository.sRepoUrl)
+                            && oNames.containsKey(oMatch.oSecond.oRepository.sRepoUrl)) {
+                        Set<Occurrence> oOccurrences = oFragments.computeIfAbsent(new Fragment(oMatch.oFirst),
+                                oKey -> new HashSet<>());
+                        oOccurrences.add(oMatch.oFirst);
+                        oOccurrences.add(oMatch.oSecond);
+                    }
+                }
+            }
+
+            List<Duplication> lDuplications = new ArrayList<>();
+            for (Set<Occurrence> oOccurrences : oFragments.values()) {
+                List<Occurrence> lOccurrences = new ArrayList<>(oOccurrences);
+                lOccurrences.sort(Comparator.comparing((Occurrence oOccurrence) ->
+                        oNames.get(oOccurrence.oRepository.sRepoUrl) + "/" + oOccurrence.getFile().sPath)
+                        .thenComparingInt(oOccurrence -> oOccurrence.nStart));
+
+                List<String> lInvolvedData = new ArrayList<>();
+                List<Integer> lBeginLines = new ArrayList<>();
+                for (Occurrence oOccurrence : lOccurrences) {
+                    String sFilePath = oNames.get(oOccurrence.oRepository.sRepoUrl) + File.separator
+                            + oOccurrence.getFile().sPath;
+                    if (oUtil.checkIfDifferentReops(lInvolvedData, sFilePath)) {
+                        lInvolvedData.add(sFilePath);
+                        lBeginLines.add(oOccurrence.getFile().nLines[oOccurrence.nStart]);
+                    }
+                }
+                if (lInvolvedData.size() > 1 && hasDifferentRepos(lOccurrences, lReposA, lReposB)) {
+                    Occurrence oFirst = lOccurrences.get(0);
+                    int nBeginLine = oFirst.getFile().nLines[oFirst.nStart];
+                    int nEndLine = oFirst.getFile().nLines[oFirst.nStart + oFirst.nLength - 1];
+                    lDuplications.add(Duplication.getDupliactionInstance(nEndLine - nBeginLine + 1,
+                            oFirst.nLength, lInvolvedData, lBeginLines,
+                            oFirst.getFile().getLines(nBeginLine, nEndLine)));
+                }
+            }
+            lDuplications.sort(Comparator.comparingInt(Duplication::getTokens).reversed()
+                    .thenComparing(oDuplication -> oDuplication.getInvolvedData().get(0)));
+
+            return lDuplications;
+        }
+
+        /**
+         * checks if the occurrences contain a repository of the first set and another repository of the second set
+         */
+        private boolean hasDifferentRepos(List<Occurrence> lOccurrences, List<String> lReposA, List<String> lReposB) {
+            String sRepoA = null;
+            String sRepoB = null;
+
+            for (Occurrence oOccurrence : lOccurrences) {
+                String sRepoUrl = oOccurrence.oRepository.sRepoUrl;
+                if (lReposA.contains(sRepoUrl)) {
+                    if (sRepoB != null && !sRepoB.equals(sRepoUrl)) {
+                        return true;
+                    }
+                    sRepoA = sRepoUrl;
+                }
+                if (lReposB.contains(sRepoUrl)) {
+                    if (sRepoA != null && !sRepoA.equals(sRepoUrl)) {
+                        return true;
+                    }
+                    sRepoB = sRepoUrl;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * commit of a repository with its tokenized java files
+     */
+    private static class Repository {
+        private final String sRepoUrl;
+
+        private final String sRevision;
+
+        private final SourceFile[] oFiles;
+
+        private Repository(String sRepoUrl, String sRevision, SourceFile[] oFiles) {
+            this.sRepoUrl = sRepoUrl;
+            this.sRevision = sRevision;
+            this.oFiles = oFiles;
+        }
+    }
+
+    private static class SourceFile {
+        private final String sPath;
+
+        /* number of the image of every token in the dictionary of the course */
+        private final int[] nTokens;
+
+        private final int[] nLines;
+
+        private final byte[] bSource;
+
+        private long[] lFingerprints;
+
+        private int[] nFingerprintPositions;
+
+        private SourceFile(String sPath, int[] nTokens, int[] nLines, byte[] bSource) {
+            this.sPath = sPath;
+            this.nTokens = nTokens;
+            this.nLines = nLines;
+            this.bSource = bSource;
+        }
+
+        /**
+         * returns the lines of a duplication like the codefragment of the xml report of cpd, i.e. joined
+         * without a line separator after the last line
+         */
+        private String getLines(int nBeginLine, int nEndLine) {
+            String[] sLines = new String(bSource, StandardCharsets.UTF_8).split("\\r?\\n", -1);
+            StringBuilder oFragment = new StringBuilder();
+
+            for (int nLine = nBeginLine; nLine <= nEndLine && nLine <= sLines.length; nLine++) {
+                if (nLine > nBeginLine) {
+                    oFragment.append('\n');
+                }
+                oFragment.append(sLines[nLine - 1]);
+            }
+
+            return oFragment.toString();
+        }
+    }
+
+    private static class Posting {
+        private final Repository oRepository;
+
+        private final int nFile;
+
+        private final int nPos;
+
+        private Posting(Repository oRepository, int nFile, int nPos) {
+            this.oRepository = oRepository;
+            this.nFile = nFile;
+            this.nPos = nPos;
+        }
+    }
+
+    /**
+     * identical token sequence of two repositories
+     */
+    private static class Match {
+        private final Occurrence oFirst;
+
+        private final Occurrence oSecond;
+
+        private Match(Occurrence oFirst, Occurrence oSecond) {
+            this.oFirst = oFirst;
+            this.oSecond = oSecond;
+        }
+    }
+
+    private static class Occurrence {
+        private final Repository oRepository;
+
+        private final int nFile;
+
+        private final int nStart;
+
+        private final int nLength;
+
+        private Occurrence(Repository oRepository, int nFile, int nStart, int nLength) {
+            this.oRepository = oRepository;
+            this.nFile = nFile;
+            this.nStart = nStart;
+            this.nLength = nLength;
+        }
+
+        private SourceFile getFile() {
+            return oRepository.oFiles[nFile];
+        }
+
+        @Override
+        public boolean equals(Object oObject) {
+            if (!(oObject instanceof Occurrence)) {
+                return false;
+            }
+            Occurrence oOther = (Occurrence) oObject;
+
+            return oRepository == oOther.oRepository && nFile == oOther.nFile && nStart == oOther.nStart
+                    && nLength == oOther.nLength;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(oRepository) * 31 + nFile) * 31 + nStart) * 31 + nLength;
+        }
+    }
+
+    /**
+     * token sequence of an occurrence, the same sequence in different files is equal. The hash only selects the
+     * candidates, the sequences are compared token by token
+     */
+    private static class Fragment {
+        private final Occurrence oOccurrence;
+
+        private final int nHash;
+
+        private Fragment(Occurrence oOccurrence) {
+            int[] nTokens = oOccurrence.getFile().nTokens;
+            int nTokenHash = oOccurrence.nLength;
+
+            for (int nToken = oOccurrence.nStart; nToken < oOccurrence.nStart + oOccurrence.nLength; nToken++) {
+                nTokenHash = nTokenHash * 31 + nTokens[nToken];
+            }
+            this.oOccurrence = oOccurrence;
+            this.nHash = nTokenHash;
+        }
+
+        @Override
+        public boolean equals(Object oObject) {
+            if (!(oObject instanceof Fragment)) {
+                return false;
+            }
+            Occurrence oOther = ((Fragment) oObject).oOccurrence;
+            if (nHash != ((Fragment) oObject).nHash || oOccurrence.nLength != oOther.nLength) {
+                return false;
+            }
+
+            int[] nTokens = oOccurrence.getFile().nTokens;
+            int[] nOtherTokens = oOther.getFile().nTokens;
+            for (int nToken = 0; nToken < oOccurrence.nLength; nToken++) {
+                if (nTokens[oOccurrence.nStart + nToken] != nOtherTokens[oOther.nStart + nToken]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return nHash;
+        }
+    }
+
+    /**
+     * numbers of the token images of a course, two tokens have the same number only if their images are equal
+     */
+    private static class TokenDictionary {
+        private final Map<String, Integer> oIds = new HashMap<>();
+
+        private final List<String> lImages = new ArrayList<>();
+
+        private synchronized int getId(String sImage) {
+            Integer nId = oIds.get(sImage);
+            if (nId == null) {
+                nId = lImages.size();
+                oIds.put(sImage, nId);
+                lImages.add(sImage);
+            }
+
+            return nId;
+        }
+
+        private synchronized String getImage(int nId) {
+            return lImages.get(nId);
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Duplication;
+import de.htwg.konstanz.cloud.util.CpdTokenizer;
+import de.htwg.konstanz.cloud.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/*
+    Copy paste detection inside the service, instead of forking cpd for all repositories of a course. Every java
+    file is tokenized once, the tokens of all files are stored as numbers in one array. Every window of the minimum
+    number of tokens gets a rolling hash, the sorted hashes group the identical windows of all files. A group whose
+    windows are in at least two repositories is the start of a duplication, it is extended as long as all of its
+    files continue with the same tokens. Like with cpd only the maximal duplications are reported: a group whose
+    windows all follow the windows of the same group is a part of the duplication of that group, also if that group
+    has more windows.
+    Two sets of repositories can be compared with each other, then a group needs a repository of the first and
+    another repository of the second set.
+ */
+class CpdIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(CpdIndex.class);
+
+    private static final long HASH_BASE = 1_000_003L;
+
+    /* the sort key of a window is [36 bits hash | 28 bits position] */
+    private static final int POSITION_BITS = 28;
+
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+    private final int nMinimumTokens;
+
+    /* names of the repositories of the compared sets, null --> all repositories */
+    private final Set<String> oNamesA;
+
+    private final Set<String> oNamesB;
+
+    private final CpdTokenizer oTokenizer = new CpdTokenizer();
+
+    private final Util oUtil = new Util();
+
+    /* token image --> number of the token */
+    private final ConcurrentMap<String, Integer> oTokenIds = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nNextTokenId = new AtomicInteger(1);
+
+    private String[] sFilePaths;
+
+    private File[] oFiles;
+
+    /* repository of every file, the first directory below the directory of all repositories */
+    private int[] nFileRepos;
+
+    /* set of every repository: 1 --> first set, 2 --> second set, 3 --> both */
+    private int[] nRepoSets;
+
+    /* first token of every file, the last entry is the number of all tokens */
+    private int[] nFileStarts;
+
+    private int[] nTokens;
+
+    private int[] nLines;
+
+    private int[] nTokenFiles;
+
+    /* group of identical windows of every token position, -1 --> the window is unique */
+    private int[] nWindowGroups;
+
+    /* positions of the windows, grouped */
+    private int[] nGroupMembers;
+
+    private int[] nGroupStarts;
+
+    private int[] nGroupSizes;
+
+    private int nGroups;
+
+    /**
+     * @param nMinimumTokens - minimum number of identical tokens of a duplication, like --minimum-tokens of cpd
+     */
+    CpdIndex(int nMinimumTokens) {
+        this(nMinimumTokens, null, null);
+    }
+
+    /**
+     * @param nMinimumTokens - minimum number of identical tokens of a duplication, like --minimum-tokens of cpd
+     * @param oNamesA - directories of the repositories of the first set, null --> all repositories are compared
+     * @param oNamesB - directories of the repositories of the second set
+     */
+    CpdIndex(int nMinimumTokens, Set<String> oNamesA, Set<String> oNamesB) {
+        this.nMinimumTokens = nMinimumTokens;
+        this.oNamesA = oNamesA;
+        this.oNamesB = oNamesB;
+    }
+
+    /**
+     * finds the duplications between the repositories below the directory
+     * @param oRepoDir - directory which contains a directory for every repository
+     * @return - duplications with at least two involved repositories, the largest first
+     * @throws IOException - a java file could not be read
+     */
+    List<Duplication> findDuplications(File oRepoDir) throws IOException {
+        long lStartTime = System.currentTimeMillis();
+
+        tokenize(oRepoDir.toPath());
+        groupWindows();
+        List<Duplication> lDuplications = collectDuplications();
+
+        LOG.info("Cpd index: " + sFilePaths.length + " files, " + nFileStarts[sFilePaths.length] + " tokens, "
+                + lDuplications.size() + " duplications in " + (System.currentTimeMillis() - lStartTime) + " ms");
+
+        return lDuplications;
+    }
+
+    /**
+     * reads and tokenizes all java files in parallel and concatenates their tokens
+     * @param oRootPath - directory of all repositories
+     * @throws IOException - a java file could not be read
+     */
+    private void tokenize(Path oRootPath) throws IOException {
+        List<Path> lPaths;
+        try (Stream<Path> oStream = Files.walk(oRootPath)) {
+            lPaths = oStream.filter(oPath -> oPath.toString().endsWith(".java") && Files.isRegularFile(oPath))
+                    .sorted().collect(Collectors.toList());
+        }
+
+        int nFiles = lPaths.size();
+        int[][] nFileTokens = new int[nFiles][];
+        int[][] nFileLines = new int[nFiles][];
+        Map<String, Integer> oRepoIds = new HashMap<>();
+
+        sFilePaths = new String[nFiles];
+        oFiles = new File[nFiles];
+        nFileRepos = new int[nFiles];
+        for (int nFile = 0; nFile < nFiles; nFile++) {
+            Path oRelativePath = oRootPath.relativize(lPaths.get(nFile));
+            sFilePaths[nFile] = oRelativePath.toString();
+            oFiles[nFile] = lPaths.get(nFile).toFile();
+            nFileRepos[nFile] = oRepoIds.computeIfAbsent(oRelativePath.getName(0).toString(), sKey -> oRepoIds.size());
+        }
+        nRepoSets = new int[oRepoIds.size()];
+        for (Map.Entry<String, Integer> oRepoId : oRepoIds.entrySet()) {
+            nRepoSets[oRepoId.getValue()] = oNamesA == null ? 3 : (oNamesA.contains(oRepoId.getKey()) ? 1 : 0)
+                    | (oNamesB.contains(oRepoId.getKey()) ? 2 : 0);
+        }
+
+        try {
+            IntStream.range(0, nFiles).parallel().forEach(nFile -> {
+                IntList oTokens = new IntList();
+                IntList oLines = new IntList();
+                //most tokens repeat within a file --> fewer accesses to the shared map
+                Map<String, Integer> oFileTokenIds = new HashMap<>();
+                oTokenizer.tokenize(readSource(oFiles[nFile]), (sToken, nLine) -> {
+                    oTokens.add(oFileTokenIds.computeIfAbsent(sToken, sKey ->
+                            oTokenIds.computeIfAbsent(sKey, sNewKey -> nNextTokenId.getAndIncrement())));
+                    oLines.add(nLine);
+                });
+                nFileTokens[nFile] = oTokens.toArray();
+                nFileLines[nFile] = oLines.toArray();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        nFileStarts = new int[nFiles + 1];
+        for (int nFile = 0; nFile < nFiles; nFile++) {
+            nFileStarts[nFile + 1] = nFileStarts[nFile] + nFileTokens[nFile].length;
+        }
+        if (nFileStarts[nFiles] > POSITION_MASK) {
+            throw new IOException("Too many tokens for the copy paste detection: " + nFileStarts[nFiles]);
+        }
+
+        nTokens = new int[nFileStarts[nFiles]];
+        nLines = new int[nFileStarts[nFiles]];
+        nTokenFiles = new int[nFileStarts[nFiles]];
+        for (int nFile = 0; nFile < nFiles; nFile++) {
+            System.arraycopy(nFileTokens[nFile], 0, nTokens, nFileStarts[nFile], nFileTokens[nFile].length);
+            System.arraycopy(nFileLines[nFile], 0, nLines, nFileStarts[nFile], nFileLines[nFile].length);
+            Arrays.fill(nTokenFiles, nFileStarts[nFile], nFileStarts[nFile + 1], nFile);
+        }
+    }
+
+    /**
+     * sorts the windows of all files by their hash and groups the identical ones. Windows with the same hash
+     * are compared token by token, so a collision of the hashes never creates a wrong duplication
+     */
+    private void groupWindows() {
+        long[] lKeys = new long[nTokens.length];
+        int nWindows = 0;
+        long lHighestPower = 1;
+
+        for (int nToken = 1; nToken < nMinimumTokens; nToken++) {
+            lHighestPower *= HASH_BASE;
+        }
+        for (int nFile = 0; nFile < sFilePaths.length; nFile++) {
+            long lHash = 0;
+            for (int nPos = nFileStarts[nFile]; nPos < nFileStarts[nFile + 1]; nPos++) {
+                int nWindowStart = nPos - nMinimumTokens + 1;
+                if (nWindowStart > nFileStarts[nFile]) {
+                    lHash -= nTokens[nWindowStart - 1] * lHighestPower;
+                }
+                lHash = lHash * HASH_BASE + nTokens[nPos];
+                if (nWindowStart >= nFileStarts[nFile]) {
+                    //spread the bits, the upper 36 bits are the sort key
+                    long lMixed = lHash * 0x9E3779B97F4A7C15L;
+                    lKeys[nWindows++] = (lMixed & ~POSITION_MASK) | nWindowStart;
+                }
+            }
+        }
+        lKeys = Arrays.copyOf(lKeys, nWindows);
+        Arrays.parallelSort(lKeys);
+
+        nWindowGroups = new int[nTokens.length];
+        Arrays.fill(nWindowGroups, -1);
+        nGroupMembers = new int[nWindows];
+        nGroupStarts = new int[nWindows / 2 + 1];
+        nGroupSizes = new int[nWindows / 2 + 1];
+        nGroups = 0;
+
+        int nMemberPos = 0;
+        for (int nStart = 0; nStart < nWindows; ) {
+            int nEnd = nStart + 1;
+            while (nEnd < nWindows && (lKeys[nEnd] & ~POSITION_MASK) == (lKeys[nStart] & ~POSITION_MASK)) {
+                nEnd++;
+            }
+            if (nEnd - nStart > 1) {
+                nMemberPos = addGroups(lKeys, nStart, nEnd, nMemberPos);
+            }
+            nStart = nEnd;
+        }
+    }
+
+    /**
+     * splits windows with the same hash into groups of identical windows
+     * @return - next free position of the group members
+     */
+    private int addGroups(long[] lKeys, int nStart, int nEnd, int nMemberPos) {
+        boolean[] bAssigned = new boolean[nEnd - nStart];
+        int nNextMemberPos = nMemberPos;
+
+        for (int nFirst = nStart; nFirst < nEnd; nFirst++) {
+            if (bAssigned[nFirst - nStart]) {
+                continue;
+            }
+            int nFirstPos = (int) (lKeys[nFirst] & POSITION_MASK);
+            int nGroupStart = nNextMemberPos;
+            nGroupMembers[nNextMemberPos++] = nFirstPos;
+            for (int nOther = nFirst + 1; nOther < nEnd; nOther++) {
+                int nOtherPos = (int) (lKeys[nOther] & POSITION_MASK);
+                if (!bAssigned[nOther - nStart] && equalTokens(nFirstPos, nOtherPos, nMinimumTokens)) {
+                    bAssigned[nOther - nStart] = true;
+                    nGroupMembers[nNextMemberPos++] = nOtherPos;
+                }
+            }
+            if (nNextMemberPos - nGroupStart > 1) {
+                for (int nMember = nGroupStart; nMember < nNextMemberPos; nMember++) {
+                    nWindowGroups[nGroupMembers[nMember]] = nGroups;
+                }
+                nGroupStarts[nGroups] = nGroupStart;
+                nGroupSizes[nGroups] = nNextMemberPos - nGroupStart;
+                nGroups++;
+            } else {
+                //no identical window --> the position is free again
+                nNextMemberPos = nGroupStart;
+            }
+        }
+
+        return nNextMemberPos;
+    }
+
+    private boolean equalTokens(int nFirstPos, int nOtherPos, int nLength) {
+        for (int nToken = 0; nToken < nLength; nToken++) {
+            if (nTokens[nFirstPos + nToken] != nTokens[nOtherPos + nToken]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * creates a duplication for every group which involves two repositories and does not continue the group of
+     * the previous windows
+     * @return - duplications sorted by their number of tokens
+     * @throws IOException - the code fragment could not be read
+     */
+    private List<Duplication> collectDuplications() throws IOException {
+        List<Duplication> lDuplications = new ArrayList<>();
+        List<int[]> lMatches = new ArrayList<>();
+        Map<Integer, String[]> oSourceLines = new HashMap<>();
+
+        for (int nGroup = 0; nGroup < nGroups; nGroup++) {
+            int nStart = nGroupStarts[nGroup];
+            int nEnd = nStart + nGroupSizes[nGroup];
+
+            if (hasDifferentRepos(nStart, nEnd) && !continuesPreviousGroup(nGroup)) {
+                //extend the duplication while all files have the same next token
+                int nLength = nMinimumTokens;
+                while (continuesWith(nStart, nEnd, nGroupMembers[nStart], nLength)) {
+                    nLength++;
+                }
+                lMatches.add(new int[]{nGroup, nLength});
+            }
+        }
+        //the numbers of the tokens depend on the threads --> sort by the position for the same order in every run
+        lMatches.sort(Comparator.<int[]>comparingInt(nMatch -> -nMatch[1])
+                .thenComparingInt(nMatch -> nGroupMembers[nGroupStarts[nMatch[0]]]));
+
+        for (int[] nMatch : lMatches) {
+            int nStart = nGroupStarts[nMatch[0]];
+            int nFirstPos = nGroupMembers[nStart];
+            int nLength = nMatch[1];
+
+            List<String> lInvolvedData = new ArrayList<>();
+            List<Integer> lBeginLines = new ArrayList<>();
+            for (int nMember = nStart; nMember < nStart + nGroupSizes[nMatch[0]]; nMember++) {
+                String sFilePath = sFilePaths[nTokenFiles[nGroupMembers[nMember]]];
+                if (oUtil.checkIfDifferentReops(lInvolvedData, sFilePath)) {
+                    lInvolvedData.add(sFilePath);
+                    lBeginLines.add(nLines[nGroupMembers[nMember]]);
+                }
+            }
+
+            int nFile = nTokenFiles[nFirstPos];
+            int nBeginLine = nLines[nFirstPos];
+            int nEndLine = nLines[nFirstPos + nLength - 1];
+            String[] sLines = oSourceLines.get(nFile);
+            if (sLines == null) {
+                sLines = readSource(oFiles[nFile]).split("\\r?\\n", -1);
+                oSourceLines.put(nFile, sLines);
+            }
+            lDuplications.add(Duplication.getDupliactionInstance(nEndLine - nBeginLine + 1, nLength, lInvolvedData,
+                    lBeginLines, getCodeFragment(sLines, nBeginLine, nEndLine)));
+        }
+
+        return lDuplications;
+    }
+
+    /**
+     * checks if the group contains a repository of the first set and another repository of the second set
+     */
+    private boolean hasDifferentRepos(int nStart, int nEnd) {
+        int nRepoA = -1;
+        int nRepoB = -1;
+
+        for (int nMember = nStart; nMember < nEnd; nMember++) {
+            int nRepo = nFileRepos[nTokenFiles[nGroupMembers[nMember]]];
+            if ((nRepoSets[nRepo] & 1) != 0) {
+                if (nRepoB >= 0 && nRepoB != nRepo) {
+                    return true;
+                }
+                nRepoA = nRepo;
+            }
+            if ((nRepoSets[nRepo] & 2) != 0) {
+                if (nRepoA >= 0 && nRepoA != nRepo) {
+                    return true;
+                }
+                nRepoB = nRepo;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * checks if the group is only the continuation of the group of the previous windows, i.e. every window of the
+     * group follows a window of the same previous group. Like cpd, which skips two windows with the same previous
+     * token, a group is also skipped if the previous group has more windows
+     */
+    private boolean continuesPreviousGroup(int nGroup) {
+        int nStart = nGroupStarts[nGroup];
+        int nPreviousGroup = -1;
+
+        for (int nMember = nStart; nMember < nStart + nGroupSizes[nGroup]; nMember++) {
+            int nPos = nGroupMembers[nMember];
+            if (nPos == nFileStarts[nTokenFiles[nPos]] || nWindowGroups[nPos - 1] < 0
+                    || nPreviousGroup >= 0 && nWindowGroups[nPos - 1] != nPreviousGroup) {
+                return false;
+            }
+            nPreviousGroup = nWindowGroups[nPos - 1];
+        }
+
+        return true;
+    }
+
+    private boolean continuesWith(int nStart, int nEnd, int nFirstPos, int nLength) {
+        for (int nMember = nStart; nMember < nEnd; nMember++) {
+            int nPos = nGroupMembers[nMember];
+            if (nPos + nLength >= nFileStarts[nTokenFiles[nPos] + 1]
+                    || nTokens[nPos + nLength] != nTokens[nFirstPos + nLength]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * returns the lines of the duplication like the codefragment of the xml report of cpd, i.e. joined
+     * without a line separator after the last line
+     */
+    private String getCodeFragment(String[] sLines, int nBeginLine, int nEndLine) {
+        StringBuilder oFragment = new StringBuilder();
+
+        for (int nLine = nBeginLine; nLine <= nEndLine && nLine <= sLines.length; nLine++) {
+            if (nLine > nBeginLine) {
+                oFragment.append('\n');
+            }
+            oFragment.append(sLines[nLine - 1]);
+        }
+
+        return oFragment.toString();
+    }
+
+    private String readSource(File oFile) {
+        try {
+            return new String(Files.readAllBytes(oFile.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * growing array of ints, a list of Integer would need several times the memory for the tokens of a course
+     */
+    private static class IntList {
+        private int[] nValues = new int[256];
+
+        private int nSize;
+
+        void add(int nValue) {
+            if (nSize == nValues.length) {
+                nValues = Arrays.copyOf(nValues, nSize * 2);
+            }
+            nValues[nSize++] = nValue;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(nValues, nSize);
+        }
+    }
+}
@@ -4,28 +4,24 @@ import de.htwg.konstanz.cloud.model.Class;
 import de.htwg.konstanz.cloud.util.*;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.swing.text.BadLocationException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Pmd {
     private static final Logger LOG = LoggerFactory.getLogger(Pmd.class);
 
     private final Util util = new Util();
 
-    private List<Class> lFormattedClassList;
+    private List<Class> lFormattedClassList = new ArrayList<>();
 
     private final OperatingSystemCheck oOperatingSystemCheck = new OperatingSystemCheck();
 
@@ -33,56 +29,230 @@ public class Pmd {
 
     private final Git oGit = new Git();
 
-    private final Svn oSvn = new Svn();
+    private final Svn oSvn;
 
     private final OwnJson oOwnJson = new OwnJson();
 
+    private final XmlReportReader oXmlReportReader = new XmlReportReader();
+
     private final String svnServerIp;
 
     private final String ruleSetPath;
 
+    private final RepositoryResultCache oRepositoryCache;
+
+    private final GitMirrorStore oGitMirrorStore;
+
+    private String sCommitId;
+
+    /* receives every analyzed java class as soon as it is done, null --> the result is only sent at the end */
+    private ClassListener oClassListener;
+
+    private final InFlightAnalyses oInFlightAnalyses;
+
+    private final PmdEngine oPmdEngine;
+
+    private final PmdResultCache oResultCache;
+
+    /* durations of the phases of this analysis */
+    private final PhaseTimings.Recorder oTimings;
+
+    /* true --> this request analyzed the repository itself and did not get the result of a concurrent request */
+    private boolean bAnalyzed;
+
+    /* id of the course of the repository, null --> the reuse of identical java files is not counted */
+    private String sCourse;
+
     /**
      * Constructor to initialize the Svn server ip and ruleset path of checkstyle.
      * They are stored in the config file
      * @param svnServerIp - SVN Server ip address
      * @param ruleSetPath - local path to the ruleset of pmd
+     * @param oRepositoryCache - cache with the results of already analyzed commits
+     * @param oGitMirrorStore - local mirrors of the git repositories
+     * @param oSvn - crawler of the svn repositories
+     * @param oInFlightAnalyses - running analyses, concurrent requests of the same repository are coalesced
+     * @param oPmdEngine - engine which runs pmd inside the service
+     * @param oResultCache - cache with the problems of already analyzed java files
+     * @param oPhaseTimings - latency histograms of the phases of all analyses
      */
-    public Pmd(String svnServerIp, String ruleSetPath) {
+    public Pmd(String svnServerIp, String ruleSetPath, RepositoryResultCache oRepositoryCache,
+               GitMirrorStore oGitMirrorStore, Svn oSvn, InFlightAnalyses oInFlightAnalyses, PmdEngine oPmdEngine,
+               PmdResultCache oResultCache, PhaseTimings oPhaseTimings) {
         this.svnServerIp = svnServerIp;
         this.ruleSetPath = ruleSetPath;
+        this.oRepositoryCache = oRepositoryCache;
+        this.oGitMirrorStore = oGitMirrorStore;
+        this.oSvn = oSvn;
+        this.oInFlightAnalyses = oInFlightAnalyses;
+        this.oPmdEngine = oPmdEngine;
+        this.oResultCache = oResultCache;
+        this.oTimings = oPhaseTimings.createRecorder();
     }
 
     /**
-     * entry point for an incoming post request
+     * assigns the repository to a course, so the reuse of the results of identical java files is counted for it
+     * @param sCourse - id of the course or null
+     */
+    void setCourse(String sCourse) {
+        this.sCourse = sCourse;
+    }
+
+    /**
+     * entry point for an incoming post request. A request of a repository which is analyzed at the moment waits
+     * for the running analysis and gets its result
      * @param gitRepository - given git repository from post request
-     * @return - problems that pmd has found in a json file
+     * @return - problems that pmd has found, they are written as json file into the response
      * @throws IOException - throw for the handling in CheckstyleService
      * @throws ParserConfigurationException - throw for the handling in CheckstyleService
      * @throws SAXException - throw for the handling in CheckstyleService
-     * @throws BadLocationException - throw for the handling in CheckstyleService
      * @throws GitAPIException - throw for the handling in CheckstyleService
      * @throws NullPointerException - throw for the handling in CheckstyleService
      */
-    String startIt(String gitRepository) throws IOException, ParserConfigurationException, SAXException,
-            BadLocationException, GitAPIException, NullPointerException {
+    AnalysisResult startIt(String gitRepository) throws IOException, ParserConfigurationException, SAXException,
+            GitAPIException, NullPointerException {
+        return startIt(gitRepository, false);
+    }
+
+    /**
+     * entry point for a request or a background job. A repository which is not cached is only analyzed when the
+     * admission control has a free slot
+     * @param gitRepository - given git repository from post request
+     * @param bBackground - true --> background job, it waits for a slot and is never rejected
+     * @return - problems that pmd has found, they are written as json file into the response
+     * @throws IOException - throw for the handling in PmdService
+     * @throws ParserConfigurationException - throw for the handling in PmdService
+     * @throws SAXException - throw for the handling in PmdService
+     * @throws GitAPIException - throw for the handling in PmdService
+     */
+    AnalysisResult startIt(String gitRepository, boolean bBackground) throws IOException,
+            ParserConfigurationException, SAXException, GitAPIException {
+        //an already analyzed commit or revision of a repository does not need to be downloaded again
+        AnalysisResult oResult = getCachedResult(gitRepository);
+        if (oResult != null) {
+            LOG.info("Repository result cached: " + gitRepository);
+            return oResult;
+        }
+
+        oResult = oInFlightAnalyses.run(gitRepository, bBackground, () -> analyze(gitRepository));
+
+        //a coalesced request got the result of the running analysis, its java files are reused for its course
+        if (!bAnalyzed && oResult.getFileCount() > 0) {
+            oResultCache.addCourseAnalysis(sCourse, oResult.getFileCount(), 0);
+        }
+
+        return oResult;
+    }
+
+    /**
+     * downloads and analyzes a repository
+     * @param gitRepository - given git repository from post request
+     * @return - problems that pmd has found
+     * @throws IOException - throw for the handling in PmdService
+     * @throws ParserConfigurationException - throw for the handling in PmdService
+     * @throws SAXException - throw for the handling in PmdService
+     * @throws GitAPIException - throw for the handling in PmdService
+     */
+    private AnalysisResult analyze(String gitRepository) throws IOException, ParserConfigurationException,
+            SAXException, GitAPIException {
+        bAnalyzed = true;
         lFormattedClassList = new ArrayList<>();
         long lStartTime = System.currentTimeMillis();
-        JSONObject oJsonResult;
-        String sResult;
 
         //checks if the post contains a repository of git or svn
-        oJsonResult = determineVersionControlSystem(gitRepository, lStartTime);
+        AnalysisResult oResult = determineVersionControlSystem(gitRepository, lStartTime);
 
         if (oRepoDir == null) {
             LOG.info("Error: Local Directory is null!");
         } else {
+            long lDeleteStart = oTimings.start();
             FileUtils.deleteDirectory(oRepoDir);
+            oTimings.stop("deleteDirectory", lDeleteStart);
         }
 
         //tests the result to avoid a nullpointer exception
-        sResult = util.checkJsonResult(oJsonResult);
+        if (oResult == null) {
+            LOG.info("Error: received invalid repository and JSON file");
+            return AnalysisResult.invalid();
+        }
+
+        //the result is stored with the commit or revision that was really downloaded, maybe it is newer than the
+        // resolved one
+        if (sCommitId != null) {
+            oResult.cacheAs(oRepositoryCache, oRepositoryCache.createKey(gitRepository, sCommitId));
+        }
+
+        return oResult;
+    }
+
+    /**
+     * entry point for a progressive post request. Every analyzed java file is written as a json record into the
+     * given stream as soon as it is done, the last record contains the totals of the whole repository
+     * @param gitRepository - given git repository from post request
+     * @param oOut - stream of the response
+     * @throws IOException - the response could not be written
+     */
+    void streamIt(String gitRepository, OutputStream oOut) throws IOException {
+        oClassListener = oClass -> oOwnJson.writeClassRecord(oOut, oClass);
+
+        try {
+            //a coalesced request did not send the records of the java files during the analysis
+            startIt(gitRepository).writeRecords(oOut, bAnalyzed);
+        } catch (Exception e) {
+            //the http status is already sent --> the failure is reported as the last record, if the client is
+            // still connected
+            LOG.error(e.getMessage());
+            oOwnJson.writeErrorRecord(oOut, e.getMessage());
+        }
+    }
+
+    /**
+     * resolves the HEAD commit of a git repository or the last changed revision of a svn repository without
+     * downloading it and searches the result of this commit
+     * @param sRepoUrl - within POST request given repository url
+     * @return - stored json result or null if the commit was not analyzed yet
+     */
+    private AnalysisResult getCachedResult(String sRepoUrl) {
+        AnalysisResult oResult = null;
+        String sRemoteHead = null;
+
+        if (sRepoUrl.contains(svnServerIp)) {
+            String sRevision = oSvn.getRemoteRevision(createSvnUrl(sRepoUrl));
+
+            if (sRevision != null) {
+                sRemoteHead = "r" + sRevision;
+            }
+        } else if (sRepoUrl.contains("github.com")) {
+            sRemoteHead = oGit.getRemoteHead(sRepoUrl);
+        }
+
+        if (sRemoteHead != null) {
+            oResult = oRepositoryCache.get(oRepositoryCache.createKey(sRepoUrl, sRemoteHead));
+        }
+
+        return oResult;
+    }
+
+    /**
+     * builds the HTTP-Link of a svn repository
+     * @param sRepoUrl - within POST request given repository url
+     * @return - HTTP-Link without a slash at the end
+     */
+    private String createSvnUrl(String sRepoUrl) {
+        StringBuilder oStringBuilder = new StringBuilder();
 
-        return sResult;
+        /* URL needs to start with HTTP:// */
+        if (!sRepoUrl.startsWith("http://")) {
+            oStringBuilder.append("http://");
+        }
+        /* remove the last / */
+        if (sRepoUrl.endsWith("/")) {
+            oStringBuilder.append(sRepoUrl.substring(0, sRepoUrl.length() - 1));
+        } else {
+            oStringBuilder.append(sRepoUrl);
+        }
+
+        return oStringBuilder.toString();
     }
 
     /**
@@ -92,56 +262,73 @@ public class Pmd {
      * @param lStartTime - start time of the service execution
      * @return  - generated JSON file with all problems pmd has found
      * @throws IOException - throw for the handling in CheckstyleService
-     * @throws BadLocationException - throw for the handling in CheckstyleService
      * @throws GitAPIException - throw for the handling in CheckstyleService
      * @throws ParserConfigurationException - throw for the handling in CheckstyleService
      * @throws SAXException - throw for the handling in CheckstyleService
      */
-    private JSONObject determineVersionControlSystem(String sRepoUrl, long lStartTime)
-            throws IOException, BadLocationException, GitAPIException, ParserConfigurationException, SAXException {
-        JSONObject oJson = null;
+    private AnalysisResult determineVersionControlSystem(String sRepoUrl, long lStartTime)
+            throws IOException, GitAPIException, ParserConfigurationException, SAXException {
+        AnalysisResult oJson = null;
         String sLocalDir;
         String[] sLocalDirArray;
-        StringBuilder oStringBuilder = new StringBuilder();
 
         LOG.info("Repository URL: " + sRepoUrl);
-        //to run pmd, the binary files are needed. If they are not present locally, this method will download
+        //to fork pmd, the binary files are needed. If they are not present locally, this method will download
         // and unzip it automatically
-        util.checkLocalPmd();
+        if (!oPmdEngine.isInProcess()) {
+            util.checkLocalPmd();
+        }
         oRepoDir = util.createDirectory("repositories");
 
         /* Svn Checkout */
         if (sRepoUrl.contains(svnServerIp)) {
-            /* URL needs to start with HTTP:// */
-            if (!sRepoUrl.startsWith("http://")) {
-                oStringBuilder.append("http://");
-            }
-            /* remove the last / */
-            if (sRepoUrl.endsWith("/")) {
-                oStringBuilder.append(sRepoUrl.substring(0, sRepoUrl.length() - 1));
-            } else {
-                oStringBuilder.append(sRepoUrl);
-            }
-
             LOG.info("Svn");
-            //download the given svn repository and returns the locally path of it
-            sLocalDir = oSvn.downloadSvnRepo(oStringBuilder.toString());
+            //updates the local copy of the given svn repository and returns the locally path of a snapshot
+            // [0] --> locally Path
+            // [1] --> last changed revision
+            long lDownloadStart = oTimings.start();
+            sLocalDirArray = oSvn.downloadSvnRepo(createSvnUrl(sRepoUrl));
+            oTimings.stop("downloadSvnRepo", lDownloadStart);
+            if (!sLocalDirArray[1].isEmpty()) {
+                sCommitId = "r" + sLocalDirArray[1];
+            }
             /* Last Update Time (last parameter) of SVN is empty because it does not provide this information */
             // generate some parsable pmd data and run pmd for the locally stored svn repository
-            oJson = runPmd(generatePmdData(sLocalDir), sRepoUrl, lStartTime, "");
-            oRepoDir = new File(sLocalDir);
+            oJson = runPmd(generatePmdData(sLocalDirArray[0]), sRepoUrl, lStartTime, "", null);
+            oRepoDir = new File(sLocalDirArray[0]);
         }
         /* Git Checkout */
         else if (sRepoUrl.contains("github.com")) {
             LOG.info("Git");
-            //download the given git repository and returns the locally path of it and the last updated time
-            // [0] --> locally Path
-            // [1] --> Last Update Time
-            sLocalDirArray = oGit.downloadGitRepo(sRepoUrl);
-            /* Last Update Time (last parameter) of the git repositry */
-            // generate some parsable checkstyle data and run pmd for the locally stored git repository
-            oJson = runPmd(generatePmdData(sLocalDirArray[0]), sRepoUrl, lStartTime, sLocalDirArray[1]);
-            oRepoDir = new File(sLocalDirArray[0]);
+            if (oGitMirrorStore.isTreeMode()) {
+                //updates the local mirror of the given git repository and reads the java files of the HEAD commit
+                // directly from it
+                long lDownloadStart = oTimings.start();
+                GitTree oTree = oGitMirrorStore.readHead(sRepoUrl);
+                oTimings.stop("downloadGitRepo", lDownloadStart);
+                Map<String, byte[]> oSourceMap = new LinkedHashMap<>();
+                sLocalDir = oGitMirrorStore.createLocalDirectoryName(sRepoUrl, null);
+                sCommitId = oTree.getCommitId();
+                /* Last Update Time (last parameter) of the git repositry */
+                // generate some parsable pmd data and run pmd for the java files of the git tree
+                oJson = runPmd(generatePmdData(oTree, sLocalDir, oSourceMap), sRepoUrl, lStartTime,
+                        oTree.getCommitTime(), oSourceMap);
+                oRepoDir = new File(sLocalDir);
+            } else {
+                //updates the local mirror of the given git repository and returns the locally path of its java
+                // files and the last updated time
+                // [0] --> locally Path
+                // [1] --> Last Update Time
+                // [2] --> Id of the HEAD commit
+                long lDownloadStart = oTimings.start();
+                sLocalDirArray = oGitMirrorStore.checkout(sRepoUrl);
+                oTimings.stop("downloadGitRepo", lDownloadStart);
+                sCommitId = sLocalDirArray[2];
+                /* Last Update Time (last parameter) of the git repositry */
+                // generate some parsable pmd data and run pmd for the locally stored git repository
+                oJson = runPmd(generatePmdData(sLocalDirArray[0]), sRepoUrl, lStartTime, sLocalDirArray[1], null);
+                oRepoDir = new File(sLocalDirArray[0]);
+            }
         } else {
             LOG.info("Repository URL has no valid Svn/Git attributes. (" + sRepoUrl + ")");
         }
@@ -154,8 +341,9 @@ public class Pmd {
      * @param sLocalDirectory - Locale directory of the outchecked SVN or GIT repository
      * @return - A list with all directories and files
      */
-    private List<List<String>> generatePmdData(String sLocalDirectory) throws FileNotFoundException {
+    List<List<String>> generatePmdData(String sLocalDirectory) throws FileNotFoundException {
         //crawl Method to detect all .java Files in the given local path
+        long lGenerateStart = oTimings.start();
         List<List<String>> list = new ArrayList<>();
         File mainDir;
         LOG.info("Local Directory: " + sLocalDirectory);
@@ -190,6 +378,7 @@ public class Pmd {
         }
 
         checkUnregularRepository(sLocalDirectory, list);
+        oTimings.stop("generatePmdData", lGenerateStart);
 
         return list;
     }
@@ -211,19 +400,175 @@ public class Pmd {
     }
 
     /**
-     * executes pmd within the command line interface
+     * generates data for the pmd service from the java files of a git tree, with the same structure as the
+     * crawling of a local directory. The content of every java file is stored in the source map
+     * @param oTree - java files of the HEAD commit
+     * @param sLocalDirectory - Locale directory of the analysis, the java files are only stored there if pmd
+     *                        is forked
+     * @param oSourceMap - Map with the local path and the content of every java file
+     * @return - A list with all directories and files
+     */
+    private List<List<String>> generatePmdData(GitTree oTree, String sLocalDirectory,
+                                               Map<String, byte[]> oSourceMap) {
+        long lGenerateStart = oTimings.start();
+        List<List<String>> list = new ArrayList<>();
+        Map<String, List<String>> oDirectoryMap = new LinkedHashMap<>();
+        LOG.info("Git tree of commit: " + oTree.getCommitId());
+
+        /* Structure according to the specifications */
+        String sMainDir = oTree.getRootDirectories().contains("src") ? "src/" : "";
+
+        //Class-Files in the Head-Dirs of the main directory
+        for (String sTreePath : oTree.getJavaFiles().keySet()) {
+            if (sTreePath.startsWith(sMainDir)) {
+                String[] sTreePathSplitArray = sTreePath.substring(sMainDir.length()).split("/");
+
+                if (sTreePathSplitArray.length == 2) {
+                    oDirectoryMap.computeIfAbsent(sTreePathSplitArray[0], sDir -> new ArrayList<>())
+                            .add(addSource(oTree, sTreePath, sLocalDirectory, oSourceMap));
+                }
+            }
+        }
+        list.addAll(oDirectoryMap.values());
+
+        /* Other Structure Workaround */
+        if (list.isEmpty()) {
+            //Unregular Repo
+            LOG.info("unregular repository");
+            List<String> javaFiles = new ArrayList<>();
+            for (String sTreePath : oTree.getJavaFiles().keySet()) {
+                //ignore git folder like the crawling of a local directory
+                if (!sTreePath.substring(0, sTreePath.lastIndexOf('/') + 1).contains(".git")) {
+                    javaFiles.add(addSource(oTree, sTreePath, sLocalDirectory, oSourceMap));
+                }
+            }
+            list.add(javaFiles);
+        }
+        oTimings.stop("generatePmdData", lGenerateStart);
+
+        return list;
+    }
+
+    /**
+     * builds the local path of a java file of the git tree and stores its content
+     * @param oTree - java files of the HEAD commit
+     * @param sTreePath - path of the java file within the repository
+     * @param sLocalDirectory - Locale directory of the analysis
+     * @param oSourceMap - Map with the path and the content of every java file
+     * @return - local path of the java file
+     */
+    private String addSource(GitTree oTree, String sTreePath, String sLocalDirectory, Map<String, byte[]> oSourceMap) {
+        String sFullPath = new File(sLocalDirectory, sTreePath).getPath();
+        oSourceMap.put(sFullPath, oTree.getJavaFiles().get(sTreePath));
+
+        return sFullPath;
+    }
+
+    /**
+     * executes pmd for all java files of the repository, either inside the service or within the command line
+     * interface
      * @param lRepoList - List of all repositories that were stored locally
      * @param gitRepository - String that represents the analyzed repository (SVN or GIT)
      * @param lStartTime - Start time of the execution
      * @param sLastUpdateTime - Last update of the repository
-     * @return - returns a JSON Object with all provided information of checkstyle
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @return - result with all provided information of pmd
      * @throws ParserConfigurationException - Error while parsing xml document
      * @throws SAXException - Error within SAX XML Parser
      * @throws IOException - general io exception
      */
-    private JSONObject runPmd(List<List<String>> lRepoList, String gitRepository, long lStartTime, String sLastUpdateTime)
+    private AnalysisResult runPmd(List<List<String>> lRepoList, String gitRepository, long lStartTime,
+                                  String sLastUpdateTime, Map<String, byte[]> oSourceMap)
             throws ParserConfigurationException, SAXException, IOException {
 
+		/* reduce the content of the repository list for the json creation */
+        formatList(lRepoList);
+
+        //java files with a cached result get their problems immediately, of the others only one java file of each
+        // content has to be analyzed
+        long lLookupStart = oTimings.start();
+        PmdResultCache.Lookup oLookup = oResultCache.lookup(lFormattedClassList, oSourceMap);
+        oTimings.stop("resultCacheLookup", lLookupStart);
+        RuleProfiler.Run oRuleProfile;
+        try {
+            Map<Class, String> oMissMap = oLookup.getMissMap();
+            LOG.info("Pmd cache: " + oLookup.getCachedList().size() + " of " + lFormattedClassList.size()
+                    + " java files cached, " + oMissMap.size() + " to analyze");
+            for (Class oClass : oLookup.getCachedList()) {
+                notifyClassDone(oClass);
+            }
+
+            oRuleProfile = analyzeClasses(oMissMap, oSourceMap);
+
+            //identical java files of this or of a concurrent analysis get the problems of the analyzed one
+            Map<Class, String> oRetryMap = oLookup.fanOut(this::notifyClassDone);
+            if (!oRetryMap.isEmpty()) {
+                LOG.info("Pmd: " + oRetryMap.size() + " identical java files were not analyzed, retry");
+                analyzeClasses(oRetryMap, oSourceMap);
+            }
+            oLookup.recordCourse(sCourse);
+        } finally {
+            oLookup.release();
+        }
+
+        /* the JSON File is generated when the result is written */
+        return new AnalysisResult(gitRepository, lStartTime, sLastUpdateTime, lFormattedClassList, oTimings,
+                oRuleProfile);
+    }
+
+    /**
+     * analyzes the given java classes and stores their problems in the result cache
+     * @param oMissMap - java classes that should be analyzed with their cache keys
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @return - costs of the rules, null if the profiling is disabled or pmd is forked
+     * @throws IOException - general io exception
+     */
+    private RuleProfiler.Run analyzeClasses(Map<Class, String> oMissMap, Map<String, byte[]> oSourceMap)
+            throws IOException {
+        List<Class> lMissList = new ArrayList<>(oMissMap.keySet());
+
+        long lPmdStart = oTimings.start();
+        RuleProfiler.Run oRuleProfile = null;
+        if (oPmdEngine.isInProcess()) {
+            //the engine stores all problems directly in the class list --> no xml reports
+            oRuleProfile = oPmdEngine.check(lMissList, oSourceMap, nClassPos -> {
+                oResultCache.put(oMissMap.get(lMissList.get(nClassPos)), lMissList.get(nClassPos));
+                notifyClassDone(lMissList.get(nClassPos));
+            });
+        } else {
+            //the forked pmd reads the java files from the disk, so the ones without a cached result are stored locally
+            if (oSourceMap != null) {
+                for (Class oClass : lMissList) {
+                    File oFile = new File(oClass.getFullPath());
+                    FileUtils.forceMkdir(oFile.getParentFile());
+                    Files.write(oFile.toPath(), oSourceMap.get(oClass.getFullPath()));
+                }
+            }
+            forkPmd(lMissList, oMissMap);
+        }
+        oTimings.stop("pmd", lPmdStart);
+
+        return oRuleProfile;
+    }
+
+    /**
+     * passes an analyzed java class to the listener of a progressive request
+     * @param oClass - java class with all founded problems
+     * @throws IOException - the result of the java class could not be sent
+     */
+    private void notifyClassDone(Class oClass) throws IOException {
+        if (oClassListener != null) {
+            oClassListener.classDone(oClass);
+        }
+    }
+
+    /**
+     * executes pmd within the command line interface, one process for each java file
+     * @param lClassList - list with all java classes that should be analyzed
+     * @param oCacheKeyMap - cache keys of the java classes
+     * @throws IOException - general io exception
+     */
+    private void forkPmd(List<Class> lClassList, Map<Class, String> oCacheKeyMap) throws IOException {
         String sStartScript = "";
 
         //check the actual operating system and build the path with the correct file separator
@@ -233,11 +578,8 @@ public class Pmd {
             sStartScript = "pmd-bin-5.4.2/bin/run.sh pmd";
         }
 
-		/* reduce the content of the repository list for the json creation */
-        formatList(lRepoList);
-
-        for (int nClassPos = 0; nClassPos < lFormattedClassList.size(); nClassPos++) {
-            String sFullPath = lFormattedClassList.get(nClassPos).getFullPath();
+        for (int nClassPos = 0; nClassPos < lClassList.size(); nClassPos++) {
+            String sFullPath = lClassList.get(nClassPos).getFullPath();
 
             if (sFullPath.endsWith(".java")) {
                 sFullPath = sFullPath.substring(0, sFullPath.length() - 5);
@@ -249,22 +591,27 @@ public class Pmd {
             LOG.info("Pmd execution path: " + sPmdCommand);
 
             //execute it and validate the return code to get files which were not parsable by pmd
+            long lProcessStart = oTimings.start();
             int nReturnCode = util.execCommand(sPmdCommand);
+            oTimings.stop("pmdProcess", lProcessStart);
             LOG.info("Process Return Code: " + nReturnCode);
 
 			/* store pmd Informationen in the global List */
-            storePmdInformation(sFullPath + ".xml", nClassPos);
-        }
+            long lStoreStart = oTimings.start();
+            storePmdInformation(sFullPath + ".xml", nClassPos, lClassList);
+            oTimings.stop("storePmdInformation", lStoreStart);
+            oResultCache.put(oCacheKeyMap.get(lClassList.get(nClassPos)), lClassList.get(nClassPos));
 
-        /* generate a JSON File */
-        return oOwnJson.buildJson(gitRepository, lStartTime, sLastUpdateTime, lFormattedClassList);
+            //a progressive request gets the result of the java file immediately
+            notifyClassDone(lClassList.get(nClassPos));
+        }
     }
 
     /**
      * removes unnecessary information
      * @param lRepoList - List with all given repositories that should be redurced
      */
-    private void formatList(List<List<String>> lRepoList) {
+    void formatList(List<List<String>> lRepoList) {
         OperatingSystemCheck oOperatingSystemCheck = new OperatingSystemCheck();
 
         for (List<String> lRepoListInList : lRepoList) {
@@ -282,28 +629,19 @@ public class Pmd {
     }
 
     /**
-     * opens the stored xml file of pmd and iterates through all errors to read the attributes-value pairs
+     * streams the stored xml file of pmd and assigns every violation to the analyzed java class
      * @param sXmlPath - xml file path the should be read
      * @param nClassPos - actual class position of the whole list --> to assign the founded errors correctly
-     * @throws ParserConfigurationException - Error while parsing xml document
-     * @throws SAXException - Error within SAX XML Parser
-     * @throws IOException - general io exception
+     * @param lClassList - list with all java classes that are analyzed
+     * @throws IOException - general io exception or invalid xml document
      */
-    private void storePmdInformation(String sXmlPath, int nClassPos) throws
-            ParserConfigurationException, SAXException, IOException {
-        InputStream inputStream = new FileInputStream(sXmlPath);
-        Reader reader = new InputStreamReader(inputStream, "UTF-8");
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(is);
-
-        NodeList nList = doc.getElementsByTagName("violation");
-
-        for (int nNodePos = 0; nNodePos < nList.getLength(); nNodePos++) {
-            oOwnJson.readAndSaveAttributes(nClassPos, nList, nNodePos, lFormattedClassList);
-        }
+    void storePmdInformation(String sXmlPath, int nClassPos, List<Class> lClassList) throws IOException {
+        Class oClass = lClassList.get(nClassPos);
+
+        oXmlReportReader.readPmdReport(sXmlPath, oError -> {
+            //increment the problem belonging to the founded priority
+            oClass.incErrorType(oError.getPriority());
+            oClass.getErrorList().add(oError);
+        });
     }
 }
@@ -0,0 +1,334 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.Column;
+import de.htwg.konstanz.cloud.model.Error;
+import de.htwg.konstanz.cloud.model.Line;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDException;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.SourceCodeProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Runs pmd inside the service jvm instead of forking "pmd-bin-5.4.2/bin/run.sh pmd" for every single java
+    file. The rulesets are parsed once for every worker of a bounded pool, the java files of a repository are
+    analyzed at the same time and the violations are stored directly in the class objects, so no xml report is
+    written and parsed again.
+ */
+@Component
+public class PmdEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(PmdEngine.class);
+
+    /* engine mode which runs pmd in process, every other value falls back to the forked binary */
+    private static final String MODE_PMD = "pmd";
+
+    @Value("${app.config.pmd.ruleset}")
+    private String sRuleSetPath;
+
+    @Value("${app.config.pmd.engine:pmd}")
+    private String sEngineMode;
+
+    /* number of java files which are analyzed at the same time, 0 --> number of cores */
+    @Value("${app.config.pmd.parallelism:0}")
+    private int nParallelism;
+
+    @Autowired
+    private RuleProfiler oRuleProfiler;
+
+    private PMDConfiguration oConfiguration;
+
+    private RuleSetFactory oRuleSetFactory;
+
+    private ExecutorService oExecutor;
+
+    /* the rules of pmd keep state while they visit a file --> every worker gets its own rulesets */
+    private final ThreadLocal<PmdWorker> oWorker = new ThreadLocal<>();
+
+    /**
+     * parses the rulesets once to validate them at startup and starts the worker pool
+     * @throws RuleSetNotFoundException - invalid ruleset, the service should not start without it
+     */
+    @PostConstruct
+    private void init() throws RuleSetNotFoundException {//NOPMD
+        if (isInProcess()) {
+            oConfiguration = new PMDConfiguration();
+            oConfiguration.setRuleSets(sRuleSetPath);
+            oConfiguration.setSourceEncoding("UTF-8");
+            oConfiguration.setMinimumPriority(RulePriority.LOW);
+            oRuleSetFactory = RulesetsFactoryUtils.getRulesetFactory(oConfiguration);
+
+            RuleSets oRuleSets = oRuleSetFactory.createRuleSets(sRuleSetPath);
+            LOG.info("Pmd rulesets loaded: " + sRuleSetPath + " (" + oRuleSets.getAllRules().size() + " rules)");
+        } else {
+            LOG.info("Pmd engine mode: " + sEngineMode + " (forked pmd process)");
+        }
+
+        if (nParallelism < 1) {
+            nParallelism = Runtime.getRuntime().availableProcessors();
+        }
+        oExecutor = Executors.newFixedThreadPool(nParallelism, new WorkerThreadFactory());
+        LOG.info("Pmd parallelism: " + nParallelism);
+    }
+
+    /**
+     * stops all workers when the service shuts down
+     */
+    @PreDestroy
+    private void destroy() {//NOPMD
+        oExecutor.shutdownNow();
+    }
+
+    /**
+     * checks if the pmd analysis should run inside the service jvm
+     * @return - Flag which indicates yes/no
+     */
+    boolean isInProcess() {
+        return MODE_PMD.equalsIgnoreCase(sEngineMode);
+    }
+
+    /**
+     * analyzes all given java classes inside the service. The founded problems are stored
+     * directly in the class objects
+     * @param lClassList - list with all java classes that should be analyzed
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @param oDoneTask - task that is executed for every analyzed java class, in the order of the list
+     * @return - costs of the rules of this analysis, null if the profiling is disabled
+     * @throws IOException - the analysis of a java file failed
+     */
+    RuleProfiler.Run check(final List<Class> lClassList, Map<String, byte[]> oSourceMap, ClassTask oDoneTask)
+            throws IOException {
+        RuleProfiler.Run oRuleProfile = oRuleProfiler.createRun();
+        runParallel(lClassList.size(), nClassPos -> checkClass(lClassList.get(nClassPos), oSourceMap, oRuleProfile),
+                oDoneTask);
+
+        return oRuleProfile;
+    }
+
+    /**
+     * executes a task for every position of the class list within the worker pool and waits until all of them
+     * are done. The done task runs within the calling thread as soon as the java class at the next position is
+     * analyzed, e.g. to send its result to the client
+     * @param nClassCount - number of java classes
+     * @param oClassTask - task that analyzes the java class at the given position
+     * @param oDoneTask - task that is executed for every analyzed position in the order of the list, or null
+     * @throws IOException - the analysis of a java file or a done task failed
+     */
+    void runParallel(int nClassCount, ClassTask oClassTask, ClassTask oDoneTask) throws IOException {
+        List<Future<?>> lFutures = new ArrayList<>();
+
+        for (int nClassPos = 0; nClassPos < nClassCount; nClassPos++) {
+            final int nPos = nClassPos;
+            lFutures.add(oExecutor.submit(() -> {
+                oClassTask.run(nPos);
+                return null;
+            }));
+        }
+
+        try {
+            for (int nClassPos = 0; nClassPos < nClassCount; nClassPos++) {
+                lFutures.get(nClassPos).get();
+
+                if (oDoneTask != null) {
+                    oDoneTask.run(nClassPos);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll(lFutures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Pmd analysis was interrupted");
+        } catch (ExecutionException e) {
+            cancelAll(lFutures);
+            throw new IOException("Pmd analysis failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException e) {
+            //e.g. the client closed the connection --> the other java files are not needed anymore
+            cancelAll(lFutures);
+            throw e;
+        } catch (Exception e) {
+            cancelAll(lFutures);
+            throw new IOException("Pmd analysis failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * cancels all tasks which are not finished yet
+     * @param lFutures - tasks of the analysis
+     */
+    private void cancelAll(List<Future<?>> lFutures) {
+        for (Future<?> oFuture : lFutures) {
+            oFuture.cancel(true);
+        }
+    }
+
+    /**
+     * runs the rulesets of the current worker for a single java file. A file which is not parsable by pmd gets
+     * no violations, like the xml report of the forked pmd process
+     * @param oClass - java class that should be analyzed
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @param oRuleProfile - costs of the rules of the analysis, null if the profiling is disabled
+     * @throws RuleSetNotFoundException - the rulesets of the worker could not be created
+     * @throws IOException - the java file could not be read
+     */
+    private void checkClass(Class oClass, Map<String, byte[]> oSourceMap, RuleProfiler.Run oRuleProfile)
+            throws RuleSetNotFoundException, IOException {
+        PmdWorker oPmdWorker = getWorker();
+        String sFullPath = oClass.getFullPath();
+        byte[] oSource = oSourceMap == null ? null : oSourceMap.get(sFullPath);
+
+        RuleContext oContext = new RuleContext();
+        oContext.setSourceCodeFilename(sFullPath);
+        oContext.setSourceCodeFile(new File(sFullPath));
+        oContext.setReport(new Report());
+
+        try (InputStream oInput = oSource == null ? new FileInputStream(sFullPath)
+                : new ByteArrayInputStream(oSource)) {
+            oPmdWorker.oProcessor.processSourceCode(oInput, oPmdWorker.oRuleSets, oContext);
+        } catch (PMDException e) {
+            LOG.info("Pmd could not analyze " + sFullPath + ": " + e.getMessage());
+        } finally {
+            if (oRuleProfiler.isEnabled()) {
+                oRuleProfiler.flush(oRuleProfile);
+            }
+        }
+
+        storeViolations(oContext.getReport(), oClass);
+    }
+
+    /**
+     * stores all violations of the report in the analyzed java class, with the same attributes as the xml
+     * report of pmd
+     * @param oReport - report of a single java file
+     * @param oClass - java class that was analyzed
+     */
+    private void storeViolations(Report oReport, Class oClass) {
+        Iterator<RuleViolation> oViolations = oReport.iterator();
+
+        while (oViolations.hasNext()) {
+            RuleViolation oViolation = oViolations.next();
+            int nPriority = oViolation.getRule().getPriority().getPriority();
+
+            oClass.incErrorType(nPriority);
+            oClass.getErrorList().add(new Error(new Line(oViolation.getBeginLine(), oViolation.getEndLine()),
+                    new Column(oViolation.getBeginColumn(), oViolation.getEndColumn()), nPriority,
+                    oViolation.getRule().getName(), nonNull(oViolation.getClassName()),
+                    nonNull(oViolation.getPackageName()), oViolation.getRule().getRuleSetName(),
+                    oViolation.getDescription()));
+        }
+    }
+
+    private String nonNull(String sValue) {
+        return sValue == null ? "" : sValue;
+    }
+
+    /**
+     * returns the rulesets of the current worker thread, on the first call they will be created
+     * @return - processor and rulesets of the current thread
+     * @throws RuleSetNotFoundException - the rulesets could not be created
+     */
+    private PmdWorker getWorker() throws RuleSetNotFoundException {
+        PmdWorker oPmdWorker = oWorker.get();
+
+        if (oPmdWorker == null) {
+            oPmdWorker = new PmdWorker(new SourceCodeProcessor(oConfiguration), createRuleSets());
+            oWorker.set(oPmdWorker);
+        }
+
+        return oPmdWorker;
+    }
+
+    /**
+     * parses the rulesets for a worker. If the profiling is enabled, every rule is wrapped by a rule which measures
+     * its applications
+     * @return - rulesets of the worker
+     * @throws RuleSetNotFoundException - the rulesets could not be created
+     */
+    private RuleSets createRuleSets() throws RuleSetNotFoundException {
+        RuleSets oRuleSets = oRuleSetFactory.createRuleSets(sRuleSetPath);
+
+        if (!oRuleProfiler.isEnabled()) {
+            return oRuleSets;
+        }
+
+        RuleSets oProfiledRuleSets = new RuleSets();
+        for (RuleSet oRuleSet : oRuleSets.getAllRuleSets()) {
+            RuleSet oProfiledRuleSet = new RuleSet();
+            oProfiledRuleSet.setName(oRuleSet.getName());
+            oProfiledRuleSet.setFileName(oRuleSet.getFileName());
+            oProfiledRuleSet.addExcludePatterns(oRuleSet.getExcludePatterns());
+            oProfiledRuleSet.addIncludePatterns(oRuleSet.getIncludePatterns());
+            for (Rule oRule : oRuleSet.getRules()) {
+                oProfiledRuleSet.addRule(new ProfilingRule(oRule, oRuleProfiler));
+            }
+            oProfiledRuleSets.addRuleSet(oProfiledRuleSet);
+        }
+
+        return oProfiledRuleSets;
+    }
+
+    /**
+     * analysis of the java class at a position of the class list
+     */
+    interface ClassTask {
+        void run(int nClassPos) throws Exception;
+    }
+
+    /**
+     * thread confined processor with its rulesets
+     */
+    private static class PmdWorker {
+        private final SourceCodeProcessor oProcessor;
+
+        private final RuleSets oRuleSets;
+
+        PmdWorker(SourceCodeProcessor oProcessor, RuleSets oRuleSets) {
+            this.oProcessor = oProcessor;
+            this.oRuleSets = oRuleSets;
+        }
+    }
+
+    /**
+     * names the worker threads, so that they are recognizable within the logs
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger nThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable oRunnable) {
+            Thread oThread = new Thread(oRunnable, "pmd-worker-" + nThreadCount.incrementAndGet());
+            oThread.setDaemon(true);
+            return oThread;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.Column;
+import de.htwg.konstanz.cloud.model.Error;
+import de.htwg.konstanz.cloud.model.Line;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Stores the founded problems of every analyzed java file. The key consists of the SHA-256 hash of the file
+    content, the hash of the rulesets and the pmd version, so an unchanged file of a repository is
+    only analyzed once. The most recently used results are kept in memory, all results can additionally
+    be written to the disk of the service, so they survive a restart.
+    The repositories of a course start from the same skeleton, so many java files of a course are identical. A java
+    file which is analyzed at the moment is registered with its key, identical files of the same or of a concurrent
+    analysis wait for its result instead of being analyzed again. The reuse of results is counted per course.
+ */
+@Component
+public class PmdResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(PmdResultCache.class);
+
+    @Value("${app.config.pmd.ruleset}")
+    private String sRuleSetPath;
+
+    /* maximum number of java files which are kept in memory, 0 --> no cache */
+    @Value("${app.config.pmd.cache.size:10000}")
+    private int nMaxEntries;
+
+    /* directory of the disk cache, empty --> no disk cache */
+    @Value("${app.config.pmd.cache.directory:}")
+    private String sCacheDirectory;
+
+    /* maximum number of courses with dedup counters, the least recently validated course is removed first */
+    @Value("${app.config.pmd.cache.courses:1000}")
+    private int nMaxCourses;
+
+    private String sRuleSetHash;
+
+    private Map<String, List<Error>> oMemoryCache;
+
+    /* cache key --> result of the java file which is analyzed at the moment, null if its analysis failed */
+    private final ConcurrentMap<String, CompletableFuture<List<Error>>> oInFlight = new ConcurrentHashMap<>();
+
+    /* course --> [analyses, java files, analyzed java files] */
+    private Map<String, long[]> oCourseCounters;
+
+    private final AtomicLong lHits = new AtomicLong();
+
+    private final AtomicLong lDiskHits = new AtomicLong();
+
+    private final AtomicLong lMisses = new AtomicLong();
+
+    private final AtomicLong lShared = new AtomicLong();
+
+    /**
+     * calculates the hash of the rulesets and creates the directory of the disk cache
+     * @throws IOException - the directory of the disk cache could not be created
+     */
+    @PostConstruct
+    private void init() throws IOException {//NOPMD
+        //the configured rulesets are part of the pmd distribution, so their names identify them
+        sRuleSetHash = RepositoryResultCache.sha256(sRuleSetPath.getBytes(StandardCharsets.UTF_8));
+
+        //the access order of the map is used to remove the least recently used java file
+        oMemoryCache = Collections.synchronizedMap(new LinkedHashMap<String, List<Error>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Error>> oEldest) {
+                return size() > nMaxEntries;
+            }
+        });
+
+        oCourseCounters = Collections.synchronizedMap(new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> oEldest) {
+                return size() > nMaxCourses;
+            }
+        });
+
+        if (isDiskCacheEnabled()) {
+            Files.createDirectories(getDiskDirectory());
+        }
+        LOG.info("Pmd result cache: " + nMaxEntries + " entries in memory, disk directory: "
+                + (isDiskCacheEnabled() ? sCacheDirectory : "disabled"));
+    }
+
+    /**
+     * searches the results of all given java classes in the cache. The problems of a founded java class are
+     * added to the class object directly. Of all other java classes with the same content only the first one has
+     * to be analyzed, and none if an identical file is analyzed by a concurrent analysis at the moment
+     * @param lClassList - list with all java classes of the repository
+     * @param oSourceMap - content of the java files if they were not stored locally, otherwise null
+     * @return - lookup with the java classes that have to be analyzed and the ones that wait for identical files
+     * @throws IOException - a java file is not readable
+     */
+    Lookup lookup(List<Class> lClassList, Map<String, byte[]> oSourceMap) throws IOException {
+        Lookup oLookup = new Lookup(lClassList.size());
+
+        try {
+            for (Class oClass : lClassList) {
+                byte[] bContent = oSourceMap == null ? Files.readAllBytes(Paths.get(oClass.getFullPath()))
+                        : oSourceMap.get(oClass.getFullPath());
+                String sKey = createKey(bContent);
+                List<Error> lErrorList = get(sKey);
+
+                if (lErrorList == null) {
+                    CompletableFuture<List<Error>> oResult = new CompletableFuture<>();
+                    CompletableFuture<List<Error>> oRunningResult = oInFlight.putIfAbsent(sKey, oResult);
+
+                    if (oRunningResult == null) {
+                        lMisses.incrementAndGet();
+                        oLookup.oMissMap.put(oClass, sKey);
+                        oLookup.oClaimMap.put(sKey, oResult);
+                    } else {
+                        lShared.incrementAndGet();
+                        oLookup.oWaitMap.put(oClass, sKey);
+                        oLookup.oWaitResultMap.put(oClass, oRunningResult);
+                    }
+                } else {
+                    lHits.incrementAndGet();
+                    addErrors(oClass, lErrorList);
+                    oLookup.lCachedList.add(oClass);
+                }
+            }
+        } catch (IOException e) {
+            //the identical java files of concurrent analyses must not wait for the registered ones
+            oLookup.release();
+            throw e;
+        }
+
+        return oLookup;
+    }
+
+    /**
+     * stores the problems of an analyzed java class and passes them to the identical java files which wait for it
+     * @param sKey - cache key of the java class, provided by lookup
+     * @param oClass - analyzed java class
+     */
+    void put(String sKey, Class oClass) {
+        //the error objects are immutable, so they can be shared between the analysis of several repositories
+        List<Error> lErrorList = Collections.unmodifiableList(new ArrayList<>(oClass.getErrorList()));
+
+        if (nMaxEntries > 0) {
+            oMemoryCache.put(sKey, lErrorList);
+        }
+        if (isDiskCacheEnabled()) {
+            writeToDisk(sKey, lErrorList);
+        }
+
+        CompletableFuture<List<Error>> oResult = oInFlight.remove(sKey);
+        if (oResult != null) {
+            oResult.complete(lErrorList);
+        }
+    }
+
+    /**
+     * adds an analysis to the counters of its course
+     * @param sCourse - id of the course, null --> the repository does not belong to a course
+     * @param nFiles - number of java files of the analyzed repository
+     * @param nAnalyzed - number of java files which were really analyzed
+     */
+    void addCourseAnalysis(String sCourse, int nFiles, int nAnalyzed) {
+        if (sCourse != null && !sCourse.isEmpty()) {
+            long[] lCounters = oCourseCounters.computeIfAbsent(sCourse, sKey -> new long[3]);
+            synchronized (lCounters) {
+                lCounters[0]++;
+                lCounters[1] += nFiles;
+                lCounters[2] += nAnalyzed;
+            }
+        }
+    }
+
+    /**
+     * returns the reuse of results within the analyses of a course
+     * @param sCourse - id of the course
+     * @return - json object with the number of java files, the analyzed ones and the dedup ratio, null if no
+     * repository of the course was analyzed since the start of the service
+     */
+    JSONObject getCourseStatistics(String sCourse) {
+        long[] lCounters = oCourseCounters.get(sCourse);
+        if (lCounters == null) {
+            return null;
+        }
+
+        JSONObject oJson = new JSONObject();
+        synchronized (lCounters) {
+            long lReused = lCounters[1] - lCounters[2];
+            oJson.put("course", sCourse);
+            oJson.put("analyses", lCounters[0]);
+            oJson.put("files", lCounters[1]);
+            oJson.put("analyzedFiles", lCounters[2]);
+            oJson.put("reusedFiles", lReused);
+            oJson.put("dedupRatio", lCounters[1] == 0 ? 0 : Math.round(lReused * 1000.0 / lCounters[1]) / 1000.0);
+        }
+
+        return oJson;
+    }
+
+    /**
+     * returns the counters of the cache
+     * @return - json object with hits, misses and the number of entries in memory
+     */
+    JSONObject getStatistics() {
+        JSONObject oJson = new JSONObject();
+
+        oJson.put("hits", lHits.get());
+        oJson.put("diskHits", lDiskHits.get());
+        oJson.put("misses", lMisses.get());
+        oJson.put("shared", lShared.get());
+        oJson.put("courses", oCourseCounters.size());
+        oJson.put("memoryEntries", oMemoryCache.size());
+        oJson.put("maxMemoryEntries", nMaxEntries);
+        oJson.put("diskCache", isDiskCacheEnabled());
+
+        return oJson;
+    }
+
+    /**
+     * adds cached problems to a java class
+     * @param oClass - java class of the repository
+     * @param lErrorList - problems of a java file with the same content
+     */
+    private void addErrors(Class oClass, List<Error> lErrorList) {
+        for (Error oError : lErrorList) {
+            oClass.getErrorList().add(oError);
+            oClass.incErrorType(oError.getPriority());
+        }
+    }
+
+    /**
+     * searches a result in memory first and afterwards on the disk
+     * @param sKey - cache key of the java class
+     * @return - cached problems or null
+     */
+    private List<Error> get(String sKey) {
+        List<Error> lErrorList = nMaxEntries > 0 ? oMemoryCache.get(sKey) : null;
+
+        if (lErrorList == null && isDiskCacheEnabled()) {
+            lErrorList = readFromDisk(sKey);
+
+            if (lErrorList != null) {
+                lDiskHits.incrementAndGet();
+                if (nMaxEntries > 0) {
+                    oMemoryCache.put(sKey, lErrorList);
+                }
+            }
+        }
+
+        return lErrorList;
+    }
+
+    /**
+     * builds the key of a java class by its content, the rulesets and the pmd version
+     * @param bContent - content of the java file
+     * @return - cache key
+     */
+    private String createKey(byte[] bContent) {
+        String sContentHash = RepositoryResultCache.sha256(bContent);
+
+        return sContentHash + "_" + sRuleSetHash + "_" + RepositoryResultCache.PMD_VERSION;
+    }
+
+    private boolean isDiskCacheEnabled() {
+        return sCacheDirectory != null && !sCacheDirectory.isEmpty();
+    }
+
+    private Path getDiskDirectory() {
+        return Paths.get(sCacheDirectory, "files");
+    }
+
+    private Path getDiskPath(String sKey) {
+        //two characters of the hash as sub directory to avoid huge directories
+        return getDiskDirectory().resolve(sKey.substring(0, 2)).resolve(sKey + ".json");
+    }
+
+    /**
+     * reads the cached problems of a java class from the disk
+     * @param sKey - cache key of the java class
+     * @return - cached problems or null if the file does not exist or is not readable
+     */
+    private List<Error> readFromDisk(String sKey) {
+        Path oPath = getDiskPath(sKey);
+        List<Error> lErrorList = null;
+
+        if (Files.exists(oPath)) {
+            try {
+                JSONArray oJsonErrors = new JSONArray(new String(Files.readAllBytes(oPath), StandardCharsets.UTF_8));
+                lErrorList = new ArrayList<>();
+
+                for (int nErrorPos = 0; nErrorPos < oJsonErrors.length(); nErrorPos++) {
+                    JSONObject oJsonError = oJsonErrors.getJSONObject(nErrorPos);
+                    lErrorList.add(new Error(new Line(oJsonError.getInt("lineBegin"), oJsonError.getInt("lineEnd")),
+                            new Column(oJsonError.getInt("columnBegin"), oJsonError.getInt("columnEnd")),
+                            oJsonError.getInt("priority"), oJsonError.getString("rule"),
+                            oJsonError.getString("class"), oJsonError.getString("package"),
+                            oJsonError.getString("ruleset"), oJsonError.getString("message")));
+                }
+                lErrorList = Collections.unmodifiableList(lErrorList);
+            } catch (IOException | JSONException e) {
+                LOG.info("Cached pmd result " + oPath + " is not readable: " + e.getMessage());
+                lErrorList = null;
+            }
+        }
+
+        return lErrorList;
+    }
+
+    /**
+     * writes the problems of a java class to the disk. The file is written to a temporary file first and moved
+     * afterwards, so a concurrent analysis never reads a half written result
+     * @param sKey - cache key of the java class
+     * @param lErrorList - founded problems
+     */
+    private void writeToDisk(String sKey, List<Error> lErrorList) {
+        Path oPath = getDiskPath(sKey);
+        JSONArray oJsonErrors = new JSONArray();
+
+        for (Error oError : lErrorList) {
+            JSONObject oJsonError = new JSONObject();
+            oJsonError.put("lineBegin", oError.getLineBegin());
+            oJsonError.put("lineEnd", oError.getLineEnd());
+            oJsonError.put("columnBegin", oError.getColumnBegin());
+            oJsonError.put("columnEnd", oError.getColumnEnd());
+            oJsonError.put("priority", oError.getPriority());
+            oJsonError.put("rule", oError.getRule());
+            oJsonError.put("class", oError.getClassName());
+            oJsonError.put("package", oError.getPackage());
+            oJsonError.put("ruleset", oError.getRuleset());
+            oJsonError.put("message", oError.getMessage());
+            oJsonErrors.put(oJsonError);
+        }
+
+        try {
+            Files.createDirectories(oPath.getParent());
+            Path oTmpPath = Files.createTempFile(oPath.getParent(), sKey, ".tmp");
+            Files.write(oTmpPath, oJsonErrors.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(oTmpPath, oPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.info("Pmd result could not be cached on disk " + oPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * result of the lookup of the java classes of a single analysis
+     */
+    class Lookup {
+        private final int nFiles;
+
+        /* java classes that have to be analyzed by this analysis, one for each content */
+        private final Map<Class, String> oMissMap = new LinkedHashMap<>();
+
+        /* java classes with the same content as a java class which is analyzed at the moment */
+        private final Map<Class, String> oWaitMap = new LinkedHashMap<>();
+
+        private final Map<Class, CompletableFuture<List<Error>>> oWaitResultMap = new HashMap<>();
+
+        /* results which this analysis has registered for the java classes of the miss map */
+        private final Map<String, CompletableFuture<List<Error>>> oClaimMap = new HashMap<>();
+
+        private final List<Class> lCachedList = new ArrayList<>();
+
+        private int nAnalyzed;
+
+        private Lookup(int nFiles) {
+            this.nFiles = nFiles;
+        }
+
+        /**
+         * returns the java classes without a result that have to be analyzed, their results have to be stored with
+         * put
+         * @return - java classes with their cache key, in the order of the class list
+         */
+        Map<Class, String> getMissMap() {
+            return oMissMap;
+        }
+
+        /**
+         * returns the java classes that got their problems from the cache
+         * @return - java classes in the order of the class list
+         */
+        List<Class> getCachedList() {
+            return lCachedList;
+        }
+
+        /**
+         * waits for the results of the identical java files and adds them to the waiting java classes. The java
+         * classes of the miss map have to be analyzed before, otherwise identical files of the same repository
+         * would wait forever
+         * @param oDoneListener - receives every java class that got its problems
+         * @return - java classes whose identical java file could not be analyzed, they have to be analyzed by this
+         * analysis and stored with put
+         * @throws IOException - a done listener failed
+         */
+        Map<Class, String> fanOut(ClassListener oDoneListener) throws IOException {
+            Map<Class, String> oRetryMap = new LinkedHashMap<>();
+
+            //a concurrent analysis may wait for a java class of this analysis which failed
+            release();
+            for (Map.Entry<Class, String> oEntry : oWaitMap.entrySet()) {
+                List<Error> lErrorList = oWaitResultMap.get(oEntry.getKey()).join();
+
+                if (lErrorList == null) {
+                    oRetryMap.put(oEntry.getKey(), oEntry.getValue());
+                } else {
+                    addErrors(oEntry.getKey(), lErrorList);
+                    oDoneListener.classDone(oEntry.getKey());
+                }
+            }
+            nAnalyzed = oMissMap.size() + oRetryMap.size();
+
+            return oRetryMap;
+        }
+
+        /**
+         * releases the results of this analysis which were not stored, e.g. after a failure. The java classes which
+         * wait for them are analyzed by their own analysis
+         */
+        void release() {
+            for (Map.Entry<String, CompletableFuture<List<Error>>> oEntry : oClaimMap.entrySet()) {
+                if (oInFlight.remove(oEntry.getKey(), oEntry.getValue())) {
+                    oEntry.getValue().complete(null);
+                }
+            }
+        }
+
+        /**
+         * adds the java files of this analysis to the counters of its course
+         * @param sCourse - id of the course, null --> the repository does not belong to a course
+         */
+        void recordCourse(String sCourse) {
+            addCourseAnalysis(sCourse, nFiles, nAnalyzed);
+        }
+    }
+}
@@ -1,18 +1,33 @@
 package de.htwg.konstanz.cloud.service;
 
 import de.htwg.konstanz.cloud.model.ValidationData;
+import de.htwg.konstanz.cloud.util.GitMirrorStore;
+import de.htwg.konstanz.cloud.util.RepositoryFetchPool;
+import de.htwg.konstanz.cloud.util.Svn;
 import de.htwg.konstanz.cloud.util.Util;
 import lombok.Data;
 import org.eclipse.jgit.api.errors.InvalidRemoteException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
 
 
 // to create a RESTful Controller (add Controller and ResponseBody)
@@ -21,22 +36,95 @@ import org.springframework.web.bind.annotation.RestController;
 public class PmdService {
     private static final Logger LOG = LoggerFactory.getLogger(PmdService.class);
 
+    /* newline delimited json, one record for each analyzed java file */
+    private static final String NDJSON = "application/x-ndjson";
+
     @Value("${app.config.svn.ip}")
     private String svnServerIp;
 
     @Value("${app.config.pmd.ruleset}")
     private String ruleSetPath;
 
+    @Value("${app.config.cpd.engine:index}")
+    private String sCpdEngine;
+
+    @Value("${app.config.cpd.minimumtokens:75}")
+    private int nCpdMinimumTokens;
+
+    @Value("${app.config.cpd.similarity.threshold:0.6}")
+    private double dCpdSimilarityThreshold;
+
+    @Value("${app.config.cpd.fragment.maxlength:0}")
+    private int nCpdMaxFragmentLength;
+
+    @Autowired
+    private PmdResultCache oResultCache;
+
+    @Autowired
+    private CpdCourseIndex oCpdCourseIndex;
+
+    @Autowired
+    private RepositoryResultCache oRepositoryCache;
+
+    @Autowired
+    private GitMirrorStore oGitMirrorStore;
+
+    @Autowired
+    private Svn oSvn;
+
+    @Autowired
+    private RepositoryFetchPool oFetchPool;
+
+    @Autowired
+    private AnalysisJobs oAnalysisJobs;
+
+    @Autowired
+    private InFlightAnalyses oInFlightAnalyses;
+
+    @Autowired
+    private AdmissionControl oAdmissionControl;
+
+    @Autowired
+    private PmdEngine oPmdEngine;
+
+    @Autowired
+    private PhaseTimings oPhaseTimings;
+
+    @Autowired
+    private RuleProfiler oRuleProfiler;
+
     /**
-     * executes the pmd validation
+     * executes the pmd validation. The json result is written directly into the response stream.
+     * With the Accept header application/x-ndjson or the parameter format=ndjson every analyzed java file is
+     * sent as a json record as soon as it is done, followed by a record with the totals. If the service has no
+     * free slot for the analysis, the request is rejected with 429 or 503 and a Retry-After header
      * @param data - given post request data - expects a string repository link
+     * @param sAccept - accepted media types of the client
+     * @param sFormat - optional format of the result, ndjson --> progressive result
      * @return - return a response entity within the json object and a http status code
      */
     @RequestMapping(value = "/validate", method = RequestMethod.POST,
-            produces = "application/json", consumes = "application/json")
-    public ResponseEntity validate(@RequestBody ValidationData data) {
+            produces = {"application/json", NDJSON}, consumes = "application/json")
+    public ResponseEntity validate(@RequestBody ValidationData data,
+                                   @RequestHeader(value = "Accept", required = false) String sAccept,
+                                   @RequestParam(value = "format", required = false) String sFormat) {
         try {
-            return ResponseEntity.ok(new Pmd(svnServerIp, ruleSetPath).startIt(data.getRepository()));
+            Pmd oPmd = createPmd();
+            oPmd.setCourse(data.getCourse());
+
+            //the analysis of a progressive result runs while the response is written
+            if ("ndjson".equalsIgnoreCase(sFormat) || (sAccept != null && sAccept.contains(NDJSON))) {
+                oAdmissionControl.checkQueue();
+                return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON))
+                        .body((StreamingResponseBody) oOut -> oPmd.streamIt(data.getRepository(), oOut));
+            }
+
+            AnalysisResult oResult = oPmd.startIt(data.getRepository());
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .body((StreamingResponseBody) oResult::writeTo);
+        } catch (ServiceBusyException e) {
+            LOG.info(e.getMessage() + ": " + data.getRepository());
+            return createBusyResponse(e);
         } catch (InvalidRemoteException e) {
             LOG.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body(e.getMessage());
@@ -55,16 +143,160 @@ public class PmdService {
         return "Pmd-Service";
     }
 
+    /**
+     * queues the pmd validation of a repository and returns immediately. The status of the job is available
+     * at /jobs/{id}, the json result at /jobs/{id}/result when the job is done
+     * @param data - given post request data - expects a string repository link and an optional callback url
+     * of an allowed callback host
+     * @return - response entity with http status 202 and the status of the job, 400 if the callback url is not
+     * allowed, 503 if the queue is full
+     */
+    @RequestMapping(value = "/jobs", method = RequestMethod.POST,
+            produces = "application/json", consumes = "application/json")
+    public ResponseEntity<String> submitJob(@RequestBody ValidationData data) {
+        String sCallbackUrl = data.getCallback();
+        if (sCallbackUrl != null && !oAnalysisJobs.isAllowedCallback(sCallbackUrl)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Callback url not allowed " + sCallbackUrl);
+        }
+
+        try {
+            AnalysisJobs.Job oJob = oAnalysisJobs.submit(data.getRepository(), sCallbackUrl,
+                    () -> {
+                        Pmd oPmd = createPmd();
+                        oPmd.setCourse(data.getCourse());
+                        return oPmd.startIt(data.getRepository(), true);
+                    });
+            return ResponseEntity.status(HttpStatus.ACCEPTED).header(HttpHeaders.LOCATION, "/jobs/" + oJob.getId())
+                    .contentType(MediaType.APPLICATION_JSON).body(oJob.toJson().toString());
+        } catch (RejectedExecutionException e) {
+            LOG.error("Job queue is full: " + data.getRepository());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(oAdmissionControl.getRetryAfter()))
+                    .body("Job queue is full");
+        }
+    }
+
+    /**
+     * Get Request with the status of a job
+     * @param sId - id of the job
+     * @return - json object with the status of the job, 404 if the job does not exist or is expired
+     */
+    @RequestMapping(value = "/jobs/{id}", method = RequestMethod.GET, produces = "application/json")
+    public ResponseEntity<String> getJob(@PathVariable("id") String sId) {
+        AnalysisJobs.Job oJob = oAnalysisJobs.get(sId);
+        if (oJob == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown job " + sId);
+        }
+
+        return ResponseEntity.ok(oJob.toJson().toString());
+    }
+
+    /**
+     * Get Request with the json result of a job. The result is written directly into the response stream
+     * @param sId - id of the job
+     * @return - json result if the job is done, 202 with the status while it is queued or running, 500 with the
+     * status if it failed and 404 if the job does not exist or is expired
+     */
+    @RequestMapping(value = "/jobs/{id}/result", method = RequestMethod.GET, produces = "application/json")
+    public ResponseEntity getJobResult(@PathVariable("id") String sId) {
+        AnalysisJobs.Job oJob = oAnalysisJobs.get(sId);
+        if (oJob == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown job " + sId);
+        }
+
+        switch (oJob.getStatus()) {
+            case AnalysisJobs.DONE:
+                Path oResultPath = oJob.getResultPath();
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .body((StreamingResponseBody) oOut -> Files.copy(oResultPath, oOut));
+            case AnalysisJobs.FAILED:
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(oJob.toJson().toString());
+            default:
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(oJob.toJson().toString());
+        }
+    }
+
+    /**
+     * Get Request with the most expensive rules of all profiled analyses since the start of the service
+     * @param nTop - optional number of rules, default is app.config.profiling.top
+     * @return - json object with the cpu time and the invocations of the rules
+     */
+    @RequestMapping(value = "/profile", method = RequestMethod.GET, produces = "application/json")
+    public String profile(@RequestParam(value = "top", required = false, defaultValue = "0") int nTop) {
+        return oRuleProfiler.getStatistics(nTop).toString();
+    }
+
+    /**
+     * Get Request with the reuse of the results of identical java files within the repositories of a course
+     * @param sCourse - id of the course, given by the validation requests
+     * @return - json object with the analyzed and reused java files and the dedup ratio, 404 if no repository of
+     * the course was analyzed since the start of the service
+     */
+    @RequestMapping(value = "/courses/{course}/dedup", method = RequestMethod.GET, produces = "application/json")
+    public ResponseEntity<String> courseDedup(@PathVariable("course") String sCourse) {
+        JSONObject oJson = oResultCache.getCourseStatistics(sCourse);
+        if (oJson == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown course " + sCourse);
+        }
+
+        return ResponseEntity.ok(oJson.toString());
+    }
+
+    /**
+     * Get Request with the counters of the service, e.g. the hits and misses of the result cache
+     * @return - json object with all counters
+     */
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = "application/json")
+    public String metrics() {
+        JSONObject oJson = new JSONObject();
+        oJson.put("cache", oResultCache.getStatistics());
+        oJson.put("repositoryCache", oRepositoryCache.getStatistics());
+        oJson.put("jobs", oAnalysisJobs.getStatistics());
+        oJson.put("coalescing", oInFlightAnalyses.getStatistics());
+        oJson.put("admission", oAdmissionControl.getStatistics());
+        oJson.put("phases", oPhaseTimings.getStatistics());
+        oJson.put("cpd", oCpdCourseIndex.getStatistics());
+
+        return oJson.toString();
+    }
+
     /**
      * executes the copy paste detection validation
-     * @param data - given post request data - expects a string array with multiple repositories
+     * @param data - given post request data - expects a string array with multiple repositories and optionally
+     *             the id of their course, then only the changed repositories of the course are compared again
      * @return - return a response entity within the json object and a http  status code
      */
     @RequestMapping(value = "/validate/copypaste", method = RequestMethod.POST,
             produces = "application/json", consumes = "application/json")
     public ResponseEntity<String> copypaste(@RequestBody String data) {
         try {
-            return ResponseEntity.ok(new Cpd(svnServerIp).startIt(new Util().getRepositoriesFromRequestBody(data)));
+            return ResponseEntity.ok(createCpd().startIt(new Util().getRepositoriesFromRequestBody(data),
+                    new JSONObject(data).optString("course", null)));
+        } catch (InvalidRemoteException e) {
+            LOG.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body(e.getMessage());
+        } catch (Exception e) {
+            LOG.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+        }
+    }
+
+    /**
+     * executes the copy paste detection between two sets of repositories, e.g. two blocks of the repositories of a
+     * large course which the validator distributes over all pmd instances
+     * @param data - given post request data - expects the arrays repositories and comparedRepositories, the same
+     *             repositories in both arrays compare the set with itself, and optionally the id of their course,
+     *             then the repositories are reused from the index of the course for the following block pairs
+     * @return - return a response entity within the json object and a http  status code
+     */
+    @RequestMapping(value = "/validate/copypaste/pair", method = RequestMethod.POST,
+            produces = "application/json", consumes = "application/json")
+    public ResponseEntity<String> copypastePair(@RequestBody String data) {
+        try {
+            Util oUtil = new Util();
+            return ResponseEntity.ok(createCpd().comparePair(oUtil.getRepositoriesFromRequestBody(data),
+                    oUtil.getRepositoriesFromRequestBody(data, "comparedRepositories"),
+                    new JSONObject(data).optString("course", null)));
         } catch (InvalidRemoteException e) {
             LOG.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body(e.getMessage());
@@ -73,4 +305,26 @@ public class PmdService {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
         }
     }
+
+    private Pmd createPmd() {
+        return new Pmd(svnServerIp, ruleSetPath, oRepositoryCache, oGitMirrorStore, oSvn, oInFlightAnalyses,
+                oPmdEngine, oResultCache, oPhaseTimings);
+    }
+
+    private Cpd createCpd() {
+        return new Cpd(svnServerIp, oGitMirrorStore, oSvn, oFetchPool, sCpdEngine, nCpdMinimumTokens,
+                oCpdCourseIndex, dCpdSimilarityThreshold, nCpdMaxFragmentLength);
+    }
+
+    /**
+     * rejects a request of an overloaded service, the client retries it later or sends it to another instance
+     * @param e - rejection of the admission control
+     * @return - response entity with http status 429 if the queue is full, otherwise 503
+     */
+    private ResponseEntity<String> createBusyResponse(ServiceBusyException e) {
+        HttpStatus oStatus = e.isQueueFull() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+
+        return ResponseEntity.status(oStatus).header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
 }
@@ -0,0 +1,45 @@
+package de.htwg.konstanz.cloud.service;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.AbstractDelegateRule;
+
+import java.util.List;
+
+/**
+ * rule of a profiled ruleset which adds the time of every application of the real rule to the rule profiler.
+ * The rule does not use the rule chain of pmd, so its time does not depend on the other rules of the rule chain,
+ * the violations still belong to the real rule
+ */
+class ProfilingRule extends AbstractDelegateRule {
+    private final RuleProfiler oRuleProfiler;
+
+    private final String sProfileName;
+
+    /**
+     * @param oRule - rule that is profiled
+     * @param oRuleProfiler - profiler which receives the time of every application
+     */
+    ProfilingRule(Rule oRule, RuleProfiler oRuleProfiler) {
+        this.oRuleProfiler = oRuleProfiler;
+        this.sProfileName = oRule.getRuleSetName() + "/" + oRule.getName();
+        setRule(oRule);
+    }
+
+    @Override
+    public boolean usesRuleChain() {
+        return false;
+    }
+
+    @Override
+    public void apply(List<? extends Node> lNodes, RuleContext oContext) {
+        long lStart = oRuleProfiler.now();
+
+        try {
+            getRule().apply(lNodes, oContext);
+        } finally {
+            oRuleProfiler.add(sProfileName, oRuleProfiler.now() - lStart);
+        }
+    }
+}
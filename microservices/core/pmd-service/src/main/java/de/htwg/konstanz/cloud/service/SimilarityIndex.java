@@ -0,0 +1,310 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.util.CpdTokenizer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/*
+    Similarity of the repositories of a course, also if the copied code was renamed or reordered. The tokens of a
+    java file are normalized, every identifier and every literal becomes the same token. Every sequence of a few
+    normalized tokens is a shingle, the similarity of two repositories is the share of their common shingles.
+    Shingles which are in most repositories of the course belong to the skeleton of the exercise and are ignored.
+    A MinHash signature of every file and of every repository estimates the similarity, the bands of the signatures
+    of the repositories are hashed (locality-sensitive hashing), so only repositories with an identical band are
+    compared instead of all pairs of the course.
+ */
+class SimilarityIndex {
+    private static final int SHINGLE_LENGTH = 8;
+
+    /* 32 bands of 4 hashes --> pairs with a similarity of 0.5 are candidates with a probability of 87% */
+    private static final int BANDS = 32;
+
+    private static final int ROWS = 4;
+
+    private static final int SIGNATURE_LENGTH = BANDS * ROWS;
+
+    /* shingles in more than this share of the repositories are ignored, if there are enough repositories */
+    private static final double COMMON_SHARE = 0.5;
+
+    private static final int MIN_REPOSITORIES_FOR_COMMON = 4;
+
+    /* files and repositories with less own shingles are too small for a meaningful similarity */
+    private static final int MIN_SHINGLES = 30;
+
+    /* number of the most similar file pairs of a repository pair */
+    private static final int TOP_FILES = 5;
+
+    private static final long[] SEEDS = new SplittableRandom(42).longs(SIGNATURE_LENGTH).toArray();
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("abstract", "assert", "boolean",
+            "break", "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double",
+            "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if", "implements", "import",
+            "instanceof", "int", "interface", "long", "native", "new", "package", "private", "protected", "public",
+            "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+            "transient", "try", "void", "volatile", "while", "true", "false", "null"));
+
+    private final double dThreshold;
+
+    private final CpdTokenizer oTokenizer = new CpdTokenizer();
+
+    /* repository --> its files with their shingles, sorted by the name of the repository */
+    private final Map<String, List<SourceFile>> oRepositories = new TreeMap<>();
+
+    /**
+     * @param dThreshold - minimum similarity of a reported pair of repositories, between 0 and 1
+     */
+    SimilarityIndex(double dThreshold) {
+        this.dThreshold = dThreshold;
+    }
+
+    /**
+     * tokenizes a java file and collects its shingles
+     * @param sRepository - name of the repository
+     * @param sPath - path of the file, like the paths of the duplications
+     * @param bSource - content of the java file
+     */
+    void addFile(String sRepository, String sPath, byte[] bSource) {
+        List<Integer> lTokens = new ArrayList<>();
+        oTokenizer.tokenize(new String(bSource, StandardCharsets.UTF_8),
+                (sToken, nLine) -> lTokens.add(normalize(sToken).hashCode()));
+
+        Set<Long> oShingles = new HashSet<>();
+        for (int nStart = 0; nStart + SHINGLE_LENGTH <= lTokens.size(); nStart++) {
+            long lHash = 0;
+            for (int nToken = nStart; nToken < nStart + SHINGLE_LENGTH; nToken++) {
+                lHash = lHash * 1_000_003L + lTokens.get(nToken);
+            }
+            oShingles.add(lHash);
+        }
+        oRepositories.computeIfAbsent(sRepository, sKey -> new ArrayList<>()).add(new SourceFile(sPath, oShingles));
+    }
+
+    /**
+     * searches the pairs of similar repositories
+     * @return - pairs with their similarity and their most similar files, the most similar pair first
+     */
+    JSONArray findSimilarRepositories() {
+        removeCommonShingles();
+
+        List<String> lNames = new ArrayList<>();
+        List<long[]> lSignatures = new ArrayList<>();
+        for (Map.Entry<String, List<SourceFile>> oRepository : oRepositories.entrySet()) {
+            long[] lSignature = createEmptySignature();
+            int nShingles = 0;
+            for (SourceFile oFile : oRepository.getValue()) {
+                oFile.lSignature = createSignature(oFile.oShingles);
+                nShingles += oFile.oShingles.size();
+                for (int nHash = 0; nHash < SIGNATURE_LENGTH; nHash++) {
+                    lSignature[nHash] = Math.min(lSignature[nHash], oFile.lSignature[nHash]);
+                }
+            }
+            lNames.add(oRepository.getKey());
+            lSignatures.add(nShingles < MIN_SHINGLES ? null : lSignature);
+        }
+
+        List<JSONObject> lPairs = new ArrayList<>();
+        for (long lPair : findCandidates(lSignatures)) {
+            int nFirst = (int) (lPair >>> 32);
+            int nSecond = (int) lPair;
+            double dSimilarity = estimate(lSignatures.get(nFirst), lSignatures.get(nSecond));
+
+            if (dSimilarity >= dThreshold) {
+                JSONObject oPair = new JSONObject();
+                oPair.put("repositoryA", lNames.get(nFirst));
+                oPair.put("repositoryB", lNames.get(nSecond));
+                oPair.put("similarity", round(dSimilarity));
+                oPair.put("files", findSimilarFiles(oRepositories.get(lNames.get(nFirst)),
+                        oRepositories.get(lNames.get(nSecond))));
+                lPairs.add(oPair);
+            }
+        }
+        lPairs.sort(Comparator.comparingDouble((JSONObject oPair) -> -oPair.getDouble("similarity"))
+                .thenComparing(oPair -> oPair.getString("repositoryA") + "/" + oPair.getString("repositoryB")));
+
+        return new JSONArray(lPairs);
+    }
+
+    /**
+     * identifiers and literals are replaced, so a renamed variable or a changed constant does not change the
+     * shingles
+     */
+    private String normalize(String sToken) {
+        char cFirst = sToken.charAt(0);
+
+        if (Character.isJavaIdentifierStart(cFirst)) {
+            return KEYWORDS.contains(sToken) ? sToken : "$id";
+        } else if (Character.isDigit(cFirst) || cFirst == '"' || cFirst == '\'' || (cFirst == '.'
+                && sToken.length() > 1)) {
+            return "$literal";
+        }
+
+        return sToken;
+    }
+
+    /**
+     * removes the shingles of the skeleton of the exercise, i.e. the shingles of most repositories
+     */
+    private void removeCommonShingles() {
+        if (oRepositories.size() < MIN_REPOSITORIES_FOR_COMMON) {
+            return;
+        }
+
+        Map<Long, Integer> oRepositoryCounts = new HashMap<>();
+        for (List<SourceFile> lFiles : oRepositories.values()) {
+            Set<Long> oRepositoryShingles = new HashSet<>();
+            for (SourceFile oFile : lFiles) {
+                oRepositoryShingles.addAll(oFile.oShingles);
+            }
+            for (Long lShingle : oRepositoryShingles) {
+                oRepositoryCounts.merge(lShingle, 1, Integer::sum);
+            }
+        }
+
+        double dMaxCount = oRepositories.size() * COMMON_SHARE;
+        for (List<SourceFile> lFiles : oRepositories.values()) {
+            for (SourceFile oFile : lFiles) {
+                oFile.oShingles.removeIf(lShingle -> oRepositoryCounts.get(lShingle) > dMaxCount);
+            }
+        }
+    }
+
+    private long[] createEmptySignature() {
+        long[] lSignature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(lSignature, Long.MAX_VALUE);
+
+        return lSignature;
+    }
+
+    /**
+     * calculates the smallest value of every hash function over all shingles
+     */
+    private long[] createSignature(Set<Long> oShingles) {
+        long[] lSignature = createEmptySignature();
+
+        for (long lShingle : oShingles) {
+            for (int nHash = 0; nHash < SIGNATURE_LENGTH; nHash++) {
+                lSignature[nHash] = Math.min(lSignature[nHash], mix(lShingle ^ SEEDS[nHash]));
+            }
+        }
+
+        return lSignature;
+    }
+
+    /**
+     * finds the pairs of repositories with at least one identical band of their signatures
+     * @return - pairs as [first repository | second repository]
+     */
+    private Set<Long> findCandidates(List<long[]> lSignatures) {
+        Set<Long> oCandidates = new HashSet<>();
+
+        for (int nBand = 0; nBand < BANDS; nBand++) {
+            Map<Long, List<Integer>> oBuckets = new HashMap<>();
+            for (int nRepository = 0; nRepository < lSignatures.size(); nRepository++) {
+                long[] lSignature = lSignatures.get(nRepository);
+                //repositories with too few own shingles are similar to nothing
+                if (lSignature == null) {
+                    continue;
+                }
+                long lBandHash = nBand;
+                for (int nRow = nBand * ROWS; nRow < (nBand + 1) * ROWS; nRow++) {
+                    lBandHash = mix(lBandHash * 31 + lSignature[nRow]);
+                }
+                oBuckets.computeIfAbsent(lBandHash, lKey -> new ArrayList<>()).add(nRepository);
+            }
+            for (List<Integer> lBucket : oBuckets.values()) {
+                for (int nFirst = 0; nFirst < lBucket.size(); nFirst++) {
+                    for (int nSecond = nFirst + 1; nSecond < lBucket.size(); nSecond++) {
+                        oCandidates.add(((long) lBucket.get(nFirst) << 32) | lBucket.get(nSecond));
+                    }
+                }
+            }
+        }
+
+        return oCandidates;
+    }
+
+    /**
+     * compares the files of two similar repositories
+     * @return - the most similar file pairs above the threshold
+     */
+    private JSONArray findSimilarFiles(List<SourceFile> lFilesA, List<SourceFile> lFilesB) {
+        List<JSONObject> lFilePairs = new ArrayList<>();
+
+        for (SourceFile oFileA : lFilesA) {
+            for (SourceFile oFileB : lFilesB) {
+                if (oFileA.oShingles.size() < MIN_SHINGLES || oFileB.oShingles.size() < MIN_SHINGLES) {
+                    continue;
+                }
+                double dSimilarity = estimate(oFileA.lSignature, oFileB.lSignature);
+                if (dSimilarity >= dThreshold) {
+                    JSONObject oFilePair = new JSONObject();
+                    oFilePair.put("fileA", oFileA.sPath);
+                    oFilePair.put("fileB", oFileB.sPath);
+                    oFilePair.put("similarity", round(dSimilarity));
+                    lFilePairs.add(oFilePair);
+                }
+            }
+        }
+        lFilePairs.sort(Comparator.comparingDouble(oFilePair -> -oFilePair.getDouble("similarity")));
+
+        return new JSONArray(lFilePairs.size() > TOP_FILES ? lFilePairs.subList(0, TOP_FILES) : lFilePairs);
+    }
+
+    /**
+     * estimates the similarity of two signatures, the share of their identical hashes
+     */
+    private double estimate(long[] lSignatureA, long[] lSignatureB) {
+        int nEqual = 0;
+
+        for (int nHash = 0; nHash < SIGNATURE_LENGTH; nHash++) {
+            if (lSignatureA[nHash] == lSignatureB[nHash]) {
+                nEqual++;
+            }
+        }
+
+        return (double) nEqual / SIGNATURE_LENGTH;
+    }
+
+    private double round(double dValue) {
+        return Math.round(dValue * 100) / 100.0;
+    }
+
+    /**
+     * spreads the bits of a value, the finalizer of MurmurHash3
+     */
+    private static long mix(long lValue) {
+        long lHash = lValue;
+        lHash ^= lHash >>> 33;
+        lHash *= 0xff51afd7ed558ccdL;
+        lHash ^= lHash >>> 33;
+        lHash *= 0xc4ceb9fe1a85ec53L;
+        lHash ^= lHash >>> 33;
+
+        return lHash;
+    }
+
+    private static class SourceFile {
+        private final String sPath;
+
+        private final Set<Long> oShingles;
+
+        private long[] lSignature;
+
+        private SourceFile(String sPath, Set<Long> oShingles) {
+            this.sPath = sPath;
+            this.oShingles = oShingles;
+        }
+    }
+}
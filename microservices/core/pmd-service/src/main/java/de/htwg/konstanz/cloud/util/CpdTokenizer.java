@@ -0,0 +1,161 @@
+package de.htwg.konstanz.cloud.util;
+
+import java.util.function.ObjIntConsumer;
+
+/*
+    Splits the source of a java file into the tokens which are compared by the copy paste detection, like the java
+    tokenizer of cpd: whitespace and comments are skipped, the package and import statements are discarded because
+    they are equal in many files without any copied code. Like cpd every semicolon is discarded and the shift
+    operators >> and >>> are single > tokens, because the grammar of pmd can not tell them from the end of nested
+    type arguments. A lexical error, e.g. an unterminated comment, ends the file like --skip-lexical-errors of cpd.
+ */
+public class CpdTokenizer {
+    /* longest operators first, so the longest one matches. >> and >>> are missing, they are split into > tokens */
+    private static final String[] OPERATORS = {">>>=", "<<=", ">>=", "...", "->", "::", "++", "--", "&&", "||",
+        "==", "!=", "<=", ">=", "+=", "-=", "*=", "/=", "&=", "|=", "^=", "%=", "<<"};
+
+    private static final String OPERATOR_STARTS = "<>=!+-*/&|^%.:";
+
+    /**
+     * passes all tokens of the source to the listener
+     * @param sSource - content of the java file
+     * @param oTokenListener - receives the image and the line of every token
+     */
+    public void tokenize(String sSource, ObjIntConsumer<String> oTokenListener) {
+        int nLength = sSource.length();
+        int nLine = 1;
+        int nPos = 0;
+        //true --> the tokens up to the next semicolon belong to a package or import statement
+        boolean bDiscard = false;
+        String sLastToken = null;
+
+        while (nPos < nLength) {
+            char cChar = sSource.charAt(nPos);
+            int nStart = nPos;
+
+            if (cChar == '\n') {
+                nLine++;
+                nPos++;
+                continue;
+            } else if (Character.isWhitespace(cChar)) {
+                nPos++;
+                continue;
+            } else if (sSource.startsWith("//", nPos)) {
+                nPos = sSource.indexOf('\n', nPos);
+                if (nPos < 0) {
+                    break;
+                }
+                continue;
+            } else if (sSource.startsWith("/*", nPos)) {
+                int nEnd = sSource.indexOf("*/", nPos + 2);
+                if (nEnd < 0) {
+                    break;
+                }
+                nLine += countLines(sSource, nPos, nEnd);
+                nPos = nEnd + 2;
+                continue;
+            } else if (Character.isJavaIdentifierStart(cChar)) {
+                nPos++;
+                while (nPos < nLength && Character.isJavaIdentifierPart(sSource.charAt(nPos))) {
+                    nPos++;
+                }
+            } else if (Character.isDigit(cChar) || (cChar == '.' && nPos + 1 < nLength
+                    && Character.isDigit(sSource.charAt(nPos + 1)))) {
+                nPos = skipNumber(sSource, nPos);
+            } else if (cChar == '"' || cChar == '\'') {
+                nPos = skipLiteral(sSource, nPos, cChar);
+                if (nPos < 0) {
+                    break;
+                }
+            } else {
+                nPos += getOperatorLength(sSource, nPos);
+            }
+
+            String sToken = sSource.substring(nStart, nPos);
+            //package and import statements start a file or follow another statement
+            if (!bDiscard && ("package".equals(sToken) || "import".equals(sToken))
+                    && (sLastToken == null || ";".equals(sLastToken) || "}".equals(sLastToken))) {
+                bDiscard = true;
+            }
+            if (bDiscard) {
+                bDiscard = !";".equals(sToken);
+            } else if (!";".equals(sToken)) {
+                oTokenListener.accept(sToken, nLine);
+            }
+            sLastToken = sToken;
+        }
+    }
+
+    private int countLines(String sSource, int nStart, int nEnd) {
+        int nLines = 0;
+
+        for (int nPos = nStart; nPos < nEnd; nPos++) {
+            if (sSource.charAt(nPos) == '\n') {
+                nLines++;
+            }
+        }
+
+        return nLines;
+    }
+
+    /**
+     * skips a number literal, e.g. 0x1F, 1_000L or 1.5e-3
+     * @return - position after the literal
+     */
+    private int skipNumber(String sSource, int nPos) {
+        int nEnd = nPos;
+
+        while (nEnd < sSource.length()) {
+            char cChar = sSource.charAt(nEnd);
+            char cPrevious = sSource.charAt(nEnd - 1 < nPos ? nPos : nEnd - 1);
+
+            if (Character.isLetterOrDigit(cChar) || cChar == '_' || cChar == '.'
+                    || ((cChar == '+' || cChar == '-') && nEnd > nPos && "eEpP".indexOf(cPrevious) >= 0
+                    && !sSource.startsWith("0x", nPos) && !sSource.startsWith("0X", nPos))) {
+                nEnd++;
+            } else {
+                break;
+            }
+        }
+
+        return nEnd;
+    }
+
+    /**
+     * skips a string or character literal with its escaped characters
+     * @return - position after the literal, -1 if it is not terminated within its line
+     */
+    private int skipLiteral(String sSource, int nPos, char cQuote) {
+        int nEnd = nPos + 1;
+
+        while (nEnd < sSource.length()) {
+            char cChar = sSource.charAt(nEnd);
+
+            if (cChar == '\\') {
+                nEnd += 2;
+            } else if (cChar == cQuote) {
+                return nEnd + 1;
+            } else if (cChar == '\n') {
+                return -1;
+            } else {
+                nEnd++;
+            }
+        }
+
+        return -1;
+    }
+
+    private int getOperatorLength(String sSource, int nPos) {
+        //separators like ( ) { } ; , have a single character
+        if (OPERATOR_STARTS.indexOf(sSource.charAt(nPos)) < 0) {
+            return 1;
+        }
+        for (String sOperator : OPERATORS) {
+            if (sSource.startsWith(sOperator, nPos)) {
+                return sOperator.length();
+            }
+        }
+
+        return 1;
+    }
+}
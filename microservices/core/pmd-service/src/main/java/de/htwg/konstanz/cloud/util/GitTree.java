@@ -0,0 +1,42 @@
+package de.htwg.konstanz.cloud.util;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * java files of a commit, read from the object database of a git mirror
+ */
+public class GitTree {
+    private final String sCommitTime;
+
+    private final String sCommitId;
+
+    /* path within the repository --> content of the file, in the order of the tree */
+    private final Map<String, byte[]> oJavaFiles = new LinkedHashMap<>();
+
+    /* directories in the root of the repository, e.g. src */
+    private final Set<String> oRootDirectories = new LinkedHashSet<>();
+
+    GitTree(String sCommitTime, String sCommitId) {
+        this.sCommitTime = sCommitTime;
+        this.sCommitId = sCommitId;
+    }
+
+    public String getCommitTime() {
+        return sCommitTime;
+    }
+
+    public String getCommitId() {
+        return sCommitId;
+    }
+
+    public Map<String, byte[]> getJavaFiles() {
+        return oJavaFiles;
+    }
+
+    public Set<String> getRootDirectories() {
+        return oRootDirectories;
+    }
+}
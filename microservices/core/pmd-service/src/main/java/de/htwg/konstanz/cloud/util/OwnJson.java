@@ -1,17 +1,27 @@
 package de.htwg.konstanz.cloud.util;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import de.htwg.konstanz.cloud.model.*;
 import de.htwg.konstanz.cloud.model.Class;
 import de.htwg.konstanz.cloud.model.Error;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import de.htwg.konstanz.cloud.model.RuleCost;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /*
     To provide easy access to generated data objects, this class builds a JSON file,
@@ -21,6 +31,10 @@ import java.util.List;
 public class OwnJson {
     private static final Logger LOG = LoggerFactory.getLogger(OwnJson.class);
 
+    /* the stream of the response must not be closed by the generator */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     private final Util util = new Util();
 
     /**
@@ -65,7 +79,7 @@ public class OwnJson {
     }
 
     /**
-     *  buildJson provides the main functionality to generate a customized JSON File
+     *  writeJson provides the main functionality to generate a customized JSON File
      *  following the structure of our JSON is shown:
      *
      *    "numberOfIgnores": 3,                              <-- some general json information
@@ -97,105 +111,114 @@ public class OwnJson {
      *   "repository": "http://141.37.122.26/svn/langweg/WIN-EPR/2016SS/MaxMustermann/src/",
      *   "numberOfErrors": 3
      *
+     * The document is written directly to the given stream while the classes are iterated, so no json tree
+     * of the whole repository is built in memory. Only exercises with founded problems are written.
+     *
+     * @param oOut - stream which receives the json document, e.g. the response of the request
      * @param sRepo - svn/git repository path
      * @param lStartTime - start time of the execution
      * @param sLastRepoUpdateTime - last time the svn/git repository was updated
      * @param lClassList - list with all evaluated java classes
-     * @return - a json object consisting of all analyzed pmd problems
+     * @param oTimings - milliseconds of the phases of the analysis, null --> no timings object
+     * @param lRuleProfile - most expensive rules of the analysis, null --> no rule profile
+     * @throws IOException - the json document could not be written
      */
-    public JSONObject buildJson(String sRepo, long lStartTime, String sLastRepoUpdateTime, List<Class> lClassList) {
-        OwnJsonProperties oOwnJsonProperties = new OwnJsonProperties();
-        boolean bExerciseChange = false;
-        boolean bLastRun = false;
-
-        /* add general information to the JSON object */
-        oOwnJsonProperties.getOJsonRoot().put("repository", sRepo);
-
-        getClassPriorities(lClassList, oOwnJsonProperties.getOJsonRoot());
-
-        oOwnJsonProperties.getOJsonRoot().put("lastRepoUpdateTime", sLastRepoUpdateTime);
-        LOG.info("Last Update Time: " + sLastRepoUpdateTime);
-
-		/* all Classes */
-        for (int nClassPos = 0; nClassPos < lClassList.size(); nClassPos++) {
-            if (bExerciseChange) {
-                nClassPos--;
-                bExerciseChange = false;
-            }
-
-            String sExcerciseName = lClassList.get(nClassPos).getExerciseName();
-
-			/* first run the TmpName is empty */
-            if (sExcerciseName.equals(oOwnJsonProperties.getSTmpExerciseName())
-                    || "".equals(oOwnJsonProperties.getSTmpExerciseName())) {
-                storeJsonInformation(lClassList, oOwnJsonProperties, bLastRun, nClassPos, sExcerciseName);
-            }
-            /* swap for a different exercise */
-            else {
-                if (lClassList.get(nClassPos).getErrorList().size() > 0) {
-                    oOwnJsonProperties.getOJsonExercise().put(oOwnJsonProperties.getSTmpExerciseName(),
-                                                                    oOwnJsonProperties.getLJsonClasses());
-                    oOwnJsonProperties.getLJsonExercises().put(oOwnJsonProperties.getOJsonExercise());
-                    oOwnJsonProperties.setOJsonExercise(new JSONObject());
-                    oOwnJsonProperties.setLJsonClasses(new JSONArray());
-                    oOwnJsonProperties.setSTmpExerciseName(lClassList.get(nClassPos).getExerciseName());
-                    bExerciseChange = true;
-
-				    /* decrement the position to get the last class from the list */
-                    if (nClassPos + 1 == lClassList.size()) {
-                        nClassPos--;
-                        bExerciseChange = false;
-                        bLastRun = true;
+    public void writeJson(OutputStream oOut, String sRepo, long lStartTime, String sLastRepoUpdateTime,
+                          List<Class> lClassList, Map<String, Long> oTimings, List<RuleCost> lRuleProfile)
+            throws IOException {
+        String sTmpExerciseName = null;
+
+        try (JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8)) {
+            oGenerator.writeStartObject();
+
+            /* add general information to the JSON object */
+            oGenerator.writeStringField("repository", sRepo);
+            writeClassPriorities(lClassList, oGenerator);
+
+            oGenerator.writeStringField("lastRepoUpdateTime", sLastRepoUpdateTime);
+            LOG.info("Last Update Time: " + sLastRepoUpdateTime);
+
+            oGenerator.writeArrayFieldStart("assignments");
+            /* all Classes */
+            for (Class oClass : lClassList) {
+                //only java files with problems are added to the json file
+                if (!oClass.getErrorList().isEmpty()) {
+                    String sExerciseName = oClass.getExerciseName();
+
+                    /* swap for a different exercise */
+                    if (!sExerciseName.equals(sTmpExerciseName)) {
+                        if (sTmpExerciseName != null) {
+                            endExercise(oGenerator);
+                        }
+                        oGenerator.writeStartObject();
+                        oGenerator.writeArrayFieldStart(sExerciseName);
+                        sTmpExerciseName = sExerciseName;
                     }
+
+                    writeClass(oClass, oGenerator);
                 }
             }
-        }
+            if (sTmpExerciseName != null) {
+                endExercise(oGenerator);
+            }
+            oGenerator.writeEndArray();
+            writeTimings(oTimings, oGenerator);
+            writeRuleProfile(lRuleProfile, oGenerator);
 
-        long lEndTime = System.currentTimeMillis();
-        long lTotalTime = (lEndTime - lStartTime);
+            long lEndTime = System.currentTimeMillis();
+            long lTotalTime = (lEndTime - lStartTime);
 
-        oOwnJsonProperties.getOJsonRoot().put("totalExpendedTime", lTotalTime);
-        oOwnJsonProperties.getOJsonRoot().put("assignments", oOwnJsonProperties.getLJsonExercises());
+            oGenerator.writeNumberField("totalExpendedTime", lTotalTime);
+            oGenerator.writeEndObject();
+        }
 
         LOG.debug("Pmd Static Analysis check for Repo: " + sRepo);
-        return oOwnJsonProperties.getOJsonRoot();
     }
 
     /**
-     * adds information of the pmd validation to the json file
-     * @param lClassList - list with all evaluated java classes
-     * @param ownJsonProperties - object with important json attributes
-     * @param bLastRun - is the actual iterations the last one?
-     * @param nClassPos - actual position in the class list
-     * @param sExerciseName - name of the actual considered class object
+     * adds the durations of the phases of the analysis
+     * @param oTimings - milliseconds of each phase, null --> no timings object
+     * @param oGenerator - generator of the json file, positioned in the main node
+     * @throws IOException - the json document could not be written
      */
-    private void storeJsonInformation(List<Class> lClassList, OwnJsonProperties ownJsonProperties, boolean bLastRun,
-                                                int nClassPos, String sExerciseName) {
-        /* if errors where founded, a new exercise name is returned by analyzeErrors */
-        ownJsonProperties.setSTmpExerciseName(analyzeErrors(lClassList, lClassList.get(nClassPos).getErrorList(),
-                                    ownJsonProperties.getLJsonClasses(), ownJsonProperties.getSTmpExerciseName(),
-                                                                                        nClassPos, sExerciseName));
-
-        /* Condition for the last run if different exercises were founded */
-        if (bLastRun) {
-            ownJsonProperties.getOJsonExercise().put(ownJsonProperties.getSTmpExerciseName(),
-                                                        ownJsonProperties.getLJsonClasses());
-            ownJsonProperties.getLJsonExercises().put(ownJsonProperties.getOJsonExercise());
+    private void writeTimings(Map<String, Long> oTimings, JsonGenerator oGenerator) throws IOException {
+        if (oTimings != null) {
+            oGenerator.writeObjectFieldStart("timings");
+            for (Map.Entry<String, Long> oEntry : oTimings.entrySet()) {
+                oGenerator.writeNumberField(oEntry.getKey(), oEntry.getValue());
+            }
+            oGenerator.writeEndObject();
         }
-        /* Condition for the last run and if there was just one exercise with various exercises */
-        if (nClassPos + 1 == lClassList.size()) {
-            ownJsonProperties.getOJsonExercise().put(ownJsonProperties.getSTmpExerciseName(),
-                                                        ownJsonProperties.getLJsonClasses());
-            ownJsonProperties.getLJsonExercises().put(ownJsonProperties.getOJsonExercise());
+    }
+
+    /**
+     * adds the cpu time and the invocations of the most expensive rules of the analysis
+     * @param lRuleProfile - rules sorted by their cpu time, null --> no rule profile
+     * @param oGenerator - generator of the json file, positioned in the main node
+     * @throws IOException - the json document could not be written
+     */
+    private void writeRuleProfile(List<RuleCost> lRuleProfile, JsonGenerator oGenerator) throws IOException {
+        if (lRuleProfile != null) {
+            oGenerator.writeArrayFieldStart("ruleProfile");
+            for (RuleCost oRuleCost : lRuleProfile) {
+                oGenerator.writeStartObject();
+                oGenerator.writeStringField("rule", oRuleCost.getRule());
+                oGenerator.writeNumberField("cpuTime", TimeUnit.NANOSECONDS.toMillis(oRuleCost.getCpuTime()));
+                oGenerator.writeNumberField("invocations", oRuleCost.getInvocations());
+                oGenerator.writeNumberField("share", oRuleCost.getShare());
+                oGenerator.writeEndObject();
+            }
+            oGenerator.writeEndArray();
         }
     }
 
     /**
      * counts all founded priorities
      * @param lClassList - list with all evaluated java classes
-     * @param oJsonRoot - main node of the json file
+     * @param oGenerator - generator of the json file, positioned in the main node
+     * @throws IOException - the json document could not be written
      */
-    private void getClassPriorities(List<Class> lClassList, JSONObject oJsonRoot) {
+    private void writeClassPriorities(List<Class> lClassList, JsonGenerator oGenerator) throws IOException {
         int nTmpErrorCount = 0;
         int nTmpWarningCount = 0;
         int nTmpIgnoreCounter = 0;
@@ -207,78 +230,210 @@ public class OwnJson {
             nTmpIgnoreCounter += oClass.getIgnoreCount();
         }
         //adds all priorities to the json Root file (first level of the json object)
-        oJsonRoot.put("numberOfErrors", nTmpErrorCount);
-        oJsonRoot.put("numberOfWarnings", nTmpWarningCount);
-        oJsonRoot.put("numberOfIgnores", nTmpIgnoreCounter);
+        oGenerator.writeNumberField("numberOfErrors", nTmpErrorCount);
+        oGenerator.writeNumberField("numberOfWarnings", nTmpWarningCount);
+        oGenerator.writeNumberField("numberOfIgnores", nTmpIgnoreCounter);
+    }
+
+    /**
+     * closes the array of the actual exercise and the object which contains it
+     * @param oGenerator - generator of the json file
+     * @throws IOException - the json document could not be written
+     */
+    private void endExercise(JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeEndArray();
+        oGenerator.writeEndObject();
+    }
+
+    /**
+     * all founded errors of a java file where written by this method. Every error is written as an json object
+     * with all attribute-value pairs into the array of the java class.
+     * @param oClass - evaluated java class with at least one error
+     * @param oGenerator - generator of the json file, positioned in the array of the exercise
+     * @throws IOException - the json document could not be written
+     */
+    private void writeClass(Class oClass, JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeStartObject();
+        writeClassFields(oClass, oGenerator);
+        oGenerator.writeEndObject();
+    }
+
+    /**
+     * writes the path, the priorities and the errors of a java class into the actual json object
+     * @param oClass - evaluated java class
+     * @param oGenerator - generator of the json file, positioned in the object of the java class
+     * @throws IOException - the json document could not be written
+     */
+    private void writeClassFields(Class oClass, JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeStringField("filepath", util.removeUnnecessaryPathParts(oClass.getFullPath()));
+        //pmd provides different errors levels. All high priorities are summarized by one category - errors
+        oGenerator.writeNumberField("numberOfErrors", oClass.getCriticalCount() + oClass.getErrorCount());
+        oGenerator.writeNumberField("numberOfWarnings", oClass.getWarningCount());
+        oGenerator.writeNumberField("numberOfIgnores", oClass.getIgnoreCount());
+
+        oGenerator.writeArrayFieldStart("errors");
+        /* all Errors */
+        for (Error oError : oClass.getErrorList()) {
+            //get all attribute-value pairs of the founded error object
+            oGenerator.writeStartObject();
+            oGenerator.writeStringField("lineBegin", Integer.toString(oError.getLineBegin()));
+            oGenerator.writeStringField("lineEnd", Integer.toString(oError.getLineEnd()));
+            oGenerator.writeStringField("columnBegin", Integer.toString(oError.getColumnBegin()));
+            oGenerator.writeStringField("columnEnd", Integer.toString(oError.getColumnEnd()));
+            oGenerator.writeStringField("priority", Integer.toString(oError.getPriority()));
+            oGenerator.writeStringField("rule", oError.getRule());
+            oGenerator.writeStringField("class", oError.getClassName());
+            oGenerator.writeStringField("package", oError.getPackage());
+            oGenerator.writeStringField("ruleset", oError.getRuleset());
+            oGenerator.writeStringField("message", oError.getMessage());
+            oGenerator.writeEndObject();
+        }
+        oGenerator.writeEndArray();
     }
 
     /**
-     * all founded errors of a java file where analyzed be this method. It adds all attribute-value pairs to an
-     * json object (constitutes an error) which will be added to an array of Json Objects which represents a java class.
+     * writes a single json record of a progressive result (newline delimited json). Every record has a type:
+     *
+     *    {"type":"file","exercise":"aufgabe1","filepath":"aufgabe1\\Array26.java","numberOfErrors":0,...}
+     *    {"type":"summary","repository":"https://github.com/...","numberOfErrors":0,...,"numberOfFiles":12}
+     *    {"type":"error","message":"..."}
+     *
+     * @param oOut - stream of the response
+     * @param oClass - analyzed java class, also without problems
+     * @throws IOException - the record could not be written
+     */
+    public void writeClassRecord(OutputStream oOut, Class oClass) throws IOException {
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "file");
+        oGenerator.writeStringField("exercise", oClass.getExerciseName());
+        writeClassFields(oClass, oGenerator);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
+    }
+
+    /**
+     * writes the last record of a progressive result with the totals of the whole repository
+     * @param oOut - stream of the response
+     * @param sRepo - svn/git repository path
+     * @param lStartTime - start time of the execution
+     * @param sLastRepoUpdateTime - last time the svn/git repository was updated
      * @param lClassList - list with all evaluated java classes
-     * @param lTmpErrorList - a list which contains errors of a class object
-     * @param lJsonClasses - json object array which stores all class objects that were evaluated and contains errors
-     * @param sTmpExerciseName - name of the class object before
-     * @param nClassPos - actual position in the class list
-     * @param sExerciseName - name of the actual considered class object
-     * @return - exercise name of the checked file
+     * @param oTimings - milliseconds of the phases of the analysis, null --> no timings object
+     * @param lRuleProfile - most expensive rules of the analysis, null --> no rule profile
+     * @throws IOException - the record could not be written
+     */
+    public void writeSummaryRecord(OutputStream oOut, String sRepo, long lStartTime, String sLastRepoUpdateTime,
+                                   List<Class> lClassList, Map<String, Long> oTimings, List<RuleCost> lRuleProfile)
+            throws IOException {
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "summary");
+        oGenerator.writeStringField("repository", sRepo);
+        writeClassPriorities(lClassList, oGenerator);
+        oGenerator.writeStringField("lastRepoUpdateTime", sLastRepoUpdateTime);
+        oGenerator.writeNumberField("totalExpendedTime", System.currentTimeMillis() - lStartTime);
+        oGenerator.writeNumberField("numberOfFiles", lClassList.size());
+        oGenerator.writeBooleanField("cached", false);
+        writeTimings(oTimings, oGenerator);
+        writeRuleProfile(lRuleProfile, oGenerator);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
+    }
+
+    /**
+     * writes a failure of a progressive result, the http status was already sent
+     * @param oOut - stream of the response
+     * @param sMessage - message of the failure
+     * @throws IOException - the record could not be written
+     */
+    public void writeErrorRecord(OutputStream oOut, String sMessage) throws IOException {
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "error");
+        oGenerator.writeStringField("message", sMessage);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
+    }
+
+    /**
+     * converts a stored json document into the records of a progressive result. The document is parsed as
+     * stream, so only a single java class is in memory. A stored document only contains java classes with
+     * problems
+     * @param oDocument - json document, written by writeJson
+     * @param oOut - stream of the response
+     * @throws IOException - the document is not readable or the records could not be written
      */
-    private String analyzeErrors(List<Class> lClassList, List<Error> lTmpErrorList,
-                                 JSONArray lJsonClasses, String sTmpExerciseName, int nClassPos, String sExerciseName) {
-        String sLocalExerciseName = sTmpExerciseName;
-
-        if (!lTmpErrorList.isEmpty()) {
-            JSONArray lJsonErrors = new JSONArray();
-            JSONObject oJsonClass = new JSONObject();
-
-            /* all Errors */
-            for (Error oError : lTmpErrorList) {
-                //get all attribute-value pairs of the founded error object
-                JSONObject oJsonError = new JSONObject();
-
-                oJsonError.put("lineBegin", Integer.toString(oError.getLineBegin()));
-                oJsonError.put("lineEnd", Integer.toString(oError.getLineEnd()));
-                oJsonError.put("columnBegin", Integer.toString(oError.getColumnBegin()));
-                oJsonError.put("columnEnd", Integer.toString(oError.getColumnEnd()));
-                oJsonError.put("priority", Integer.toString(oError.getPriority()));
-                oJsonError.put("rule", oError.getRule());
-                oJsonError.put("class", oError.getClassName());
-                oJsonError.put("package", oError.getPackage());
-                oJsonError.put("ruleset", oError.getRuleset());
-                oJsonError.put("message", oError.getMessage());
-
-                //add it to the error list of a represented java file
-                lJsonErrors.put(oJsonError);
+    public void writeRecords(InputStream oDocument, OutputStream oOut) throws IOException {
+        Map<String, Object> oSummary = new LinkedHashMap<>();
+        int nFileCount = 0;
+
+        try (JsonParser oParser = JSON_FACTORY.createParser(oDocument)) {
+            if (oParser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Stored json result is not a json object");
             }
 
-            //only if errors are founded the results should be added to the whole json file
-            if (lJsonErrors.length() > 0) {
-                sLocalExerciseName = sExerciseName;
-
-                String sFilePath = util.removeUnnecessaryPathParts(lClassList.get(nClassPos).getFullPath());
-                oJsonClass.put("filepath", sFilePath);
-                oJsonClass.put("errors", lJsonErrors);
-                //sets the priorities for the represented "java file"
-                setPriorityCounters(oJsonClass, nClassPos, lClassList);
-                //holds all json objects that represent java classes
-                lJsonClasses.put(oJsonClass);
+            while (oParser.nextToken() == JsonToken.FIELD_NAME) {
+                String sField = oParser.getCurrentName();
+                JsonToken oToken = oParser.nextToken();
+
+                if ("assignments".equals(sField) && oToken == JsonToken.START_ARRAY) {
+                    // [ {"exercise": [ {class}, ... ]}, ... ]
+                    while (oParser.nextToken() == JsonToken.START_OBJECT) {
+                        while (oParser.nextToken() == JsonToken.FIELD_NAME) {
+                            String sExerciseName = oParser.getCurrentName();
+                            oParser.nextToken();
+
+                            while (oParser.nextToken() == JsonToken.START_OBJECT) {
+                                JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+                                oGenerator.writeStartObject();
+                                oGenerator.writeStringField("type", "file");
+                                oGenerator.writeStringField("exercise", sExerciseName);
+                                //copies every field of the java class with its value
+                                while (oParser.nextToken() == JsonToken.FIELD_NAME) {
+                                    oGenerator.copyCurrentStructure(oParser);
+                                }
+                                oGenerator.writeEndObject();
+                                endRecord(oGenerator);
+                                nFileCount++;
+                            }
+                        }
+                    }
+                } else if (oToken.isNumeric()) {
+                    oSummary.put(sField, oParser.getLongValue());
+                } else if (oToken.isScalarValue()) {
+                    oSummary.put(sField, oParser.getText());
+                } else {
+                    oParser.skipChildren();
+                }
             }
         }
 
-        return sLocalExerciseName;
+        JsonGenerator oGenerator = JSON_FACTORY.createGenerator(oOut, JsonEncoding.UTF8);
+        oGenerator.writeStartObject();
+        oGenerator.writeStringField("type", "summary");
+        for (Map.Entry<String, Object> oEntry : oSummary.entrySet()) {
+            if (oEntry.getValue() instanceof Long) {
+                oGenerator.writeNumberField(oEntry.getKey(), (Long) oEntry.getValue());
+            } else {
+                oGenerator.writeStringField(oEntry.getKey(), (String) oEntry.getValue());
+            }
+        }
+        oGenerator.writeNumberField("numberOfFiles", nFileCount);
+        oGenerator.writeBooleanField("cached", true);
+        oGenerator.writeEndObject();
+        endRecord(oGenerator);
     }
 
     /**
-     * add all errors to a Java Class file, so that each file shows up different error counters
-     * @param oJsonClass - json object which represents a java class
-     * @param nClassPos -  actual pos of the class
-     * @param lClassList - list with all evaluated java classes
+     * finishes a record with a line break and sends it to the client immediately
+     * @param oGenerator - generator of the record
+     * @throws IOException - the record could not be written
      */
-    private void setPriorityCounters(JSONObject oJsonClass, int nClassPos, List<Class> lClassList) {
-        //pmd provides different errors levels. All high priorities are summarized by one category - errors
-        oJsonClass.put("numberOfErrors", lClassList.get(nClassPos).getCriticalCount()
-                                        + lClassList.get(nClassPos).getErrorCount());
-        oJsonClass.put("numberOfWarnings", lClassList.get(nClassPos).getWarningCount());
-        oJsonClass.put("numberOfIgnores", lClassList.get(nClassPos).getIgnoreCount());
+    private void endRecord(JsonGenerator oGenerator) throws IOException {
+        oGenerator.writeRaw('\n');
+        //the generator flushes the stream of the response as well
+        oGenerator.close();
     }
 }
+
@@ -0,0 +1,172 @@
+package de.htwg.konstanz.cloud.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Fetches the repositories of a copy paste check in parallel. A bounded pool of workers is shared by all
+    requests and the number of parallel fetches from the same host is limited, so a course with many groups
+    neither opens hundreds of connections nor overloads the svn server. Every repository is fetched on its own:
+    an error is recorded for the repository and the other repositories of the course are fetched anyway.
+ */
+@Component
+public class RepositoryFetchPool {
+    private static final Logger LOG = LoggerFactory.getLogger(RepositoryFetchPool.class);
+
+    /* number of repositories which are fetched at the same time */
+    @Value("${app.config.cpd.fetch.threads:8}")
+    private int nThreads;
+
+    /* maximum number of parallel fetches from the same host */
+    @Value("${app.config.cpd.fetch.concurrency:4}")
+    private int nHostConcurrency;
+
+    private ExecutorService oExecutor;
+
+    private final ConcurrentMap<String, Semaphore> oHostPermits = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {//NOPMD
+        AtomicInteger nThreadCount = new AtomicInteger();
+        oExecutor = Executors.newFixedThreadPool(nThreads, oRunnable -> {
+            Thread oThread = new Thread(oRunnable, "fetch-worker-" + nThreadCount.incrementAndGet());
+            oThread.setDaemon(true);
+            return oThread;
+        });
+    }
+
+    /**
+     * stops all workers when the service shuts down
+     */
+    @PreDestroy
+    private void destroy() {//NOPMD
+        oExecutor.shutdownNow();
+    }
+
+    /**
+     * fetches all repositories and waits for them
+     * @param lRepoUrls - urls of the repositories, every url is fetched once
+     * @param oTask - fetch of a single repository
+     * @param <T> - result of a fetch
+     * @return - fetches in the order of the urls, with their result or error
+     * @throws InterruptedException - the request was interrupted while waiting for the fetches
+     */
+    public <T> List<Fetch<T>> fetchAll(List<String> lRepoUrls, FetchTask<T> oTask) throws InterruptedException {
+        List<Future<Fetch<T>>> lFutures = new ArrayList<>();
+
+        for (String sRepoUrl : lRepoUrls) {
+            lFutures.add(oExecutor.submit(() -> fetch(sRepoUrl, oTask)));
+        }
+
+        List<Fetch<T>> lFetches = new ArrayList<>();
+        try {
+            for (Future<Fetch<T>> oFuture : lFutures) {
+                lFetches.add(oFuture.get());
+            }
+        } catch (ExecutionException e) {
+            //fetch catches every exception of the task
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (lFetches.size() < lFutures.size()) {
+                lFutures.forEach(oFuture -> oFuture.cancel(true));
+            }
+        }
+
+        return lFetches;
+    }
+
+    private <T> Fetch<T> fetch(String sRepoUrl, FetchTask<T> oTask) throws InterruptedException {
+        Semaphore oPermits = oHostPermits.computeIfAbsent(getHost(sRepoUrl),
+                sKey -> new Semaphore(nHostConcurrency, true));
+
+        oPermits.acquire();
+        long lStartTime = System.currentTimeMillis();
+        try {
+            return new Fetch<>(sRepoUrl, oTask.fetch(sRepoUrl), null, System.currentTimeMillis() - lStartTime);
+        } catch (Exception e) {
+            LOG.info("Fetch of " + sRepoUrl + " failed: " + e.getMessage());
+            return new Fetch<>(sRepoUrl, null, e, System.currentTimeMillis() - lStartTime);
+        } finally {
+            oPermits.release();
+        }
+    }
+
+    /**
+     * host of a repository url, the urls of the svn repositories may have no protocol
+     */
+    private String getHost(String sRepoUrl) {
+        String sUrl = sRepoUrl.trim();
+        int nProtocolEnd = sUrl.indexOf("://");
+        if (nProtocolEnd >= 0) {
+            sUrl = sUrl.substring(nProtocolEnd + 3);
+        }
+        int nHostEnd = sUrl.indexOf('/');
+
+        return nHostEnd < 0 ? sUrl : sUrl.substring(0, nHostEnd);
+    }
+
+    /**
+     * fetch of a single repository
+     * @param <T> - result of the fetch
+     */
+    @FunctionalInterface
+    public interface FetchTask<T> {
+        T fetch(String sRepoUrl) throws Exception;
+    }
+
+    /**
+     * result or error of the fetch of a repository with its duration
+     * @param <T> - result of the fetch
+     */
+    public static class Fetch<T> {
+        private final String sRepoUrl;
+
+        private final T oResult;
+
+        private final Exception oError;
+
+        private final long lFetchTime;
+
+        private Fetch(String sRepoUrl, T oResult, Exception oError, long lFetchTime) {
+            this.sRepoUrl = sRepoUrl;
+            this.oResult = oResult;
+            this.oError = oError;
+            this.lFetchTime = lFetchTime;
+        }
+
+        public String getRepoUrl() {
+            return sRepoUrl;
+        }
+
+        public T getResult() {
+            return oResult;
+        }
+
+        public Exception getError() {
+            return oError;
+        }
+
+        public boolean isFailed() {
+            return oError != null;
+        }
+
+        public long getFetchTime() {
+            return lFetchTime;
+        }
+    }
+}
@@ -228,8 +228,19 @@ public class Util {
     }
 
     public ArrayList<String> getRepositoriesFromRequestBody(@RequestBody String data) throws JSONException {
+        return getRepositoriesFromRequestBody(data, "repositories");
+    }
+
+    /**
+     * reads a list of repositories from the request body
+     * @param data - request body
+     * @param sKey - name of the array of the repositories, e.g. comparedRepositories
+     * @return - urls of the repositories
+     * @throws JSONException - the request body has no array with this name
+     */
+    public ArrayList<String> getRepositoriesFromRequestBody(String data, String sKey) throws JSONException {
         JSONObject object = new JSONObject(data);
-        JSONArray array = object.getJSONArray("repositories");
+        JSONArray array = object.getJSONArray(sKey);
         ArrayList<String> repositories = new ArrayList<>();
         int len = array.length();
         for (int i = 0; i < len; i++) {
@@ -0,0 +1,173 @@
+package de.htwg.konstanz.cloud.util;
+
+import de.htwg.konstanz.cloud.model.Column;
+import de.htwg.konstanz.cloud.model.Duplication;
+import de.htwg.konstanz.cloud.model.Error;
+import de.htwg.konstanz.cloud.model.Line;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+    Streaming reader of the xml reports of pmd and cpd. Instead of building the document tree of the whole report,
+    the report is read element by element and every violation or duplication is passed to a listener as soon as
+    it is complete, so even a report of a whole course with hundreds of megabytes needs only the memory of a single
+    duplication. The factory is configured once and shared by all threads.
+ */
+public class XmlReportReader {
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /**
+     * reads all violations of the xml report of pmd
+     * @param sXmlPath - xml file path the should be read
+     * @param oViolationListener - receives every violation with the same attributes as in the report
+     * @throws IOException - the report is not readable or no valid xml document
+     */
+    public void readPmdReport(String sXmlPath, Consumer<Error> oViolationListener) throws IOException {
+        read(sXmlPath, oReader -> {
+            if ("violation".equals(oReader.getLocalName())) {
+                //the attributes are read before the message, the reader is at the end of the violation afterwards
+                Line oLine = new Line(getInt(oReader, "beginline"), getInt(oReader, "endline"));
+                Column oColumn = new Column(getInt(oReader, "begincolumn"), getInt(oReader, "endcolumn"));
+                int nPriority = getInt(oReader, "priority");
+                String sClassName = getString(oReader, "class");
+                String sRule = getString(oReader, "rule");
+                String sRuleset = getString(oReader, "ruleset");
+                String sPackage = getString(oReader, "package");
+
+                oViolationListener.accept(new Error(oLine, oColumn, nPriority, sRule, sClassName, sPackage, sRuleset,
+                        oReader.getElementText()));
+            }
+        });
+    }
+
+    /**
+     * reads all duplications of the xml report of cpd
+     * @param sXmlPath - xml file path the should be read
+     * @param oDuplicationListener - receives every duplication, the involved data are the paths of its files
+     * @throws IOException - the report is not readable or no valid xml document
+     */
+    public void readCpdReport(String sXmlPath, Consumer<Duplication> oDuplicationListener) throws IOException {
+        read(sXmlPath, oReader -> {
+            if ("duplication".equals(oReader.getLocalName())) {
+                int nLinesCount = getInt(oReader, "lines");
+                int nTokens = getInt(oReader, "tokens");
+                List<String> lFiles = new ArrayList<>();
+                List<Integer> lBeginLines = new ArrayList<>();
+                String sCodeFragment = "";
+
+                //<file/> elements followed by the <codefragment> up to the end of the duplication
+                while (oReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if ("file".equals(oReader.getLocalName())) {
+                        lFiles.add(getString(oReader, "path"));
+                        lBeginLines.add(getInt(oReader, "line"));
+                        skipElement(oReader);
+                    } else if ("codefragment".equals(oReader.getLocalName())) {
+                        sCodeFragment = oReader.getElementText();
+                    } else {
+                        skipElement(oReader);
+                    }
+                }
+
+                oDuplicationListener.accept(new Duplication(nLinesCount, nTokens, lFiles, lBeginLines,
+                        sCodeFragment));
+            }
+        });
+    }
+
+    /**
+     * iterates through all start elements of the report
+     * @param sXmlPath - xml file path the should be read
+     * @param oElementHandler - handler of a start element
+     * @throws IOException - the report is not readable or no valid xml document
+     */
+    private void read(String sXmlPath, ElementHandler oElementHandler) throws IOException {
+        //it is important to define the coding of the xml file --> UTF-8
+        try (InputStream oInput = new BufferedInputStream(new FileInputStream(sXmlPath))) {
+            XMLStreamReader oReader = XML_INPUT_FACTORY.createXMLStreamReader(oInput, "UTF-8");
+
+            try {
+                while (oReader.hasNext()) {
+                    if (oReader.next() == XMLStreamConstants.START_ELEMENT) {
+                        oElementHandler.startElement(oReader);
+                    }
+                }
+            } finally {
+                oReader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid xml report " + sXmlPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * moves the reader to the end of the current element
+     * @param oReader - reader positioned at a start element
+     * @throws XMLStreamException - no valid xml document
+     */
+    private void skipElement(XMLStreamReader oReader) throws XMLStreamException {
+        int nDepth = 1;
+
+        while (nDepth > 0) {
+            int nEvent = oReader.next();
+            if (nEvent == XMLStreamConstants.START_ELEMENT) {
+                nDepth++;
+            } else if (nEvent == XMLStreamConstants.END_ELEMENT) {
+                nDepth--;
+            }
+        }
+    }
+
+    /**
+     * reads an attribute of the current element
+     * @return - value of the attribute or "" if it does not exist
+     */
+    private String getString(XMLStreamReader oReader, String sAttributeName) {
+        String sValue = oReader.getAttributeValue(null, sAttributeName);
+
+        return sValue == null ? "" : sValue;
+    }
+
+    /**
+     * reads a numeric attribute of the current element
+     * @return - value of the attribute or 0 if it does not exist or is not parsable
+     */
+    private int getInt(XMLStreamReader oReader, String sAttributeName) {
+        try {
+            return Integer.parseInt(getString(oReader, sAttributeName));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * creates the factory of all readers: the text of an element is returned as a whole, and the reports of the
+     * tools have neither a dtd nor external entities
+     * @return - configured factory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory oFactory = XMLInputFactory.newInstance();
+        oFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        oFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        oFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        oFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return oFactory;
+    }
+
+    /**
+     * handler of a start element, it may read the element up to its end
+     */
+    private interface ElementHandler {
+        void startElement(XMLStreamReader oReader) throws XMLStreamException;
+    }
+}
@@ -0,0 +1,235 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Duplication;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Incremental copy paste detection of a course with the repositories below cpd/repositories, see CpdIndexTest
+ */
+public class CpdCourseIndexTest {
+    private static final List<String> REPOSITORIES = Arrays.asList("http://localhost/alpha", "http://localhost/beta",
+            "http://localhost/gamma");
+
+    private File oRepoDir;
+
+    private Path oIndexDirectory;
+
+    @Before
+    public void setUp() throws URISyntaxException, IOException {
+        oRepoDir = new File(getClass().getResource("/cpd/repositories").toURI());
+        oIndexDirectory = Files.createTempDirectory("cpd-index");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> oPaths = Files.walk(oIndexDirectory)) {
+            for (Path oPath : oPaths.sorted((oFirst, oSecond) -> oSecond.compareTo(oFirst))
+                    .collect(Collectors.toList())) {
+                Files.delete(oPath);
+            }
+        }
+    }
+
+    @Test
+    public void findsTheDuplicationsOfTheIndexEngine() throws IOException {
+        CpdCourseIndex.Update oUpdate = createIndex().startUpdate("course");
+        for (String sRepoUrl : REPOSITORIES) {
+            oUpdate.addRepository(sRepoUrl, "r1", readJavaFiles(sRepoUrl));
+        }
+
+        assertEquals(describe(new CpdIndex(25).findDuplications(oRepoDir)), describe(oUpdate.finish(REPOSITORIES)));
+    }
+
+    @Test
+    public void readsTheStoredTokensOfAnotherRun() throws IOException {
+        CpdCourseIndex.Update oUpdate = createIndex().startUpdate("course");
+        for (String sRepoUrl : REPOSITORIES) {
+            oUpdate.addRepository(sRepoUrl, "r1", readJavaFiles(sRepoUrl));
+        }
+        List<String> lDuplications = describe(oUpdate.finish(REPOSITORIES));
+
+        //a new index has new numbers of the tokens
+        CpdCourseIndex.Update oRestartedUpdate = createIndex().startUpdate("course");
+        for (String sRepoUrl : REPOSITORIES) {
+            assertTrue(oRestartedUpdate.isCurrent(sRepoUrl, "r1"));
+        }
+        assertEquals(lDuplications, describe(oRestartedUpdate.finish(REPOSITORIES)));
+    }
+
+    @Test
+    public void reportsTheDuplicationsBetweenTheBlocksOfAPair() throws IOException {
+        CpdCourseIndex oIndex = createIndex();
+        CpdCourseIndex.Update oUpdate = oIndex.startUpdate("course");
+        for (String sRepoUrl : REPOSITORIES.subList(0, 2)) {
+            oUpdate.addRepository(sRepoUrl, "r1", readJavaFiles(sRepoUrl));
+        }
+        //without gamma its copy is only a part of the copy of beta
+        assertEquals(1, oUpdate.finishPair(REPOSITORIES.subList(0, 2), REPOSITORIES.subList(0, 2)).size());
+
+        //alpha and beta stay in the index for the following block pairs
+        CpdCourseIndex.Update oPairUpdate = oIndex.startUpdate("course");
+        assertTrue(oPairUpdate.isCurrent(REPOSITORIES.get(0), "r1"));
+        oPairUpdate.addRepository(REPOSITORIES.get(2), "r1", readJavaFiles(REPOSITORIES.get(2)));
+        List<Duplication> lDuplications = oPairUpdate.finishPair(REPOSITORIES.subList(0, 1),
+                REPOSITORIES.subList(2, 3));
+
+        assertEquals(1, lDuplications.size());
+        assertEquals(35, lDuplications.get(0).getTokens());
+        assertEquals(2, lDuplications.get(0).getInvolvedData().size());
+        assertEquals(1, oIndex.startUpdate("course").finishPair(REPOSITORIES.subList(1, 2),
+                REPOSITORIES.subList(2, 3)).size());
+    }
+
+    @Test(timeout = 10000)
+    public void readsACommitOnceForConcurrentValidations() throws Exception {
+        CpdCourseIndex oIndex = createIndex();
+        String sRepoUrl = REPOSITORIES.get(0);
+        AtomicInteger nReads = new AtomicInteger();
+        AtomicBoolean bFollowerAdded = new AtomicBoolean();
+        AtomicReference<Thread> oFollowerThread = new AtomicReference<>();
+        CpdCourseIndex.Update oFollower = oIndex.startUpdate("course");
+
+        CpdCourseIndex.Update oLeader = oIndex.startUpdate("course");
+        assertTrue(oLeader.addRepositoryOnce(sRepoUrl, "r1", () -> {
+            nReads.incrementAndGet();
+            Thread oThread = new Thread(() -> {
+                try {
+                    bFollowerAdded.set(oFollower.addRepositoryOnce(sRepoUrl, "r1", () -> {
+                        nReads.incrementAndGet();
+                        return readJavaFiles(sRepoUrl);
+                    }));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            oFollowerThread.set(oThread);
+            oThread.start();
+            //the leader finishes its read after the second validation waits for it
+            while (oIndex.getStatistics().getLong("coalesced") == 0) {
+                LockSupport.parkNanos(10_000_000L);
+            }
+            return readJavaFiles(sRepoUrl);
+        }));
+        oFollowerThread.get().join();
+
+        assertTrue(bFollowerAdded.get());
+        assertEquals(1, nReads.get());
+    }
+
+    @Test
+    public void removesTheTokensOfThePreviousCommit() throws IOException {
+        CpdCourseIndex oIndex = createIndex();
+        for (String sRevision : Arrays.asList("r1", "r2")) {
+            CpdCourseIndex.Update oUpdate = oIndex.startUpdate("course");
+            oUpdate.addRepository(REPOSITORIES.get(0), sRevision, readJavaFiles(REPOSITORIES.get(0)));
+            oUpdate.finish(REPOSITORIES.subList(0, 1));
+        }
+
+        assertEquals(Collections.singletonList("r2.tokens"), listTokenFiles());
+    }
+
+    @Test
+    public void keepsTheTokenFilesBelowTheMaximumSize() throws IOException {
+        CpdCourseIndex oIndex = createIndex();
+        ReflectionTestUtils.setField(oIndex, "lMaxDiskSizeMb", 0L);
+        CpdCourseIndex.Update oUpdate = oIndex.startUpdate("course");
+        for (String sRepoUrl : REPOSITORIES) {
+            oUpdate.addRepository(sRepoUrl, "r1", readJavaFiles(sRepoUrl));
+        }
+
+        //only the file of the last repository is kept, the index in memory still has all repositories
+        assertEquals(1, listTokenFiles().size());
+        assertEquals(2, oUpdate.finish(REPOSITORIES).size());
+    }
+
+    @Test
+    public void matchesOnlyIdenticalTokens() {
+        //"Aa" and "BB" have the same hash code
+        StringBuilder oSourceA = new StringBuilder("class Calls {\n void call() {\n");
+        StringBuilder oSourceB = new StringBuilder(oSourceA);
+        for (int nCall = 0; nCall < 20; nCall++) {
+            oSourceA.append("Aa(").append(nCall).append(");\n");
+            oSourceB.append("BB(").append(nCall).append(");\n");
+        }
+
+        CpdCourseIndex.Update oUpdate = createIndex().startUpdate("course");
+        oUpdate.addRepository(REPOSITORIES.get(0), "r1", Collections.singletonMap("Calls.java",
+                oSourceA.append("}\n}\n").toString().getBytes(StandardCharsets.UTF_8)));
+        oUpdate.addRepository(REPOSITORIES.get(1), "r1", Collections.singletonMap("Calls.java",
+                oSourceB.append("}\n}\n").toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0, oUpdate.finish(REPOSITORIES.subList(0, 2)).size());
+    }
+
+    private CpdCourseIndex createIndex() {
+        CpdCourseIndex oIndex = new CpdCourseIndex();
+        ReflectionTestUtils.setField(oIndex, "nMinimumTokens", 25);
+        ReflectionTestUtils.setField(oIndex, "nWindow", 8);
+        ReflectionTestUtils.setField(oIndex, "nMaxCourses", 5);
+        ReflectionTestUtils.setField(oIndex, "sIndexDirectory", oIndexDirectory.toString());
+        ReflectionTestUtils.setField(oIndex, "lMaxDiskSizeMb", 1024L);
+        ReflectionTestUtils.invokeMethod(oIndex, "init");
+
+        return oIndex;
+    }
+
+    private List<String> listTokenFiles() throws IOException {
+        try (Stream<Path> oPaths = Files.walk(oIndexDirectory)) {
+            return oPaths.map(oPath -> oPath.getFileName().toString()).filter(sName -> sName.endsWith(".tokens"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * reads the java files of a repository of the fixture, the name of the repository is the end of its url
+     */
+    private Map<String, byte[]> readJavaFiles(String sRepoUrl) throws IOException {
+        Path oRepoPath = oRepoDir.toPath().resolve(sRepoUrl.substring(sRepoUrl.lastIndexOf('/') + 1));
+        Map<String, byte[]> oJavaFiles = new TreeMap<>();
+
+        try (Stream<Path> oPaths = Files.walk(oRepoPath)) {
+            for (Path oPath : oPaths.filter(oPath -> oPath.toString().endsWith(".java"))
+                    .collect(Collectors.toList())) {
+                oJavaFiles.put(oRepoPath.relativize(oPath).toString(), Files.readAllBytes(oPath));
+            }
+        }
+
+        return oJavaFiles;
+    }
+
+    /**
+     * describes every duplication, the directories of the repositories of the course index end with a hash of the
+     * url which is removed
+     */
+    private List<String> describe(List<Duplication> lDuplications) {
+        return lDuplications.stream().map(oDuplication -> oDuplication.getTokens() + " tokens, "
+                + oDuplication.getDuplicatedLine() + " lines " + oDuplication.getInvolvedData().stream()
+                .map(sPath -> sPath.replaceFirst("_[0-9a-f]{8}", "")).collect(Collectors.toList())
+                + oDuplication.getBeginLines() + "\n" + oDuplication.getDuplicatedCode())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,99 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Duplication;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/*
+    Compares the copy paste detection inside the service with the xml report of cpd for the repositories below
+    cpd/repositories, the report Duplications.xml is the one of cpd with a minimum of 25 tokens. alpha and beta
+    contain the same shop, gamma a copy of one of its methods. alpha copies a method between two of its own files,
+    beta and gamma have two files with the same package and import statements but different classes.
+ */
+public class CpdIndexTest {
+    private static final int MINIMUM_TOKENS = 25;
+
+    /* directory of the repositories when the report was created */
+    private static final String REPORT_DIRECTORY = "/data/repositories";
+
+    private File oRepoDir;
+
+    private String sReportPath;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        oRepoDir = new File(getClass().getResource("/cpd/repositories").toURI());
+        sReportPath = new File(getClass().getResource("/cpd/Duplications.xml").toURI()).getPath();
+    }
+
+    @Test
+    public void findsTheDuplicationsOfTheCpdReport() throws IOException {
+        assertEquals(describe(readReport()), describe(new CpdIndex(MINIMUM_TOKENS).findDuplications(oRepoDir)));
+    }
+
+    @Test
+    public void reportsOnlyMaximalDuplications() throws IOException {
+        List<Duplication> lDuplications = new CpdIndex(MINIMUM_TOKENS).findDuplications(oRepoDir);
+
+        //the copy of gamma is a part of the copy of beta, the rest of the copy of beta is not reported again
+        assertEquals(2, lDuplications.size());
+        assertEquals(116, lDuplications.get(0).getTokens());
+        assertEquals(2, lDuplications.get(0).getInvolvedData().size());
+        assertEquals(35, lDuplications.get(1).getTokens());
+        assertEquals(3, lDuplications.get(1).getInvolvedData().size());
+    }
+
+    @Test
+    public void ignoresDuplicationsWithinARepository() throws IOException {
+        for (Duplication oDuplication : new CpdIndex(MINIMUM_TOKENS).findDuplications(oRepoDir)) {
+            assertFalse(oDuplication.getInvolvedData().toString().contains("Report"));
+        }
+    }
+
+    @Test
+    public void ignoresPackageAndImportStatements() throws IOException {
+        for (Duplication oDuplication : new CpdIndex(MINIMUM_TOKENS).findDuplications(oRepoDir)) {
+            assertFalse(oDuplication.getInvolvedData().toString().contains("Config"));
+        }
+    }
+
+    /**
+     * reads the duplications of the report like the forked cpd engine
+     */
+    private List<Duplication> readReport() throws IOException {
+        Cpd oCpd = new Cpd(null, null, null, null, "process", MINIMUM_TOKENS, null, 0, 0);
+        oCpd.storeCpdInformation(sReportPath, REPORT_DIRECTORY);
+
+        return oCpd.getDuplications();
+    }
+
+    /**
+     * describes every duplication with its size, its files with their first line and its code fragment
+     */
+    private List<String> describe(List<Duplication> lDuplications) {
+        List<String> lDescriptions = new ArrayList<>();
+
+        for (Duplication oDuplication : lDuplications) {
+            Map<String, Integer> oBeginLines = new TreeMap<>();
+            for (int nFile = 0; nFile < oDuplication.getInvolvedData().size(); nFile++) {
+                oBeginLines.put(oDuplication.getInvolvedData().get(nFile).replace(File.separatorChar, '/'),
+                        oDuplication.getBeginLines().get(nFile));
+            }
+            lDescriptions.add(oDuplication.getTokens() + " tokens, " + oDuplication.getDuplicatedLine() + " lines "
+                    + oBeginLines + "\n" + oDuplication.getDuplicatedCode());
+        }
+
+        return lDescriptions;
+    }
+}
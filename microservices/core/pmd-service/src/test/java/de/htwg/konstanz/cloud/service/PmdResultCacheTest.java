@@ -0,0 +1,123 @@
+package de.htwg.konstanz.cloud.service;
+
+import de.htwg.konstanz.cloud.model.Class;
+import de.htwg.konstanz.cloud.model.Column;
+import de.htwg.konstanz.cloud.model.Error;
+import de.htwg.konstanz.cloud.model.Line;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Shares the result of a java file between identical java files of the same and of concurrent analyses
+ */
+public class PmdResultCacheTest {
+    private static final byte[] SKELETON = "class Skeleton {}".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] SOLUTION = "class Solution {}".getBytes(StandardCharsets.UTF_8);
+
+    private PmdResultCache oCache;
+
+    private final Map<String, byte[]> oSourceMap = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        oCache = new PmdResultCache();
+        ReflectionTestUtils.setField(oCache, "sRuleSetPath", "rulesets/java/basic.xml");
+        ReflectionTestUtils.setField(oCache, "nMaxEntries", 100);
+        ReflectionTestUtils.setField(oCache, "sCacheDirectory", "");
+        ReflectionTestUtils.setField(oCache, "nMaxCourses", 10);
+        ReflectionTestUtils.invokeMethod(oCache, "init");
+    }
+
+    @Test
+    public void analyzesIdenticalFilesOfAnAnalysisOnce() throws IOException {
+        Class oFirst = createClass("team1/src/Skeleton.java", SKELETON);
+        Class oSecond = createClass("team1/test/Skeleton.java", SKELETON);
+        PmdResultCache.Lookup oLookup = oCache.lookup(Arrays.asList(oFirst, oSecond), oSourceMap);
+
+        assertEquals(Collections.singletonList(oFirst), new ArrayList<>(oLookup.getMissMap().keySet()));
+        analyze(oLookup.getMissMap());
+        List<Class> lDone = new ArrayList<>();
+
+        assertTrue(oLookup.fanOut(lDone::add).isEmpty());
+        assertEquals(Collections.singletonList(oSecond), lDone);
+        assertEquals(oFirst.getErrorList(), oSecond.getErrorList());
+    }
+
+    @Test
+    public void handsOverTheFileOfAFailedAnalysisToTheWaitingAnalysis() throws IOException {
+        Class oOwner = createClass("team1/src/Skeleton.java", SKELETON);
+        Class oWaiter = createClass("team2/src/Skeleton.java", SKELETON);
+        PmdResultCache.Lookup oOwnerLookup = oCache.lookup(Collections.singletonList(oOwner), oSourceMap);
+        PmdResultCache.Lookup oWaiterLookup = oCache.lookup(Collections.singletonList(oWaiter), oSourceMap);
+        assertTrue(oWaiterLookup.getMissMap().isEmpty());
+
+        //the owning analysis fails before its java file is analyzed
+        oOwnerLookup.release();
+        Map<Class, String> oRetryMap = oWaiterLookup.fanOut(oClass -> {
+            throw new IllegalStateException("no result expected");
+        });
+
+        assertEquals(Collections.singletonList(oWaiter), new ArrayList<>(oRetryMap.keySet()));
+        analyze(oRetryMap);
+        oWaiterLookup.recordCourse("course");
+        assertEquals(1, oCache.getCourseStatistics("course").getLong("analyzedFiles"));
+
+        //the result of the retry is cached for the next analysis
+        PmdResultCache.Lookup oNextLookup = oCache.lookup(Collections.singletonList(oOwner), oSourceMap);
+        assertEquals(Collections.singletonList(oOwner), oNextLookup.getCachedList());
+    }
+
+    @Test
+    public void countsTheReusedFilesOfACourse() throws IOException {
+        PmdResultCache.Lookup oFirstLookup = oCache.lookup(Arrays.asList(
+                createClass("team1/src/Skeleton.java", SKELETON), createClass("team1/src/Solution.java", SOLUTION)),
+                oSourceMap);
+        analyze(oFirstLookup.getMissMap());
+        oFirstLookup.fanOut(oClass -> { });
+        oFirstLookup.recordCourse("course");
+
+        PmdResultCache.Lookup oSecondLookup = oCache.lookup(Arrays.asList(
+                createClass("team2/src/Skeleton.java", SKELETON), createClass("team2/test/Skeleton.java", SKELETON)),
+                oSourceMap);
+        oSecondLookup.fanOut(oClass -> { });
+        oSecondLookup.recordCourse("course");
+
+        JSONObject oStatistics = oCache.getCourseStatistics("course");
+        assertEquals(2, oStatistics.getLong("analyses"));
+        assertEquals(4, oStatistics.getLong("files"));
+        assertEquals(2, oStatistics.getLong("analyzedFiles"));
+        assertEquals(0.5, oStatistics.getDouble("dedupRatio"), 0.0);
+    }
+
+    private Class createClass(String sPath, byte[] bContent) {
+        oSourceMap.put(sPath, bContent);
+
+        return new Class(sPath, "exercise");
+    }
+
+    /**
+     * finds a problem in every java class and stores it
+     */
+    private void analyze(Map<Class, String> oClassMap) {
+        for (Map.Entry<Class, String> oEntry : oClassMap.entrySet()) {
+            oEntry.getKey().getErrorList().add(new Error(new Line(1, 1), new Column(1, 10), 3, "UnusedClass",
+                    oEntry.getKey().getFullPath(), "", "basic", "unused class"));
+            oCache.put(oEntry.getValue(), oEntry.getKey());
+        }
+    }
+}
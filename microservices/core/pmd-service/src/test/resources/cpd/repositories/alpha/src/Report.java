@@ -0,0 +1,12 @@
+package shop;
+
+public class Report {
+    // the same method is copied into ReportCopy of this repository only
+    public String printReport(String[] sLines) {
+        StringBuilder oReport = new StringBuilder();
+        for (int nLine = 0; nLine < sLines.length; nLine++) {
+            oReport.append(nLine + 1).append(": ").append(sLines[nLine]).append('\n');
+        }
+        return oReport.toString();
+    }
+}
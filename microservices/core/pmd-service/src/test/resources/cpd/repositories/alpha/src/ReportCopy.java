@@ -0,0 +1,13 @@
+package shop;
+
+public class ReportCopy {
+    private int nPages = 1;
+
+    public String printReport(String[] sLines) {
+        StringBuilder oReport = new StringBuilder();
+        for (int nLine = 0; nLine < sLines.length; nLine++) {
+            oReport.append(nLine + 1).append(": ").append(sLines[nLine]).append('\n');
+        }
+        return oReport.toString();
+    }
+}
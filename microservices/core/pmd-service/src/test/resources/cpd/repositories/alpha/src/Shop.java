@@ -0,0 +1,31 @@
+package shop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Shop {
+    private final Map<String, List<Integer>> oOrders = new HashMap<>();
+
+    public void addOrder(String sCustomer, int nAmount) {
+        List<Integer> lOrders = oOrders.get(sCustomer);
+        if (lOrders == null) {
+            lOrders = new ArrayList<>();
+            oOrders.put(sCustomer, lOrders);
+        }
+        lOrders.add(nAmount);
+    }
+
+    public int getTotal(String sCustomer) {
+        int nTotal = 0;
+        for (int nAmount : oOrders.get(sCustomer)) {
+            nTotal += nAmount;
+        }
+        return nTotal >> 1;
+    }
+
+    public String describe() {
+        return "Shop with " + oOrders.size() + " customers";
+    }
+}
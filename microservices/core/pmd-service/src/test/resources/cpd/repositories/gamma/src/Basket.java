@@ -0,0 +1,18 @@
+package basket;
+
+import java.util.List;
+import java.util.Map;
+
+public class Basket {
+    private Map<String, List<Integer>> oOrders;
+
+    private int nDiscount = 0;
+
+    public int getTotal(String sCustomer) {
+        int nTotal = 0;
+        for (int nAmount : oOrders.get(sCustomer)) {
+            nTotal += nAmount;
+        }
+        return nTotal >> 1;
+    }
+}